@@ -7,28 +7,13 @@ echo "This batch files reads rusefi_config.txt and produses firmware persistent
 echo "the storage section of rusefi.ini is updated as well"
 
 rm gen_config.log
-rm gen_config_board.log
+rm gen_config_board*.log
 
 mkdir build
 
-java -DSystemOut.name=gen_config \
- -Drusefi.generator.lazyfile.enabled=true \
- -jar ../java_tools/ConfigDefinition.jar \
- -definition integration/rusefi_config.txt \
- -romraider integration \
- -ts_destination tunerstudio \
- -with_c_defines false \
- -initialize_to_zero false \
- -tool gen_config.sh \
- -c_defines        controllers/generated/rusefi_generated.h \
- -firing_order     controllers/algo/firing_order.h \
- -c_destination    controllers/generated/engine_configuration_generated_structures.h \
- -c_fsio_constants controllers/generated/fsio_enums_generated.def \
- -c_fsio_getters   controllers/generated/fsio_getters.def \
- -c_fsio_names     controllers/generated/fsio_names.def \
- -c_fsio_strings   controllers/generated/fsio_strings.def \
- -java_destination ../java_console/models/src/com/rusefi/config/generated/Fields.java \
- -romraider_destination ../java_console/rusefi.xml
+# main configuration and all boards in one JVM, see gen_config_manifest.txt
+java -cp ../java_tools/ConfigDefinition.jar \
+ com.rusefi.ConfigDefinitionBatch gen_config_manifest.txt
 
 [ $? -eq 0 ] || (echo "ERROR generating"; exit $?)
 
@@ -40,11 +25,6 @@ else
  cp -v tunerstudio/rusefi_microrusefi.ini $TS_PATH/dev_mre/projectCfg/mainController.ini
 fi
 
-for BOARD in "microrusefi" "frankenso" "prometheus" "proteus"; do
- sh gen_config_board.sh $BOARD
- [ $? -eq 0 ] || (echo "ERROR generating $BOARD"; exit $?)
-done
-
 cd config/boards/kinetis/config
 sh gen_config.sh
 
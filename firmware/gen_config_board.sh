@@ -14,26 +14,24 @@ BOARDNAME=$1
 
 echo "BOARDNAME=${BOARDNAME}"
 
-java -DSystemOut.name=gen_config_board \
-	-cp ../java_tools/ConfigDefinition.jar \
-	com.rusefi.board_generator.BoardReader \
-	-board ${BOARDNAME} \
-	-firmware_path . \
-	-out tunerstudio \
-	-enumInputFile controllers/algo/rusefi_enums.h \
+# both steps in one JVM, same as a board job of gen_config_manifest.txt
+java -cp ../java_tools/ConfigDefinition.jar \
+	com.rusefi.ConfigDefinitionBatch - <<MANIFEST
+-DSystemOut.name=gen_config_board com.rusefi.board_generator.BoardReader \\
+	-board ${BOARDNAME} \\
+	-firmware_path . \\
+	-out tunerstudio \\
+	-enumInputFile controllers/algo/rusefi_enums.h \\
 	-enumInputFile controllers/algo/rusefi_hw_enums.h
-
-[ $? -eq 0 ] || (echo "ERROR generating TunerStudio config for ${BOARDNAME}"; exit $?)
-
-java -DSystemOut.name=gen_config_board \
-	-jar ../java_tools/ConfigDefinition.jar \
-	-definition integration/rusefi_config.txt \
-	-tool gen_config.sh \
-	-ts_destination tunerstudio \
-	-firing_order controllers/algo/firing_order.h \
-	-ts_output_name rusefi_${BOARDNAME}.ini \
-	-prepend tunerstudio/${BOARDNAME}_prefix.txt \
+-DSystemOut.name=gen_config_board com.rusefi.ConfigDefinition \\
+	-definition integration/rusefi_config.txt \\
+	-tool gen_config.sh \\
+	-ts_destination tunerstudio \\
+	-firing_order controllers/algo/firing_order.h \\
+	-ts_output_name rusefi_${BOARDNAME}.ini \\
+	-prepend tunerstudio/${BOARDNAME}_prefix.txt \\
 	-prepend config/boards/${BOARDNAME}/prepend.txt
+MANIFEST
 
 [ $? -eq 0 ] || (echo "ERROR generating TunerStudio config for ${BOARDNAME}"; exit $?)
 
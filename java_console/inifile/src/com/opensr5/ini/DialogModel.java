@@ -18,6 +18,14 @@ public class DialogModel {
         this.fields = new ArrayList<>(fields);
     }
 
+    public String getKey() {
+        return key;
+    }
+
+    public String getUiName() {
+        return uiName;
+    }
+
     public List<Field> getFields() {
         return fields;
     }
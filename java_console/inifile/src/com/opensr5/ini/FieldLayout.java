@@ -0,0 +1,112 @@
+package com.opensr5.ini;
+
+import com.opensr5.ConfigurationImage;
+import com.opensr5.ini.field.ArrayIniField;
+import com.opensr5.ini.field.IniField;
+import com.opensr5.ini.field.ScalarIniField;
+import com.rusefi.config.FieldAccessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * All numeric fields of an {@link IniFileModel} compiled into accessors once, so that a whole
+ * {@link ConfigurationImage} could be decoded into a single flat double[]: scalar field takes one slot,
+ * array field takes cols * rows slots row by row.
+ * <p>
+ * Name lookups should be done once via {@link #getIndex}, after that it's all array access.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class FieldLayout {
+    private final String[] names;
+    private final FieldAccessor[] accessors;
+    /**
+     * position of i-th field within decoded array
+     */
+    private final int[] starts;
+    private final Map<String, Integer> indexByName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final int size;
+
+    public FieldLayout(IniFileModel model) {
+        this(model.allIniFields.values());
+    }
+
+    public FieldLayout(Iterable<IniField> fields) {
+        List<String> names = new ArrayList<>();
+        List<FieldAccessor> accessors = new ArrayList<>();
+        for (IniField field : fields) {
+            FieldAccessor accessor;
+            if (field instanceof ScalarIniField) {
+                accessor = ((ScalarIniField) field).getAccessor();
+            } else if (field instanceof ArrayIniField) {
+                accessor = ((ArrayIniField) field).getAccessor();
+            } else {
+                // enums and strings are not numbers
+                continue;
+            }
+            indexByName.put(field.getName(), names.size());
+            names.add(field.getName());
+            accessors.add(accessor);
+        }
+        this.names = names.toArray(new String[0]);
+        this.accessors = accessors.toArray(new FieldAccessor[0]);
+        starts = new int[this.accessors.length];
+        int position = 0;
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = position;
+            position += this.accessors[i].getCount();
+        }
+        size = position;
+    }
+
+    public int getFieldCount() {
+        return accessors.length;
+    }
+
+    /**
+     * @return length of decoded array
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return field index, ignoring case, or -1 if there is no such numeric field
+     */
+    public int getIndex(String name) {
+        Integer index = indexByName.get(name);
+        return index == null ? -1 : index;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public FieldAccessor getAccessor(int index) {
+        return accessors[index];
+    }
+
+    /**
+     * @return position of the first element of given field within decoded array
+     */
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public double[] decode(ConfigurationImage image) {
+        double[] result = new double[size];
+        decode(image, result);
+        return result;
+    }
+
+    public void decode(ConfigurationImage image, double[] destination) {
+        if (destination.length < size)
+            throw new IllegalArgumentException("Need " + size + " got " + destination.length);
+        byte[] content = image.getContent();
+        for (int i = 0; i < accessors.length; i++)
+            accessors[i].decode(content, destination, starts[i]);
+    }
+}
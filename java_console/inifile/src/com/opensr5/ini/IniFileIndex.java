@@ -0,0 +1,255 @@
+package com.opensr5.ini;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Two-phase ini file reader: one quick pass finds [section] boundaries and non-empty lines, tokenization happens
+ * later per section, either for all sections in parallel or only for the section somebody asks for.
+ * <p>
+ * Tokens of a section are kept in flat arrays instead of an object per line, see {@link Section}
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class IniFileIndex {
+    /**
+     * name of the section with lines above first [section] header
+     */
+    public static final String PREAMBLE = "";
+
+    private final String content;
+    private final List<Section> sections = new ArrayList<>();
+
+    public IniFileIndex(String content) {
+        this.content = content;
+        scan();
+    }
+
+    public static IniFileIndex read(InputStream in) {
+        StringBuilder sb = new StringBuilder();
+        try (Reader reader = new InputStreamReader(in)) {
+            char[] buffer = new char[64 * 1024];
+            int length;
+            while ((length = reader.read(buffer)) != -1)
+                sb.append(buffer, 0, length);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new IniFileIndex(sb.toString());
+    }
+
+    public static IniFileIndex read(File input) {
+        try {
+            return read(new FileInputStream(input));
+        } catch (FileNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void scan() {
+        Section current = new Section(PREAMBLE, 0);
+        List<Integer> ranges = new ArrayList<>();
+        int position = 0;
+        while (position < content.length()) {
+            int end = position;
+            while (end < content.length() && content.charAt(end) != '\n' && content.charAt(end) != '\r')
+                end++;
+            int first = position;
+            // same as String.trim()
+            while (first < end && content.charAt(first) <= ' ')
+                first++;
+            if (first < end) {
+                if (content.charAt(first) == '[') {
+                    int close = content.indexOf(']', first);
+                    if (close != -1 && close < end) {
+                        finish(current, position, ranges);
+                        current = new Section(content.substring(first + 1, close), position);
+                    }
+                }
+                ranges.add(position);
+                ranges.add(end);
+            }
+            // same line breaks as BufferedReader.readLine
+            if (end < content.length() && content.charAt(end) == '\r')
+                end++;
+            if (end < content.length() && content.charAt(end) == '\n')
+                end++;
+            position = end;
+        }
+        finish(current, content.length(), ranges);
+    }
+
+    private void finish(Section section, int end, List<Integer> ranges) {
+        section.end = end;
+        section.lineStart = new int[ranges.size() / 2];
+        section.lineEnd = new int[ranges.size() / 2];
+        for (int i = 0; i < section.lineStart.length; i++) {
+            section.lineStart[i] = ranges.get(2 * i);
+            section.lineEnd[i] = ranges.get(2 * i + 1);
+        }
+        ranges.clear();
+        if (section.lineStart.length > 0 || !section.name.equals(PREAMBLE))
+            sections.add(section);
+    }
+
+    /**
+     * Tokenizes all sections using all CPU cores
+     */
+    public IniFileIndex tokenize() {
+        sections.parallelStream().forEach(Section::tokenize);
+        return this;
+    }
+
+    /**
+     * @return sections in file order
+     */
+    public List<Section> getSections() {
+        return Collections.unmodifiableList(sections);
+    }
+
+    /**
+     * @return first section with given name, tokenized, null if none
+     */
+    @Nullable
+    public Section getSection(String name) {
+        for (Section section : sections) {
+            if (section.name.equalsIgnoreCase(name)) {
+                section.tokenize();
+                return section;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return same lines as {@link IniFileReader#read} used to produce
+     */
+    public RawIniFile toRawIniFile() {
+        return toRawIniFile(sections);
+    }
+
+    /**
+     * @return lines of given sections only, in file order. Other sections are not tokenized at all.
+     */
+    public RawIniFile toRawIniFile(String... sectionNames) {
+        List<Section> selected = new ArrayList<>();
+        for (Section section : sections) {
+            for (String name : sectionNames) {
+                if (section.name.equalsIgnoreCase(name)) {
+                    selected.add(section);
+                    break;
+                }
+            }
+        }
+        return toRawIniFile(selected);
+    }
+
+    /**
+     * each line gets its own token array here, flat section arrays would only be copied
+     */
+    private static RawIniFile toRawIniFile(List<Section> sections) {
+        List<RawIniFile.Line> lines = new ArrayList<>();
+        for (Section section : sections) {
+            for (int i = 0; i < section.getLineCount(); i++) {
+                String rawText = section.getRawText(i);
+                lines.add(new RawIniFile.Line(rawText, IniFileReader.splitTokens(rawText)));
+            }
+        }
+        return new RawIniFile(lines);
+    }
+
+    /**
+     * Lines of one section including the [header] line itself. All lines of the section share {@link #tokens} array,
+     * tokens of line i are tokens[firstToken[i]] to tokens[firstToken[i + 1] - 1]
+     */
+    public class Section {
+        private final String name;
+        private final int start;
+        private int end;
+        /**
+         * character ranges of non-empty lines within file content
+         */
+        private int[] lineStart;
+        private int[] lineEnd;
+        /**
+         * assigned after {@link #firstToken}, non-null once tokenized
+         */
+        private volatile String[] tokens;
+        private int[] firstToken;
+
+        private Section(String name, int start) {
+            this.name = name;
+            this.start = start;
+        }
+
+        private void tokenize() {
+            if (tokens == null)
+                doTokenize();
+        }
+
+        private synchronized void doTokenize() {
+            if (tokens != null)
+                return;
+            List<String> all = new ArrayList<>();
+            int[] first = new int[lineStart.length + 1];
+            for (int i = 0; i < lineStart.length; i++) {
+                first[i] = all.size();
+                Collections.addAll(all, IniFileReader.splitTokens(getRawText(i)));
+            }
+            first[lineStart.length] = all.size();
+            firstToken = first;
+            tokens = all.toArray(new String[0]);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return character offset of the section within the file
+         */
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public int getLineCount() {
+            return lineStart.length;
+        }
+
+        public String getRawText(int line) {
+            return content.substring(lineStart[line], lineEnd[line]);
+        }
+
+        public int getTokenCount(int line) {
+            tokenize();
+            return firstToken[line + 1] - firstToken[line];
+        }
+
+        public String getToken(int line, int index) {
+            tokenize();
+            int first = firstToken[line];
+            if (index < 0 || first + index >= firstToken[line + 1])
+                throw new IndexOutOfBoundsException("Token " + index + " of " + getRawText(line));
+            return tokens[first + index];
+        }
+
+        public String[] getTokens(int line) {
+            tokenize();
+            return Arrays.copyOfRange(tokens, firstToken[line], firstToken[line + 1]);
+        }
+
+        @Override
+        public String toString() {
+            return "Section{" +
+                    "name='" + name + '\'' +
+                    ", lines=" + lineStart.length +
+                    '}';
+        }
+    }
+}
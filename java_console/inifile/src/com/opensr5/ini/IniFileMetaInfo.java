@@ -9,6 +9,10 @@ import java.util.List;
  */
 public class IniFileMetaInfo {
     public static final int DEFAULT_BLOCKING_FACTOR = 16000;
+    /**
+     * sections which meta info is read from, see {@link IniFileIndex#toRawIniFile(String...)}
+     */
+    public static final String[] SECTIONS = {"MegaTune", "TunerStudio", "Constants"};
     private final int nPages;
     private final String signature;
     private final List<String> pageReadCommands;
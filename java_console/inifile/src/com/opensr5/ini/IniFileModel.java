@@ -14,6 +14,11 @@ public class IniFileModel {
     public static final String RUSEFI_INI_PREFIX = "rusefi";
     public static final String RUSEFI_INI_SUFFIX = ".ini";
     public static final String INI_FILE_PATH = System.getProperty("ini_file_path", "..");
+    /**
+     * increment on any change of how ini lines are tokenized or interpreted, models cached by
+     * {@link IniFileModelCache} under a different version are not reused
+     */
+    public static final int PARSER_VERSION = 2;
     private static final String SECTION_PAGE = "page";
     private static final String FIELD_TYPE_SCALAR = "scalar";
     private static final String FIELD_TYPE_STRING = "string";
@@ -52,15 +57,45 @@ public class IniFileModel {
             return;
         }
 
+        File cacheFile = IniFileModelCache.getCacheFile(input);
+        if (IniFileModelCache.readCache(cacheFile, this)) {
+            System.out.println("Using " + cacheFile + " for " + fileName);
+            return;
+        }
+
         System.out.println("Reading " + fileName);
-        RawIniFile content = IniFileReader.read(input);
+        readIniFile(IniFileIndex.read(input).tokenize());
+        IniFileModelCache.writeCache(this, cacheFile);
+    }
 
-        readIniFile(content);
+    void clear() {
+        dialogs.clear();
+        allFields.clear();
+        allIniFields.clear();
+        tooltips.clear();
     }
 
     public IniFileModel readIniFile(RawIniFile content) {
+        ArrayTokens tokens = new ArrayTokens();
         for (RawIniFile.Line line : content.getLines()) {
-            handleLine(line);
+            tokens.array = line.getTokens();
+            handleLine(line.getRawText(), tokens);
+        }
+        finishDialog();
+        return this;
+    }
+
+    /**
+     * Tokens are read in place from the flat arrays of the index
+     */
+    public IniFileModel readIniFile(IniFileIndex content) {
+        SectionTokens tokens = new SectionTokens();
+        for (IniFileIndex.Section section : content.getSections()) {
+            tokens.section = section;
+            for (int i = 0; i < section.getLineCount(); i++) {
+                tokens.line = i;
+                handleLine(section.getRawText(i), tokens);
+            }
         }
         finishDialog();
         return this;
@@ -93,13 +128,9 @@ public class IniFileModel {
         fieldsOfCurrentDialog.clear();
     }
 
-    private void handleLine(RawIniFile.Line line) {
-
-        String rawTest = line.getRawText();
+    private void handleLine(String rawTest, LineTokens tokens) {
         try {
-            LinkedList<String> list = new LinkedList<>(Arrays.asList(line.getTokens()));
-
-            if (!list.isEmpty() && list.get(0).equals(SECTION_PAGE)) {
+            if (tokens.size() > 0 && tokens.get(0).equals(SECTION_PAGE)) {
                 isInsidePageDefinition = true;
                 return;
             }
@@ -110,8 +141,8 @@ public class IniFileModel {
                 if (rawTest.contains("SettingContextHelpEnd")) {
                     isInSettingContextHelp = false;
                 }
-                if (list.size() == 2)
-                    tooltips.put(list.get(0), list.get(1));
+                if (tokens.size() == 2)
+                    tooltips.put(tokens.get(0), tokens.get(1));
                 return;
             } else if (rawTest.contains("SettingContextHelp")) {
                 isInsidePageDefinition = false;
@@ -122,22 +153,26 @@ public class IniFileModel {
             if (RawIniFile.Line.isCommentLine(rawTest))
                 return;
 
-            trim(list);
+            // skipping leading empty tokens
+            int first = 0;
+            while (first < tokens.size() && tokens.get(first).isEmpty())
+                first++;
 
-            if (list.isEmpty())
+            if (first == tokens.size())
                 return;
 
             if (isInsidePageDefinition) {
+                LinkedList<String> list = new LinkedList<>();
+                for (int i = first; i < tokens.size(); i++)
+                    list.add(tokens.get(i));
                 handleFieldDefinition(list);
                 return;
             }
 
-            String first = list.getFirst();
-
-            if ("dialog".equals(first)) {
-                handleDialog(list);
-            } else if ("field".equals(first)) {
-                handleField(list);
+            if ("dialog".equals(tokens.get(first))) {
+                handleDialog(tokens, first + 1);
+            } else if ("field".equals(tokens.get(first))) {
+                handleField(tokens, first + 1);
             }
         } catch (RuntimeException e) {
             throw new IllegalStateException("While [" + rawTest + "]", e);
@@ -162,12 +197,13 @@ public class IniFileModel {
         allIniFields.put(field.getName(), field);
     }
 
-    private void handleField(LinkedList<String> list) {
-        list.removeFirst(); // "field"
-
-        String uiFieldName = list.isEmpty() ? "" : list.removeFirst();
+    /**
+     * @param index position of the token after "field"
+     */
+    private void handleField(LineTokens tokens, int index) {
+        String uiFieldName = index < tokens.size() ? tokens.get(index) : "";
 
-        String key = list.isEmpty() ? null : list.removeFirst();
+        String key = index + 1 < tokens.size() ? tokens.get(index + 1) : null;
 
         DialogModel.Field field = new DialogModel.Field(key, uiFieldName);
         if (key != null) {
@@ -187,24 +223,21 @@ public class IniFileModel {
         return allFields.get(key);
     }
 
-    private void handleDialog(LinkedList<String> list) {
+    /**
+     * @param index position of the token after "dialog"
+     */
+    private void handleDialog(LineTokens tokens, int index) {
         finishDialog();
-        list.removeFirst(); // "dialog"
-        //                    trim(list);
-        String keyword = list.removeFirst();
-//                    trim(list);
-        String name = list.isEmpty() ? null : list.removeFirst();
+        if (index >= tokens.size())
+            throw new IllegalStateException("Dialog name expected");
+        String keyword = tokens.get(index);
+        String name = index + 1 < tokens.size() ? tokens.get(index + 1) : null;
 
         dialogId = keyword;
         dialogUiName = name;
         System.out.println("IniFileModel: Dialog key=" + keyword + ": name=[" + name + "]");
     }
 
-    private void trim(LinkedList<String> list) {
-        while (!list.isEmpty() && list.getFirst().isEmpty())
-            list.removeFirst();
-    }
-
     public IniField findByOffset(int i) {
         for (IniField field : allIniFields.values()) {
             if (i >= field.getOffset() && i < field.getOffset() + field.getSize())
@@ -213,6 +246,44 @@ public class IniFileModel {
         return null;
     }
 
+    /**
+     * Tokens of the line being handled. One instance is reused for all lines of the file.
+     */
+    private interface LineTokens {
+        int size();
+
+        String get(int index);
+    }
+
+    private static class ArrayTokens implements LineTokens {
+        private String[] array;
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+
+        @Override
+        public String get(int index) {
+            return array[index];
+        }
+    }
+
+    private static class SectionTokens implements LineTokens {
+        private IniFileIndex.Section section;
+        private int line;
+
+        @Override
+        public int size() {
+            return section.getTokenCount(line);
+        }
+
+        @Override
+        public String get(int index) {
+            return section.getToken(line, index);
+        }
+    }
+
     enum State {
         SKIPPING,
         DIALOG
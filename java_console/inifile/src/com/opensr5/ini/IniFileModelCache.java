@@ -0,0 +1,255 @@
+package com.opensr5.ini;
+
+import com.opensr5.ini.field.*;
+import com.rusefi.config.FieldType;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled {@link IniFileModel} snapshot: once an ini file is parsed we write fields, dialogs and tooltips into a
+ * compact binary file named after MD5 of the ini content and {@link IniFileModel#PARSER_VERSION}, so that next start
+ * with the same ini file and the same parser does not need to tokenize and parse tens of thousands of lines.
+ * <p>
+ * Any problem with the cache is not fatal, we just fall back to parsing the ini file.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class IniFileModelCache {
+    public static final String CACHE_PATH = System.getProperty("ini_cache_path",
+            System.getProperty("java.io.tmpdir") + File.separator + "rusefi_ini_cache");
+    /**
+     * increment on any change of the binary format
+     */
+    private static final int VERSION = 2;
+    private static final int MAGIC = 0x72494E49;
+
+    private static final byte SCALAR = 1;
+    private static final byte STRING = 2;
+    private static final byte ARRAY = 3;
+    private static final byte ENUM = 4;
+
+    private IniFileModelCache() {
+    }
+
+    /**
+     * @return cache file for current content of given ini file
+     */
+    public static File getCacheFile(File iniFile) {
+        try {
+            return new File(CACHE_PATH, getHash(Files.readAllBytes(iniFile.toPath())) + "_" + IniFileModel.PARSER_VERSION + ".bin");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String getHash(byte[] content) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest(content))
+                sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return true if model was populated from the cache file
+     */
+    public static boolean readCache(File cacheFile, IniFileModel model) {
+        if (!cacheFile.exists())
+            return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != IniFileModel.PARSER_VERSION)
+                return false;
+            read(in, model);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("IniFileModelCache: ignoring " + cacheFile + ": " + e);
+            model.clear();
+            return false;
+        }
+    }
+
+    public static void writeCache(IniFileModel model, File cacheFile) {
+        try {
+            File dir = cacheFile.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs())
+                throw new IOException("Cannot create " + dir);
+            File tmp = File.createTempFile("ini", ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(IniFileModel.PARSER_VERSION);
+                write(model, out);
+            }
+            Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("IniFileModelCache: unable to write " + cacheFile + ": " + e);
+        }
+    }
+
+    static void write(IniFileModel model, DataOutputStream out) throws IOException {
+        out.writeInt(model.allIniFields.size());
+        for (IniField field : model.allIniFields.values())
+            writeField(field, out);
+
+        out.writeInt(model.getDialogs().size());
+        for (DialogModel dialog : model.getDialogs().values()) {
+            writeNullable(dialog.getKey(), out);
+            writeNullable(dialog.getUiName(), out);
+            out.writeInt(dialog.getFields().size());
+            for (DialogModel.Field field : dialog.getFields())
+                writeField(field, out);
+        }
+
+        out.writeInt(model.getAllFields().size());
+        for (DialogModel.Field field : model.getAllFields().values())
+            writeField(field, out);
+
+        writeMap(model.tooltips, out);
+    }
+
+    static void read(DataInputStream in, IniFileModel model) throws IOException {
+
+        int fieldCount = in.readInt();
+        for (int i = 0; i < fieldCount; i++) {
+            IniField field = readIniField(in);
+            model.allIniFields.put(field.getName(), field);
+        }
+
+        int dialogCount = in.readInt();
+        for (int i = 0; i < dialogCount; i++) {
+            String key = readNullable(in);
+            String uiName = readNullable(in);
+            int count = in.readInt();
+            List<DialogModel.Field> fields = new ArrayList<>(count);
+            for (int j = 0; j < count; j++)
+                fields.add(readDialogField(in));
+            model.getDialogs().put(uiName, new DialogModel(key, uiName, fields));
+        }
+
+        int allFieldsCount = in.readInt();
+        for (int i = 0; i < allFieldsCount; i++) {
+            DialogModel.Field field = readDialogField(in);
+            model.getAllFields().put(field.getKey(), field);
+        }
+
+        readMap(model.tooltips, in);
+    }
+
+    private static void writeField(IniField field, DataOutputStream out) throws IOException {
+        if (field instanceof ScalarIniField) {
+            ScalarIniField scalar = (ScalarIniField) field;
+            out.writeByte(SCALAR);
+            writeNameAndOffset(field, out);
+            writeNullable(scalar.getUnits(), out);
+            out.writeByte(scalar.getType().ordinal());
+            out.writeDouble(scalar.getMultiplier());
+        } else if (field instanceof StringIniField) {
+            out.writeByte(STRING);
+            writeNameAndOffset(field, out);
+            out.writeInt(field.getSize());
+        } else if (field instanceof ArrayIniField) {
+            ArrayIniField array = (ArrayIniField) field;
+            out.writeByte(ARRAY);
+            writeNameAndOffset(field, out);
+            out.writeByte(array.getType().ordinal());
+            out.writeInt(array.getCols());
+            out.writeInt(array.getRows());
+            out.writeDouble(array.getMultiplier());
+        } else if (field instanceof EnumIniField) {
+            EnumIniField enumField = (EnumIniField) field;
+            out.writeByte(ENUM);
+            writeNameAndOffset(field, out);
+            out.writeByte(enumField.getType().ordinal());
+            out.writeInt(enumField.getBitPosition());
+            out.writeInt(enumField.getBitSize0());
+            out.writeInt(enumField.getEnums().size());
+            for (String value : enumField.getEnums())
+                out.writeUTF(value);
+        } else {
+            throw new IllegalStateException("Unexpected " + field);
+        }
+    }
+
+    private static IniField readIniField(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        String name = in.readUTF();
+        int offset = in.readInt();
+        switch (kind) {
+            case SCALAR:
+                String unit = readNullable(in);
+                FieldType type = FieldType.values()[in.readByte()];
+                return new ScalarIniField(name, offset, unit, type, in.readDouble());
+            case STRING:
+                return new StringIniField(name, offset, in.readInt());
+            case ARRAY:
+                FieldType arrayType = FieldType.values()[in.readByte()];
+                int cols = in.readInt();
+                int rows = in.readInt();
+                return new ArrayIniField(name, offset, arrayType, cols, rows, null, in.readDouble());
+            case ENUM:
+                FieldType enumType = FieldType.values()[in.readByte()];
+                int bitPosition = in.readInt();
+                int bitSize0 = in.readInt();
+                int count = in.readInt();
+                List<String> enums = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    enums.add(in.readUTF());
+                return new EnumIniField(name, offset, enumType, enums, bitPosition, bitSize0);
+            default:
+                throw new IllegalStateException("Unexpected field kind " + kind);
+        }
+    }
+
+    private static void writeNameAndOffset(IniField field, DataOutputStream out) throws IOException {
+        out.writeUTF(field.getName());
+        out.writeInt(field.getOffset());
+    }
+
+    private static void writeField(DialogModel.Field field, DataOutputStream out) throws IOException {
+        writeNullable(field.getKey(), out);
+        writeNullable(field.getUiName(), out);
+    }
+
+    private static DialogModel.Field readDialogField(DataInputStream in) throws IOException {
+        String key = readNullable(in);
+        String uiName = readNullable(in);
+        return new DialogModel.Field(key, uiName);
+    }
+
+    private static void writeMap(Map<String, String> map, DataOutputStream out) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeUTF(e.getValue());
+        }
+    }
+
+    private static void readMap(Map<String, String> map, DataInputStream in) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++)
+            map.put(in.readUTF(), in.readUTF());
+    }
+
+    private static void writeNullable(String value, DataOutputStream out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    @Nullable
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -1,8 +1,8 @@
 package com.opensr5.ini;
 
-import java.io.*;
+import java.io.File;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Andrey Belomutskiy, (c) 2013-2020
@@ -66,31 +66,14 @@ public class IniFileReader {
 
     /**
      * Just grabs an collection of lines, no parsing logic here
+     *
+     * @see IniFileIndex if only some sections are needed
      */
     public static RawIniFile read(InputStream in) {
-        List<RawIniFile.Line> lines = new ArrayList<>();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-
-        try {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
-                lines.add(new RawIniFile.Line(line));
-            }
-        } catch (IOException e) {
-            throw new IllegalStateException(e);
-        }
-        return new RawIniFile(lines);
+        return IniFileIndex.read(in).toRawIniFile();
     }
 
     public static RawIniFile read(File input) {
-        try {
-            InputStream in = new FileInputStream(input);
-            return read(in);
-        } catch (FileNotFoundException e) {
-            throw new IllegalStateException(e);
-        }
+        return IniFileIndex.read(input).toRawIniFile();
     }
 }
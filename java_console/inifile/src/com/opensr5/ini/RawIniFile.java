@@ -76,8 +76,12 @@ public class RawIniFile {
         private String[] tokens;
 
         public Line(String rawText) {
+            this(rawText, IniFileReader.splitTokens(rawText));
+        }
+
+        Line(String rawText, String[] tokens) {
             this.rawText = rawText;
-            tokens = IniFileReader.splitTokens(rawText);
+            this.tokens = tokens;
         }
 
         public String[] getTokens() {
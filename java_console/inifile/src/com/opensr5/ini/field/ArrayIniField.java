@@ -2,6 +2,7 @@ package com.opensr5.ini.field;
 
 import com.opensr5.ConfigurationImage;
 import com.rusefi.config.Field;
+import com.rusefi.config.FieldAccessor;
 import com.rusefi.config.FieldType;
 import com.rusefi.tune.xml.Constant;
 
@@ -13,6 +14,7 @@ public class ArrayIniField extends IniField {
     private final int cols;
     private final int rows;
     private final double multiplier;
+    private final FieldAccessor accessor;
 
     public ArrayIniField(String name, int offset, FieldType type, int cols, int rows, String unit, double multiplier) {
         super(name, offset);
@@ -20,6 +22,7 @@ public class ArrayIniField extends IniField {
         this.cols = cols;
         this.rows = rows;
         this.multiplier = multiplier;
+        accessor = new FieldAccessor(offset, type, Field.NO_BIT_OFFSET, multiplier, cols * rows);
     }
 
     public FieldType getType() {
@@ -34,6 +37,17 @@ public class ArrayIniField extends IniField {
         return rows;
     }
 
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * @return accessor over all cols * rows elements, row by row
+     */
+    public FieldAccessor getAccessor() {
+        return accessor;
+    }
+
     @Override
     public int getSize() {
         return type.getStorageSize() * cols * rows;
@@ -41,13 +55,13 @@ public class ArrayIniField extends IniField {
 
     @Override
     public String getValue(ConfigurationImage image) {
+        byte[] content = image.getContent();
         StringBuilder sb = new StringBuilder();
         for (int rowIndex = 0; rowIndex < rows; rowIndex++) {
             sb.append("\n\t");
             for (int colIndex = 0; colIndex < cols; colIndex++) {
-                Field f = new Field("", getOffset(rowIndex, colIndex), getType());
                 sb.append(' ');
-                sb.append(f.getAnyValue(image, multiplier));
+                sb.append(accessor.getDouble(content, rowIndex * cols + colIndex));
             }
         }
         sb.append("\n");
@@ -2,6 +2,7 @@ package com.opensr5.ini.field;
 
 import com.opensr5.ConfigurationImage;
 import com.rusefi.config.Field;
+import com.rusefi.config.FieldAccessor;
 import com.rusefi.config.FieldType;
 import com.rusefi.tune.xml.Constant;
 
@@ -14,6 +15,7 @@ public class ScalarIniField extends IniField {
     private final String unit;
     private final FieldType type;
     private final double multiplier;
+    private final FieldAccessor accessor;
 
     public ScalarIniField(String name, int offset, String unit, FieldType type, double multiplier) {
         super(name, offset);
@@ -22,6 +24,7 @@ public class ScalarIniField extends IniField {
         if (multiplier == 0)
             throw new IllegalArgumentException("Multiplier should not be zero");
         this.multiplier = multiplier;
+        accessor = new FieldAccessor(offset, type, multiplier);
     }
 
     @Override
@@ -33,6 +36,14 @@ public class ScalarIniField extends IniField {
         return type;
     }
 
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public FieldAccessor getAccessor() {
+        return accessor;
+    }
+
     @Override
     public int getSize() {
         return type.getStorageSize();
@@ -40,9 +51,8 @@ public class ScalarIniField extends IniField {
 
     @Override
     public String getValue(ConfigurationImage image) {
-        Field f = new Field(getName(), getOffset(), getType());
         try {
-            return f.getValue(image, multiplier).toString();
+            return Double.toString(accessor.getDouble(image));
         } catch (Throwable e) {
             throw new IllegalStateException("While getting " + getName(), e);
         }
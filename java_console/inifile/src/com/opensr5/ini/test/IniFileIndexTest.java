@@ -0,0 +1,86 @@
+package com.opensr5.ini.test;
+
+import com.opensr5.ini.IniFileIndex;
+import com.opensr5.ini.IniFileModel;
+import com.opensr5.ini.IniFileReader;
+import com.opensr5.ini.RawIniFile;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class IniFileIndexTest {
+    private static final String INI = "; preamble\r\n" +
+            "\r\n" +
+            "[MegaTune]\r\n" +
+            "   signature = \"rusEFI v1\"\r\n" +
+            "  \t \r\n" +
+            "[Constants]\n" +
+            "page = 1\n" +
+            "\tname\t= bits,    U32,   \t744, [3:5], \"false\", \"true\"\n" +
+            "[SettingContextHelp]\r" +
+            "\tname = \"Some tooltip\"\r" +
+            "; SettingContextHelpEnd\n" +
+            "[UserDefined]\n" +
+            "\tdialog = engineChars,\t\"Base Engine Settings\"\n" +
+            "\t\tfield = \"Name\", name";
+
+    @Test
+    public void testSections() {
+        IniFileIndex index = new IniFileIndex(INI);
+        assertEquals(5, index.getSections().size());
+        assertEquals(IniFileIndex.PREAMBLE, index.getSections().get(0).getName());
+
+        IniFileIndex.Section megaTune = index.getSection("megatune");
+        assertNotNull(megaTune);
+        // header line is part of the section, empty lines are not
+        assertEquals(2, megaTune.getLineCount());
+        assertEquals("[MegaTune]", megaTune.getRawText(0));
+        assertEquals(2, megaTune.getTokenCount(1));
+        assertEquals("rusEFI v1", megaTune.getToken(1, 1));
+        assertEquals(INI.indexOf("[MegaTune]"), megaTune.getStart());
+        assertEquals(INI.indexOf("[Constants]"), megaTune.getEnd());
+
+        IniFileIndex.Section help = index.getSection("SettingContextHelp");
+        assertEquals(3, help.getLineCount());
+        assertEquals("\tname = \"Some tooltip\"", help.getRawText(1));
+
+        assertNull(index.getSection("Menu"));
+    }
+
+    @Test
+    public void testSameAsLineByLine() {
+        RawIniFile lines = new IniFileIndex(INI).toRawIniFile();
+        String[] expected = INI.split("\r\n|\r|\n");
+        int index = 0;
+        for (String line : expected) {
+            if (line.trim().isEmpty())
+                continue;
+            RawIniFile.Line actual = lines.getLines().get(index++);
+            assertEquals(line, actual.getRawText());
+            assertTrue(Arrays.equals(IniFileReader.splitTokens(line), actual.getTokens()));
+        }
+        assertEquals(index, lines.getLines().size());
+    }
+
+    @Test
+    public void testSelectedSections() {
+        RawIniFile lines = new IniFileIndex(INI).toRawIniFile("constants", "megatune");
+        // file order, header lines included
+        assertEquals(5, lines.getLines().size());
+        assertEquals("[MegaTune]", lines.getLines().get(0).getRawText());
+        assertEquals("rusEFI v1", lines.getValues("signature").get(0));
+        assertEquals(1, lines.getSimpleIntegerProperty("page"));
+        assertNull(lines.getByKey("field"));
+    }
+
+    @Test
+    public void testModel() {
+        IniFileModel model = new IniFileModel().readIniFile(new IniFileIndex(INI).tokenize());
+        assertEquals(1, model.allIniFields.size());
+        assertEquals("Some tooltip", model.tooltips.get("name"));
+        assertEquals("name", model.getField("name").getKey());
+        assertEquals(1, model.getDialogs().size());
+    }
+}
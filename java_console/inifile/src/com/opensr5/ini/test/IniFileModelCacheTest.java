@@ -0,0 +1,88 @@
+package com.opensr5.ini.test;
+
+import com.opensr5.ini.DialogModel;
+import com.opensr5.ini.IniFileModel;
+import com.opensr5.ini.IniFileModelCache;
+import com.opensr5.ini.field.ArrayIniField;
+import com.opensr5.ini.field.EnumIniField;
+import com.opensr5.ini.field.IniField;
+import com.opensr5.ini.field.ScalarIniField;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class IniFileModelCacheTest {
+    private static final String INI = "page = 1\n" +
+            "primingSquirtDurationMs\t\t\t= scalar, F32,\t96,\t\"*C\", 0.1, 0, -40, 200, 1\n" +
+            "\tname\t= bits,    U32,   \t744, [3:5], \"false\", \"true\"\n" +
+            "\tignitionRpmBins\t\t\t\t = array, U32, 1000, [16], \"RPM\", 1, 0, 0.0, 18000, 2\n" +
+            "\tvehicleName = string, ASCII, 1020, 32\n" +
+            "[SettingContextHelp]\n" +
+            "\tprimingSquirtDurationMs = \"priming pulse\"\n" +
+            "; SettingContextHelpEnd\n" +
+            "[UserDefined]\n" +
+            "dialog = engineChars,\t\"Base Engine Settings\"\n" +
+            "\tfield = \"Priming\", primingSquirtDurationMs\n" +
+            "\tfield = \"label only\"\n";
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File ini = File.createTempFile("rusefi_cache_test", ".ini");
+        ini.deleteOnExit();
+        Files.write(ini.toPath(), INI.getBytes());
+        File cacheFile = IniFileModelCache.getCacheFile(ini);
+        assertTrue(cacheFile.getName().endsWith("_" + IniFileModel.PARSER_VERSION + ".bin"));
+        cacheFile.delete();
+
+        IniFileModel parsed = new IniFileModel();
+        parsed.readIniFile(ini.getAbsolutePath());
+        assertTrue(cacheFile.exists());
+
+        IniFileModel cached = new IniFileModel();
+        assertTrue(IniFileModelCache.readCache(cacheFile, cached));
+        cacheFile.delete();
+
+        assertEquals(4, parsed.allIniFields.size());
+        assertEquals(parsed.allIniFields.keySet(), cached.allIniFields.keySet());
+        for (IniField field : parsed.allIniFields.values()) {
+            IniField copy = cached.allIniFields.get(field.getName());
+            assertEquals(field.getClass(), copy.getClass());
+            assertEquals(field.getOffset(), copy.getOffset());
+            assertEquals(field.getSize(), copy.getSize());
+        }
+
+        ScalarIniField scalar = (ScalarIniField) cached.allIniFields.get("primingSquirtDurationMs");
+        assertEquals(0.1, scalar.getMultiplier(), 0);
+        assertEquals("*C", scalar.getUnits());
+        EnumIniField bits = (EnumIniField) cached.allIniFields.get("name");
+        assertEquals(3, bits.getBitPosition());
+        assertEquals(2, bits.getBitSize0());
+        ArrayIniField array = (ArrayIniField) cached.allIniFields.get("ignitionRpmBins");
+        assertEquals(16, array.getRows());
+        assertEquals(32, cached.allIniFields.get("vehicleName").getSize());
+
+        assertEquals(parsed.tooltips, cached.tooltips);
+        assertEquals(parsed.getDialogs().toString(), cached.getDialogs().toString());
+        DialogModel dialog = cached.getDialogs().get("Base Engine Settings");
+        assertEquals(2, dialog.getFields().size());
+        assertNull(dialog.getFields().get(1).getKey());
+        assertNotNull(cached.getField("PRIMINGSQUIRTDURATIONMS"));
+    }
+
+    @Test
+    public void testCorruptCacheIsIgnored() throws IOException {
+        File cacheFile = File.createTempFile("rusefi_cache_test", ".bin");
+        cacheFile.deleteOnExit();
+        Files.write(cacheFile.toPath(), new byte[]{0x72, 0x49, 0x4E, 0x49, 0, 0, 0, 1, 0, 0});
+        IniFileModel model = new IniFileModel();
+        assertFalse(IniFileModelCache.readCache(cacheFile, model));
+        assertTrue(model.allIniFields.isEmpty());
+    }
+}
@@ -4,7 +4,7 @@ import com.opensr5.ConfigurationImage;
 import org.jetbrains.annotations.NotNull;
 
 import java.nio.ByteBuffer;
-import java.util.Objects;
+import java.util.*;
 
 import static com.rusefi.config.FieldType.*;
 
@@ -15,12 +15,17 @@ import static com.rusefi.config.FieldType.*;
 public class Field {
     public static final int NO_BIT_OFFSET = -1;
     private static final int FIELD_PRECISION = 3;
+    /**
+     * case-insensitive name index for each array passed into {@link #findField}
+     */
+    private static final Map<Field[], Map<String, Field>> INDEXES = Collections.synchronizedMap(new WeakHashMap<>());
 
     private final String name;
     private final int offset;
     private final FieldType type;
     private final int bitOffset;
     private final String[] options;
+    private final FieldAccessor accessor;
     // todo: add multiplier support!
 
     public Field(String name, int offset, FieldType type) {
@@ -41,6 +46,7 @@ public class Field {
         this.type = type;
         this.bitOffset = bitOffset;
         this.options = options;
+        accessor = new FieldAccessor(offset, type, bitOffset, 1, 1);
     }
 
     /**
@@ -48,21 +54,28 @@ public class Field {
      */
     public static Field findField(Field[] values, String instancePrefix, String fieldName) {
         Objects.requireNonNull(fieldName);
-        for (Field f : values) {
-            if (fieldName.equalsIgnoreCase(f.getName()))
-                return f;
-        }
+        Map<String, Field> index = INDEXES.computeIfAbsent(values, Field::createIndex);
+        Field field = index.get(fieldName);
+        if (field != null)
+            return field;
         // 2nd pass - let's try to find field with prefix if it was not found without prefix
         if (!instancePrefix.isEmpty()) {
             fieldName = instancePrefix + "_" + fieldName;
-            for (Field f : values) {
-                if (fieldName.equalsIgnoreCase(f.getName()))
-                    return f;
-            }
+            field = index.get(fieldName);
+            if (field != null)
+                return field;
         }
         throw new IllegalStateException("No field: " + fieldName);
     }
 
+    private static Map<String, Field> createIndex(Field[] values) {
+        Map<String, Field> index = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        // first field wins same as with linear search
+        for (Field f : values)
+            index.putIfAbsent(f.getName(), f);
+        return index;
+    }
+
     public static int getStructureSize(Field[] values) {
         Field last = values[values.length - 1];
         // todo: at the moment we do not support arrays and
@@ -137,7 +150,7 @@ public class Field {
         }
         if (type != INT8)
             throw new IllegalStateException("Unsupported enum " + type);
-        int ordinal = ci.getByteBuffer(offset, type.getStorageSize()).get();
+        int ordinal = accessor.getRaw(ci.getContent(), 0);
         return options[ordinal];
     }
 
@@ -153,28 +166,19 @@ public class Field {
     // todo: rename to getNumberValue?
     @NotNull
     public Double getValue(ConfigurationImage ci, double multiplier) {
+        return getDoubleValue(ci, multiplier);
+    }
+
+    /**
+     * Same as {@link #getValue(ConfigurationImage, double)} without boxing
+     */
+    public double getDoubleValue(ConfigurationImage ci, double multiplier) {
         Objects.requireNonNull(ci);
-        Number value;
-        ByteBuffer wrapped = ci.getByteBuffer(getOffset(), type.getStorageSize());
-        if (bitOffset != NO_BIT_OFFSET) {
-            int packed = wrapped.getInt();
-            value = (packed >> bitOffset) & 1;
-        } else if (type == INT8) {
-            value = wrapped.get();
-        } else if (type == UINT8) {
-            byte signed = wrapped.get();
-            value = signed & 0xFF;
-        } else if (type == INT) {
-            value = wrapped.getInt();
-        } else if (type == INT16) {
-            value = wrapped.getShort();
-        } else if (type == UINT16) {
-            short signed = wrapped.getShort();
-            value = signed & 0xFFFF;
-        } else {
-            value = wrapped.getFloat();
-        }
-        return value.doubleValue() * multiplier;
+        return accessor.getDouble(ci) * multiplier;
+    }
+
+    public FieldAccessor getAccessor() {
+        return accessor;
     }
 
     @NotNull
@@ -0,0 +1,174 @@
+package com.rusefi.config;
+
+import com.opensr5.ConfigurationImage;
+
+import java.util.Objects;
+
+/**
+ * Precompiled reader/writer of a scalar or array field: little-endian decoding is done directly on the backing
+ * array of {@link ConfigurationImage} without intermediate ByteBuffer or boxing.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ *
+ * @see Field#getAccessor
+ * @see com.opensr5.ini.FieldLayout
+ */
+public final class FieldAccessor {
+    private final int offset;
+    private final FieldType type;
+    private final int bitOffset;
+    private final double multiplier;
+    private final int count;
+    private final int stride;
+
+    public FieldAccessor(int offset, FieldType type, int bitOffset, double multiplier, int count) {
+        this.offset = offset;
+        this.type = Objects.requireNonNull(type);
+        this.bitOffset = bitOffset;
+        this.multiplier = multiplier;
+        this.count = count;
+        stride = type.getStorageSize();
+    }
+
+    public FieldAccessor(int offset, FieldType type, double multiplier) {
+        this(offset, type, Field.NO_BIT_OFFSET, multiplier, 1);
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public FieldType getType() {
+        return type;
+    }
+
+    /**
+     * @return number of elements, 1 for scalar fields
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public double getDouble(ConfigurationImage ci) {
+        return getDouble(ci.getContent(), 0);
+    }
+
+    public double getDouble(ConfigurationImage ci, int index) {
+        return getDouble(ci.getContent(), index);
+    }
+
+    /**
+     * @return index-th element with multiplier applied
+     */
+    public double getDouble(byte[] content, int index) {
+        if (type == FieldType.FLOAT && bitOffset == Field.NO_BIT_OFFSET)
+            return Float.intBitsToFloat(getInt32(content, elementOffset(index))) * multiplier;
+        return getRaw(content, index) * multiplier;
+    }
+
+    /**
+     * @return raw integer value of index-th element, no multiplier. Float fields are truncated.
+     */
+    public int getRaw(byte[] content, int index) {
+        int o = elementOffset(index);
+        if (bitOffset != Field.NO_BIT_OFFSET)
+            return (getInt32(content, o) >> bitOffset) & 1;
+        switch (type) {
+            case INT8:
+                return content[o];
+            case UINT8:
+                return content[o] & 0xFF;
+            case INT16:
+                return (short) getInt16(content, o);
+            case UINT16:
+                return getInt16(content, o);
+            case FLOAT:
+                return (int) Float.intBitsToFloat(getInt32(content, o));
+            default:
+                return getInt32(content, o);
+        }
+    }
+
+    public int getInt(ConfigurationImage ci) {
+        return getRaw(ci.getContent(), 0);
+    }
+
+    /**
+     * Decodes all elements with multiplier applied into 'destination' starting at 'position'
+     */
+    public void decode(byte[] content, double[] destination, int position) {
+        for (int i = 0; i < count; i++)
+            destination[position + i] = getDouble(content, i);
+    }
+
+    public void setDouble(ConfigurationImage ci, double value) {
+        setDouble(ci.getContent(), 0, value);
+    }
+
+    /**
+     * Stores index-th element, multiplier is divided out. Same narrowing as {@link com.opensr5.ini.field.ScalarIniField#setValue}
+     */
+    public void setDouble(byte[] content, int index, double value) {
+        if (bitOffset != Field.NO_BIT_OFFSET)
+            throw new UnsupportedOperationException("Bit field at " + offset);
+        double v = value / multiplier;
+        int o = elementOffset(index);
+        switch (type) {
+            case INT8:
+            case UINT8:
+                content[o] = (byte) v;
+                break;
+            case INT16:
+            case UINT16:
+                putInt16(content, o, (short) v);
+                break;
+            case FLOAT:
+                putInt32(content, o, Float.floatToRawIntBits((float) v));
+                break;
+            default:
+                putInt32(content, o, (int) v);
+        }
+    }
+
+    private int elementOffset(int index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException(index + " of " + count);
+        return offset + index * stride;
+    }
+
+    private static int getInt16(byte[] content, int o) {
+        return (content[o] & 0xFF) | (content[o + 1] & 0xFF) << 8;
+    }
+
+    private static int getInt32(byte[] content, int o) {
+        return (content[o] & 0xFF)
+                | (content[o + 1] & 0xFF) << 8
+                | (content[o + 2] & 0xFF) << 16
+                | (content[o + 3] & 0xFF) << 24;
+    }
+
+    private static void putInt16(byte[] content, int o, int value) {
+        content[o] = (byte) value;
+        content[o + 1] = (byte) (value >> 8);
+    }
+
+    private static void putInt32(byte[] content, int o, int value) {
+        content[o] = (byte) value;
+        content[o + 1] = (byte) (value >> 8);
+        content[o + 2] = (byte) (value >> 16);
+        content[o + 3] = (byte) (value >> 24);
+    }
+
+    @Override
+    public String toString() {
+        return "FieldAccessor{" +
+                "offset=" + offset +
+                ", type=" + type +
+                ", count=" + count +
+                '}';
+    }
+}
@@ -18,20 +18,22 @@ import java.util.Objects;
 public class Msq {
     public static final String outputXmlFileName = PersistentConfiguration.RUSEFI_SETTINGS_FOLDER + File.separator + "output.msq";
 
+    static final String FIRMWARE_INFO = "rusEFI+2020";
+
     private Page page = new Page();
 
     private final VersionInfo versionInfo;
 
     public Msq() {
-        versionInfo = new VersionInfo("rusEFI+2020");
+        versionInfo = new VersionInfo(FIRMWARE_INFO);
     }
 
     @NotNull
     public static Msq valueOf(ConfigurationImage image) {
         IniFileModel ini = IniFileModel.getInstance();
         Msq tune = new Msq();
-        for (String key : ini.allIniFields.keySet())
-            tune.loadConstant(ini, key, image);
+        for (IniField field : ini.allIniFields.values())
+            tune.loadConstant(field, image);
         return tune;
     }
 
@@ -44,7 +46,6 @@ public class Msq {
             }
             IniField field = instance.allIniFields.get(constant.getName());
             Objects.requireNonNull(field, "Field for " + constant.getName());
-            System.out.println("Setting " + field);
             field.setValue(ci, constant);
         }
         return ci;
@@ -59,7 +60,10 @@ public class Msq {
     }
 
     public void loadConstant(IniFileModel ini, String key, ConfigurationImage image) {
-        IniField field = ini.allIniFields.get(key);
+        loadConstant(ini.allIniFields.get(key), image);
+    }
+
+    private void loadConstant(IniField field, ConfigurationImage image) {
         String value = field.getValue(image);
         getPage().constant.add(new Constant(field.getName(), field.getUnits(), value));
     }
@@ -0,0 +1,142 @@
+package com.rusefi.tune.xml;
+
+import com.opensr5.ConfigurationImage;
+import com.opensr5.ini.IniFileModel;
+import com.opensr5.ini.field.IniField;
+import com.rusefi.config.generated.Fields;
+
+import javax.xml.stream.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+
+/**
+ * Streaming StAX reader and writer of the same TS tune XML as {@link Msq}: constants go straight between
+ * {@link ConfigurationImage} and the file one by one without building the whole JAXB object graph.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class MsqStream {
+    private static final String NAMESPACE = "http://www.msefi.com/:msq";
+    private static final String CONSTANT = "constant";
+    private static final String UNALLOCATED_SPACE = "UNALLOCATED_SPACE";
+
+    private MsqStream() {
+    }
+
+    public static void write(IniFileModel ini, ConfigurationImage image, String fileName) throws IOException {
+        // temp file and atomic rename so that readers never see half-written tune
+        File file = new File(fileName);
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+                write(ini, image, out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            // only left there if something went wrong
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    public static void write(IniFileModel ini, ConfigurationImage image, OutputStream out) throws IOException {
+        try {
+            XMLStreamWriter w = XMLOutputFactory.newInstance().createXMLStreamWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            w.writeStartDocument("UTF-8", "1.0");
+            newLine(w, 0);
+            w.writeStartElement("msq");
+            w.writeDefaultNamespace(NAMESPACE);
+
+            Bibliography bibliography = new Bibliography();
+            newLine(w, 1);
+            w.writeEmptyElement("bibliography");
+            w.writeAttribute("author", bibliography.getAuthor());
+            w.writeAttribute("tuneComment", bibliography.getTuneComment());
+            w.writeAttribute("writeDate", bibliography.getWriteDate());
+
+            VersionInfo versionInfo = new VersionInfo(Msq.FIRMWARE_INFO);
+            newLine(w, 1);
+            w.writeEmptyElement("versionInfo");
+            w.writeAttribute("firmwareInfo", versionInfo.getFirmwareInfo());
+            w.writeAttribute("nPages", versionInfo.getNPages());
+            w.writeAttribute("signature", versionInfo.getSignature());
+            w.writeAttribute("version", versionInfo.getVersion());
+
+            newLine(w, 1);
+            w.writeStartElement("page");
+            w.writeAttribute("number", "0");
+            w.writeAttribute("size", Integer.toString(Fields.TOTAL_CONFIG_SIZE));
+            for (IniField field : ini.allIniFields.values()) {
+                newLine(w, 2);
+                w.writeStartElement(CONSTANT);
+                w.writeAttribute("name", field.getName());
+                if (field.getUnits() != null)
+                    w.writeAttribute("units", field.getUnits());
+                String value;
+                try {
+                    value = field.getValue(image);
+                } catch (RuntimeException e) {
+                    throw new IllegalStateException("While writing " + field, e);
+                }
+                w.writeCharacters(value);
+                w.writeEndElement();
+            }
+            newLine(w, 1);
+            w.writeEndElement();
+
+            newLine(w, 1);
+            w.writeEmptyElement("settings");
+            newLine(w, 1);
+            w.writeEmptyElement("userComments");
+            newLine(w, 0);
+            w.writeEndElement();
+            w.writeEndDocument();
+            w.flush();
+            w.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Same as {@link Msq#asImage} on {@link Msq#readTune} result
+     */
+    public static ConfigurationImage read(IniFileModel ini, String fileName) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(fileName))) {
+            return read(ini, in);
+        }
+    }
+
+    public static ConfigurationImage read(IniFileModel ini, InputStream in) throws IOException {
+        ConfigurationImage image = new ConfigurationImage(Fields.TOTAL_CONFIG_SIZE);
+        Constant constant = new Constant();
+        try {
+            XMLStreamReader r = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            while (r.hasNext()) {
+                if (r.next() != XMLStreamConstants.START_ELEMENT || !CONSTANT.equals(r.getLocalName()))
+                    continue;
+                String name = r.getAttributeValue(null, "name");
+                constant.setName(name);
+                constant.setUnits(r.getAttributeValue(null, "units"));
+                constant.setValue(r.getElementText());
+                if (name.startsWith(UNALLOCATED_SPACE))
+                    continue;
+                IniField field = ini.allIniFields.get(name);
+                Objects.requireNonNull(field, "Field for " + name);
+                field.setValue(image, constant);
+            }
+            r.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return image;
+    }
+
+    private static void newLine(XMLStreamWriter w, int depth) throws XMLStreamException {
+        w.writeCharacters("\n");
+        for (int i = 0; i < depth; i++)
+            w.writeCharacters("    ");
+    }
+}
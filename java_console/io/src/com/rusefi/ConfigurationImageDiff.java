@@ -3,6 +3,9 @@ package com.rusefi;
 import com.opensr5.ConfigurationImage;
 import com.rusefi.core.Pair;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * This class has the logic of finding all ranges of changes between who {@link ConfigurationImage}
  * It's used to send just the diff to the ECU.
@@ -41,4 +44,20 @@ public class ConfigurationImageDiff {
 
         return new Pair<>(startOfDiff, position);
     }
+
+    /**
+     * @return all [from, to) ranges of differences, empty list if images are the same
+     */
+    public static List<Pair<Integer, Integer>> findAllDifferences(ConfigurationImage image1, ConfigurationImage image2) {
+        List<Pair<Integer, Integer>> ranges = new ArrayList<>();
+        int offset = 0;
+        while (offset < image1.getSize()) {
+            Pair<Integer, Integer> range = findDifferences(image1, image2, offset);
+            if (range == null)
+                break;
+            ranges.add(range);
+            offset = range.second;
+        }
+        return ranges;
+    }
 }
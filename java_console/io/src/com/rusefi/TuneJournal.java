@@ -0,0 +1,247 @@
+package com.rusefi;
+
+import com.opensr5.ConfigurationImage;
+import com.rusefi.core.Pair;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local history of a tune: each new version of {@link ConfigurationImage} is stored as just the ranges
+ * which have changed since previous version (see {@link ConfigurationImageDiff}), with a full snapshot every
+ * {@link #SNAPSHOT_PERIOD} versions so that any version is rebuilt from the nearest snapshot plus a few deltas.
+ * <p>
+ * File layout: {@link #MAGIC} followed by records
+ * [type:1][version:4][time:8][payload length:4][payload][crc32 of all previous fields:4]
+ * A broken tail (for example after a crash during write) is ignored and overwritten by the next record.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class TuneJournal {
+    public static final int SNAPSHOT_PERIOD = 64;
+    private static final byte[] MAGIC = "rusEFI journal 1".getBytes();
+    private static final byte SNAPSHOT = 1;
+    private static final byte DELTA = 2;
+    private static final int HEADER_SIZE = 1 + 4 + 8 + 4;
+    private static final int CRC_SIZE = 4;
+
+    private final File file;
+    /**
+     * entries.get(version - 1)
+     */
+    private final List<Entry> entries = new ArrayList<>();
+    /**
+     * private copy of the latest version
+     */
+    private ConfigurationImage last;
+    private int deltasSinceSnapshot;
+    private long validLength;
+
+    public TuneJournal(File file) throws IOException {
+        this.file = file;
+        if (file.length() > 0)
+            scan();
+    }
+
+    public synchronized int getLastVersion() {
+        return entries.size();
+    }
+
+    public synchronized long getTime(int version) {
+        return getEntry(version).time;
+    }
+
+    /**
+     * @return latest version, null if journal is empty
+     */
+    @Nullable
+    public synchronized ConfigurationImage getLastImage() {
+        return last == null ? null : last.clone();
+    }
+
+    /**
+     * Appends given image as a new version unless it's the same as the latest version
+     *
+     * @return version of given image
+     */
+    public synchronized int record(ConfigurationImage image) throws IOException {
+        boolean isSnapshot = last == null || last.getSize() != image.getSize() || deltasSinceSnapshot >= SNAPSHOT_PERIOD;
+        byte[] payload;
+        if (isSnapshot) {
+            payload = image.getContent();
+        } else {
+            List<Pair<Integer, Integer>> ranges = ConfigurationImageDiff.findAllDifferences(last, image);
+            if (ranges.isEmpty())
+                return getLastVersion();
+            payload = encodeDelta(image, ranges);
+        }
+
+        int version = getLastVersion() + 1;
+        long time = System.currentTimeMillis();
+        byte[] record = encodeRecord(isSnapshot ? SNAPSHOT : DELTA, version, time, payload);
+        long position;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // drop broken tail if any
+            raf.setLength(validLength);
+            if (validLength == 0) {
+                raf.write(MAGIC);
+                validLength = MAGIC.length;
+            }
+            position = validLength;
+            raf.seek(position);
+            raf.write(record);
+            raf.getFD().sync();
+        }
+        validLength += record.length;
+        entries.add(new Entry(isSnapshot ? SNAPSHOT : DELTA, time, position));
+        deltasSinceSnapshot = isSnapshot ? 0 : deltasSinceSnapshot + 1;
+        last = image.clone();
+        return version;
+    }
+
+    /**
+     * @return image as it was at given version, rebuilt from nearest previous snapshot
+     */
+    public synchronized ConfigurationImage getImage(int version) throws IOException {
+        getEntry(version);
+        if (version == getLastVersion())
+            return last.clone();
+        int snapshot = version - 1;
+        while (entries.get(snapshot).type != SNAPSHOT)
+            snapshot--;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            ConfigurationImage image = new ConfigurationImage(readPayload(raf, entries.get(snapshot)));
+            for (int i = snapshot + 1; i < version; i++)
+                applyDelta(image, readPayload(raf, entries.get(i)));
+            return image;
+        }
+    }
+
+    private Entry getEntry(int version) {
+        if (version < 1 || version > entries.size())
+            throw new IllegalArgumentException("No version " + version + " in " + file);
+        return entries.get(version - 1);
+    }
+
+    private void scan() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            if (in.read(magic) != magic.length || !Arrays.equals(magic, MAGIC))
+                throw new IOException("Not a tune journal: " + file);
+            long position = MAGIC.length;
+            validLength = position;
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] header = new byte[HEADER_SIZE];
+                if (!readFully(in, header))
+                    break;
+                DataInputStream headerStream = new DataInputStream(new ByteArrayInputStream(header));
+                byte type = headerStream.readByte();
+                int version = headerStream.readInt();
+                long time = headerStream.readLong();
+                int length = headerStream.readInt();
+                if ((type != SNAPSHOT && type != DELTA) || version != entries.size() + 1 || length < 0 || length > file.length())
+                    break;
+                if (type == DELTA && last == null)
+                    break;
+                byte[] payload = new byte[length];
+                byte[] crcBytes = new byte[CRC_SIZE];
+                if (!readFully(in, payload) || !readFully(in, crcBytes))
+                    break;
+                crc.reset();
+                crc.update(header);
+                crc.update(payload);
+                if ((int) crc.getValue() != new DataInputStream(new ByteArrayInputStream(crcBytes)).readInt())
+                    break;
+
+                if (type == SNAPSHOT) {
+                    last = new ConfigurationImage(payload);
+                    deltasSinceSnapshot = 0;
+                } else {
+                    applyDelta(last, payload);
+                    deltasSinceSnapshot++;
+                }
+                entries.add(new Entry(type, time, position));
+                position += HEADER_SIZE + length + CRC_SIZE;
+                validLength = position;
+            }
+        }
+        if (validLength != file.length())
+            FileLog.MAIN.logLine("TuneJournal: ignoring broken tail of " + file + " after " + validLength);
+    }
+
+    private static boolean readFully(DataInputStream in, byte[] data) throws IOException {
+        try {
+            in.readFully(data);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private static byte[] readPayload(RandomAccessFile raf, Entry entry) throws IOException {
+        raf.seek(entry.position + HEADER_SIZE - 4);
+        byte[] payload = new byte[raf.readInt()];
+        raf.readFully(payload);
+        return payload;
+    }
+
+    /**
+     * [range count:4] then [offset:4][length:4][new bytes] for each range
+     */
+    private static byte[] encodeDelta(ConfigurationImage image, List<Pair<Integer, Integer>> ranges) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeInt(ranges.size());
+        for (Pair<Integer, Integer> range : ranges) {
+            int size = range.second - range.first;
+            out.writeInt(range.first);
+            out.writeInt(size);
+            out.write(image.getContent(), range.first, size);
+        }
+        return baos.toByteArray();
+    }
+
+    private static void applyDelta(ConfigurationImage image, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int offset = in.readInt();
+            int size = in.readInt();
+            in.readFully(image.getContent(), offset, size);
+        }
+    }
+
+    private static byte[] encodeRecord(byte type, int version, long time, byte[] payload) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(HEADER_SIZE + payload.length + CRC_SIZE);
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeByte(type);
+        out.writeInt(version);
+        out.writeLong(time);
+        out.writeInt(payload.length);
+        out.write(payload);
+        CRC32 crc = new CRC32();
+        crc.update(baos.toByteArray());
+        out.writeInt((int) crc.getValue());
+        return baos.toByteArray();
+    }
+
+    private static class Entry {
+        private final byte type;
+        private final long time;
+        /**
+         * position of record within the file
+         */
+        private final long position;
+
+        Entry(byte type, long time, long position) {
+            this.type = type;
+            this.time = time;
+            this.position = position;
+        }
+    }
+}
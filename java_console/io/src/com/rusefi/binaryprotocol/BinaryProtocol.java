@@ -2,11 +2,14 @@ package com.rusefi.binaryprotocol;
 
 import com.opensr5.ConfigurationImage;
 import com.opensr5.Logger;
+import com.opensr5.ini.IniFileModel;
 import com.opensr5.io.ConfigurationImageFile;
 import com.opensr5.io.DataListener;
 import com.rusefi.ConfigurationImageDiff;
 import com.rusefi.FileLog;
+import com.rusefi.NamedThreadFactory;
 import com.rusefi.Timeouts;
+import com.rusefi.TuneJournal;
 import com.rusefi.composite.CompositeEvent;
 import com.rusefi.composite.CompositeParser;
 import com.rusefi.config.generated.Fields;
@@ -18,12 +21,13 @@ import com.rusefi.stream.LogicdataStreamFile;
 import com.rusefi.stream.StreamFile;
 import com.rusefi.stream.TSHighSpeedLog;
 import com.rusefi.stream.VcdStreamFile;
-import com.rusefi.tune.xml.Msq;
+import com.rusefi.tune.xml.MsqStream;
 import com.rusefi.ui.livedocs.LiveDocsRegistry;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -31,6 +35,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -52,6 +58,7 @@ public class BinaryProtocol implements BinaryProtocolCommands {
     private static final String USE_PLAIN_PROTOCOL_PROPERTY = "protocol.plain";
     private static final String CONFIGURATION_RUSEFI_BINARY = "current_configuration.rusefi_binary";
     private static final String CONFIGURATION_RUSEFI_XML = "current_configuration.msq";
+    private static final String CONFIGURATION_RUSEFI_JOURNAL = "current_configuration.rusefi_journal";
     private static final int HIGH_RPM_DELAY = Integer.getInteger("high_speed_logger_time", 10);
     /**
      * This properly allows to switch to non-CRC32 mode
@@ -69,8 +76,25 @@ public class BinaryProtocol implements BinaryProtocolCommands {
 
     // todo: this ioLock needs better documentation!
     private final Object ioLock = new Object();
-    private final Object imageLock = new Object();
-    private ConfigurationImage controller;
+    /**
+     * Local copies and journal of the tune are written on a background thread, which goes away when idle
+     */
+    private static final ThreadPoolExecutor EXPORT_EXECUTOR = new ThreadPoolExecutor(1, 1,
+            10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory("tune export"));
+    /**
+     * CRC32 of the last successfully exported image, accessed only on {@link #EXPORT_EXECUTOR}
+     */
+    private static Integer lastExportCrc;
+
+    static {
+        EXPORT_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final VersionedConfigurationImage controller = new VersionedConfigurationImage();
+    /**
+     * lazily opened, see {@link #getJournal()}
+     */
+    private TuneJournal journal;
 
     private static final int COMPOSITE_OFF_RPM = 300;
 
@@ -259,7 +283,7 @@ public class BinaryProtocol implements BinaryProtocolCommands {
 
     public void uploadChanges(ConfigurationImage newVersion, Logger logger) throws InterruptedException, EOFException {
         ConfigurationImage current = getControllerConfiguration();
-        // let's have our own copy which no one would be able to change
+        // let's have our own copy which no one would be able to change, it would become next published version
         newVersion = newVersion.clone();
         int offset = 0;
         while (offset < current.getSize()) {
@@ -279,7 +303,64 @@ public class BinaryProtocol implements BinaryProtocolCommands {
             offset = range.second;
         }
         burn(logger);
-        setController(newVersion);
+        controller.setOwned(newVersion);
+        recordInJournal(newVersion);
+        scheduleExport(newVersion);
+    }
+
+    /**
+     * Uploads only the differences between current image and given version from the tune journal
+     */
+    public void rollback(int version, Logger logger) throws InterruptedException, EOFException {
+        ConfigurationImage image;
+        try {
+            image = getJournal().getImage(version);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        uploadChanges(image, logger);
+    }
+
+    public synchronized TuneJournal getJournal() throws IOException {
+        if (journal == null)
+            journal = new TuneJournal(new File(CONFIGURATION_RUSEFI_JOURNAL));
+        return journal;
+    }
+
+    /**
+     * Writes local binary and TS tune copies of given image on {@link #EXPORT_EXECUTOR} unless same image was already
+     * exported. Image should not be modified afterwards.
+     */
+    private static void scheduleExport(ConfigurationImage image) {
+        EXPORT_EXECUTOR.execute(() -> {
+            int crc = IoHelper.getCrc32(image.getContent());
+            if (lastExportCrc != null && lastExportCrc == crc)
+                return;
+            try {
+                long start = System.currentTimeMillis();
+                ConfigurationImageFile.saveToFile(image, CONFIGURATION_RUSEFI_BINARY);
+                MsqStream.write(IniFileModel.getInstance(), image, CONFIGURATION_RUSEFI_XML);
+                lastExportCrc = crc;
+                FileLog.MAIN.logLine("Exported tune in " + (System.currentTimeMillis() - start) + "ms");
+            } catch (Exception e) {
+                System.err.println("Ignoring " + e);
+            }
+        });
+    }
+
+    /**
+     * Journal is opened and written on {@link #EXPORT_EXECUTOR} so that neither the initial scan nor fsync delay
+     * communication. Image should not be modified afterwards.
+     */
+    private void recordInJournal(ConfigurationImage image) {
+        EXPORT_EXECUTOR.execute(() -> {
+            try {
+                int version = getJournal().record(image);
+                logger.info("Tune journal version " + version);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Unable to record tune journal: " + e);
+            }
+        });
     }
 
     private byte[] receivePacket(String msg, boolean allowLongResponse) throws InterruptedException, EOFException {
@@ -300,7 +381,10 @@ public class BinaryProtocol implements BinaryProtocolCommands {
             if (image == null)
                 return;
         }
-        setController(image);
+        // freshly read image is not referenced from anywhere else
+        controller.setOwned(image);
+        // image could have been changed by some other tool
+        recordInJournal(image);
         logger.info("Got configuration from controller.");
         ConnectionStatusLogic.INSTANCE.setValue(ConnectionStatusValue.CONNECTED);
     }
@@ -343,13 +427,7 @@ public class BinaryProtocol implements BinaryProtocolCommands {
 
             offset += requestSize;
         }
-        try {
-            ConfigurationImageFile.saveToFile(image, CONFIGURATION_RUSEFI_BINARY);
-            Msq tune = Msq.valueOf(image);
-            tune.writeXmlFile(CONFIGURATION_RUSEFI_XML);
-        } catch (Exception e) {
-            System.err.println("Ignoring " + e);
-        }
+        scheduleExport(image);
         return image;
     }
 
@@ -466,20 +544,23 @@ public class BinaryProtocol implements BinaryProtocolCommands {
     }
 
     public void setController(ConfigurationImage controller) {
-        synchronized (imageLock) {
-            this.controller = controller.clone();
-        }
+        this.controller.set(controller);
     }
 
     /**
      * Configuration as it is in the controller to the best of our knowledge
+     *
+     * @return shared read-only snapshot, use {@link ConfigurationImage#clone()} before making changes
      */
     public ConfigurationImage getControllerConfiguration() {
-        synchronized (imageLock) {
-            if (controller == null)
-                return null;
-            return controller.clone();
-        }
+        return controller.get();
+    }
+
+    /**
+     * @see VersionedConfigurationImage#addListener
+     */
+    public VersionedConfigurationImage getControllerVersions() {
+        return controller;
     }
 
     private void sendPacket(byte[] command) throws IOException {
@@ -575,6 +656,7 @@ public class BinaryProtocol implements BinaryProtocolCommands {
             double scaledValue = rawValue * sensor.getScale();
             SensorCentral.getInstance().setValue(scaledValue, sensor);
         }
+        SensorCentral.getInstance().frameCompleted();
         return true;
     }
 
@@ -0,0 +1,105 @@
+package com.rusefi.binaryprotocol;
+
+import com.opensr5.ConfigurationImage;
+import com.rusefi.ConfigurationImageDiff;
+import com.rusefi.core.Pair;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Copy-on-write holder of the current {@link ConfigurationImage}: every published version is immutable, so readers
+ * share it without copying and writers publish a new version instead of modifying the current one.
+ * <p>
+ * Writers copy the whole image once per change. Changes are rare (user edits, uploads) while reads happen on every
+ * UI refresh, and most readers need a flat byte[] anyway (diff, field accessors, crc) so block-level sharing would
+ * just move the copying to the read side.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class VersionedConfigurationImage {
+    private volatile Version current = new Version(null, 0);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return current image or null if none yet. Shared instance, never modify it! Use {@link ConfigurationImage#clone()}
+     * to prepare a new version
+     */
+    @Nullable
+    public ConfigurationImage get() {
+        return current.image;
+    }
+
+    /**
+     * @return number which is incremented with each published image, 0 if none yet
+     */
+    public long getVersion() {
+        return current.number;
+    }
+
+    /**
+     * Publishes a private copy of the given image
+     */
+    public void set(ConfigurationImage image) {
+        setOwned(image.clone());
+    }
+
+    /**
+     * Publishes given image without copying: caller should not have or give out any other references to it
+     */
+    public void setOwned(ConfigurationImage image) {
+        Version previous;
+        Version next;
+        synchronized (this) {
+            previous = current;
+            next = new Version(image, previous.number + 1);
+            current = next;
+        }
+        if (listeners.isEmpty())
+            return;
+        List<Pair<Integer, Integer>> ranges = getChangedRanges(previous.image, image);
+        if (ranges.isEmpty())
+            return;
+        for (Listener listener : listeners)
+            listener.onChange(image, next.number, ranges);
+    }
+
+    /**
+     * @return [from, to) ranges which differ between two images, single range covering whole image if there was no
+     * previous image or size has changed
+     */
+    static List<Pair<Integer, Integer>> getChangedRanges(@Nullable ConfigurationImage previous, ConfigurationImage image) {
+        if (previous == null || previous.getSize() != image.getSize())
+            return Collections.singletonList(new Pair<>(0, image.getSize()));
+        return ConfigurationImageDiff.findAllDifferences(previous, image);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public interface Listener {
+        /**
+         * Invoked on the writer thread after new version is published
+         *
+         * @param ranges [from, to) byte ranges which have changed
+         */
+        void onChange(ConfigurationImage image, long version, List<Pair<Integer, Integer>> ranges);
+    }
+
+    private static class Version {
+        private final ConfigurationImage image;
+        private final long number;
+
+        Version(ConfigurationImage image, long number) {
+            this.image = image;
+            this.number = number;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.rusefi.binaryprotocol.test;
+
+import com.opensr5.ConfigurationImage;
+import com.rusefi.binaryprotocol.VersionedConfigurationImage;
+import com.rusefi.core.Pair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VersionedConfigurationImageTest {
+    @Test
+    public void testVersions() {
+        VersionedConfigurationImage versions = new VersionedConfigurationImage();
+        assertNull(versions.get());
+        assertEquals(0, versions.getVersion());
+
+        List<List<Pair<Integer, Integer>>> changes = new ArrayList<>();
+        versions.addListener((image, version, ranges) -> changes.add(ranges));
+
+        ConfigurationImage image = new ConfigurationImage(100);
+        versions.set(image);
+        assertEquals(1, versions.getVersion());
+        // private copy was published
+        assertNotSame(image, versions.get());
+        // readers share same snapshot
+        assertSame(versions.get(), versions.get());
+        assertEquals(1, changes.size());
+        assertEquals(0, changes.get(0).get(0).first.intValue());
+        assertEquals(100, changes.get(0).get(0).second.intValue());
+
+        ConfigurationImage next = versions.get().clone();
+        next.getContent()[10] = 1;
+        next.getContent()[50] = 2;
+        versions.setOwned(next);
+        assertSame(next, versions.get());
+        assertEquals(2, versions.getVersion());
+        assertEquals(2, changes.size());
+        List<Pair<Integer, Integer>> ranges = changes.get(1);
+        assertEquals(2, ranges.size());
+        assertEquals(10, ranges.get(0).first.intValue());
+        assertEquals(50, ranges.get(1).first.intValue());
+
+        // same content: new version but nothing to notify about
+        versions.set(next);
+        assertEquals(3, versions.getVersion());
+        assertEquals(2, changes.size());
+    }
+}
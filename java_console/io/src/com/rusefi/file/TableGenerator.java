@@ -36,7 +36,7 @@ public class TableGenerator {
 
 //        writeArray(rpms, out, prefix + "rpm");
 
-        List<Double> engineLoadValues = new ArrayList<>(data.getYAxis(rpms.get(0)).getYs());
+        List<Double> engineLoadValues = new ArrayList<>(data.getYSet());
 //        writeArray(yArray, out, prefix + "maf");
 
         out.write("static float " + prefix + "table[" + rpms.size() + "][" + engineLoadValues.size() + "] = {\n");
@@ -0,0 +1,80 @@
+package com.rusefi.test;
+
+import com.opensr5.ConfigurationImage;
+import com.rusefi.TuneJournal;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TuneJournalTest {
+    private static final int SIZE = 1000;
+
+    @Test
+    public void testRebuildAnyVersion() throws IOException {
+        File file = File.createTempFile("tune", ".rusefi_journal");
+        file.deleteOnExit();
+        TuneJournal journal = new TuneJournal(file);
+        assertEquals(0, journal.getLastVersion());
+        assertNull(journal.getLastImage());
+
+        List<byte[]> history = new ArrayList<>();
+        Random r = new Random(0);
+        ConfigurationImage image = new ConfigurationImage(SIZE);
+        for (int i = 0; i < 3 * TuneJournal.SNAPSHOT_PERIOD; i++) {
+            image = image.clone();
+            for (int j = 0; j < 3; j++)
+                image.getContent()[r.nextInt(SIZE)] = (byte) r.nextInt();
+            int version = journal.record(image);
+            if (version > history.size())
+                history.add(image.getContent().clone());
+        }
+        // same image again is not a new version
+        assertEquals(history.size(), journal.record(image));
+        // deltas are small
+        assertTrue(file.length() < 5 * SIZE + history.size() * 100);
+
+        TuneJournal reopened = new TuneJournal(file);
+        assertEquals(history.size(), reopened.getLastVersion());
+        for (int version = 1; version <= history.size(); version++)
+            assertArrayEquals(history.get(version - 1), reopened.getImage(version).getContent());
+        assertArrayEquals(image.getContent(), reopened.getLastImage().getContent());
+    }
+
+    @Test
+    public void testBrokenTail() throws IOException {
+        File file = File.createTempFile("tune", ".rusefi_journal");
+        file.deleteOnExit();
+        TuneJournal journal = new TuneJournal(file);
+        ConfigurationImage image = new ConfigurationImage(SIZE);
+        journal.record(image);
+        image = image.clone();
+        image.getContent()[5] = 5;
+        journal.record(image);
+
+        // simulate crash in the middle of writing 3rd version
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 2);
+        }
+        journal = new TuneJournal(file);
+        assertEquals(1, journal.getLastVersion());
+
+        image = image.clone();
+        image.getContent()[6] = 6;
+        assertEquals(2, journal.record(image));
+        journal = new TuneJournal(file);
+        assertEquals(2, journal.getLastVersion());
+        byte[] expected = new byte[SIZE];
+        expected[5] = 5;
+        expected[6] = 6;
+        assertTrue(Arrays.equals(expected, journal.getImage(2).getContent()));
+        assertTrue(Arrays.equals(new byte[SIZE], journal.getImage(1).getContent()));
+    }
+}
@@ -1,12 +1,21 @@
 package com.rusefi.util;
 
 import java.io.*;
-import java.nio.file.Paths;
-import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 /**
  * This file would override file content only of content has changed, disregarding the magic tag line.
+ * <p>
+ * Content is written through to a temporary file next to the destination while a hash of the content is updated
+ * line by line, same for the current file in one streaming pass on {@link #close()}. Neither content is kept in
+ * memory. Temporary file replaces the destination only if the hashes are different, it has default permissions of a
+ * new file or the permissions of the destination if there is one already.
+ * <p>
+ * Line breaks and lines with {@link #LAZY_FILE_TAG} do not participate in the comparison, see {@link #unifySpaces}
  */
 public class LazyFile implements Output {
     public static final String LAZY_FILE_TAG = "was generated automatically by rusEfi tool ";
@@ -19,8 +28,10 @@ public class LazyFile implements Output {
 
     private String filename;
 
-    private final StringBuffer content = new StringBuffer();
-    private final StringBuffer contentWithoutTag = new StringBuffer();
+    private final ContentHash hash = new ContentHash();
+    private File tempFile;
+    private Writer writer;
+    private long size;
 
     public LazyFile(String filename) {
         this.filename = filename;
@@ -28,56 +39,140 @@ public class LazyFile implements Output {
 
     @Override
     public void write(String line) {
-        content.append(line);
-        String lines[] = line.split("\\r?\\n");
-        for (String subLine : lines) {
-            if (!subLine.contains(LAZY_FILE_TAG)) {
-                contentWithoutTag.append(subLine);
+        try {
+            getWriter().write(line);
+        } catch (IOException e) {
+            deleteTempFile();
+            throw new IllegalStateException("While writing " + filename, e);
+        }
+        size += line.length();
+        hash.update(line);
+    }
+
+    private Writer getWriter() throws IOException {
+        if (writer == null) {
+            File file = new File(filename).getAbsoluteFile();
+            OutputStream out = null;
+            while (out == null) {
+                // same directory so that rename is atomic. Not File.createTempFile: that one is owner-only
+                tempFile = new File(file.getParentFile(), file.getName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+                try {
+                    out = Files.newOutputStream(tempFile.toPath(), StandardOpenOption.CREATE_NEW);
+                } catch (FileAlreadyExistsException e) {
+                    // let's try another name
+                }
             }
+            writer = new BufferedWriter(new OutputStreamWriter(out, IoUtils.CHARSET));
         }
+        return writer;
+    }
+
+    private void deleteTempFile() {
+        try {
+            if (writer != null)
+                writer.close();
+        } catch (IOException e) {
+            // we are giving up on this file anyway
+        }
+        if (tempFile != null && tempFile.exists() && !tempFile.delete())
+            SystemOut.println("Unable to delete " + tempFile);
     }
 
     @Override
     public void close() throws IOException {
-        String fileContent = unifySpaces(readCurrentContent(filename));
-        String newContent = unifySpaces(contentWithoutTag.toString());
-        if (fileContent.equals(newContent)) {
-            SystemOut.println(getClass().getSimpleName() + ": Not updating " + filename + " since looks to be the same content, new content size=" + contentWithoutTag.length());
-            return;
-        }
-        for (int i = 0; i < Math.min(fileContent.length(), newContent.length()); i++) {
-            if (fileContent.charAt(i) != newContent.charAt(i)) {
-                SystemOut.println(getClass().getSimpleName() + " " + filename + ": Not same at " + i);
-                if (i > 15 && i < fileContent.length() - 6 && i < newContent.length() - 6) {
-                    SystemOut.println("file       " + fileContent.substring(i - 15, i + 5));
-                    SystemOut.println("newContent " + newContent.substring(i - 15, i + 5));
-                }
-                break;
+        try {
+            getWriter().close();
+            byte[] newContent = hash.digest();
+            byte[] fileContent = readCurrentContentHash(filename);
+            if (Arrays.equals(fileContent, newContent)) {
+                SystemOut.println(getClass().getSimpleName() + ": Not updating " + filename + " since looks to be the same content, new content size=" + size);
+                return;
             }
+            SystemOut.println(getClass().getSimpleName() + ": Updating " + filename + ", new content size=" + size);
+            Path destination = new File(filename).toPath();
+            copyPermissions(destination, tempFile.toPath());
+            try {
+                Files.move(tempFile.toPath(), destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), destination, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            // still there unless it has replaced the destination
+            deleteTempFile();
         }
-        Writer fw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(filename), IoUtils.CHARSET));
-        fw.write(content.toString());
-        fw.close();
     }
 
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        if (!Files.exists(from) || Files.getFileAttributeView(from, PosixFileAttributeView.class) == null)
+            return;
+        Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+    }
+
+    /**
+     * Comparison of two strings after this method is the same as comparison of {@link ContentHash} values
+     */
     public static String unifySpaces(String line) {
         line = line.replace("\r", "");
         return line.replaceAll("\n[\n]*", "");
     }
 
-    private String readCurrentContent(String filename) throws IOException {
+    private static byte[] readCurrentContentHash(String filename) throws IOException {
         if (!new File(filename).exists()) {
             SystemOut.println(filename + " does not exist considering empty current content");
-            return "";
+            return null;
+        }
+        ContentHash hash = new ContentHash();
+        try (Reader reader = new InputStreamReader(new FileInputStream(filename), IoUtils.CHARSET)) {
+            char[] buffer = new char[64 * 1024];
+            int length;
+            while ((length = reader.read(buffer)) != -1)
+                hash.update(buffer, length);
         }
-        Scanner in = new Scanner(Paths.get(filename), IoUtils.CHARSET.name());
-        Pattern pat = Pattern.compile(".*\\R|.+\\z");
-        String line;
-        StringBuffer sb = new StringBuffer();
-        while ((line = in.findWithinHorizon(pat, 0)) != null) {
-            if (!line.contains(LAZY_FILE_TAG))
-                sb.append(line);
+        return hash.digest();
+    }
+
+    /**
+     * Hash of all lines without {@link #LAZY_FILE_TAG}, with line breaks removed. Only the current line is buffered.
+     */
+    static class ContentHash {
+        private final MessageDigest digest;
+        private final StringBuilder line = new StringBuilder();
+
+        ContentHash() {
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void update(String content) {
+            for (int i = 0; i < content.length(); i++)
+                update(content.charAt(i));
+        }
+
+        void update(char[] content, int length) {
+            for (int i = 0; i < length; i++)
+                update(content[i]);
+        }
+
+        private void update(char c) {
+            if (c == '\n') {
+                endLine();
+            } else if (c != '\r') {
+                line.append(c);
+            }
+        }
+
+        private void endLine() {
+            if (line.indexOf(LAZY_FILE_TAG) == -1)
+                digest.update(line.toString().getBytes(IoUtils.CHARSET));
+            line.setLength(0);
+        }
+
+        byte[] digest() {
+            endLine();
+            return digest.digest();
         }
-        return sb.toString();
     }
 }
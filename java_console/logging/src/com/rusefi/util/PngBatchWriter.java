@@ -0,0 +1,168 @@
+package com.rusefi.util;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Renders and writes PNG images on a pool of worker threads.
+ * <p>
+ * Each image is keyed by a hash of its input and is not rendered again while the key matches the one recorded for
+ * the existing file. Keys are kept in {@link #HASHES} in the output folder.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class PngBatchWriter implements Closeable {
+    public static final String HASHES = "image_hashes.txt";
+    private static final String PNG = "png";
+
+    private final File folder;
+    /**
+     * file name to key, updated from worker threads
+     */
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final List<Future<?>> futures = new ArrayList<>();
+    private int submitted;
+    /**
+     * updated from worker threads for images keyed by their pixels
+     */
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    public PngBatchWriter(String folder, int threads) {
+        this.folder = new File(folder);
+        this.folder.mkdirs();
+        executor = Executors.newFixedThreadPool(threads);
+        readHashes();
+    }
+
+    public PngBatchWriter(String folder) {
+        this(folder, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param key      hash of everything the image depends on, see {@link #hash(String)}
+     * @param renderer invoked on a worker thread unless existing file is up to date. Returned image could be reused
+     *                 by the next task of the same worker since it is written before that.
+     */
+    public void submit(String fileName, String key, Supplier<BufferedImage> renderer) {
+        submitted++;
+        File file = new File(folder, fileName);
+        if (key.equals(hashes.get(fileName)) && file.exists()) {
+            skipped.incrementAndGet();
+            return;
+        }
+        futures.add(executor.submit(() -> {
+            write(renderer.get(), file);
+            hashes.put(fileName, key);
+            return null;
+        }));
+    }
+
+    /**
+     * For images which are only known once rendered: the hash of the pixels is the key and only changed images are
+     * written
+     */
+    public void submit(String fileName, BufferedImage image) {
+        submitted++;
+        File file = new File(folder, fileName);
+        futures.add(executor.submit(() -> {
+            String key = hash(image);
+            if (key.equals(hashes.get(fileName)) && file.exists()) {
+                skipped.incrementAndGet();
+                return null;
+            }
+            write(image, file);
+            hashes.put(fileName, key);
+            return null;
+        }));
+    }
+
+    /**
+     * Waits for all images and records their keys
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            writeHashes();
+        }
+        System.out.println("PngBatchWriter: " + submitted + " image(s) submitted, " + skipped + " up to date");
+    }
+
+    /**
+     * @return number of submitted images which were up to date, complete once {@link #close()} is done
+     */
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public static void write(BufferedImage image, File file) throws IOException {
+        file.delete();
+        ImageIO.write(image, PNG, file);
+    }
+
+    public static String hash(String input) {
+        return hash(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String hash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        ByteBuffer bytes = ByteBuffer.allocate(8 + 4 * pixels.length);
+        bytes.putInt(width).putInt(height);
+        bytes.asIntBuffer().put(pixels);
+        return hash(bytes.array());
+    }
+
+    private static String hash(byte[] input) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(input);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest)
+                sb.append(String.format("%02x", b & 0xFF));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void readHashes() {
+        File file = new File(folder, HASHES);
+        if (!file.exists())
+            return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int index = line.lastIndexOf(' ');
+                if (index > 0)
+                    hashes.put(line.substring(0, index), line.substring(index + 1));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeHashes() throws IOException {
+        try (Writer writer = new FileWriter(new File(folder, HASHES))) {
+            for (Map.Entry<String, String> e : new TreeMap<>(hashes).entrySet())
+                writer.write(e.getKey() + " " + e.getValue() + "\n");
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.io.PrintWriter;
 public class SystemOut {
     private static final String LOG = ".log";
     private static PrintWriter logFile;
+    private static Thread shutdownHook;
 
     public static void println(String line) {
         System.out.println(line);
@@ -28,13 +29,14 @@ public class SystemOut {
         String fileName = System.getProperty("SystemOut.name", "rusefi_tool") + LOG;
         System.out.println("Opening " + fileName);
         logFile = new PrintWriter(new FileWriter(fileName, true));
-        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        shutdownHook = new Thread(new Runnable() {
             @Override
             public void run() {
                 close();
                 System.out.println("SystemOut Hook done!");
             }
-        }));
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
     }
 
     @SuppressWarnings("ThrowablePrintedToSystemOut")
@@ -52,10 +54,21 @@ public class SystemOut {
         println(object == null ? "(null)" : object.toString());
     }
 
+    /**
+     * Also removes the shutdown hook: a hook would keep this class and its class loader alive until JVM exit
+     */
     public synchronized static void close() {
         if (logFile != null) {
             logFile.close();
         }
         logFile = null;
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM is already shutting down
+            }
+        }
+        shutdownHook = null;
     }
 }
@@ -0,0 +1,99 @@
+package com.rusefi.util.test;
+
+import com.rusefi.util.PngBatchWriter;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class PngBatchWriterTest {
+    @Test
+    public void testUnchangedKeyIsNotRendered() throws IOException {
+        File folder = Files.createTempDirectory("png_batch").toFile();
+        try {
+            AtomicInteger renders = new AtomicInteger();
+
+            try (PngBatchWriter writer = new PngBatchWriter(folder.getPath(), 2)) {
+                writer.submit("a.png", PngBatchWriter.hash("a"), () -> render(renders, Color.red));
+                writer.submit("b.png", PngBatchWriter.hash("b"), () -> render(renders, Color.blue));
+            }
+            assertEquals(2, renders.get());
+            BufferedImage image = ImageIO.read(new File(folder, "a.png"));
+            assertEquals(Color.red.getRGB(), image.getRGB(3, 4));
+
+            PngBatchWriter writer = new PngBatchWriter(folder.getPath(), 2);
+            writer.submit("a.png", PngBatchWriter.hash("a"), () -> render(renders, Color.red));
+            writer.submit("b.png", PngBatchWriter.hash("b2"), () -> render(renders, Color.green));
+            writer.close();
+            assertEquals(1, writer.getSkipped());
+            assertEquals(3, renders.get());
+            image = ImageIO.read(new File(folder, "b.png"));
+            assertEquals(Color.green.getRGB(), image.getRGB(3, 4));
+
+            // missing file is rendered again even if the key matches
+            assertTrue(new File(folder, "a.png").delete());
+            try (PngBatchWriter writer2 = new PngBatchWriter(folder.getPath(), 2)) {
+                writer2.submit("a.png", PngBatchWriter.hash("a"), () -> render(renders, Color.red));
+            }
+            assertEquals(4, renders.get());
+        } finally {
+            delete(folder);
+        }
+    }
+
+    @Test
+    public void testUnchangedPixelsAreNotWritten() throws IOException {
+        File folder = Files.createTempDirectory("png_batch").toFile();
+        try {
+            File file = new File(folder, "c.png");
+
+            try (PngBatchWriter writer = new PngBatchWriter(folder.getPath(), 1)) {
+                writer.submit(file.getName(), render(new AtomicInteger(), Color.red));
+            }
+            assertTrue(file.setLastModified(0));
+
+            PngBatchWriter writer = new PngBatchWriter(folder.getPath(), 1);
+            writer.submit(file.getName(), render(new AtomicInteger(), Color.red));
+            writer.close();
+            assertEquals(1, writer.getSkipped());
+            assertEquals(0, file.lastModified());
+
+            writer = new PngBatchWriter(folder.getPath(), 1);
+            writer.submit(file.getName(), render(new AtomicInteger(), Color.blue));
+            writer.close();
+            assertEquals(0, writer.getSkipped());
+            assertTrue(file.lastModified() != 0);
+        } finally {
+            delete(folder);
+        }
+    }
+
+    private static void delete(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        folder.delete();
+    }
+
+    private static BufferedImage render(AtomicInteger counter, Color color) {
+        counter.incrementAndGet();
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, 10, 10);
+        g.dispose();
+        return image;
+    }
+}
@@ -19,13 +19,10 @@ public abstract class AbstractEvaluator<T> {
 	private final Map<String, BracketPair> functionBrackets;
 	private final Map<String, BracketPair> expressionBrackets;
 
-	public final Stack<String> stackRPN = new Stack<String>() {
-		@Override
-		public String push(String t) {
-			return super.push(t);
-		}
-
-	};
+	/** RPN form of the last {@link #evaluate(String, Object)} call, see {@link #getPosftfixExpression()}.
+	 * <br>Each evaluation collects RPN into its own list so concurrent evaluations do not interfere.
+	 */
+	private volatile List<String> lastRPN = Collections.emptyList();
 
 
 	/** Constructor.
@@ -124,7 +121,7 @@ public abstract class AbstractEvaluator<T> {
 	}
 
 	@SuppressWarnings("unchecked")
-	private void output(Deque<T> values, Token token, Object evaluationContext) {
+	private void output(Deque<T> values, Token token, Object evaluationContext, List<String> rpn) {
 		if (token.isLiteral()) { // If the token is a literal, a constant, or a variable name
 			String literal = token.getLiteral();
 			Constant ct = this.constants.get(literal);
@@ -135,7 +132,7 @@ public abstract class AbstractEvaluator<T> {
 			values.push(value!=null ? value : toValue(literal, evaluationContext));
 		} else if (token.isOperator()) {
 			Operator operator = token.getOperator();
-			rpnPush("deq", operator.getSymbol());
+			rpnPush(rpn, "deq", operator.getSymbol());
 			values.push(evaluate(operator, getArguments(values, operator.getOperandCount()), evaluationContext));
 		} else {
 			throw new IllegalArgumentException(token.toString());
@@ -181,7 +178,8 @@ public abstract class AbstractEvaluator<T> {
 	}
 	
 	private void doFunction(Deque<T> values, Function function, int argCount, Object evaluationContext) {
-		System.out.println("doFunction " + function + " " + argCount);
+		if (DETAILED_LOGGER)
+			System.out.println("doFunction " + function + " " + argCount);
 
 		if (function.getMinimumArgumentCount()>argCount || function.getMaximumArgumentCount()<argCount) {
 			throw new IllegalArgumentException("Invalid argument count for "+function.getName() + " while " + argCount);
@@ -230,7 +228,26 @@ public abstract class AbstractEvaluator<T> {
 	 * @see AbstractVariableSet
 	 */
 	public T evaluate(String expression, Object evaluationContext) {
-		stackRPN.clear();
+		List<String> rpn = new ArrayList<String>();
+		T result = evaluate(expression, evaluationContext, rpn);
+		lastRPN = rpn;
+		return result;
+	}
+
+	/** Converts an infix expression into space-separated Reverse Polish Notation.
+	 * <br>Unlike {@link #evaluate(String)} followed by {@link #getPosftfixExpression()} this does not touch any
+	 * instance state, so one evaluator could be shared between threads.
+	 * @param expression The expression to convert.
+	 * @return RPN form of the expression
+	 * @throws IllegalArgumentException if the expression is not correct.
+	 */
+	public String toPostfixExpression(String expression) {
+		List<String> rpn = new ArrayList<String>();
+		evaluate(expression, null, rpn);
+		return join(rpn);
+	}
+
+	private T evaluate(String expression, Object evaluationContext, List<String> rpn) {
 		final Deque<T> values = new ArrayDeque<T>() {
 			@Override
 			public void push(T t) {
@@ -293,7 +310,7 @@ public abstract class AbstractEvaluator<T> {
 							throw new IllegalArgumentException("Invalid parenthesis match "+sc.getBrackets().getOpen()+brackets.getClose());
 						}
 					} else {
-						output(values, sc, evaluationContext);
+						output(values, sc, evaluationContext, rpn);
 					}
 				}
 				if (!openBracketFound) {
@@ -302,7 +319,7 @@ public abstract class AbstractEvaluator<T> {
 					throw new IllegalArgumentException("Parentheses mismatched");
 				}
 				if (!stack.isEmpty() && stack.peek().isFunction()) {
-					rpnPush("function", stack.peek().getFunction().getName());
+					rpnPush(rpn, "function", stack.peek().getFunction().getName());
 					// If the token at the top of the stack is a function token, pop it
 					// onto the output queue.
 					int argCount = values.size()-previousValuesSize.pop();
@@ -326,7 +343,7 @@ public abstract class AbstractEvaluator<T> {
 					} else {
 						// Until the token at the top of the stack is a left parenthesis,
 						// pop operators off the stack onto the output queue.
-						output(values, stack.pop(), evaluationContext);
+						output(values, stack.pop(), evaluationContext, rpn);
 					}
 				}
 				if (!pe) {
@@ -355,7 +372,7 @@ public abstract class AbstractEvaluator<T> {
 									(token.getPrecedence() < sc.getPrecedence()))) {
 //						rpnPush("op1", sc.getOperator().getRpnSymbol());
 						// Pop o2 off the stack, onto the output queue;
-						output(values, stack.pop(), evaluationContext);
+						output(values, stack.pop(), evaluationContext, rpn);
 					} else {
 						break;
 					}
@@ -367,8 +384,8 @@ public abstract class AbstractEvaluator<T> {
 				if ((previous!=null) && previous.isLiteral()) {
 					throw new IllegalArgumentException("A literal can't follow another literal");
 				}
-				rpnPush("boolean", token.getBooleanHackedLiteral());
-				output(values, token, evaluationContext);
+				rpnPush(rpn, "boolean", token.getBooleanHackedLiteral());
+				output(values, token, evaluationContext, rpn);
 			}
 			previous = token;
 		}
@@ -382,33 +399,34 @@ public abstract class AbstractEvaluator<T> {
 			if (sc.isOperator()) {
 //				stackRPN.push(sc.getOperator().getRpnSymbol());
 			}
-			output(values, sc, evaluationContext);
+			output(values, sc, evaluationContext, rpn);
 		}
 		if (values.size() != 1) {
 			throw new IllegalArgumentException(expression + ": Only one element expected "+ values);
 		}
-		Collections.reverse(stackRPN);
-
 		return values.pop();
 	}
 
-	private void rpnPush(String msg, String s) {
+	private static void rpnPush(List<String> rpn, String msg, String s) {
 		if (DETAILED_LOGGER)
 			System.out.println("RPN push " + msg + ": " + s);
-		stackRPN.push(s);
+		rpn.add(s);
 	}
 
+	/** @return RPN form of the expression given to the last {@link #evaluate(String, Object)} call
+	 * @see #toPostfixExpression(String)
+	 */
 	public String getPosftfixExpression() {
-		List<String> list = new ArrayList<>(stackRPN);
-		ListIterator<String> li = list.listIterator(list.size());
-//		List<String> reverse = new ArrayList<>();
+		return join(lastRPN);
+	}
+
+	private static String join(List<String> rpn) {
 		StringBuilder sb = new StringBuilder();
-		while (li.hasPrevious()) {
+		for (String s : rpn) {
 			if (sb.length() > 0)
 				sb.append(" ");
-			sb.append(li.previous());
+			sb.append(s);
 		}
-//		String result = reverse.toString();
 		return sb.toString();
 	}
 
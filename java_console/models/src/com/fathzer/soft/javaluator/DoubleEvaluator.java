@@ -55,6 +55,13 @@ public class DoubleEvaluator extends AbstractEvaluator<Double> {
         return evaluator;
     }
 
+	/** Thread-safe conversion of an infix expression into RPN, one shared evaluator is used by all callers.
+	 * @return same as {@link #getPosftfixExpression()} after {@link #process(String)}
+	 */
+	public static String toRpn(String expression) {
+		return SHARED.toPostfixExpression(expression.toLowerCase());
+	}
+
 	/** The order or operations (operator precedence) is not clearly defined, especially between the unary minus operator and exponentiation
 	 * operator (see <a href="http://en.wikipedia.org/wiki/Order_of_operations#Exceptions_to_the_standard">http://en.wikipedia.org/wiki/Order_of_operations</a>).
 	 * These constants define the operator precedence styles.
@@ -179,7 +186,8 @@ public class DoubleEvaluator extends AbstractEvaluator<Double> {
 	/** The whole set of predefined constants */
 	private static final Constant[] CONSTANTS = new Constant[]{TRUE, FALSE};
 	
-	private static Parameters DEFAULT_PARAMETERS;
+	private static final Parameters DEFAULT_PARAMETERS = getDefaultParameters();
+	private static final DoubleEvaluator SHARED = new DoubleEvaluator();
 	private static final ThreadLocal<NumberFormat> FORMATTER = new ThreadLocal<NumberFormat>() {
 	  @Override
 	  protected NumberFormat initialValue() {
@@ -218,9 +226,6 @@ public class DoubleEvaluator extends AbstractEvaluator<Double> {
 	}
 
 	private static Parameters getParameters() {
-		if (DEFAULT_PARAMETERS == null) {
-			DEFAULT_PARAMETERS = getDefaultParameters();
-		}
 		return DEFAULT_PARAMETERS;
 	}
 	
@@ -2,8 +2,6 @@ package com.rusefi;
 
 public class BinarySearch {
     public static int binarySearch(double target, double[] angles) {
-        System.out.println("Testing " + target);
-
         int left = 0;
         int right = angles.length - 1;
 
@@ -390,7 +390,7 @@ public final class Histograms {
         public long total_count;
         public long[] histogram;
 
-        private Statistics(String name) {
+        public Statistics(String name) {
             this.name = name;
             this.histogram = EMPTY_HISTOGRAM;
         }
@@ -437,7 +437,7 @@ public final class Histograms {
         public final String type;
         public final HashMap<String, Statistics> data; // Maps statistics name (String) to Statistics.
 
-        private StatisticsGroup(String type) {
+        public StatisticsGroup(String type) {
             this.type = type;
             this.data = new HashMap<>();
         }
@@ -0,0 +1,117 @@
+package com.rusefi;
+
+import java.util.Arrays;
+
+/**
+ * Decaying hit count of table cells around the engine operating point.
+ * <p>
+ * Each {@link #add} spreads one hit over the four cells around the point with bilinear weights, after all the
+ * existing counts are multiplied by the decay factor, so that cells which are not visited fade out. Nothing is
+ * allocated per point: this is invoked for each output channels frame on the polling thread.
+ * <p>
+ * Cells are indexed {@code x * sizeY + y}.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class OperatingPointHeatmap {
+    private final int sizeX;
+    private final int sizeY;
+    private final double decay;
+    private final double[] xBins;
+    private final double[] yBins;
+    private final double[] heat;
+    /**
+     * fractional cell coordinates of the last point, NaN if none
+     */
+    private double x = Double.NaN;
+    private double y = Double.NaN;
+    private int points;
+
+    /**
+     * @param halfLife number of points after which a hit counts half
+     */
+    public OperatingPointHeatmap(int sizeX, int sizeY, int halfLife) {
+        if (sizeX < 1 || sizeY < 1 || halfLife < 1)
+            throw new IllegalArgumentException("Size " + sizeX + "x" + sizeY + " half life " + halfLife);
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        decay = Math.pow(0.5, 1.0 / halfLife);
+        xBins = new double[sizeX];
+        yBins = new double[sizeY];
+        heat = new double[sizeX * sizeY];
+    }
+
+    /**
+     * @param xBins ascending axis values, copied
+     */
+    public synchronized void setBins(double[] xBins, double[] yBins) {
+        if (xBins.length != sizeX || yBins.length != sizeY)
+            throw new IllegalArgumentException("Expected " + sizeX + "x" + sizeY + " bins: " + xBins.length + "x" + yBins.length);
+        System.arraycopy(xBins, 0, this.xBins, 0, sizeX);
+        System.arraycopy(yBins, 0, this.yBins, 0, sizeY);
+    }
+
+    public synchronized void add(double xValue, double yValue) {
+        if (Double.isNaN(xValue) || Double.isNaN(yValue))
+            return;
+        x = getPosition(xBins, xValue);
+        y = getPosition(yBins, yValue);
+
+        for (int i = 0; i < heat.length; i++)
+            heat[i] *= decay;
+
+        int i = (int) x;
+        int j = (int) y;
+        double tx = x - i;
+        double ty = y - j;
+        addHeat(i, j, (1 - tx) * (1 - ty));
+        addHeat(i + 1, j, tx * (1 - ty));
+        addHeat(i, j + 1, (1 - tx) * ty);
+        addHeat(i + 1, j + 1, tx * ty);
+        points++;
+    }
+
+    private void addHeat(int i, int j, double weight) {
+        if (weight > 0)
+            heat[i * sizeY + j] += weight;
+    }
+
+    /**
+     * @return fractional index of the value between axis bins, clamped to the first and the last bin
+     */
+    public static double getPosition(double[] bins, double value) {
+        int index = BinarySearch.binarySearch(value, bins);
+        if (index < 0)
+            return 0;
+        if (index >= bins.length - 1)
+            return bins.length - 1;
+        double width = bins[index + 1] - bins[index];
+        return width <= 0 ? index : index + (value - bins[index]) / width;
+    }
+
+    /**
+     * @param destination array of at least sizeX * sizeY elements
+     * @return number of points added so far, so that the caller could skip unchanged heatmaps
+     */
+    public synchronized int copyTo(double[] destination) {
+        System.arraycopy(heat, 0, destination, 0, heat.length);
+        return points;
+    }
+
+    /**
+     * @return fractional x cell coordinate of the last point, NaN if none
+     */
+    public synchronized double getX() {
+        return x;
+    }
+
+    public synchronized double getY() {
+        return y;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(heat, 0);
+        x = Double.NaN;
+        y = Double.NaN;
+    }
+}
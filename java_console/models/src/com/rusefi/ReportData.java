@@ -0,0 +1,213 @@
+package com.rusefi;
+
+import com.rusefi.models.MafValue;
+import com.rusefi.models.RpmValue;
+
+import java.util.Arrays;
+
+/**
+ * Stimulation report records as primitive columns plus an index of records sorted by RPM bucket and MAF
+ *
+ * @see ReportReader
+ */
+public class ReportData {
+    /**
+     * RPM values are grouped into buckets of this width
+     */
+    public static final int RPM_BUCKET = 100;
+
+    private int[] time = new int[1024];
+    private int[] maf = new int[1024];
+    private int[] rpm = new int[1024];
+    private int[] wave = new int[1024];
+    private int size;
+
+    /**
+     * record positions sorted by RPM bucket and then MAF, only the last record for each RPM bucket/MAF pair
+     */
+    private int[] sorted;
+    /**
+     * distinct RPM buckets, ascending
+     */
+    private int[] rpmKeys;
+    /**
+     * group of rpmKeys[i] is sorted[groupStarts[i]] until sorted[groupStarts[i + 1]]
+     */
+    private int[] groupStarts;
+
+    void add(int time, int maf, int rpm, int wave) {
+        if (size == this.time.length) {
+            int newLength = size * 2;
+            this.time = Arrays.copyOf(this.time, newLength);
+            this.maf = Arrays.copyOf(this.maf, newLength);
+            this.rpm = Arrays.copyOf(this.rpm, newLength);
+            this.wave = Arrays.copyOf(this.wave, newLength);
+        }
+        this.time[size] = time;
+        this.maf[size] = maf;
+        this.rpm[size] = rpm;
+        this.wave[size] = wave;
+        size++;
+        sorted = null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getTime(int index) {
+        return time[index];
+    }
+
+    public int getMaf(int index) {
+        return maf[index];
+    }
+
+    public int getRpm(int index) {
+        return rpm[index];
+    }
+
+    public int getWave(int index) {
+        return wave[index];
+    }
+
+    public ReportLine getLine(int index) {
+        return new ReportLine(time[index], new MafValue(maf[index]), new RpmValue(rpm[index]), wave[index]);
+    }
+
+    public static int getRpmKey(int rpm) {
+        return rpm - rpm % RPM_BUCKET;
+    }
+
+    /**
+     * @return a copy without records which have unrealistic RPM jump from previous valid record
+     */
+    public ReportData filter(int invalidRpmDiff) {
+        ReportData result = new ReportData();
+        if (size == 0)
+            return result;
+        int prev = 0;
+        result.add(time[0], maf[0], rpm[0], wave[0]);
+        for (int i = 1; i < size; i++) {
+            if (Math.abs(rpm[i] - rpm[prev]) > invalidRpmDiff)
+                continue;
+            result.add(time[i], maf[i], rpm[i], wave[i]);
+            prev = i;
+        }
+        return result;
+    }
+
+    /**
+     * @return distinct RPM buckets in ascending order
+     */
+    public int[] getRpmKeys() {
+        buildIndex();
+        return rpmKeys.clone();
+    }
+
+    /**
+     * @return number of distinct MAF values within RPM bucket
+     */
+    public int getGroupSize(int rpmKey) {
+        buildIndex();
+        int group = Arrays.binarySearch(rpmKeys, rpmKey);
+        return group < 0 ? 0 : groupStarts[group + 1] - groupStarts[group];
+    }
+
+    /**
+     * @return position of i-th record within RPM bucket, records in a bucket are sorted by MAF
+     */
+    public int getGroupRecord(int rpmKey, int i) {
+        buildIndex();
+        int group = Arrays.binarySearch(rpmKeys, rpmKey);
+        if (group < 0)
+            throw new IllegalArgumentException("No RPM bucket " + rpmKey);
+        return sorted[groupStarts[group] + i];
+    }
+
+    /**
+     * @return position of the last record for given RPM bucket and MAF value, -1 if none
+     */
+    public int find(int rpmKey, int mafValue) {
+        buildIndex();
+        int group = Arrays.binarySearch(rpmKeys, rpmKey);
+        if (group < 0)
+            return -1;
+        int from = groupStarts[group];
+        int to = groupStarts[group + 1] - 1;
+        while (from <= to) {
+            int middle = (from + to) >>> 1;
+            int value = maf[sorted[middle]];
+            if (value < mafValue) {
+                from = middle + 1;
+            } else if (value > mafValue) {
+                to = middle - 1;
+            } else {
+                return sorted[middle];
+            }
+        }
+        return -1;
+    }
+
+    private void buildIndex() {
+        if (sorted != null)
+            return;
+        long[] keys = new long[size];
+        int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) getRpmKey(rpm[i]) << 32) | (maf[i] & 0xFFFFFFFFL);
+            positions[i] = i;
+        }
+        mergeSort(positions, new int[size], 0, size, keys);
+
+        // only keep the last record of each key
+        int unique = 0;
+        int groups = 0;
+        for (int i = 0; i < size; i++) {
+            if (i + 1 < size && keys[positions[i]] == keys[positions[i + 1]])
+                continue;
+            if (unique == 0 || getRpmKey(rpm[positions[i]]) != getRpmKey(rpm[positions[unique - 1]]))
+                groups++;
+            positions[unique++] = positions[i];
+        }
+
+        int[] rpmKeys = new int[groups];
+        int[] groupStarts = new int[groups + 1];
+        int group = -1;
+        for (int i = 0; i < unique; i++) {
+            int rpmKey = getRpmKey(rpm[positions[i]]);
+            if (group == -1 || rpmKeys[group] != rpmKey) {
+                rpmKeys[++group] = rpmKey;
+                groupStarts[group] = i;
+            }
+        }
+        groupStarts[groups] = unique;
+
+        this.rpmKeys = rpmKeys;
+        this.groupStarts = groupStarts;
+        this.sorted = Arrays.copyOf(positions, unique);
+    }
+
+    /**
+     * Stable sort of positions by keys[position]
+     */
+    private static void mergeSort(int[] positions, int[] buffer, int from, int to, long[] keys) {
+        if (to - from < 2)
+            return;
+        int middle = (from + to) >>> 1;
+        mergeSort(positions, buffer, from, middle, keys);
+        mergeSort(positions, buffer, middle, to, keys);
+        if (keys[positions[middle - 1]] <= keys[positions[middle]])
+            return;
+        System.arraycopy(positions, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && keys[buffer[left]] <= keys[buffer[right]])) {
+                positions[i] = buffer[left++];
+            } else {
+                positions[i] = buffer[right++];
+            }
+        }
+    }
+}
@@ -1,22 +1,31 @@
 package com.rusefi;
 
-import com.rusefi.models.Factory;
-import com.rusefi.models.MafValue;
-import com.rusefi.models.RpmValue;
-import com.rusefi.models.Utils;
-
-import java.io.*;
-import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeMap;
 
 /**
+ * Stimulation report reader: file is memory-mapped and scanned byte by byte straight into primitive columns.
+ * <p>
  * Date: 1/29/13
  * Andrey Belomutskiy, (c) 2013-2020
+ *
+ * @see ReportData
  */
 public class ReportReader {
-    private static final Pattern LINE_PATTERN = Pattern.compile("\\D*(\\d*);a0;(\\d*);a1;-1;rpm;(\\d*);wave;(\\d*).*");
     private static final int INVALID_RPM_DIFF = 200;
+    /**
+     * files are mapped in chunks so that we are not limited by 2GB ByteBuffer size
+     */
+    private static final int CHUNK_SIZE = 1 << 30;
+    private static final byte[] A0 = ";a0;".getBytes();
+    private static final byte[] A1_RPM = ";a1;-1;rpm;".getBytes();
+    private static final byte[] WAVE = ";wave;".getBytes();
 
     public static void main(String[] args) {
         //List<ReportLine> lines = read("unfiltered.txt");
@@ -25,131 +34,166 @@ public class ReportReader {
     }
 
     public static TreeMap<Integer, TreeMap<Integer, ReportLine>> readMap(String filename) {
-        if (!new File(filename).exists()) {
-            FileLog.MAIN.logLine("Error: not found " + filename);
-            return new TreeMap<>();
-        }
-        List<ReportLine> lines = read(filename);
-        FileLog.MAIN.logLine("Got " + lines.size() + " lines");
-
-        lines = filter(Collections.unmodifiableList(lines));
-
-        findMinMax(lines);
-
-        return asMap(lines);
-    }
-
-    private static TreeMap<Integer, TreeMap<Integer, ReportLine>> asMap(List<ReportLine> lines) {
+        ReportData data = readData(filename);
         /**
          * map of maps by RPM. inner map is by MAF
          */
         TreeMap<Integer, TreeMap<Integer, ReportLine>> rpm2mapByMaf = new TreeMap<>();
-        for (ReportLine cur : lines) {
-            int rpmKey = cur.getRpm().getValue();
-
-            // round to 100
-            rpmKey -= (rpmKey % 100);
-
-            TreeMap<Integer, ReportLine> maf2line = Utils.getOrCreate(rpm2mapByMaf, rpmKey, new Factory<Integer, TreeMap<Integer, ReportLine>>() {
-                public TreeMap<Integer, ReportLine> create(Integer key) {
-                    return new TreeMap<>();
-                }
-            });
-            maf2line.put(cur.getMaf().getValue(), cur);
+        for (int rpmKey : data.getRpmKeys()) {
+            TreeMap<Integer, ReportLine> maf2line = new TreeMap<>();
+            for (int i = 0; i < data.getGroupSize(rpmKey); i++) {
+                int record = data.getGroupRecord(rpmKey, i);
+                maf2line.put(data.getMaf(record), data.getLine(record));
+            }
+            rpm2mapByMaf.put(rpmKey, maf2line);
         }
         return rpm2mapByMaf;
     }
 
-    private static void findMinMax(List<ReportLine> lines) {
+    /**
+     * @return filtered records, see {@link ReportData#find} for lookup by RPM and MAF
+     */
+    public static ReportData readData(String filename) {
+        if (!new File(filename).exists()) {
+            FileLog.MAIN.logLine("Error: not found " + filename);
+            return new ReportData();
+        }
+        ReportData lines = read(filename);
+        FileLog.MAIN.logLine("Got " + lines.size() + " lines");
+
+        ReportData result = lines.filter(INVALID_RPM_DIFF);
+        int removedCount = lines.size() - result.size();
+        double percent = 100.0 * removedCount / lines.size();
+        FileLog.MAIN.logLine(removedCount + " out of " + lines.size() + " record(s) removed. " + percent + "%");
+
+        findMinMax(result);
+        return result;
+    }
+
+    private static void findMinMax(ReportData lines) {
         int minMaf = 100000;
         int maxMaf = 0;
 
         int minRpm = 100000;
         int maxRpm = 0;
-        for (ReportLine cur : lines) {
-            minMaf = Math.min(minMaf, cur.getMaf().getValue());
-            maxMaf = Math.max(maxMaf, cur.getMaf().getValue());
+        for (int i = 0; i < lines.size(); i++) {
+            minMaf = Math.min(minMaf, lines.getMaf(i));
+            maxMaf = Math.max(maxMaf, lines.getMaf(i));
 
-            minRpm = Math.min(minRpm, cur.getRpm().getValue());
-            maxRpm = Math.max(maxRpm, cur.getRpm().getValue());
+            minRpm = Math.min(minRpm, lines.getRpm(i));
+            maxRpm = Math.max(maxRpm, lines.getRpm(i));
         }
         FileLog.MAIN.logLine("MAF range from " + minMaf + " to " + maxMaf);
         FileLog.MAIN.logLine("RPM range from " + minRpm + " to " + maxRpm);
     }
 
-    private static List<ReportLine> filter(List<ReportLine> lines) {
-        List<ReportLine> result = new ArrayList<>();
-        int maxValidDiff = 0;
-        int originalCount = lines.size();
-        int removedCount = 0;
-
-        result.add(lines.get(0));
+    static ReportData read(String filename) {
+        ReportData result = new ReportData();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long position = 0;
+            LineParser parser = new LineParser(result);
+            while (position < fileSize) {
+                long length = Math.min(CHUNK_SIZE, fileSize - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean isLastChunk = position + length == fileSize;
+                int consumed = parser.parse(buffer, (int) length, isLastChunk);
+                if (consumed == 0)
+                    throw new IllegalStateException("Line too long at " + position);
+                position += consumed;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
 
-        for (int i = 1; i < lines.size(); i++) {
-            ReportLine prev = result.get(result.size() - 1);
-            ReportLine cur = lines.get(i);
+    /**
+     * Hand-written equivalent of \D*(\d*);a0;(\d*);a1;-1;rpm;(\d*);wave;(\d*).* applied to each line
+     */
+    static class LineParser {
+        private final ReportData result;
+        private int prevMaf = -1;
+        private int prevRpm = -1;
+        private int prevWave = -1;
+        /**
+         * position of the first character after the last number parsed by {@link #parseNumber}
+         */
+        private int end;
 
-            int rpmDiff = cur.getRpm().getValue() - prev.getRpm().getValue();
-            int timeDiff = cur.getTime() - prev.getTime();
+        LineParser(ReportData result) {
+            this.result = result;
+        }
 
-            if (Math.abs(rpmDiff) > INVALID_RPM_DIFF) {
-                FileLog.MAIN.logLine("Invalid diff: " + cur);
-                removedCount++;
-                continue;
+        /**
+         * @return number of bytes consumed, only complete lines are consumed unless this is the last chunk
+         */
+        int parse(ByteBuffer buffer, int length, boolean isLastChunk) {
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(i) == '\n') {
+                    handleOneLine(buffer, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            if (isLastChunk && lineStart < length) {
+                handleOneLine(buffer, lineStart, length);
+                lineStart = length;
             }
-            result.add(cur);
-            // maximum valid diff
-            maxValidDiff = Math.max(maxValidDiff, Math.abs(rpmDiff));
-//            System.out.println("current rpm: " + cur + ", rpm diff=" + rpmDiff + " td=" + timeDiff);
-//            System.out.println("value," + cur.getRpm().getValue() + "," + cur.getMaf().getValue() + "," + cur.getWave());
+            return lineStart;
+        }
+
+        private void handleOneLine(ByteBuffer buffer, int from, int to) {
+            int i = from;
+            while (i < to && !isDigit(buffer.get(i)))
+                i++;
+            int time = parseNumber(buffer, i, to);
+            if (time < 0 || !matches(buffer, end, to, A0))
+                return;
+            int maf = parseNumber(buffer, end + A0.length, to);
+            if (maf < 0 || !matches(buffer, end, to, A1_RPM))
+                return;
+            int rpm = parseNumber(buffer, end + A1_RPM.length, to);
+            if (rpm < 0 || !matches(buffer, end, to, WAVE))
+                return;
+            int wave = parseNumber(buffer, end + WAVE.length, to);
+            if (wave < 0)
+                return;
+
+            if (prevMaf == maf && prevRpm == rpm && prevWave == wave)
+                return;
+            prevMaf = maf;
+            prevRpm = rpm;
+            prevWave = wave;
+            result.add(time, maf, rpm, wave);
         }
-        double percent = 100.0 * removedCount / originalCount;
-        FileLog.MAIN.logLine(removedCount + " out of " + originalCount + " record(s) removed. " + percent + "%");
-        FileLog.MAIN.logLine("Max valid diff: " + maxValidDiff);
-        return result;
-    }
 
-    private static List<ReportLine> read(String filename) {
-        List<ReportLine> result = new LinkedList<>();
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(filename));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                //process each line in some way
-                ReportLine rl = handleOneLine(line);
-                if (rl != null)
-                    result.add(rl);
+        /**
+         * @return non-negative number or -1 if there are no digits at given position
+         */
+        private int parseNumber(ByteBuffer buffer, int from, int to) {
+            int value = 0;
+            int i = from;
+            while (i < to && isDigit(buffer.get(i))) {
+                value = value * 10 + (buffer.get(i) - '0');
+                i++;
             }
-        } catch (IOException e) {
-            throw new IllegalStateException(e);
+            end = i;
+            return i == from ? -1 : value;
         }
-        return result;
-    }
 
-    private static int prevMaf = -1;
-    private static int prevRpm = -1;
-    private static int prevWave = -1;
-
-    private static ReportLine handleOneLine(String line) {
-//        System.out.println(line);
-        Matcher m = LINE_PATTERN.matcher(line);
-        if (m.matches()) {
-            int time = Integer.valueOf(m.group(1));
-            MafValue maf = MafValue.valueOf(m.group(2));
-            RpmValue rpm = RpmValue.valueOf(m.group(3));
-            int wave = Integer.valueOf(m.group(4));
-
-            if (prevMaf == maf.getValue() && prevRpm == rpm.getValue() && prevWave == wave) {
-//                System.out.println("All the same...");
-                return null;
+        private static boolean matches(ByteBuffer buffer, int from, int to, byte[] expected) {
+            if (to - from < expected.length)
+                return false;
+            for (int i = 0; i < expected.length; i++) {
+                if (buffer.get(from + i) != expected[i])
+                    return false;
             }
+            return true;
+        }
 
-            //System.out.println(time + " m=" + maf + " r=" + rpm + " w=" + wave);
-            prevMaf = maf.getValue();
-            prevRpm = rpm.getValue();
-            prevWave = wave;
-            return new ReportLine(time, maf, rpm, wave);
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
         }
-        return null;
     }
 }
@@ -0,0 +1,253 @@
+package com.rusefi;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of the last N values (and optionally only values not older than 'duration' milliseconds) with
+ * mean, variance, min and max maintained incrementally - adding a value is O(1) (amortized for min/max) and
+ * reading any of these statistics does not copy the buffer.
+ * <p>
+ * Values and timestamps are kept in primitive rings, nothing is allocated per sample.
+ *
+ * @see SensorStats
+ * @see ClosedLoopControlQualityMetric
+ * @see CyclicBuffer
+ * @see TimeBasedBuffer
+ */
+public class WindowedStatistics implements DataBuffer {
+    public static final long NO_DURATION_LIMIT = Long.MAX_VALUE;
+
+    private final double[] values;
+    private final long[] timestamps;
+    private final long duration;
+    private final MonotonicQueue minQueue;
+    private final MonotonicQueue maxQueue;
+
+    /**
+     * sequence number of the next value, sequence number of the oldest value is 'next - size'
+     */
+    private long next;
+    private int size;
+
+    private double mean;
+    /**
+     * sum of squared deviations from current mean
+     */
+    private double m2;
+    /**
+     * incremental removal of values accumulates floating point error so once in a while we recompute from scratch
+     */
+    private int evictionsSinceRecompute;
+
+    public WindowedStatistics(int maxSize) {
+        this(maxSize, NO_DURATION_LIMIT);
+    }
+
+    /**
+     * @param maxSize  maximum number of values in the window
+     * @param duration maximum age of values in the window, in milliseconds
+     */
+    public WindowedStatistics(int maxSize, long duration) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize " + maxSize);
+        values = new double[maxSize];
+        timestamps = new long[maxSize];
+        this.duration = duration;
+        minQueue = new MonotonicQueue(maxSize, false);
+        maxQueue = new MonotonicQueue(maxSize, true);
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void clear() {
+        size = 0;
+        mean = m2 = 0;
+        evictionsSinceRecompute = 0;
+        minQueue.clear();
+        maxQueue.clear();
+    }
+
+    @Override
+    public void add(double value) {
+        add(duration == NO_DURATION_LIMIT ? 0 : currentTimeMillis(), value);
+    }
+
+    public synchronized void add(long timestamp, double value) {
+        truncate(timestamp);
+        if (size == values.length)
+            evictOldest();
+
+        int index = index(next);
+        values[index] = value;
+        timestamps[index] = timestamp;
+        minQueue.push(next);
+        maxQueue.push(next);
+        next++;
+        size++;
+
+        double delta = value - mean;
+        mean += delta / size;
+        m2 += delta * (value - mean);
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % values.length);
+    }
+
+    private void truncate(long now) {
+        if (duration == NO_DURATION_LIMIT)
+            return;
+        while (size > 0 && timestamps[index(next - size)] < now - duration)
+            evictOldest();
+    }
+
+    private void truncate() {
+        if (duration != NO_DURATION_LIMIT)
+            truncate(currentTimeMillis());
+    }
+
+    private void evictOldest() {
+        long oldest = next - size;
+        double value = values[index(oldest)];
+        minQueue.evict(oldest);
+        maxQueue.evict(oldest);
+        size--;
+        if (size == 0) {
+            mean = m2 = 0;
+            return;
+        }
+        double oldMean = mean;
+        mean = (oldMean * (size + 1) - value) / size;
+        m2 = Math.max(0, m2 - (value - oldMean) * (value - mean));
+
+        if (++evictionsSinceRecompute >= values.length)
+            recompute();
+    }
+
+    private void recompute() {
+        evictionsSinceRecompute = 0;
+        double sum = 0;
+        for (long s = next - size; s < next; s++)
+            sum += values[index(s)];
+        mean = sum / size;
+        double accumulator = 0;
+        for (long s = next - size; s < next; s++) {
+            double v = values[index(s)] - mean;
+            accumulator += v * v;
+        }
+        m2 = accumulator;
+    }
+
+    public synchronized int getSize() {
+        truncate();
+        return size;
+    }
+
+    public int getMaxSize() {
+        return values.length;
+    }
+
+    /**
+     * @return values from oldest to newest
+     */
+    @Override
+    public synchronized double[] getValues() {
+        truncate();
+        double[] result = new double[size];
+        for (int i = 0; i < size; i++)
+            result[i] = values[index(next - size + i)];
+        return result;
+    }
+
+    public synchronized double getMean() {
+        truncate();
+        return size == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Population variance of values in the window
+     */
+    public synchronized double getVariance() {
+        truncate();
+        return size == 0 ? Double.NaN : m2 / size;
+    }
+
+    /**
+     * Same definition as {@link DataBuffer#getStandardDeviation(double[])} (square root of sum of squared deviations,
+     * not normalized by sample count) so that existing thresholds keep their meaning.
+     */
+    public synchronized double getStandardDeviation() {
+        truncate();
+        return size == 0 ? Double.NaN : Math.sqrt(m2);
+    }
+
+    public synchronized double getMin() {
+        truncate();
+        return size == 0 ? Double.NaN : values[index(minQueue.peek())];
+    }
+
+    public synchronized double getMax() {
+        truncate();
+        return size == 0 ? Double.NaN : values[index(maxQueue.peek())];
+    }
+
+    /**
+     * Unlike other statistics percentile is not maintained incrementally: this sorts a copy of the window so
+     * invoke it on demand and not on every sample.
+     *
+     * @param percentile from 0 to 100
+     */
+    public synchronized double getPercentile(double percentile) {
+        double[] sorted = getValues();
+        if (sorted.length == 0)
+            return Double.NaN;
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+
+    /**
+     * Ring of sequence numbers with monotonic values, front is the current min or max of the window
+     */
+    private class MonotonicQueue {
+        private final long[] sequences;
+        private final boolean isMax;
+        private int head;
+        private int count;
+
+        MonotonicQueue(int capacity, boolean isMax) {
+            sequences = new long[capacity];
+            this.isMax = isMax;
+        }
+
+        void clear() {
+            head = count = 0;
+        }
+
+        long peek() {
+            return sequences[head];
+        }
+
+        void push(long sequence) {
+            double value = values[index(sequence)];
+            while (count > 0) {
+                double last = values[index(sequences[(head + count - 1) % sequences.length])];
+                if (isMax ? last > value : last < value)
+                    break;
+                count--;
+            }
+            sequences[(head + count) % sequences.length] = sequence;
+            count++;
+        }
+
+        void evict(long sequence) {
+            if (count > 0 && sequences[head] == sequence) {
+                head = (head + 1) % sequences.length;
+                count--;
+            }
+        }
+    }
+}
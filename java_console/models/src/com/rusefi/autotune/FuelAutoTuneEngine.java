@@ -0,0 +1,341 @@
+package com.rusefi.autotune;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static com.rusefi.autotune.MathUtil.square;
+import static com.rusefi.config.generated.Fields.FUEL_LOAD_COUNT;
+import static com.rusefi.config.generated.Fields.FUEL_RPM_COUNT;
+
+/**
+ * Fuel table optimization behind {@link FuelAutoTune}. Data points are binned by their
+ * {@link AfrDataPoint#PRESS_RT_32()}/{@link AfrDataPoint#RPM_RT_32()} cell once as they arrive so more points could be
+ * added between invocations of {@link #process}.
+ * <p>
+ * Deviation of a cell only depends on the value of that cell and the data points inside it, so adjusting one cell
+ * only needs to re-evaluate that cell - with sorted values and prefix sums that is a binary search. With smoothing a
+ * cell is also coupled with cells up to two steps away in the same row and column, so cells are processed in three
+ * diagonal 'colors' where cells of the same color do not affect each other and can be optimized in parallel.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ *
+ * @see FuelTunePane
+ */
+public class FuelAutoTuneEngine {
+    /**
+     * minimal number of measurements in cell to be considered
+     */
+    public static final int COUNT_THRESHOLD = 20;
+    private static final int COLORS = 3;
+    private static final double KSQ = 1000;
+    private static final double KE = 100;
+    private static final double KG = 100;
+
+    private final ForkJoinPool pool;
+    private final int maxPointsPerCell;
+    private final Random random = new Random();
+    /**
+     * normalized AFR of data points, indexed by [loadIndex][rpmIndex]
+     * GuardedBy(this)
+     */
+    private final double[][][] cellValues = new double[FUEL_LOAD_COUNT][FUEL_RPM_COUNT][];
+    private final int[][] cellCounts = new int[FUEL_LOAD_COUNT][FUEL_RPM_COUNT];
+    /**
+     * number of data points ever added to each cell, could be above number of points we keep
+     */
+    private final long[][] cellSeen = new long[FUEL_LOAD_COUNT][FUEL_RPM_COUNT];
+
+    public FuelAutoTuneEngine() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxPointsPerCell once a cell has this many points new points replace random old ones
+     *                         (reservoir sampling) so that memory usage does not grow over long sessions
+     */
+    public FuelAutoTuneEngine(int maxPointsPerCell) {
+        this(maxPointsPerCell, ForkJoinPool.commonPool());
+    }
+
+    public FuelAutoTuneEngine(int maxPointsPerCell, ForkJoinPool pool) {
+        if (maxPointsPerCell < COUNT_THRESHOLD)
+            throw new IllegalArgumentException("maxPointsPerCell " + maxPointsPerCell);
+        this.maxPointsPerCell = maxPointsPerCell;
+        this.pool = pool;
+        clear();
+    }
+
+    public synchronized void clear() {
+        for (int loadIndex = 0; loadIndex < FUEL_LOAD_COUNT; loadIndex++) {
+            for (int rpmIndex = 0; rpmIndex < FUEL_RPM_COUNT; rpmIndex++) {
+                cellValues[loadIndex][rpmIndex] = new double[Math.min(16, maxPointsPerCell)];
+                cellCounts[loadIndex][rpmIndex] = 0;
+                cellSeen[loadIndex][rpmIndex] = 0;
+            }
+        }
+    }
+
+    public synchronized void addPoints(Collection<AfrDataPoint> points) {
+        for (AfrDataPoint point : points)
+            addPoint(point);
+    }
+
+    public synchronized void addPoint(AfrDataPoint point) {
+        int loadIndex = point.PRESS_RT_32();
+        int rpmIndex = point.RPM_RT_32();
+        double normalizedAfr = point.getAfr() / FuelAutoTune._14_7;
+        long seen = ++cellSeen[loadIndex][rpmIndex];
+        double[] values = cellValues[loadIndex][rpmIndex];
+        int count = cellCounts[loadIndex][rpmIndex];
+        if (count == maxPointsPerCell) {
+            long slot = (long) (random.nextDouble() * seen);
+            if (slot < count)
+                values[(int) slot] = normalizedAfr;
+            return;
+        }
+        if (count == values.length)
+            cellValues[loadIndex][rpmIndex] = values = Arrays.copyOf(values, (int) Math.min(maxPointsPerCell, values.length * 2L));
+        values[count] = normalizedAfr;
+        cellCounts[loadIndex][rpmIndex] = count + 1;
+    }
+
+    public synchronized int getCount(int loadIndex, int rpmIndex) {
+        return cellCounts[loadIndex][rpmIndex];
+    }
+
+    public synchronized long getTotalSeen() {
+        long result = 0;
+        for (long[] seen : cellSeen) {
+            for (long count : seen)
+                result += count;
+        }
+        return result;
+    }
+
+    public synchronized int getTotalCount() {
+        int result = 0;
+        for (int[] counts : cellCounts) {
+            for (int count : counts)
+                result += count;
+        }
+        return result;
+    }
+
+    /**
+     * @param kgbcINIT current table, not modified
+     * @return optimized table
+     */
+    public Result process(boolean smooth, double step, double targetAFR, double[][] kgbcINIT) {
+        Cell[][] cells = snapshot(targetAFR / FuelAutoTune._14_7, kgbcINIT);
+        double[][] result = MathUtil.deepCopy(kgbcINIT);
+
+        Cell[][] colors = new Cell[smooth ? COLORS : 1][];
+        int[] colorSizes = new int[colors.length];
+        for (int i = 0; i < colors.length; i++)
+            colors[i] = new Cell[FUEL_LOAD_COUNT * FUEL_RPM_COUNT];
+        for (Cell[] row : cells) {
+            for (Cell cell : row) {
+                if (cell.count < COUNT_THRESHOLD)
+                    continue;
+                int color = smooth ? (cell.loadIndex + cell.rpmIndex) % COLORS : 0;
+                colors[color][colorSizes[color]++] = cell;
+            }
+        }
+
+        double minSQtotal = Double.MAX_VALUE;
+        double kgbcSQsumLastTotal = 1e+16;
+        int minK = 0;
+        while (minK <= 4) {
+            for (int color = 0; color < colors.length; color++)
+                pool.invoke(new CellTask(colors[color], 0, colorSizes[color], smooth, step, result));
+
+            double totalDeviation = getTotalDeviation(smooth, cells, result);
+            if (totalDeviation < minSQtotal)
+                minSQtotal = totalDeviation;
+            if (Math.abs(minSQtotal - kgbcSQsumLastTotal) < 1e-10)
+                minK++;
+            kgbcSQsumLastTotal = totalDeviation;
+        }
+        return new Result(result);
+    }
+
+    private synchronized Cell[][] snapshot(double normalizedTargetAfr, double[][] kgbcINIT) {
+        Cell[][] cells = new Cell[FUEL_LOAD_COUNT][FUEL_RPM_COUNT];
+        for (int loadIndex = 0; loadIndex < FUEL_LOAD_COUNT; loadIndex++) {
+            for (int rpmIndex = 0; rpmIndex < FUEL_RPM_COUNT; rpmIndex++) {
+                double[] sorted = Arrays.copyOf(cellValues[loadIndex][rpmIndex], cellCounts[loadIndex][rpmIndex]);
+                double factor = normalizedTargetAfr / kgbcINIT[loadIndex][rpmIndex];
+                cells[loadIndex][rpmIndex] = new Cell(loadIndex, rpmIndex, sorted, factor);
+            }
+        }
+        return cells;
+    }
+
+    private static double getTotalDeviation(boolean smooth, Cell[][] cells, double[][] result) {
+        double total = 0;
+        for (Cell[] row : cells) {
+            for (Cell cell : row)
+                total += cell.getDeviation(result[cell.loadIndex][cell.rpmIndex]);
+        }
+        if (!smooth)
+            return total;
+        double e = 0;
+        double g = 0;
+        for (int loadIndex = 0; loadIndex < FUEL_LOAD_COUNT; loadIndex++) {
+            for (int rpmIndex = 0; rpmIndex < FUEL_RPM_COUNT; rpmIndex++) {
+                if (loadIndex + 1 < FUEL_LOAD_COUNT)
+                    e += square(result[loadIndex][rpmIndex] - result[loadIndex + 1][rpmIndex]);
+                if (rpmIndex + 1 < FUEL_RPM_COUNT)
+                    e += square(result[loadIndex][rpmIndex] - result[loadIndex][rpmIndex + 1]);
+                if (loadIndex + 2 < FUEL_LOAD_COUNT)
+                    g += square(secondDifference(result, loadIndex, rpmIndex, 1, 0));
+                if (rpmIndex + 2 < FUEL_RPM_COUNT)
+                    g += square(secondDifference(result, loadIndex, rpmIndex, 0, 1));
+            }
+        }
+        return KSQ * total + KE * e + KG * g;
+    }
+
+    private static double secondDifference(double[][] table, int loadIndex, int rpmIndex, int dLoad, int dRpm) {
+        return table[loadIndex][rpmIndex]
+                - 2 * table[loadIndex + dLoad][rpmIndex + dRpm]
+                + table[loadIndex + 2 * dLoad][rpmIndex + 2 * dRpm];
+    }
+
+    /**
+     * Smoothing penalty of all first and second differences which involve given cell. All other smoothing terms do
+     * not depend on the value of this cell.
+     */
+    private static double getLocalSmoothing(double[][] table, int loadIndex, int rpmIndex) {
+        double e = 0;
+        double g = 0;
+        for (int d = -1; d <= 0; d++) {
+            if (inLoadRange(loadIndex + d, 1))
+                e += square(table[loadIndex + d][rpmIndex] - table[loadIndex + d + 1][rpmIndex]);
+            if (inRpmRange(rpmIndex + d, 1))
+                e += square(table[loadIndex][rpmIndex + d] - table[loadIndex][rpmIndex + d + 1]);
+        }
+        for (int d = -2; d <= 0; d++) {
+            if (inLoadRange(loadIndex + d, 2))
+                g += square(secondDifference(table, loadIndex + d, rpmIndex, 1, 0));
+            if (inRpmRange(rpmIndex + d, 2))
+                g += square(secondDifference(table, loadIndex, rpmIndex + d, 0, 1));
+        }
+        return KE * e + KG * g;
+    }
+
+    private static boolean inLoadRange(int start, int length) {
+        return start >= 0 && start + length < FUEL_LOAD_COUNT;
+    }
+
+    private static boolean inRpmRange(int start, int length) {
+        return start >= 0 && start + length < FUEL_RPM_COUNT;
+    }
+
+    /**
+     * Optimize one table cell: keep stepping its value in the direction which reduces deviation, reversing direction
+     * once deviation stops improving, until the best value has been revisited a few times.
+     */
+    private static void optimizeCell(boolean smooth, double step, Cell cell, double[][] result) {
+        int loadIndex = cell.loadIndex;
+        int rpmIndex = cell.rpmIndex;
+        double deviation = Double.MAX_VALUE;
+        double minDeviation = Double.MAX_VALUE;
+        double prevDeviation;
+
+        double currentStep = step;
+        int goodValueCounter = 0;
+        while (goodValueCounter <= 4) {
+            prevDeviation = deviation;
+
+            deviation = cell.getDeviation(result[loadIndex][rpmIndex]);
+            if (smooth)
+                deviation = KSQ * deviation + getLocalSmoothing(result, loadIndex, rpmIndex);
+
+            if (deviation >= prevDeviation)
+                currentStep = -currentStep;
+            result[loadIndex][rpmIndex] += currentStep;
+
+            minDeviation = Math.min(minDeviation, deviation);
+            if (Math.abs(minDeviation - prevDeviation) < 1e-10)
+                goodValueCounter++;
+        }
+    }
+
+    /**
+     * Sorted normalized AFR values of one cell with prefix sums so that sum of absolute deviations from any value
+     * takes O(log(n))
+     */
+    private static class Cell {
+        private final int loadIndex;
+        private final int rpmIndex;
+        private final int count;
+        private final double[] sorted;
+        private final double[] prefixSums;
+        /**
+         * normalized target AFR divided by initial value of this cell
+         */
+        private final double factor;
+
+        Cell(int loadIndex, int rpmIndex, double[] values, double factor) {
+            this.loadIndex = loadIndex;
+            this.rpmIndex = rpmIndex;
+            this.factor = factor;
+            count = values.length;
+            sorted = values;
+            Arrays.sort(sorted);
+            prefixSums = new double[count + 1];
+            for (int i = 0; i < count; i++)
+                prefixSums[i + 1] = prefixSums[i] + sorted[i];
+        }
+
+        /**
+         * @return sum of |afr - normalizedTargetAfr * value / initialValue| over all data points of this cell
+         */
+        double getDeviation(double value) {
+            if (count == 0)
+                return 0;
+            double expected = factor * value;
+            int below = Arrays.binarySearch(sorted, expected);
+            if (below < 0)
+                below = -below - 1;
+            double sumBelow = prefixSums[below];
+            double sumAbove = prefixSums[count] - sumBelow;
+            return (expected * below - sumBelow) + (sumAbove - expected * (count - below));
+        }
+    }
+
+    private static class CellTask extends RecursiveAction {
+        private static final int THRESHOLD = 4;
+        private final Cell[] cells;
+        private final int from;
+        private final int to;
+        private final boolean smooth;
+        private final double step;
+        private final double[][] result;
+
+        CellTask(Cell[] cells, int from, int to, boolean smooth, double step, double[][] result) {
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+            this.smooth = smooth;
+            this.step = step;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++)
+                    optimizeCell(smooth, step, cells[i], result);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new CellTask(cells, from, middle, smooth, step, result),
+                    new CellTask(cells, middle, to, smooth, step, result));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.rusefi.autotune.test;
+
+import com.rusefi.autotune.AfrDataPoint;
+import com.rusefi.autotune.FuelAutoTuneEngine;
+import com.rusefi.autotune.Result;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.rusefi.autotune.test.FuelAutoTuneTest.createVeTable;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FuelAutoTuneEngineTest {
+    private static final double EPS = 0.00001;
+
+    @Test
+    public void testIncrementalSameAsBatch() {
+        Random r = new Random(0);
+        List<AfrDataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+            points.add(AfrDataPoint.valueOf(11 + r.nextDouble() * 6, 500 + r.nextInt(6000), r.nextDouble() * 110));
+
+        FuelAutoTuneEngine batch = new FuelAutoTuneEngine();
+        batch.addPoints(points);
+
+        FuelAutoTuneEngine incremental = new FuelAutoTuneEngine();
+        incremental.addPoints(points.subList(0, 1000));
+        incremental.process(true, 0.01, 14.7, createVeTable(0.7));
+        incremental.addPoints(points.subList(1000, points.size()));
+
+        assertEquals(5000, incremental.getTotalCount());
+        for (boolean smooth : new boolean[]{false, true}) {
+            Result expected = batch.process(smooth, 0.01, 14.7, createVeTable(0.7));
+            Result actual = incremental.process(smooth, 0.01, 14.7, createVeTable(0.7));
+            for (int i = 0; i < expected.getKgbcRES().length; i++)
+                assertArrayEquals(expected.getKgbcRES()[i], actual.getKgbcRES()[i], EPS);
+        }
+    }
+
+    @Test
+    public void testClear() {
+        FuelAutoTuneEngine engine = new FuelAutoTuneEngine();
+        for (int i = 0; i < 200; i++)
+            engine.addPoint(AfrDataPoint.valueOf(10, 1500, 50));
+        assertEquals(200, engine.getCount(6, 3));
+        assertEquals(0.5, engine.process(false, 0.1, 14.7, createVeTable(0.7)).getKgbcRES()[6][3], EPS);
+
+        engine.clear();
+        assertEquals(0, engine.getTotalCount());
+        assertEquals(0.7, engine.process(false, 0.1, 14.7, createVeTable(0.7)).getKgbcRES()[6][3], EPS);
+    }
+
+    @Test
+    public void testBoundedCell() {
+        FuelAutoTuneEngine engine = new FuelAutoTuneEngine(100);
+        for (int i = 0; i < 10000; i++)
+            engine.addPoint(AfrDataPoint.valueOf(10, 1500, 50));
+        assertEquals(100, engine.getCount(6, 3));
+        assertEquals(10000, engine.getTotalSeen());
+        assertEquals(0.5, engine.process(false, 0.1, 14.7, createVeTable(0.7)).getKgbcRES()[6][3], EPS);
+    }
+}
@@ -0,0 +1,80 @@
+package com.rusefi.config.test;
+
+import com.opensr5.ConfigurationImage;
+import com.opensr5.ini.FieldLayout;
+import com.opensr5.ini.IniFileModel;
+import com.opensr5.ini.IniFileReader;
+import com.rusefi.config.Field;
+import com.rusefi.config.FieldAccessor;
+import com.rusefi.config.FieldType;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class FieldAccessorTest {
+    @Test
+    public void testSameAsByteBuffer() {
+        byte[] content = new byte[64];
+        new Random(0).nextBytes(content);
+        ConfigurationImage ci = new ConfigurationImage(content);
+
+        for (int offset = 0; offset < 32; offset += 4) {
+            ByteBuffer bb = ci.getByteBuffer(offset, 4);
+            assertEquals(bb.get(offset), new FieldAccessor(offset, FieldType.INT8, 1).getDouble(ci), 0);
+            assertEquals(bb.get(offset) & 0xFF, new FieldAccessor(offset, FieldType.UINT8, 1).getDouble(ci), 0);
+            assertEquals(bb.getShort(offset), new FieldAccessor(offset, FieldType.INT16, 1).getDouble(ci), 0);
+            assertEquals(bb.getShort(offset) & 0xFFFF, new FieldAccessor(offset, FieldType.UINT16, 1).getDouble(ci), 0);
+            assertEquals(bb.getInt(offset), new FieldAccessor(offset, FieldType.INT, 1).getDouble(ci), 0);
+            assertEquals(bb.getFloat(offset) * 0.1, new FieldAccessor(offset, FieldType.FLOAT, 0.1).getDouble(ci), 0);
+            for (int bit = 0; bit < 32; bit++) {
+                Field f = new Field("", offset, FieldType.BIT, bit);
+                assertEquals((bb.getInt(offset) >> bit) & 1, f.getDoubleValue(ci, 1), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testWrite() {
+        ConfigurationImage ci = new ConfigurationImage(16);
+        FieldAccessor s16 = new FieldAccessor(2, FieldType.INT16, Field.NO_BIT_OFFSET, 0.5, 3);
+        s16.setDouble(ci.getContent(), 1, -100);
+        assertEquals(-200, ci.getByteBuffer(4, 2).getShort());
+        assertEquals(-100, s16.getDouble(ci, 1), 0);
+
+        FieldAccessor f = new FieldAccessor(8, FieldType.FLOAT, 1);
+        f.setDouble(ci, 3.25);
+        assertEquals(3.25, ci.getByteBuffer(8, 4).getFloat(), 0);
+    }
+
+    @Test
+    public void testFindField() {
+        Field[] values = {new Field("rpm", 0, FieldType.INT), new Field("Cyl_Count", 4, FieldType.INT)};
+        assertEquals(values[0], Field.findField(values, "", "RPM"));
+        assertEquals(values[1], Field.findField(values, "cyl", "count"));
+    }
+
+    @Test
+    public void testLayout() {
+        String string = "page = 1\n" +
+                "scale\t= scalar, U16,\t0,\t\"ms\", 0.01, 0, 0, 100, 1\n" +
+                "\tbins\t = array, S08, 2, [2x2], \"\", 2, 0, 0.0, 18000, 2\n" +
+                "\tname\t= bits,    U32,   \t8, [3:5], \"false\", \"true\"\n";
+        IniFileModel model = new IniFileModel().readIniFile(IniFileReader.read(new ByteArrayInputStream(string.getBytes())));
+        FieldLayout layout = new FieldLayout(model);
+        assertEquals(2, layout.getFieldCount());
+        assertEquals(5, layout.getSize());
+
+        ConfigurationImage ci = new ConfigurationImage(new byte[]{(byte) 0xE8, 3, 1, 2, 3, -4, 0, 0, 0, 0, 0, 0});
+        double[] values = layout.decode(ci);
+        int bins = layout.getIndex("BINS");
+        assertEquals(10, values[layout.getStart(layout.getIndex("scale"))], 1e-9);
+        assertEquals(2, values[layout.getStart(bins)], 0);
+        assertEquals(-8, values[layout.getStart(bins) + 3], 0);
+        assertEquals(-1, layout.getIndex("name"));
+        assertEquals(model.allIniFields.get("bins").getValue(ci), "\n\t 2.0 4.0\n\t 6.0 -8.0\n");
+    }
+}
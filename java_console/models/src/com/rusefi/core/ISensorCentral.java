@@ -16,4 +16,13 @@ public interface ISensorCentral {
     void removeListener(Sensor sensor, SensorCentral.SensorListener listener);
 
     ValueSource getValueSource(Sensor sensor);
+
+    /**
+     * Invoked once all sensors of one output channels frame were updated
+     */
+    void frameCompleted();
+
+    void addFrameListener(SensorCentral.FrameListener listener);
+
+    void removeFrameListener(SensorCentral.FrameListener listener);
 }
@@ -20,6 +20,7 @@ public class SensorCentral implements ISensorCentral {
 
     private final Map<Sensor, List<SensorListener>> allListeners = new EnumMap<>(Sensor.class);
     private SensorListener2 anySensorListener;
+    private final List<FrameListener> frameListeners = new CopyOnWriteArrayList<>();
 
     public static ISensorCentral getInstance() {
         return INSTANCE;
@@ -92,6 +93,22 @@ public class SensorCentral implements ISensorCentral {
         return () -> SensorCentral.this.getValue(sensor);
     }
 
+    @Override
+    public void frameCompleted() {
+        for (FrameListener listener : frameListeners)
+            listener.onFrame();
+    }
+
+    @Override
+    public void addFrameListener(FrameListener listener) {
+        frameListeners.add(listener);
+    }
+
+    @Override
+    public void removeFrameListener(FrameListener listener) {
+        frameListeners.remove(listener);
+    }
+
     public interface SensorListener {
         void onSensorUpdate(double value);
     }
@@ -99,4 +116,8 @@ public class SensorCentral implements ISensorCentral {
     public interface SensorListener2 {
         void onSensorUpdate(Sensor sensor, double value);
     }
+
+    public interface FrameListener {
+        void onFrame();
+    }
 }
@@ -1,15 +1,20 @@
 package com.rusefi.core;
 
-import com.rusefi.CyclicBuffer;
-import com.rusefi.DataBuffer;
 import com.rusefi.SensorConversion;
+import com.rusefi.WindowedStatistics;
 import com.rusefi.waves.EngineReport;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 /**
  * 7/26/13
  * Andrey Belomutskiy, (c) 2013-2020
  */
 public class SensorStats {
+    public static final int WINDOW_SIZE = 30;
+
+    private static final Map<Sensor, WindowedStatistics> windows = new EnumMap<>(Sensor.class);
 
     /**
      * here we listen of source sensor
@@ -46,21 +51,42 @@ public class SensorStats {
      * http://en.wikipedia.org/wiki/Standard_deviation
      */
     public static void startStandardDeviation(Sensor source, final Sensor destination) {
-        final CyclicBuffer cb = new CyclicBuffer(30);
+        startWindowMetric(source, destination, WindowedStatistics::getStandardDeviation);
+    }
+
+    /**
+     * Posts a statistic of the last {@link #WINDOW_SIZE} values of source sensor to destination once the window is full.
+     * All metrics of the same source sensor share one window which is updated once per sensor update.
+     */
+    public static void startWindowMetric(Sensor source, final Sensor destination, WindowMetric metric) {
+        WindowedStatistics window = getWindow(source);
 
         SensorCentral.getInstance().addListener(source, new SensorCentral.SensorListener() {
                     @Override
                     public void onSensorUpdate(double value) {
-                        cb.add(value);
-                        if (cb.getSize() == cb.getMaxSize()) {
-                            double stdDev = DataBuffer.getStandardDeviation(cb.getValues());
-                            SensorCentral.getInstance().setValue(stdDev, destination);
-                        }
+                        if (window.getSize() == window.getMaxSize())
+                            SensorCentral.getInstance().setValue(metric.getValue(window), destination);
                     }
                 }
         );
     }
 
+    /**
+     * @return shared window of recent values of specified sensor
+     */
+    public static WindowedStatistics getWindow(Sensor source) {
+        synchronized (windows) {
+            WindowedStatistics window = windows.get(source);
+            if (window == null) {
+                WindowedStatistics newWindow = new WindowedStatistics(WINDOW_SIZE);
+                // this listener is registered before any metric listener so metrics always see the fresh value
+                SensorCentral.getInstance().addListener(source, newWindow::add);
+                windows.put(source, window = newWindow);
+            }
+            return window;
+        }
+    }
+
     public static void startDelta(Sensor input1, final Sensor input2, final Sensor destination) {
         SensorCentral.getInstance().addListener(input1, new SensorCentral.SensorListener() {
             @Override
@@ -80,4 +106,8 @@ public class SensorStats {
             }
         });
     }
+
+    public interface WindowMetric {
+        double getValue(WindowedStatistics window);
+    }
 }
@@ -0,0 +1,324 @@
+package com.rusefi.fsio;
+
+import java.util.*;
+
+/**
+ * FSIO expression compiled once into an opcode array, same semantics as firmware fsio_core.cpp: values are floats,
+ * any non-zero value is true, max/min/if and operand order match LECalculator.
+ * <p>
+ * Anything which is not a number, an operator or an FSIO method is a variable, see {@link #getVariables()}. Variable
+ * values are provided by index either as one value per variable ({@link #evaluate(double[])}) or as one column per
+ * variable ({@link #evaluate(double[][], int)}) in which case each opcode is applied to the whole column at once.
+ * <p>
+ * Stack balance is validated at compile time so evaluation never checks stack size.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ * @see FsioVariables
+ */
+public class FsioProgram {
+    private static final int CONST = 0;
+    private static final int VARIABLE = 1;
+    private static final int AND = 2;
+    private static final int OR = 3;
+    private static final int NOT = 4;
+    private static final int ADD = 5;
+    private static final int SUBTRACT = 6;
+    private static final int MULTIPLY = 7;
+    private static final int DIVIDE = 8;
+    private static final int MORE = 9;
+    private static final int MORE_OR_EQUAL = 10;
+    private static final int LESS = 11;
+    private static final int LESS_OR_EQUAL = 12;
+    private static final int MAX = 13;
+    private static final int MIN = 14;
+    private static final int IF = 15;
+    private static final int FSIO_SETTING = 16;
+    /**
+     * method which depends on ECU state not available on the console: pops arguments, pushes NaN
+     */
+    private static final int UNAVAILABLE = 17;
+
+    private static final Map<String, Integer> OPERATIONS = new HashMap<>();
+    /**
+     * number of values popped by each opcode, all opcodes push one value
+     */
+    private static final int[] POPS = {0, 0, 2, 2, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 1, -1};
+    private static final Map<String, Integer> UNAVAILABLE_METHODS = new HashMap<>();
+
+    static {
+        OPERATIONS.put("and", AND);
+        OPERATIONS.put("&", AND);
+        OPERATIONS.put("or", OR);
+        OPERATIONS.put("|", OR);
+        OPERATIONS.put("not", NOT);
+        OPERATIONS.put("+", ADD);
+        OPERATIONS.put("-", SUBTRACT);
+        OPERATIONS.put("*", MULTIPLY);
+        OPERATIONS.put("/", DIVIDE);
+        OPERATIONS.put(">", MORE);
+        OPERATIONS.put(">=", MORE_OR_EQUAL);
+        OPERATIONS.put("<", LESS);
+        OPERATIONS.put("<=", LESS_OR_EQUAL);
+        OPERATIONS.put("max", MAX);
+        OPERATIONS.put("min", MIN);
+        OPERATIONS.put("if", IF);
+        OPERATIONS.put("fsio_setting", FSIO_SETTING);
+
+        UNAVAILABLE_METHODS.put("fsio_table", 3);
+        UNAVAILABLE_METHODS.put("fsio_analog_input", 1);
+        UNAVAILABLE_METHODS.put("fsio_digital_input", 1);
+    }
+
+    private final String rpn;
+    private final int[] code;
+    /**
+     * constant value, variable index or number of arguments depending on opcode
+     */
+    private final int[] arguments;
+    private final double[] constants;
+    private final List<String> variables;
+    /**
+     * stack size after each opcode
+     */
+    private final int[] depthAfter;
+    private final int maxDepth;
+    private final double[] settings;
+
+    private FsioProgram(String rpn, int[] code, int[] arguments, double[] constants, List<String> variables,
+                        int[] depthAfter, int maxDepth, double[] settings) {
+        this.rpn = rpn;
+        this.code = code;
+        this.arguments = arguments;
+        this.constants = constants;
+        this.variables = variables;
+        this.depthAfter = depthAfter;
+        this.maxDepth = maxDepth;
+        this.settings = settings;
+    }
+
+    /**
+     * @param rpn expression in the form firmware reads it, for instance "rpm 2 fsio_setting >"
+     * @throws IllegalArgumentException if expression would not produce exactly one value
+     */
+    public static FsioProgram compile(String rpn) {
+        String[] tokens = rpn.trim().split(" +");
+        int[] code = new int[tokens.length];
+        int[] arguments = new int[tokens.length];
+        int[] depthAfter = new int[tokens.length];
+        List<Double> constants = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int depth = 0;
+        int maxDepth = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.isEmpty())
+                throw new IllegalArgumentException("Empty expression");
+            String name = token.toLowerCase();
+            int pops;
+            if (Character.isDigit(token.charAt(0))) {
+                code[i] = CONST;
+                arguments[i] = constants.size();
+                // firmware keeps all values as float
+                constants.add((double) parseFloat(token));
+                pops = 0;
+            } else if (OPERATIONS.containsKey(name)) {
+                code[i] = OPERATIONS.get(name);
+                pops = POPS[code[i]];
+            } else if (UNAVAILABLE_METHODS.containsKey(name)) {
+                code[i] = UNAVAILABLE;
+                pops = arguments[i] = UNAVAILABLE_METHODS.get(name);
+            } else {
+                code[i] = VARIABLE;
+                int index = variables.indexOf(name);
+                if (index == -1) {
+                    index = variables.size();
+                    variables.add(name);
+                }
+                arguments[i] = index;
+                pops = 0;
+            }
+            if (depth < pops)
+                throw new IllegalArgumentException("Not enough values for " + token + " in " + rpn);
+            depth = depth - pops + 1;
+            depthAfter[i] = depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        if (depth != 1)
+            throw new IllegalArgumentException("Expected one result but got " + depth + " in " + rpn);
+        double[] values = new double[constants.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = constants.get(i);
+        return new FsioProgram(rpn, code, arguments, values, Collections.unmodifiableList(variables), depthAfter, maxDepth,
+                new double[0]);
+    }
+
+    private static float parseFloat(String token) {
+        try {
+            return Float.parseFloat(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number " + token);
+        }
+    }
+
+    /**
+     * @return lower case variable names in order of first use, this is the order of evaluation input
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @param settings values of fsio_setting 1, 2, ...; fsio_setting outside of this range is NaN same as in firmware
+     * @return same program with given settings
+     */
+    public FsioProgram withSettings(double... settings) {
+        return new FsioProgram(rpn, code, arguments, constants, variables, depthAfter, maxDepth, settings.clone());
+    }
+
+    public double evaluate(double[] values) {
+        double[] stack = new double[maxDepth];
+        int top = -1;
+        for (int i = 0; i < code.length; i++) {
+            switch (code[i]) {
+                case CONST:
+                    stack[++top] = constants[arguments[i]];
+                    break;
+                case VARIABLE:
+                    stack[++top] = (float) values[arguments[i]];
+                    break;
+                case NOT:
+                    stack[top] = toDouble(stack[top] == 0);
+                    break;
+                case IF: {
+                    double vFalse = stack[top--];
+                    double vTrue = stack[top--];
+                    stack[top] = stack[top] != 0 ? vTrue : vFalse;
+                    break;
+                }
+                case FSIO_SETTING:
+                    stack[top] = getSetting(stack[top]);
+                    break;
+                case UNAVAILABLE:
+                    top -= arguments[i] - 1;
+                    stack[top] = Double.NaN;
+                    break;
+                default: {
+                    double v2 = stack[top--];
+                    stack[top] = binary(code[i], stack[top], v2);
+                }
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Vectorized evaluation: each opcode is applied to a whole column before moving to the next opcode
+     *
+     * @param columns one column per {@link #getVariables()} entry, each at least 'rows' long
+     * @return one value per row
+     */
+    public double[] evaluate(double[][] columns, int rows) {
+        if (columns.length != variables.size())
+            throw new IllegalArgumentException("Expected " + variables.size() + " columns for " + variables);
+        double[][] stack = new double[maxDepth][rows];
+        int depth = 0;
+        for (int i = 0; i < code.length; i++) {
+            switch (code[i]) {
+                case CONST:
+                    Arrays.fill(stack[depth], constants[arguments[i]]);
+                    break;
+                case VARIABLE: {
+                    double[] column = columns[arguments[i]];
+                    double[] target = stack[depth];
+                    for (int r = 0; r < rows; r++)
+                        target[r] = (float) column[r];
+                    break;
+                }
+                default:
+                    applyToColumns(stack, depth - 1, i, rows);
+            }
+            depth = depthAfter[i];
+        }
+        return stack[0];
+    }
+
+    private void applyToColumns(double[][] stack, int top, int i, int rows) {
+        int op = code[i];
+        switch (op) {
+            case NOT: {
+                double[] v = stack[top];
+                for (int r = 0; r < rows; r++)
+                    v[r] = toDouble(v[r] == 0);
+                break;
+            }
+            case IF: {
+                double[] cond = stack[top - 2];
+                double[] vTrue = stack[top - 1];
+                double[] vFalse = stack[top];
+                for (int r = 0; r < rows; r++)
+                    cond[r] = cond[r] != 0 ? vTrue[r] : vFalse[r];
+                break;
+            }
+            case FSIO_SETTING: {
+                double[] v = stack[top];
+                for (int r = 0; r < rows; r++)
+                    v[r] = getSetting(v[r]);
+                break;
+            }
+            case UNAVAILABLE:
+                Arrays.fill(stack[top - arguments[i] + 1], 0, rows, Double.NaN);
+                break;
+            default: {
+                double[] v1 = stack[top - 1];
+                double[] v2 = stack[top];
+                for (int r = 0; r < rows; r++)
+                    v1[r] = binary(op, v1[r], v2[r]);
+            }
+        }
+    }
+
+    private double getSetting(double humanIndex) {
+        int index = (int) humanIndex - 1;
+        return index >= 0 && index < settings.length ? (float) settings[index] : Double.NaN;
+    }
+
+    private static double binary(int op, double v1, double v2) {
+        switch (op) {
+            case AND:
+                return toDouble(v1 != 0 && v2 != 0);
+            case OR:
+                return toDouble(v1 != 0 || v2 != 0);
+            case ADD:
+                return (float) (v1 + v2);
+            case SUBTRACT:
+                return (float) (v1 - v2);
+            case MULTIPLY:
+                return (float) (v1 * v2);
+            case DIVIDE:
+                return (float) (v1 / v2);
+            case MORE:
+                return toDouble(v1 > v2);
+            case MORE_OR_EQUAL:
+                return toDouble(v1 >= v2);
+            case LESS:
+                return toDouble(v1 < v2);
+            case LESS_OR_EQUAL:
+                return toDouble(v1 <= v2);
+            case MAX:
+                return v1 > v2 ? v1 : v2;
+            case MIN:
+                return v1 < v2 ? v1 : v2;
+            default:
+                throw new IllegalStateException("Unexpected opcode " + op);
+        }
+    }
+
+    private static double toDouble(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "FsioProgram{" + rpn + '}';
+    }
+}
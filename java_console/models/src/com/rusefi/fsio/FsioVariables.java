@@ -0,0 +1,83 @@
+package com.rusefi.fsio;
+
+import com.rusefi.core.Sensor;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * FSIO variable names which have a matching {@link Sensor}, so that a {@link FsioProgram} could be evaluated against
+ * live sensor values or against recorded log columns.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class FsioVariables {
+    private static final Map<String, Sensor> SENSORS = new HashMap<>();
+
+    static {
+        SENSORS.put("rpm", Sensor.RPM);
+        SENSORS.put("tps", Sensor.TPS);
+        SENSORS.put("pps", Sensor.PPS);
+        SENSORS.put("maf", Sensor.MAF);
+        SENSORS.put("map", Sensor.MAP);
+        SENSORS.put("vbatt", Sensor.VBATT);
+        SENSORS.put("coolant", Sensor.CLT);
+        SENSORS.put("ivvt", Sensor.vvtPosition);
+        SENSORS.put("time_since_boot", Sensor.TIME_SECONDS);
+    }
+
+    /**
+     * @return null if variable does not have a matching sensor
+     */
+    public static Sensor getSensor(String variable) {
+        return SENSORS.get(variable.toLowerCase());
+    }
+
+    /**
+     * One evaluation against current values, for instance SensorCentral.getInstance()::getValue
+     *
+     * @param overrides values of variables without a sensor like 'fan' or 'self', these also win over sensor values
+     */
+    public static double evaluate(FsioProgram program, Function<Sensor, Double> values, Map<String, Double> overrides) {
+        List<String> variables = program.getVariables();
+        double[] input = new double[variables.size()];
+        for (int i = 0; i < input.length; i++) {
+            String variable = variables.get(i);
+            Double override = overrides.get(variable);
+            input[i] = override != null ? override : values.apply(getRequiredSensor(variable));
+        }
+        return program.evaluate(input);
+    }
+
+    /**
+     * Vectorized evaluation over recorded columns
+     *
+     * @param columns   sensor to its recorded values
+     * @param overrides constant values of variables without a recorded sensor
+     */
+    public static double[] evaluate(FsioProgram program, Map<Sensor, double[]> columns, int rows, Map<String, Double> overrides) {
+        List<String> variables = program.getVariables();
+        double[][] input = new double[variables.size()][];
+        for (int i = 0; i < input.length; i++) {
+            String variable = variables.get(i);
+            Double override = overrides.get(variable);
+            if (override != null) {
+                input[i] = new double[rows];
+                Arrays.fill(input[i], override);
+                continue;
+            }
+            Sensor sensor = getRequiredSensor(variable);
+            input[i] = columns.get(sensor);
+            if (input[i] == null)
+                throw new IllegalArgumentException("No recorded values of " + sensor + " for " + variable);
+        }
+        return program.evaluate(input, rows);
+    }
+
+    private static Sensor getRequiredSensor(String variable) {
+        Sensor sensor = getSensor(variable);
+        if (sensor == null)
+            throw new IllegalArgumentException("No sensor for '" + variable + "', please provide a value");
+        return sensor;
+    }
+}
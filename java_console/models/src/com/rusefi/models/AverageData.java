@@ -45,14 +45,14 @@ public class AverageData {
 
             int counter = 0;
             double acc = 0;
+            Set<Double> yRange = data.getYSet().tailSet(fromY_).headSet(toY_);
             for (Double x : xRange) {
-                YAxisData yData = data.getYAxis(x);
-
-                Set<Double> yRange = yData.getYs().tailSet(fromY_).headSet(toY_);
-
                 for (double y : yRange) {
+                    float value = data.getValueAt(x, y);
+                    if (Float.isNaN(value))
+                        continue;
                     counter++;
-                    acc += yData.getValue(y);
+                    acc += value;
                 }
             }
 
@@ -2,24 +2,48 @@ package com.rusefi.models;
 
 import com.rusefi.FileLog;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.NavigableSet;
-import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
+ * Dense grid of Z values over all distinct X and Y values seen so far. Each cell keeps the average of values added
+ * into it, cells without any values are NaN.
+ * <p>
+ * Axes and cells are primitive arrays: lookup is a binary search over each axis, a new axis value re-lays the grid
+ * out once (use {@link #addPoints} to insert many new axis values at once). For live data, which could have any
+ * number of distinct values, use {@link #XYData(double, double)} so that values are snapped to a fixed resolution and
+ * the grid stays small.
+ * <p>
  * Date: 3/24/13
  * Andrey Belomutskiy, (c) 2013-2020
  *
  * @see com.rusefi.file.TableGenerator
  */
 public class XYData {
-    @NotNull
-    private final TreeMap<Double, YAxisData> yDatas = new TreeMap<Double, YAxisData>();
+    private static final double[] EMPTY = new double[0];
+
+    /**
+     * axis resolution, zero if values are used as is
+     */
+    private final double xStep;
+    private final double yStep;
+
+    private double[] xs = EMPTY;
+    private double[] ys = EMPTY;
+    /**
+     * indexed by [xIndex * ys.length + yIndex]
+     */
+    private float[] totals = new float[0];
+    private int[] counts = new int[0];
+
     private double maxXValue;
     private double minXValue;
 
@@ -29,29 +53,143 @@ public class XYData {
     String date = FileLog.getDate();
 
     public XYData() {
+        this(0, 0);
+    }
+
+    /**
+     * @param xStep X values are rounded to a multiple of this step, zero to keep values as is
+     */
+    public XYData(double xStep, double yStep) {
+        if (xStep < 0 || yStep < 0)
+            throw new IllegalArgumentException("Steps " + xStep + " " + yStep);
+        this.xStep = xStep;
+        this.yStep = yStep;
         clear();
     }
 
-    public float getValue(double x, double y) {
-        YAxisData yAxis = findYAxis(x);
-        if (yAxis == null)
+    private static double snap(double value, double step) {
+        return step == 0 ? value : Math.round(value / step) * step;
+    }
+
+    /**
+     * @return bilinear interpolation between values of the grid cells around (x, y), empty cells are ignored. If all
+     * these cells are empty, value of the nearest non-empty cell.
+     */
+    public synchronized float getValue(double x, double y) {
+        if (xs.length == 0)
             return Float.NaN; // empty map?
-        return yAxis.findZ(y);
+        int x1 = floorIndex(xs, x);
+        int x2 = Math.min(x1 + 1, xs.length - 1);
+        int y1 = floorIndex(ys, y);
+        int y2 = Math.min(y1 + 1, ys.length - 1);
+        double tx = fraction(xs, x1, x2, x);
+        double ty = fraction(ys, y1, y2, y);
+
+        double weights = 0;
+        double accumulator = 0;
+        for (int corner = 0; corner < 4; corner++) {
+            boolean isHighX = (corner & 1) != 0;
+            boolean isHighY = (corner & 2) != 0;
+            double weight = (isHighX ? tx : 1 - tx) * (isHighY ? ty : 1 - ty);
+            int index = index(isHighX ? x2 : x1, isHighY ? y2 : y1);
+            if (weight == 0 || counts[index] == 0)
+                continue;
+            weights += weight;
+            accumulator += weight * totals[index] / counts[index];
+        }
+        if (weights == 0)
+            return getNearestValue(x1 + tx, y1 + ty);
+        return (float) (accumulator / weights);
+    }
+
+    /**
+     * Distance is measured in grid cells, cells are visited in growing square rings around the point. On a tie the
+     * cell with lower X and then lower Y wins, same as the floor lookup we used to have.
+     */
+    private float getNearestValue(double xPosition, double yPosition) {
+        int xCenter = (int) Math.round(xPosition);
+        int yCenter = (int) Math.round(yPosition);
+        int maxRadius = Math.max(xs.length, ys.length);
+        int[] nearest = {-1};
+        double[] nearestDistance = {Double.MAX_VALUE};
+        for (int radius = 0; radius <= maxRadius; radius++) {
+            // cells of this and further rings are at least (radius - 0.5) cells away
+            if (nearest[0] != -1 && (radius - 0.5) * (radius - 0.5) > nearestDistance[0])
+                break;
+            for (int xIndex = Math.max(0, xCenter - radius); xIndex <= Math.min(xs.length - 1, xCenter + radius); xIndex++) {
+                if (Math.abs(xIndex - xCenter) == radius) {
+                    for (int yIndex = Math.max(0, yCenter - radius); yIndex <= Math.min(ys.length - 1, yCenter + radius); yIndex++)
+                        visit(xIndex, yIndex, xPosition, yPosition, nearest, nearestDistance);
+                } else {
+                    // inner cells of the ring were visited already
+                    visit(xIndex, yCenter - radius, xPosition, yPosition, nearest, nearestDistance);
+                    visit(xIndex, yCenter + radius, xPosition, yPosition, nearest, nearestDistance);
+                }
+            }
+        }
+        return nearest[0] == -1 ? Float.NaN : totals[nearest[0]] / counts[nearest[0]];
+    }
+
+    private void visit(int xIndex, int yIndex, double xPosition, double yPosition, int[] nearest, double[] nearestDistance) {
+        if (yIndex < 0 || yIndex >= ys.length)
+            return;
+        int index = index(xIndex, yIndex);
+        if (counts[index] == 0)
+            return;
+        double dx = xIndex - xPosition;
+        double dy = yIndex - yPosition;
+        double distance = dx * dx + dy * dy;
+        if (distance < nearestDistance[0] || distance == nearestDistance[0] && index < nearest[0]) {
+            nearest[0] = index;
+            nearestDistance[0] = distance;
+        }
+    }
+
+    /**
+     * @return value of the exact grid cell or NaN if there is no such cell or it is empty
+     */
+    public synchronized float getValueAt(double x, double y) {
+        int xIndex = Arrays.binarySearch(xs, snap(x, xStep));
+        int yIndex = Arrays.binarySearch(ys, snap(y, yStep));
+        if (xIndex < 0 || yIndex < 0)
+            return Float.NaN;
+        int index = index(xIndex, yIndex);
+        return counts[index] == 0 ? Float.NaN : totals[index] / counts[index];
+    }
+
+    /**
+     * @return index of the largest axis value not above given value, or 0 if all values are above
+     */
+    private static int floorIndex(double[] axis, double value) {
+        int index = Arrays.binarySearch(axis, value);
+        if (index >= 0)
+            return index;
+        return Math.max(0, -index - 2);
+    }
+
+    private static double fraction(double[] axis, int from, int to, double value) {
+        if (from == to)
+            return 0;
+        return Math.max(0, Math.min(1, (value - axis[from]) / (axis[to] - axis[from])));
+    }
+
+    private int index(int xIndex, int yIndex) {
+        return xIndex * ys.length + yIndex;
     }
 
-    public double getMaxXValue() {
+    public synchronized double getMaxXValue() {
         return maxXValue;
     }
 
-    public double getMinXValue() {
+    public synchronized double getMinXValue() {
         return minXValue;
     }
 
-    public double getMaxYValue() {
+    public synchronized double getMaxYValue() {
         return maxYValue;
     }
 
-    public double getMinYValue() {
+    public synchronized double getMinYValue() {
         return minYValue;
     }
 
@@ -59,79 +197,135 @@ public class XYData {
         addPoint(new Point3D(rpm, key, value));
     }
 
-    public void addPoint(Point3D xyz) {
-        YAxisData yAxis = getYdata(xyz);
-        yAxis.addValue(xyz.getY(), xyz.getZ());
+    public synchronized void addPoint(Point3D xyz) {
+        int index = getCell(xyz);
+        totals[index] += xyz.getZ();
+        counts[index]++;
     }
 
-    public void setPoint(Point3D xyz) {
-        YAxisData yAxis = getYdata(xyz);
-        yAxis.setValue(xyz.getY(), xyz.getZ());
+    public synchronized void setPoint(Point3D xyz) {
+        int index = getCell(xyz);
+        totals[index] = xyz.getZ();
+        counts[index] = 1;
     }
 
-    private YAxisData getYdata(Point3D xyz) {
-        minYValue = Math.min(minYValue, xyz.getY());
-        maxYValue = Math.max(maxYValue, xyz.getY());
-        return getYAxis(xyz.getX());
+    /**
+     * Adds many points with a single grid re-layout for all new axis values
+     */
+    public synchronized void addPoints(Collection<Point3D> points) {
+        double[] newXs = new double[points.size()];
+        double[] newYs = new double[points.size()];
+        int i = 0;
+        for (Point3D point : points) {
+            newXs[i] = snap(point.getX(), xStep);
+            newYs[i] = snap(point.getY(), yStep);
+            i++;
+        }
+        insertAxisValues(newXs, newYs);
+        for (Point3D point : points)
+            addPoint(point);
     }
 
-    @NotNull
-    public NavigableSet<Double> getXSet() {
-        return yDatas.navigableKeySet();
+    private int getCell(Point3D xyz) {
+        double x = snap(xyz.getX(), xStep);
+        double y = snap(xyz.getY(), yStep);
+        int xIndex = Arrays.binarySearch(xs, x);
+        int yIndex = Arrays.binarySearch(ys, y);
+        if (xIndex < 0 || yIndex < 0) {
+            insertAxisValues(new double[]{x}, new double[]{y});
+            xIndex = Arrays.binarySearch(xs, x);
+            yIndex = Arrays.binarySearch(ys, y);
+        }
+        return index(xIndex, yIndex);
     }
 
-    @NotNull
-    public YAxisData getYAxis(double x) {
-        YAxisData result = yDatas.get(x);
-        if (result == null) {
-            result = new YAxisData(x);
-            maxXValue = Math.max(maxXValue, x);
-            minXValue = Math.min(minXValue, x);
-            yDatas.put(x, result);
+    private void insertAxisValues(double[] newXs, double[] newYs) {
+        double[] mergedXs = merge(xs, newXs);
+        double[] mergedYs = merge(ys, newYs);
+        if (mergedXs.length == xs.length && mergedYs.length == ys.length)
+            return;
+        float[] newTotals = new float[mergedXs.length * mergedYs.length];
+        int[] newCounts = new int[newTotals.length];
+        for (int xIndex = 0; xIndex < xs.length; xIndex++) {
+            int newXIndex = Arrays.binarySearch(mergedXs, xs[xIndex]);
+            for (int yIndex = 0; yIndex < ys.length; yIndex++) {
+                int newIndex = newXIndex * mergedYs.length + Arrays.binarySearch(mergedYs, ys[yIndex]);
+                newTotals[newIndex] = totals[index(xIndex, yIndex)];
+                newCounts[newIndex] = counts[index(xIndex, yIndex)];
+            }
         }
-        return result;
+        xs = mergedXs;
+        ys = mergedYs;
+        totals = newTotals;
+        counts = newCounts;
+        minXValue = Math.min(minXValue, xs[0]);
+        maxXValue = Math.max(maxXValue, xs[xs.length - 1]);
+        minYValue = Math.min(minYValue, ys[0]);
+        maxYValue = Math.max(maxYValue, ys[ys.length - 1]);
+    }
+
+    /**
+     * @return sorted distinct values of both arrays, 'axis' is expected to be sorted and distinct already
+     */
+    private static double[] merge(double[] axis, double[] values) {
+        double[] all = Arrays.copyOf(axis, axis.length + values.length);
+        System.arraycopy(values, 0, all, axis.length, values.length);
+        Arrays.sort(all);
+        int size = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (size == 0 || Double.compare(all[i], all[size - 1]) != 0)
+                all[size++] = all[i];
+        }
+        return size == axis.length ? axis : Arrays.copyOf(all, size);
+    }
+
+    @NotNull
+    public synchronized NavigableSet<Double> getXSet() {
+        return toSet(xs);
     }
 
-    @Nullable
-    public YAxisData findYAxis(double x) {
-        double xfromSet = findXfromSet(x);
-        if (Double.isNaN(xfromSet))
-            return null;
-        return yDatas.get(xfromSet);
+    @NotNull
+    public synchronized NavigableSet<Double> getYSet() {
+        return toSet(ys);
     }
 
-    public double findXfromSet(double x) {
-        Map.Entry<Double, YAxisData> floorEntry = yDatas.floorEntry(x);
-        if (floorEntry != null)
-            return floorEntry.getKey();
-        Map.Entry<Double, YAxisData> ceilingEntry = yDatas.ceilingEntry(x);
-        if (ceilingEntry == null)
-            return Double.NaN;
-        return ceilingEntry.getKey();
+    private static NavigableSet<Double> toSet(double[] axis) {
+        NavigableSet<Double> result = new TreeSet<>();
+        for (double value : axis)
+            result.add(value);
+        return result;
     }
 
-    public void clear() {
+    public synchronized void clear() {
         maxXValue = Double.MIN_VALUE;
         minXValue = Double.MAX_VALUE;
         maxYValue = Double.MIN_VALUE;
         minYValue = Double.MAX_VALUE;
-        yDatas.clear();
+        xs = ys = EMPTY;
+        totals = new float[0];
+        counts = new int[0];
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         return "XYData{" +
-                "yDatas.size()=" + yDatas.size() +
+                "xs.length=" + xs.length +
+                ", ys.length=" + ys.length +
                 '}';
     }
 
-    public void saveToFile(String filename) {
+    public synchronized void saveToFile(String filename) {
         try {
             String name = date + filename;
             FileLog.MAIN.logLine("Writing data to " + name);
             Writer w = new FileWriter(name);
-            for (YAxisData yAxisData : yDatas.values())
-                yAxisData.write(w);
+            for (int xIndex = 0; xIndex < xs.length; xIndex++) {
+                for (int yIndex = 0; yIndex < ys.length; yIndex++) {
+                    int index = index(xIndex, yIndex);
+                    if (counts[index] > 0)
+                        w.write("rpm," + xs[xIndex] + ",key," + ys[yIndex] + ",value," + totals[index] / counts[index] + "\r\n");
+                }
+            }
 
             w.close();
         } catch (IOException e) {
@@ -141,6 +335,7 @@ public class XYData {
 
     public void fill(Range rpmRange, Range keyRange, int count, float value) {
         clear();
+        List<Point3D> points = new ArrayList<>();
         for (int i = 0; i < count; i++)
             for (int j = 0; j < count; j++) {
 
@@ -148,9 +343,10 @@ public class XYData {
                 float key = keyRange.getMin() + (keyRange.getWidth() * j / count);
 
 
-                addPoint(new Point3D(rpm, key, value));
+                points.add(new Point3D(rpm, key, value));
 
 
             }
+        addPoints(points);
     }
 }
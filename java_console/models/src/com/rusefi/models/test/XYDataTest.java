@@ -0,0 +1,87 @@
+package com.rusefi.models.test;
+
+import com.rusefi.models.Point3D;
+import com.rusefi.models.XYData;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class XYDataTest {
+    private static final double EPS = 0.0001;
+
+    @Test
+    public void testBilinear() {
+        XYData d = new XYData();
+        assertTrue(Float.isNaN(d.getValue(1, 1)));
+
+        d.addPoints(Arrays.asList(
+                new Point3D(1000, 1, 10),
+                new Point3D(2000, 1, 20),
+                new Point3D(1000, 3, 30),
+                new Point3D(2000, 3, 40)));
+
+        assertEquals(10, d.getValue(1000, 1), EPS);
+        assertEquals(40, d.getValue(2000, 3), EPS);
+        assertEquals(15, d.getValue(1500, 1), EPS);
+        assertEquals(25, d.getValue(1500, 2), EPS);
+        // outside of the grid we use the closest edge
+        assertEquals(10, d.getValue(0, 0), EPS);
+        assertEquals(40, d.getValue(5000, 5), EPS);
+
+        assertEquals(1000, d.getMinXValue(), EPS);
+        assertEquals(2000, d.getMaxXValue(), EPS);
+        assertEquals(1, d.getMinYValue(), EPS);
+        assertEquals(3, d.getMaxYValue(), EPS);
+    }
+
+    @Test
+    public void testAverageAndSparse() {
+        XYData d = new XYData();
+        d.addPoint(600, 3, 11);
+        d.addPoint(600, 3, 13);
+        d.addPoint(1600, 3.1, 20);
+
+        assertEquals(12, d.getValueAt(600, 3), EPS);
+        assertTrue(Float.isNaN(d.getValueAt(600, 3.1)));
+        assertEquals(2, d.getXSet().size());
+        assertEquals(2, d.getYSet().size());
+        // empty cells are ignored
+        assertEquals(12, d.getValue(600, 3.05), EPS);
+        // nearest non-empty cell if all the cells around are empty
+        assertEquals(12, d.getValue(600, 3.1), EPS);
+
+        d.setPoint(new Point3D(600, 3, 5));
+        assertEquals(5, d.getValueAt(600, 3), EPS);
+        assertEquals(20, d.getValueAt(1600, 3.1), EPS);
+    }
+
+    @Test
+    public void testNearestFallback() {
+        XYData d = new XYData();
+        d.addPoint(1, 1, 10);
+        d.addPoint(2, 2, 20);
+        // tie is resolved to the lower cell, as the floor lookup used to do
+        assertEquals(10, d.getValue(1, 2), EPS);
+        assertEquals(20, d.getValue(2, 1.9), EPS);
+
+        d.addPoint(3, 3, 30);
+        d.addPoint(4, 4, 40);
+        assertEquals(30, d.getValue(4, 2.5), EPS);
+    }
+
+    @Test
+    public void testSteps() {
+        XYData d = new XYData(50, 0.05);
+        d.addPoint(1010, 2.01, 10);
+        d.addPoint(1020, 2.02, 20);
+        d.setPoint(new Point3D(2990, 3.33, 30));
+        assertEquals(2, d.getXSet().size());
+        assertEquals(2, d.getYSet().size());
+        assertEquals(15, d.getValueAt(1000, 2), EPS);
+        assertEquals(30, d.getValueAt(3000, 3.35), EPS);
+        assertEquals(3000, d.getMaxXValue(), EPS);
+    }
+}
@@ -0,0 +1,112 @@
+package com.rusefi.test;
+
+import com.rusefi.core.Sensor;
+import com.rusefi.fsio.FsioProgram;
+import com.rusefi.fsio.FsioVariables;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * @see FsioProgram
+ */
+public class FsioProgramTest {
+    private static final double EPS = 0.0001;
+
+    @Test
+    public void testScalar() {
+        assertEval(1, "2 1 >");
+        assertEval(0, "1 2 >");
+        assertEval(0, "1 2 + 3 -");
+        assertEval(3.25, "1 2 + 3 4 8 + / +");
+        assertEval(3, "1 3 max");
+        assertEval(1, "1 3 min");
+        assertEval(2, "1 2 3 if");
+        assertEval(3, "0 2 3 if");
+        assertEval(1, "0 not");
+        assertEval(1, "0 5 or");
+        assertEval(0, "0 5 and");
+        assertEval(1, "0 5 OR");
+    }
+
+    @Test
+    public void testVariables() {
+        FsioProgram program = FsioProgram.compile("rpm 3000 > coolant 80 > and rpm 9000 < and");
+        assertEquals(Arrays.asList("rpm", "coolant"), program.getVariables());
+        assertEquals(1, program.evaluate(new double[]{4000, 90}), EPS);
+        assertEquals(0, program.evaluate(new double[]{4000, 70}), EPS);
+        assertEquals(0, program.evaluate(new double[]{9500, 90}), EPS);
+    }
+
+    @Test
+    public void testSettings() {
+        FsioProgram program = FsioProgram.compile("rpm 2 fsio_setting >");
+        // same as firmware: missing setting is NaN and any comparison with NaN is false
+        assertEquals(0, program.evaluate(new double[]{3000}), EPS);
+        FsioProgram withSettings = program.withSettings(100, 2000);
+        assertEquals(1, withSettings.evaluate(new double[]{3000}), EPS);
+        assertEquals(0, withSettings.evaluate(new double[]{1000}), EPS);
+        assertTrue(Double.isNaN(FsioProgram.compile("3 fsio_setting").withSettings(1, 2).evaluate(new double[0])));
+        assertTrue(Double.isNaN(FsioProgram.compile("1 2 3 fsio_table").evaluate(new double[0])));
+    }
+
+    @Test
+    public void testVectorizedMatchesScalar() {
+        FsioProgram program = FsioProgram.compile("rpm 1 fsio_setting > tps 50 < rpm tps / 10 * 7 if 3 max not or")
+                .withSettings(2500);
+        int rows = 200;
+        double[][] columns = new double[2][rows];
+        Random random = new Random(1);
+        for (int i = 0; i < rows; i++) {
+            columns[0][i] = random.nextInt(7000);
+            columns[1][i] = random.nextDouble() * 100;
+        }
+        double[] result = program.evaluate(columns, rows);
+        for (int i = 0; i < rows; i++)
+            assertEquals("row " + i, program.evaluate(new double[]{columns[0][i], columns[1][i]}), result[i], 0);
+    }
+
+    @Test
+    public void testSensorColumns() {
+        FsioProgram program = FsioProgram.compile("rpm 3000 > fan or");
+        Map<Sensor, double[]> columns = new EnumMap<>(Sensor.class);
+        columns.put(Sensor.RPM, new double[]{1000, 4000, 2000});
+        Map<String, Double> overrides = new HashMap<>();
+        overrides.put("fan", 0.0);
+        double[] result = FsioVariables.evaluate(program, columns, 3, overrides);
+        assertEquals(0, result[0], EPS);
+        assertEquals(1, result[1], EPS);
+        assertEquals(0, result[2], EPS);
+
+        assertEquals(1, FsioVariables.evaluate(program, sensor -> 5000.0, overrides), EPS);
+        try {
+            FsioVariables.evaluate(program, columns, 3, Collections.emptyMap());
+            fail("Error expected");
+        } catch (IllegalArgumentException ignored) {
+            // expected: 'fan' has no sensor
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        assertInvalid("1 +");
+        assertInvalid("1 2");
+        assertInvalid("");
+        assertInvalid("1 2 if");
+    }
+
+    private static void assertInvalid(String rpn) {
+        try {
+            FsioProgram.compile(rpn);
+            fail("Error expected for " + rpn);
+        } catch (IllegalArgumentException ignored) {
+            // expected
+        }
+    }
+
+    private static void assertEval(double expected, String rpn) {
+        assertEquals(rpn, expected, FsioProgram.compile(rpn).evaluate(new double[0]), EPS);
+    }
+}
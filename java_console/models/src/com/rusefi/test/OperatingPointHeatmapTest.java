@@ -0,0 +1,59 @@
+package com.rusefi.test;
+
+import com.rusefi.OperatingPointHeatmap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class OperatingPointHeatmapTest {
+    private static final double EPS = 0.00001;
+    private static final double[] RPM_BINS = {1000, 2000, 4000};
+    private static final double[] LOAD_BINS = {20, 60};
+
+    @Test
+    public void testPosition() {
+        assertEquals(0, OperatingPointHeatmap.getPosition(RPM_BINS, 500), EPS);
+        assertEquals(0, OperatingPointHeatmap.getPosition(RPM_BINS, 1000), EPS);
+        assertEquals(0.5, OperatingPointHeatmap.getPosition(RPM_BINS, 1500), EPS);
+        assertEquals(1.25, OperatingPointHeatmap.getPosition(RPM_BINS, 2500), EPS);
+        assertEquals(2, OperatingPointHeatmap.getPosition(RPM_BINS, 4000), EPS);
+        assertEquals(2, OperatingPointHeatmap.getPosition(RPM_BINS, 7000), EPS);
+    }
+
+    @Test
+    public void testBilinearWeights() {
+        OperatingPointHeatmap heatmap = new OperatingPointHeatmap(3, 2, 1);
+        heatmap.setBins(RPM_BINS, LOAD_BINS);
+        heatmap.add(2500, 30);
+        assertEquals(1.25, heatmap.getX(), EPS);
+        assertEquals(0.25, heatmap.getY(), EPS);
+
+        double[] heat = new double[6];
+        assertEquals(1, heatmap.copyTo(heat));
+        // index is x * sizeY + y
+        assertEquals(0, heat[0], EPS);
+        assertEquals(0.75 * 0.75, heat[2], EPS);
+        assertEquals(0.75 * 0.25, heat[3], EPS);
+        assertEquals(0.25 * 0.75, heat[4], EPS);
+        assertEquals(0.25 * 0.25, heat[5], EPS);
+
+        // half life of one point
+        heatmap.add(1000, 20);
+        heatmap.copyTo(heat);
+        assertEquals(1, heat[0], EPS);
+        assertEquals(0.75 * 0.75 / 2, heat[2], EPS);
+    }
+
+    @Test
+    public void testMissingValueAndCorner() {
+        OperatingPointHeatmap heatmap = new OperatingPointHeatmap(3, 2, 10);
+        heatmap.setBins(RPM_BINS, LOAD_BINS);
+        heatmap.add(Double.NaN, 30);
+        assertEquals(0, heatmap.copyTo(new double[6]));
+
+        heatmap.add(9000, 100);
+        double[] heat = new double[6];
+        heatmap.copyTo(heat);
+        assertEquals(1, heat[5], EPS);
+    }
+}
@@ -0,0 +1,44 @@
+package com.rusefi.test;
+
+import com.rusefi.ReportData;
+import com.rusefi.ReportLine;
+import com.rusefi.ReportReader;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReportReaderTest {
+    @Test
+    public void testRead() throws IOException {
+        File file = File.createTempFile("report", ".txt");
+        file.deleteOnExit();
+        try (FileWriter w = new FileWriter(file)) {
+            w.write("msg 100;a0;300;a1;-1;rpm;1010;wave;5\r\n");
+            w.write("msg 101;a0;300;a1;-1;rpm;1010;wave;5\r\n"); // same as previous
+            w.write("garbage\n");
+            w.write("msg 102;a0;250;a1;-1;rpm;1050;wave;6;tail\n");
+            w.write("msg 103;a0;250;a1;-1;rpm;1500;wave;6\n"); // rpm jump
+            w.write("msg 104;a0;300;a1;-1;rpm;1090;wave;7\n");
+            w.write("msg 105;a0;300;a1;-1;rpm;1150;wave;8");
+        }
+
+        ReportData data = ReportReader.readData(file.getAbsolutePath());
+        assertEquals(4, data.size());
+        assertEquals(2, data.getRpmKeys().length);
+        assertEquals(2, data.getGroupSize(1000));
+        assertEquals(7, data.getWave(data.find(1000, 300)));
+        assertEquals(-1, data.find(1000, 301));
+
+        TreeMap<Integer, TreeMap<Integer, ReportLine>> map = ReportReader.readMap(file.getAbsolutePath());
+        assertEquals(2, map.size());
+        assertEquals(250, map.get(1000).firstKey().intValue());
+        assertEquals(102, map.get(1000).get(250).getTime());
+        assertEquals(104, map.get(1000).get(300).getTime());
+        assertEquals(8, map.get(1100).get(300).getWave());
+    }
+}
@@ -7,6 +7,11 @@ import com.rusefi.config.generated.Fields;
 import org.junit.Test;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -68,6 +73,25 @@ public class ReversePolishNotationParserTest {
         evaluator.evaluate(inputExpression.toLowerCase());
 
         assertEquals(expectedRPN, evaluator.getPosftfixExpression());
+        assertEquals(expectedRPN, DoubleEvaluator.toRpn(inputExpression));
+    }
+
+    @Test
+    public void testSharedEvaluatorFromManyThreads() throws Exception {
+        String[] expressions = {"(rpm > fsio_setting(2)) | ((coolant > 90) | (vbatt < 7))", "fsio_table (3, rpm, map) / 100", "not(1)"};
+        String[] expected = new String[expressions.length];
+        for (int i = 0; i < expressions.length; i++)
+            expected[i] = DoubleEvaluator.process(expressions[i]).getPosftfixExpression();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            String expression = expressions[i % expressions.length];
+            results.add(executor.submit(() -> DoubleEvaluator.toRpn(expression)));
+        }
+        for (int i = 0; i < results.size(); i++)
+            assertEquals(expected[i % expressions.length], results.get(i).get());
+        executor.shutdown();
     }
 
     @Test
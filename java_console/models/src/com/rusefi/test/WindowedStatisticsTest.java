@@ -0,0 +1,86 @@
+package com.rusefi.test;
+
+import com.rusefi.DataBuffer;
+import com.rusefi.WindowedStatistics;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WindowedStatisticsTest {
+    private static final double EPS = 1e-9;
+
+    @Test
+    public void testSameAsCyclicBuffer() {
+        WindowedStatistics s = new WindowedStatistics(3);
+
+        s.add(1);
+        s.add(3);
+        assertEquals(2.0, s.getMean(), EPS);
+
+        s.add(111);
+        s.add(211);
+        assertEquals(108.33333333333333, s.getMean(), EPS);
+        assertEquals(147.1144679039647, s.getStandardDeviation(), EPS);
+        assertEquals(3, s.getMin(), EPS);
+        assertEquals(211, s.getMax(), EPS);
+        assertTrue(Arrays.equals(new double[]{3, 111, 211}, s.getValues()));
+    }
+
+    @Test
+    public void testRandomAgainstFullRecompute() {
+        Random r = new Random(0);
+        WindowedStatistics s = new WindowedStatistics(30);
+        for (int i = 0; i < 10000; i++) {
+            s.add(r.nextGaussian() * 1000 + 5000);
+            double[] values = s.getValues();
+            assertEquals(DataBuffer.average(values), s.getMean(), 1e-6);
+            assertEquals(DataBuffer.getStandardDeviation(values), s.getStandardDeviation(), 1e-6);
+            assertEquals(Arrays.stream(values).min().getAsDouble(), s.getMin(), 0);
+            assertEquals(Arrays.stream(values).max().getAsDouble(), s.getMax(), 0);
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        WindowedStatistics s = new WindowedStatistics(100);
+        for (int i = 100; i >= 1; i--)
+            s.add(i);
+        assertEquals(50, s.getPercentile(50), 0);
+        assertEquals(95, s.getPercentile(95), 0);
+        assertEquals(1, s.getPercentile(0), 0);
+        assertEquals(100, s.getPercentile(100), 0);
+    }
+
+    @Test
+    public void testTruncate() {
+        AtomicLong time = new AtomicLong();
+        WindowedStatistics s = new WindowedStatistics(1000, 100) {
+            @Override
+            protected long currentTimeMillis() {
+                return time.get();
+            }
+        };
+
+        s.add(5);
+        time.set(60);
+        s.add(1);
+        s.add(3);
+        assertEquals(3, s.getSize());
+        assertEquals(5, s.getMax(), 0);
+
+        time.set(130);
+        assertEquals(2, s.getSize());
+        assertEquals(3, s.getMax(), 0);
+        assertEquals(1, s.getVariance(), EPS);
+        assertEquals(Math.sqrt(2), s.getStandardDeviation(), 0.001);
+
+        time.set(200);
+        assertEquals(0, s.getSize());
+        assertTrue(Double.isNaN(s.getMean()));
+    }
+}
@@ -1,22 +1,17 @@
 package com.rusefi.tracing;
 
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.rusefi.tracing.EnumNames.TypeNames;
-
 public class Entry {
-    // todo: maybe convert on firmware side so that CPU MHz are not accounted for on the java side?
-    private static final double MAGIC_NT = 168.0;
     private final String name;
     private final Phase phase;
     private final int isr;
     private final int thread;
-    private double timestampSeconds;
+    private final double timestampSeconds;
 
     public Entry(String name, Phase phase, double timestampSeconds, int isr, int thread) {
         this.name = name;
@@ -60,57 +55,31 @@ public class Entry {
 
 
     public static List<Entry> parseBuffer(byte[] packet) {
-        List<Entry> result = new ArrayList<>();
-        double minValue = Double.MAX_VALUE;
-        try {
-            DataInputStream is = new DataInputStream(new ByteArrayInputStream(packet));
-            is.readByte(); // skip TS result code
-            int firstTimeStamp = 0;
-            for (int i = 0; i < packet.length - 1; i += 8) {
-                byte type = is.readByte();
-                byte phase = is.readByte();
-                byte isr = is.readByte();
-                byte thread = is.readByte();
-
-                int timestampNt = readInt(is);
-                if (i == 0) {
-                    firstTimeStamp = timestampNt;
-                } else {
-                    if (timestampNt < firstTimeStamp) {
-                        System.out.println("Dropping the remainder of the packet at " + i + " due to "
-                                + timestampNt + " below " + firstTimeStamp);
-                        break;
-                    }
-                }
-
-
-                double timestampSeconds = timestampNt / MAGIC_NT;
-                minValue = Math.min(minValue, timestampSeconds);
-                String name;
-                if (type == 1) {
-                    name = "ISR: " + thread;
-                }
-                else
-                {
-                    name = TypeNames[type];
-                }
-
-                Entry e = new Entry(name, Phase.decode(phase), timestampSeconds, isr, thread);
-                result.add(e);
-            }
-
-            for (Entry e : result)
-                e.adjustTimestamp(minValue);
-
-
-        } catch (IOException e) {
-            throw new IllegalStateException(e);
-        }
+        TraceBuffer buffer = TraceBuffer.decode(packet);
+        List<Entry> result = new ArrayList<>(buffer.getSize());
+        for (int i = 0; i < buffer.getSize(); i++)
+            result.add(new Entry(buffer.getName(i), buffer.getPhase(i), buffer.getTimestamp(i), buffer.getIsr(i), buffer.getThread(i)));
         return result;
     }
 
-    private void adjustTimestamp(double minValue) {
-        timestampSeconds -= minValue;
+    String getName() {
+        return name;
+    }
+
+    Phase getPhase() {
+        return phase;
+    }
+
+    int getIsr() {
+        return isr;
+    }
+
+    int getThread() {
+        return thread;
+    }
+
+    double getTimestampSeconds() {
+        return timestampSeconds;
     }
 
     @Override
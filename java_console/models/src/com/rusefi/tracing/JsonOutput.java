@@ -10,9 +10,13 @@ import java.util.List;
  * This class helps to write JSON files readable by chrome://tracing/
  * <p>
  * See https://github.com/catapult-project/catapult/blob/master/tracing/README.md
+ * <p>
+ * An instance streams events through a buffered writer: any number of {@link TraceBuffer}s could be appended one
+ * after another into the same trace file. Timestamps are written with fixed three fraction digits precision
+ * without going through {@link Double#toString}.
  * @see PerfTraceTool
  */
-public class JsonOutput {
+public class JsonOutput implements Closeable {
 
     /**
      * those are special entries that change display settings
@@ -39,6 +43,21 @@ public class JsonOutput {
             "{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":67,\"tid\":0,\"args\":{\"name\":\"USB\"}},"
             ;
     private static final String EOL = "\r\n";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FRACTION_DIGITS = 3;
+    private static final long FRACTION_SCALE = 1000;
+
+    private final Writer out;
+    /**
+     * enough for any long
+     */
+    private final char[] digits = new char[20];
+
+    public JsonOutput(OutputStream outputStream) throws IOException {
+        out = new BufferedWriter(new OutputStreamWriter(outputStream), BUFFER_SIZE);
+        out.write("{\"traceEvents\": [" + EOL);
+        out.write(FORMATTING_SETTINGS + EOL);
+    }
 
     public static void main(String[] args) throws IOException {
         /**
@@ -55,17 +74,75 @@ public class JsonOutput {
     }
 
     public static void writeToStream(List<Entry> testEntries, OutputStream outputStream) throws IOException {
+        try (JsonOutput output = new JsonOutput(outputStream)) {
+            for (Entry e : testEntries)
+                output.writeEvent(e.getName(), e.getPhase(), e.getThread(), e.getIsr(), e.getTimestampSeconds());
+        }
+    }
 
-        Writer out = new OutputStreamWriter(outputStream);
-        out.write("{\"traceEvents\": [" + EOL);
+    /**
+     * @param offset added to all timestamps of the buffer, for instance duration of buffers appended before this one
+     */
+    public void append(TraceBuffer buffer, double offset) throws IOException {
+        for (int i = 0; i < buffer.getSize(); i++)
+            writeEvent(buffer.getName(i), buffer.getPhase(i), buffer.getThread(i), buffer.getIsr(i), buffer.getTimestamp(i) + offset);
+    }
 
-        out.write(FORMATTING_SETTINGS + EOL);
+    private void writeEvent(String name, Phase phase, int thread, int isr, double timestamp) throws IOException {
+        out.write(",{\"name\":\"");
+        out.write(name);
+        out.write("\",\"ph\":\"");
+        out.write(phase.name());
+        out.write("\",\"tid\":");
+        writeLong(thread);
+        out.write(",\"pid\":");
+        writeLong(isr);
+        out.write(",\"ts\":");
+        writeNumber(timestamp);
+        out.write("}" + EOL);
+    }
+
+    /**
+     * Rounded to {@link #FRACTION_DIGITS} digits, trailing zeros are omitted
+     */
+    private void writeNumber(double value) throws IOException {
+        long scaled = Math.round(value * FRACTION_SCALE);
+        if (scaled < 0) {
+            out.write('-');
+            scaled = -scaled;
+        }
+        writeLong(scaled / FRACTION_SCALE);
+        long fraction = scaled % FRACTION_SCALE;
+        if (fraction == 0)
+            return;
+        int length = FRACTION_DIGITS;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            length--;
+        }
+        out.write('.');
+        for (int i = length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        out.write(digits, 0, length);
+    }
 
-        for (Entry e : testEntries) {
-            out.write(",");
-            out.write(e.toString() + EOL);
+    private void writeLong(long value) throws IOException {
+        if (value < 0) {
+            out.write('-');
+            value = -value;
         }
+        int position = digits.length;
+        do {
+            digits[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        out.write(digits, position, digits.length - position);
+    }
 
+    @Override
+    public void close() throws IOException {
         out.write("]}");
         out.close();
     }
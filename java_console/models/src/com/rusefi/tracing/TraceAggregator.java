@@ -0,0 +1,136 @@
+package com.rusefi.tracing;
+
+import com.rusefi.Histograms;
+
+import java.util.*;
+
+/**
+ * Durations between matching begin and end events of continuously captured {@link TraceBuffer}s, per event name,
+ * ISR and thread, as {@link Histograms} latency distributions.
+ * <p>
+ * Statistics are kept in a ring of the last N intervals and the oldest interval is dropped on
+ * {@link #nextInterval()}, so memory use does not depend on how long the capture runs.
+ * <p>
+ * Begin and end events are matched within one buffer: there is a gap between captures so an event open at the end of
+ * a buffer is discarded.
+ */
+public class TraceAggregator {
+    private static final String TYPE = "ptrace";
+
+    private final Histograms histograms = new Histograms();
+    private final TraceStitcher stitcher = new TraceStitcher();
+    private final Histograms.StatisticsGroup[] ring;
+    private int current;
+    /**
+     * type, isr and thread packed into one int to statistics name
+     */
+    private final Map<Integer, String> names = new HashMap<>();
+    private long buffers;
+    private long unmatched;
+
+    /**
+     * @param intervals number of intervals in the ring
+     */
+    public TraceAggregator(int intervals) {
+        if (intervals < 1)
+            throw new IllegalArgumentException("intervals " + intervals);
+        ring = new Histograms.StatisticsGroup[intervals];
+        for (int i = 0; i < intervals; i++)
+            ring[i] = new Histograms.StatisticsGroup(TYPE);
+    }
+
+    public synchronized void add(TraceBuffer buffer) {
+        buffers++;
+        long[] ticks = stitcher.stitch(buffer);
+        // isr and thread to indexes of open begin events
+        Map<Integer, Deque<Integer>> open = new HashMap<>();
+        for (int i = 0; i < buffer.getSize(); i++) {
+            Phase phase = buffer.getPhase(i);
+            if (phase == Phase.i)
+                continue;
+            Integer context = (buffer.getIsr(i) & 0xFF) << 8 | buffer.getThread(i) & 0xFF;
+            Deque<Integer> stack = open.get(context);
+            if (phase == Phase.B) {
+                if (stack == null)
+                    open.put(context, stack = new ArrayDeque<>());
+                stack.push(i);
+                continue;
+            }
+            int begin = popMatching(buffer, stack, buffer.getType(i));
+            if (begin == -1) {
+                unmatched++;
+                continue;
+            }
+            long nanoseconds = Math.round(TraceStitcher.toMicroseconds(ticks[i] - ticks[begin]) * 1000);
+            if (nanoseconds < 0)
+                nanoseconds = 0;
+            ring[current].add(getName(buffer, i), histograms.getIndex(nanoseconds), nanoseconds);
+        }
+        for (Deque<Integer> stack : open.values())
+            unmatched += stack.size();
+    }
+
+    /**
+     * @return index of the innermost open begin event of given type, -1 if none. Unmatched inner events are dropped.
+     */
+    private int popMatching(TraceBuffer buffer, Deque<Integer> stack, int type) {
+        if (stack == null)
+            return -1;
+        for (Integer index : stack) {
+            if (buffer.getType(index) == type) {
+                while (true) {
+                    int begin = stack.pop();
+                    if (begin == index)
+                        return begin;
+                    unmatched++;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private String getName(TraceBuffer buffer, int index) {
+        int key = buffer.getType(index) << 16 | (buffer.getIsr(index) & 0xFF) << 8 | buffer.getThread(index) & 0xFF;
+        String name = names.get(key);
+        if (name == null)
+            names.put(key, name = buffer.getName(index) + " pid=" + buffer.getIsr(index) + " tid=" + buffer.getThread(index));
+        return name;
+    }
+
+    /**
+     * Starts new interval, statistics of the oldest one are dropped
+     */
+    public synchronized void nextInterval() {
+        current = (current + 1) % ring.length;
+        ring[current] = new Histograms.StatisticsGroup(TYPE);
+    }
+
+    /**
+     * @return statistics of all intervals in the ring merged, values are in nanoseconds
+     */
+    public synchronized Histograms.StatisticsGroup getStatistics() {
+        Histograms.StatisticsGroup result = new Histograms.StatisticsGroup(TYPE);
+        for (Histograms.StatisticsGroup group : ring)
+            result.add(group);
+        return result;
+    }
+
+    /**
+     * @return one line per event kind, largest total duration first
+     */
+    public synchronized List<String> getReport() {
+        List<Histograms.Statistics> statistics = new ArrayList<>(getStatistics().data.values());
+        statistics.sort((o1, o2) -> Long.compare(o2.total_value, o1.total_value));
+
+        List<String> result = new ArrayList<>();
+        result.add("Durations in ns: total / count = mean in (min [10%-median-90%] max) over " + buffers
+                + " buffer(s), trace time " + Math.round(TraceStitcher.toMicroseconds(stitcher.getCurrent())) + "us, "
+                + unmatched + " unmatched event(s)");
+        for (Histograms.Statistics st : statistics) {
+            StringBuffer sb = new StringBuffer(st.name).append(": ");
+            histograms.appendStatistics(sb, st, new ArrayList<>());
+            result.add(sb.toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+package com.rusefi.tracing;
+
+import static com.rusefi.tracing.EnumNames.TypeNames;
+
+/**
+ * Perf trace records decoded into primitive columns, one slot per 8-byte firmware record:
+ * type, phase, isr, thread and little-endian timestamp in CPU ticks.
+ * <p>
+ * Decoding reads the response packet in place, no per-record objects are created.
+ * @see JsonOutput
+ */
+public class TraceBuffer {
+    // todo: maybe convert on firmware side so that CPU MHz are not accounted for on the java side?
+    static final double MAGIC_NT = 168.0;
+    private static final int RECORD_SIZE = 8;
+    private static final String[] ISR_NAMES = new String[256];
+
+    static {
+        for (int i = 0; i < ISR_NAMES.length; i++)
+            ISR_NAMES[i] = "ISR: " + (byte) i;
+    }
+
+    private final byte[] types;
+    private final byte[] phases;
+    private final byte[] isrs;
+    private final byte[] threads;
+    /**
+     * raw CPU tick counter values
+     */
+    private final int[] ticks;
+    private final int size;
+
+    private TraceBuffer(byte[] types, byte[] phases, byte[] isrs, byte[] threads, int[] ticks, int size) {
+        this.types = types;
+        this.phases = phases;
+        this.isrs = isrs;
+        this.threads = threads;
+        this.ticks = ticks;
+        this.size = size;
+    }
+
+    /**
+     * Records after a timestamp below the first one are dropped, see {@link #decodeAll} for continuous capture
+     *
+     * @param packet TS response: result code followed by 8-byte records
+     */
+    public static TraceBuffer decode(byte[] packet) {
+        return decode(packet, true);
+    }
+
+    /**
+     * All records are kept even if tick counter wraps around, see {@link TraceStitcher}
+     */
+    public static TraceBuffer decodeAll(byte[] packet) {
+        return decode(packet, false);
+    }
+
+    private static TraceBuffer decode(byte[] packet, boolean dropAfterWrap) {
+        int capacity = (packet.length - 1 + RECORD_SIZE - 1) / RECORD_SIZE;
+        byte[] types = new byte[capacity];
+        byte[] phases = new byte[capacity];
+        byte[] isrs = new byte[capacity];
+        byte[] threads = new byte[capacity];
+        int[] ticks = new int[capacity];
+
+        int size = 0;
+        int firstTimeStamp = 0;
+        // skip TS result code
+        for (int offset = 1; offset < packet.length; offset += RECORD_SIZE) {
+            if (offset + RECORD_SIZE > packet.length)
+                throw new IllegalStateException("Truncated record at " + (offset - 1));
+            int timestampNt = readInt(packet, offset + 4);
+            if (size == 0) {
+                firstTimeStamp = timestampNt;
+            } else if (dropAfterWrap && timestampNt < firstTimeStamp) {
+                System.out.println("Dropping the remainder of the packet at " + (offset - 1) + " due to "
+                        + timestampNt + " below " + firstTimeStamp);
+                break;
+            }
+            types[size] = packet[offset];
+            // validating early same as Entry did
+            Phase.decode(packet[offset + 1]);
+            phases[size] = packet[offset + 1];
+            isrs[size] = packet[offset + 2];
+            threads[size] = packet[offset + 3];
+            ticks[size] = timestampNt;
+            size++;
+        }
+        return new TraceBuffer(types, phases, isrs, threads, ticks, size);
+    }
+
+    private static int readInt(byte[] packet, int offset) {
+        return (packet[offset] & 0xFF)
+                | (packet[offset + 1] & 0xFF) << 8
+                | (packet[offset + 2] & 0xFF) << 16
+                | (packet[offset + 3] & 0xFF) << 24;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getName(int index) {
+        if (types[index] == 1)
+            return ISR_NAMES[threads[index] & 0xFF];
+        return TypeNames[types[index]];
+    }
+
+    public Phase getPhase(int index) {
+        return Phase.decode(phases[index]);
+    }
+
+    public int getIsr(int index) {
+        return isrs[index];
+    }
+
+    public int getThread(int index) {
+        return threads[index];
+    }
+
+    public int getType(int index) {
+        return types[index];
+    }
+
+    public int getTicks(int index) {
+        return ticks[index];
+    }
+
+    /**
+     * @return microseconds since the first record of the buffer
+     */
+    public double getTimestamp(int index) {
+        // with dropped records after wrap around the first record is the minimum
+        return ticks[index] / MAGIC_NT - ticks[0] / MAGIC_NT;
+    }
+
+    /**
+     * @return largest timestamp, zero if empty
+     */
+    public double getDuration() {
+        double result = 0;
+        for (int i = 0; i < size; i++)
+            result = Math.max(result, getTimestamp(i));
+        return result;
+    }
+}
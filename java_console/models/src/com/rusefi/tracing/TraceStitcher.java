@@ -0,0 +1,43 @@
+package com.rusefi.tracing;
+
+/**
+ * Turns 32 bit CPU tick counter values of consecutive {@link TraceBuffer}s into one continuous 64 bit timeline.
+ * <p>
+ * Each value is placed relative to the previous one by signed 32 bit difference, so counter wrap around is handled
+ * as long as consecutive records are less than 2^31 ticks (about 12 seconds at 168MHz) apart, including the gap
+ * between two captures.
+ */
+public class TraceStitcher {
+    private boolean isStarted;
+    private int previous;
+    private long current;
+
+    /**
+     * @return continuous tick values, one per record of the buffer
+     */
+    public long[] stitch(TraceBuffer buffer) {
+        long[] result = new long[buffer.getSize()];
+        for (int i = 0; i < result.length; i++) {
+            int ticks = buffer.getTicks(i);
+            if (isStarted) {
+                current += ticks - previous;
+            } else {
+                isStarted = true;
+            }
+            previous = ticks;
+            result[i] = current;
+        }
+        return result;
+    }
+
+    /**
+     * @return total ticks since the first stitched record
+     */
+    public long getCurrent() {
+        return current;
+    }
+
+    public static double toMicroseconds(long ticks) {
+        return ticks / TraceBuffer.MAGIC_NT;
+    }
+}
@@ -0,0 +1,65 @@
+package com.rusefi.tracing.test;
+
+import com.rusefi.tracing.JsonOutput;
+import com.rusefi.tracing.Phase;
+import com.rusefi.tracing.TraceBuffer;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JsonOutputTest {
+    @Test
+    public void testDecode() {
+        TraceBuffer buffer = TraceBuffer.decode(packet(
+                record(1, 0, 5, 7, 168 * 1000),
+                record(2, 1, 0, 3, 168 * 1000 + 252),
+                // below the first timestamp: remainder is dropped
+                record(2, 1, 0, 3, 10),
+                record(2, 1, 0, 3, 168 * 2000)));
+        assertEquals(2, buffer.getSize());
+        assertEquals("ISR: 7", buffer.getName(0));
+        assertEquals(Phase.B, buffer.getPhase(0));
+        assertEquals(5, buffer.getIsr(0));
+        assertEquals(0, buffer.getTimestamp(0), 0);
+        assertEquals("ContextSwitch", buffer.getName(1));
+        assertEquals(Phase.E, buffer.getPhase(1));
+        assertEquals(1.5, buffer.getTimestamp(1), 0.000001);
+        assertEquals(1.5, buffer.getDuration(), 0.000001);
+    }
+
+    @Test
+    public void testAppendBuffers() throws IOException {
+        TraceBuffer buffer = TraceBuffer.decode(packet(
+                record(2, 0, 0, 1, 0),
+                record(2, 1, 0, 1, 1)));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (JsonOutput output = new JsonOutput(stream)) {
+            output.append(buffer, 0);
+            output.append(buffer, 1000.25);
+        }
+        String json = stream.toString();
+        assertTrue(json, json.endsWith(
+                ",{\"name\":\"ContextSwitch\",\"ph\":\"B\",\"tid\":1,\"pid\":0,\"ts\":0}\r\n" +
+                ",{\"name\":\"ContextSwitch\",\"ph\":\"E\",\"tid\":1,\"pid\":0,\"ts\":0.006}\r\n" +
+                ",{\"name\":\"ContextSwitch\",\"ph\":\"B\",\"tid\":1,\"pid\":0,\"ts\":1000.25}\r\n" +
+                ",{\"name\":\"ContextSwitch\",\"ph\":\"E\",\"tid\":1,\"pid\":0,\"ts\":1000.256}\r\n" +
+                "]}"));
+    }
+
+    static byte[] packet(byte[]... records) {
+        byte[] result = new byte[1 + 8 * records.length];
+        for (int i = 0; i < records.length; i++)
+            System.arraycopy(records[i], 0, result, 1 + 8 * i, 8);
+        return result;
+    }
+
+    static byte[] record(int type, int phase, int isr, int thread, int timestamp) {
+        return new byte[]{(byte) type, (byte) phase, (byte) isr, (byte) thread,
+                (byte) timestamp, (byte) (timestamp >> 8), (byte) (timestamp >> 16), (byte) (timestamp >> 24)};
+    }
+}
@@ -0,0 +1,67 @@
+package com.rusefi.tracing.test;
+
+import com.rusefi.Histograms;
+import com.rusefi.tracing.TraceAggregator;
+import com.rusefi.tracing.TraceBuffer;
+import com.rusefi.tracing.TraceStitcher;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.rusefi.tracing.test.JsonOutputTest.packet;
+import static com.rusefi.tracing.test.JsonOutputTest.record;
+import static org.junit.Assert.*;
+
+public class TraceAggregatorTest {
+    private static final int CONTEXT_SWITCH = 2;
+    private static final int OUTPUT_PIN = 3;
+
+    @Test
+    public void testStitchAcrossWrapAround() {
+        TraceBuffer buffer = TraceBuffer.decodeAll(packet(
+                record(OUTPUT_PIN, 0, 0, 0, Integer.MAX_VALUE - 10),
+                record(OUTPUT_PIN, 1, 0, 0, Integer.MIN_VALUE + 5),
+                record(OUTPUT_PIN, 0, 0, 0, -2),
+                record(OUTPUT_PIN, 1, 0, 0, 3)));
+        assertEquals(4, buffer.getSize());
+        TraceStitcher stitcher = new TraceStitcher();
+        assertArrayEquals(new long[]{0, 16, 2147483657L, 2147483662L}, stitcher.stitch(buffer));
+        assertArrayEquals(new long[]{2147483662L + 20}, stitcher.stitch(TraceBuffer.decodeAll(packet(record(OUTPUT_PIN, 0, 0, 0, 23)))));
+
+        // one shot decoding still drops the remainder
+        assertEquals(1, TraceBuffer.decode(packet(
+                record(OUTPUT_PIN, 0, 0, 0, Integer.MAX_VALUE - 10),
+                record(OUTPUT_PIN, 1, 0, 0, Integer.MIN_VALUE + 5))).getSize());
+    }
+
+    @Test
+    public void testDurations() {
+        TraceAggregator aggregator = new TraceAggregator(2);
+        aggregator.add(TraceBuffer.decodeAll(packet(
+                record(OUTPUT_PIN, 0, 0, 1, 0),
+                record(CONTEXT_SWITCH, 0, 0, 1, 168),
+                record(CONTEXT_SWITCH, 1, 0, 1, 336),
+                record(OUTPUT_PIN, 1, 0, 1, 1680),
+                // end without begin
+                record(OUTPUT_PIN, 1, 0, 1, 2000),
+                // begin without end
+                record(OUTPUT_PIN, 0, 0, 2, 2100))));
+
+        Histograms.StatisticsGroup statistics = aggregator.getStatistics();
+        assertEquals(2, statistics.data.size());
+        Histograms.Statistics pin = statistics.data.get("OutputPinSetValue pid=0 tid=1");
+        assertEquals(1, pin.total_count);
+        assertEquals(10000, pin.total_value);
+        assertEquals(1000, statistics.data.get("ContextSwitch pid=0 tid=1").total_value);
+
+        List<String> report = aggregator.getReport();
+        assertEquals(3, report.size());
+        assertTrue(report.get(0), report.get(0).contains("2 unmatched"));
+        assertTrue(report.get(1), report.get(1).startsWith("OutputPinSetValue"));
+
+        aggregator.nextInterval();
+        assertEquals(2, aggregator.getStatistics().data.size());
+        aggregator.nextInterval();
+        assertEquals("oldest interval dropped", 0, aggregator.getStatistics().data.size());
+    }
+}
@@ -1,7 +1,7 @@
 package com.opensr5;
 
+import com.opensr5.ini.IniFileIndex;
 import com.opensr5.ini.IniFileMetaInfo;
-import com.opensr5.ini.IniFileReader;
 import com.opensr5.ini.RawIniFile;
 
 import java.io.File;
@@ -22,7 +22,7 @@ public class Main {
 
         String projectIniFileName = args[0];
 
-        RawIniFile content = IniFileReader.read(new File(projectIniFileName));
+        RawIniFile content = IniFileIndex.read(new File(projectIniFileName)).toRawIniFile(IniFileMetaInfo.SECTIONS);
 
         IniFileMetaInfo meta = new IniFileMetaInfo(content);
 
@@ -0,0 +1,134 @@
+package com.romraider.logger.ecu.ui.handler.table;
+
+import com.romraider.maps.Table1D;
+import com.romraider.maps.Table3D;
+import com.rusefi.OperatingPointHeatmap;
+import com.rusefi.core.ISensorCentral;
+import com.rusefi.core.Sensor;
+import com.rusefi.core.SensorCentral;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.romraider.util.ParamChecker.isNullOrEmpty;
+
+/**
+ * Live operating point overlay of a {@link Table3D}: table axes are bound to sensors, each output channels frame adds
+ * the current point to an {@link OperatingPointHeatmap} on the polling thread and the table grid is repainted on the
+ * UI thread at most at display rate, only if there were new frames.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class OperatingPointOverlay implements SensorCentral.FrameListener {
+    /**
+     * axis 'logparam' of the ECU definition to sensor
+     */
+    private static final Map<String, Sensor> LOG_PARAMS = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    /**
+     * about two seconds of 50Hz frames
+     */
+    private static final int HALF_LIFE = 100;
+    private static final int DEFAULT_REFRESH_RATE = 60;
+
+    static {
+        LOG_PARAMS.put(SensorCentral.RPM_KEY, Sensor.RPM);
+        LOG_PARAMS.put("engine_load", Sensor.MAP);
+    }
+
+    private final Table3D table;
+    private final Sensor xSensor;
+    private final Sensor ySensor;
+    private final OperatingPointHeatmap heatmap;
+    /**
+     * UI thread copy of the heatmap
+     */
+    private final double[] heat;
+    private final int refreshRate = getRefreshRate();
+    private final Timer timer = new Timer(1000 / refreshRate, e -> render());
+    private int renderedPoints = -1;
+    private int ticks;
+
+    public OperatingPointOverlay(Table3D table, Sensor xSensor, Sensor ySensor) {
+        this.table = table;
+        this.xSensor = xSensor;
+        this.ySensor = ySensor;
+        heatmap = new OperatingPointHeatmap(table.getSizeX(), table.getSizeY(), HALF_LIFE);
+        heat = new double[table.getSizeX() * table.getSizeY()];
+    }
+
+    /**
+     * @return null if either axis does not have a matching sensor
+     */
+    public static OperatingPointOverlay create(Table3D table) {
+        Sensor xSensor = getSensor(table.getXAxis().getLogParam());
+        Sensor ySensor = getSensor(table.getYAxis().getLogParam());
+        if (xSensor == null || ySensor == null
+                || table.getXAxis().getDataSize() != table.getSizeX()
+                || table.getYAxis().getDataSize() != table.getSizeY())
+            return null;
+        return new OperatingPointOverlay(table, xSensor, ySensor);
+    }
+
+    /**
+     * @return null if there is no sensor for given axis log parameter
+     */
+    public static Sensor getSensor(String logParam) {
+        if (isNullOrEmpty(logParam))
+            return null;
+        Sensor sensor = LOG_PARAMS.get(logParam);
+        return sensor != null ? sensor : Sensor.lookup(logParam, null);
+    }
+
+    public void start() {
+        updateBins();
+        SensorCentral.getInstance().addFrameListener(this);
+        timer.start();
+    }
+
+    public void stop() {
+        SensorCentral.getInstance().removeFrameListener(this);
+        timer.stop();
+        heatmap.clear();
+        table.getGrid().clearOperatingPoint();
+    }
+
+    /**
+     * Invoked on the polling thread, nothing is allocated here
+     */
+    @Override
+    public void onFrame() {
+        ISensorCentral sensorCentral = SensorCentral.getInstance();
+        heatmap.add(sensorCentral.getValue(xSensor), sensorCentral.getValue(ySensor));
+    }
+
+    private void render() {
+        // axis values could be edited, once a second is good enough
+        if (++ticks % refreshRate == 0)
+            updateBins();
+        int points = heatmap.copyTo(heat);
+        if (points == renderedPoints)
+            return;
+        renderedPoints = points;
+        table.getGrid().setOperatingPoint(heat, heatmap.getX(), heatmap.getY());
+    }
+
+    private void updateBins() {
+        heatmap.setBins(getRealValues(table.getXAxis()), getRealValues(table.getYAxis()));
+    }
+
+    private static double[] getRealValues(Table1D axis) {
+        double[] result = new double[axis.getDataSize()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = axis.getDataCell(i).getRealValue();
+        return result;
+    }
+
+    private static int getRefreshRate() {
+        if (GraphicsEnvironment.isHeadless())
+            return DEFAULT_REFRESH_RATE;
+        int refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+        return refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_REFRESH_RATE : refreshRate;
+    }
+}
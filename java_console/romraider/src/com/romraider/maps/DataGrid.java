@@ -0,0 +1,624 @@
+package com.romraider.maps;
+
+import com.romraider.Settings;
+import com.romraider.editor.ecu.ECUEditorManager;
+import com.romraider.util.JEPUtil;
+import com.romraider.util.SettingsManager;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.romraider.util.ColorScaler.getScaledColor;
+import static com.romraider.util.ParamChecker.isNullOrEmpty;
+
+/**
+ * Data cells of a {@link Table3D} painted on one component: values and cell state are kept in primitive arrays
+ * indexed by x and y, and a change repaints only the rectangle of the changed cell.
+ * <p>
+ * Colors, borders, text and mouse handling are the same as those of a {@link DataCell} on its own.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class DataGrid extends JComponent implements MouseListener, MouseMotionListener {
+    private static final DecimalFormat PERCENT_FORMAT = new DecimalFormat("#,##0.0%");
+    private static final int unSelectMask1 = MouseEvent.BUTTON1_DOWN_MASK + MouseEvent.CTRL_DOWN_MASK + MouseEvent.ALT_DOWN_MASK;
+    private static final int unSelectMask2 = MouseEvent.BUTTON3_DOWN_MASK + MouseEvent.CTRL_DOWN_MASK + MouseEvent.ALT_DOWN_MASK;
+    private static final Color defaultBorderColor = new Color(0, 0, 0);
+    private static final int HEAT_LEVELS = 16;
+    private static final Color[] HEAT_COLORS = new Color[HEAT_LEVELS + 1];
+    private static final int POINT_RADIUS = 4;
+
+    static {
+        for (int level = 0; level <= HEAT_LEVELS; level++)
+            HEAT_COLORS[level] = new Color(0, 0, 0, 128 * level / HEAT_LEVELS);
+    }
+
+    private final Table3D table;
+
+    private int sizeX;
+    private int sizeY;
+
+    private double[] binValues;
+    private double[] originalValues;
+    private double[] compareToValues;
+    private boolean[] selected;
+    private boolean[] highlighted;
+    private boolean[] traced;
+    private String[] liveValues;
+    /**
+     * formatted cell text, JEP evaluation is too slow to be done on each paint
+     */
+    private String[] texts;
+    /**
+     * operating point overlay shade of each cell, from 0 to {@link #HEAT_LEVELS}
+     */
+    private int[] heatLevels;
+    private double pointX = Double.NaN;
+    private double pointY = Double.NaN;
+
+    /**
+     * cell under the mouse, -1 if none
+     */
+    private int mouseIndex = -1;
+
+    public DataGrid(Table3D table) {
+        this.table = table;
+        setGridSize(1, 1);
+        setOpaque(true);
+        setFocusable(true);
+        addMouseListener(this);
+        addMouseMotionListener(this);
+        ToolTipManager.sharedInstance().registerComponent(this);
+    }
+
+    public void setGridSize(int sizeX, int sizeY) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        int size = sizeX * sizeY;
+        binValues = new double[size];
+        originalValues = new double[size];
+        compareToValues = new double[size];
+        selected = new boolean[size];
+        highlighted = new boolean[size];
+        traced = new boolean[size];
+        liveValues = new String[size];
+        texts = new String[size];
+        heatLevels = new int[size];
+        pointX = Double.NaN;
+        pointY = Double.NaN;
+        mouseIndex = -1;
+    }
+
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    private int index(int x, int y) {
+        if (x < 0 || x >= sizeX || y < 0 || y >= sizeY)
+            throw new ArrayIndexOutOfBoundsException("Cell " + x + "/" + y + " out of " + sizeX + "/" + sizeY);
+        return x * sizeY + y;
+    }
+
+    /**
+     * Sets both current and original value without repainting, used while the table is populated
+     */
+    public void setValue(int x, int y, double binValue) {
+        int index = index(x, y);
+        binValues[index] = binValue;
+        originalValues[index] = binValue;
+        texts[index] = null;
+    }
+
+    public double getBinValue(int x, int y) {
+        return binValues[index(x, y)];
+    }
+
+    public double getRealValue(int x, int y) {
+        return toReal(binValues[index(x, y)]);
+    }
+
+    private double toReal(double binValue) {
+        return JEPUtil.evaluate(table.getCurrentScale().getExpression(), binValue);
+    }
+
+    public void setRealValue(int x, int y, String input) {
+        try {
+            if (!"x".equalsIgnoreCase(input)) {
+                double result = JEPUtil.evaluate(table.getCurrentScale().getByteExpression(), Double.parseDouble(input));
+                if (table.getStorageType() != Settings.STORAGE_TYPE_FLOAT) {
+                    result = (int) Math.round(result);
+                }
+                setBinValue(x, y, result);
+            }
+        } catch (NumberFormatException e) {
+            // Do nothing.  input is null or not a valid number.
+        }
+    }
+
+    public void setBinValue(int x, int y, double newBinValue) {
+        int index = index(x, y);
+        double checkedValue = Math.min(Math.max(newBinValue, table.getMinAllowedBin()), table.getMaxAllowedBin());
+        if (binValues[index] == newBinValue || binValues[index] == checkedValue)
+            return;
+        binValues[index] = checkedValue;
+        drawCell(index);
+    }
+
+    public double getCompareValue(int x, int y) {
+        int index = index(x, y);
+        return binValues[index] - compareToValues[index];
+    }
+
+    public void increment(int x, int y, double increment) {
+        int index = index(x, y);
+        double oldValue = toReal(binValues[index]);
+
+        if (table.getCurrentScale().getCoarseIncrement() < 0.0) {
+            increment = 0.0 - increment;
+        }
+
+        double incResult = JEPUtil.evaluate(table.getCurrentScale().getByteExpression(), (oldValue + increment));
+        if (table.getStorageType() == Settings.STORAGE_TYPE_FLOAT) {
+            setBinValue(x, y, incResult);
+        } else {
+            setBinValue(x, y, (int) Math.round(incResult));
+        }
+
+        // make sure table is incremented if change isn't great enough
+        int maxValue = (int) Math.pow(8, table.getStorageType());
+        double binValue = binValues[index];
+        if (table.getStorageType() != Settings.STORAGE_TYPE_FLOAT &&
+                oldValue == toReal(binValue) &&
+                binValue > 0.0 &&
+                binValue < maxValue) {
+            increment(x, y, increment * 2);
+        }
+    }
+
+    public void multiply(int x, int y, double factor) {
+        setBinValue(x, y, getBinValue(x, y) * factor);
+    }
+
+    public void undo(int x, int y) {
+        setBinValue(x, y, originalValues[index(x, y)]);
+    }
+
+    public void setRevertPoint() {
+        System.arraycopy(binValues, 0, originalValues, 0, binValues.length);
+        drawTable();
+    }
+
+    /**
+     * @param other grid of the same size
+     */
+    public void setCompareValues(DataGrid other) {
+        double[] source = Settings.DATA_TYPE_BIN == table.getCompareValueType() ? other.binValues : other.originalValues;
+        System.arraycopy(source, 0, compareToValues, 0, compareToValues.length);
+    }
+
+    public boolean isSelected(int x, int y) {
+        return selected[index(x, y)];
+    }
+
+    public void setSelected(int x, int y, boolean selected) {
+        int index = index(x, y);
+        if (this.selected[index] != selected) {
+            this.selected[index] = selected;
+            repaintCell(index);
+        }
+    }
+
+    public boolean isHighlighted(int x, int y) {
+        return highlighted[index(x, y)];
+    }
+
+    public void setHighlighted(int x, int y, boolean highlighted) {
+        int index = index(x, y);
+        if (this.highlighted[index] != highlighted) {
+            this.highlighted[index] = highlighted;
+            repaintCell(index);
+        }
+    }
+
+    public void setLiveDataTrace(int x, int y, boolean trace) {
+        int index = index(x, y);
+        if (traced[index] != trace) {
+            traced[index] = trace;
+            drawCell(index);
+        }
+    }
+
+    public void setLiveDataTraceValue(int x, int y, String liveValue) {
+        int index = index(x, y);
+        if (liveValues[index] != liveValue) {
+            liveValues[index] = liveValue;
+            drawCell(index);
+        }
+    }
+
+    /**
+     * @return cell text as painted
+     */
+    public String getText(int x, int y) {
+        return getCellText(index(x, y));
+    }
+
+    /**
+     * @return true if all bin values are equal to those of the other grid
+     */
+    public boolean valuesEqual(DataGrid other) {
+        return sizeX == other.sizeX && sizeY == other.sizeY && Arrays.equals(binValues, other.binValues);
+    }
+
+    public double getMinBin() {
+        double result = binValues[0];
+        for (double value : binValues)
+            result = Math.min(result, value);
+        return result;
+    }
+
+    public double getMaxBin() {
+        double result = binValues[0];
+        for (double value : binValues)
+            result = Math.max(result, value);
+        return result;
+    }
+
+    public double getMinCompare() {
+        double result = binValues[0] - compareToValues[0];
+        for (int i = 0; i < binValues.length; i++)
+            result = Math.min(result, binValues[i] - compareToValues[i]);
+        return result;
+    }
+
+    public double getMaxCompare() {
+        double result = binValues[0] - compareToValues[0];
+        for (int i = 0; i < binValues.length; i++)
+            result = Math.max(result, binValues[i] - compareToValues[i]);
+        return result;
+    }
+
+    /**
+     * Text of all cells is formatted again on next paint, for example after scale change
+     */
+    public void drawTable() {
+        Arrays.fill(texts, null);
+        repaint();
+    }
+
+    private void drawCell(int index) {
+        texts[index] = null;
+        repaintCell(index);
+    }
+
+    private void repaintCell(int index) {
+        repaint(getCellBounds(index / sizeY, index % sizeY));
+    }
+
+    /**
+     * Operating point overlay: cells are shaded by their share of the hottest cell and the point is marked. Only the
+     * cells with a different shade and the old and new point areas are repainted.
+     *
+     * @param heat   hit count of each cell, indexed the same way as cell values
+     * @param pointX fractional cell coordinates of the point, NaN if none
+     */
+    public void setOperatingPoint(double[] heat, double pointX, double pointY) {
+        double max = 0;
+        for (int i = 0; i < heatLevels.length; i++)
+            max = Math.max(max, heat[i]);
+        for (int i = 0; i < heatLevels.length; i++) {
+            int level = max == 0 ? 0 : (int) Math.round(heat[i] / max * HEAT_LEVELS);
+            if (heatLevels[i] != level) {
+                heatLevels[i] = level;
+                repaintCell(i);
+            }
+        }
+        if (Double.compare(this.pointX, pointX) != 0 || Double.compare(this.pointY, pointY) != 0) {
+            repaintPoint();
+            this.pointX = pointX;
+            this.pointY = pointY;
+            repaintPoint();
+        }
+    }
+
+    public void clearOperatingPoint() {
+        Arrays.fill(heatLevels, 0);
+        pointX = Double.NaN;
+        pointY = Double.NaN;
+        repaint();
+    }
+
+    private void repaintPoint() {
+        if (Double.isNaN(pointX) || Double.isNaN(pointY))
+            return;
+        repaint(getPointX() - POINT_RADIUS - 1, getPointY() - POINT_RADIUS - 1, 2 * POINT_RADIUS + 3, 2 * POINT_RADIUS + 3);
+    }
+
+    private int getPointX() {
+        return (int) ((pointX + 0.5) * getWidth() / sizeX);
+    }
+
+    private int getPointY() {
+        return (int) ((pointY + 0.5) * getHeight() / sizeY);
+    }
+
+    public Rectangle getCellBounds(int x, int y) {
+        int left = x * getWidth() / sizeX;
+        int top = y * getHeight() / sizeY;
+        return new Rectangle(left, top, (x + 1) * getWidth() / sizeX - left, (y + 1) * getHeight() / sizeY - top);
+    }
+
+    /**
+     * @return index of the cell at given point, -1 if outside of the grid
+     */
+    private int getCellIndex(Point point) {
+        if (point.x < 0 || point.y < 0 || point.x >= getWidth() || point.y >= getHeight())
+            return -1;
+        int x = point.x * sizeX / getWidth();
+        int y = point.y * sizeY / getHeight();
+        return x * sizeY + y;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        Dimension cellSize = getSettings().getCellSize();
+        return new Dimension(cellSize.width * sizeX, cellSize.height * sizeY);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g;
+        Map<?, ?> desktopHints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+        if (desktopHints != null)
+            g2.addRenderingHints(desktopHints);
+        g2.setFont(getSettings().getTableFont());
+        FontMetrics metrics = g2.getFontMetrics();
+
+        Rectangle clip = g2.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        int fromX = Math.max(0, clip.x * sizeX / Math.max(1, getWidth()));
+        int toX = Math.min(sizeX - 1, (clip.x + clip.width) * sizeX / Math.max(1, getWidth()));
+        int fromY = Math.max(0, clip.y * sizeY / Math.max(1, getHeight()));
+        int toY = Math.min(sizeY - 1, (clip.y + clip.height) * sizeY / Math.max(1, getHeight()));
+        for (int x = fromX; x <= toX; x++) {
+            for (int y = fromY; y <= toY; y++) {
+                paintCell(g2, metrics, x * sizeY + y, getCellBounds(x, y));
+            }
+        }
+
+        if (!Double.isNaN(pointX) && !Double.isNaN(pointY)) {
+            g2.setColor(getSettings().getliveValueColor());
+            g2.fillOval(getPointX() - POINT_RADIUS, getPointY() - POINT_RADIUS, 2 * POINT_RADIUS, 2 * POINT_RADIUS);
+            g2.setColor(defaultBorderColor);
+            g2.drawOval(getPointX() - POINT_RADIUS, getPointY() - POINT_RADIUS, 2 * POINT_RADIUS, 2 * POINT_RADIUS);
+        }
+    }
+
+    private void paintCell(Graphics2D g, FontMetrics metrics, int index, Rectangle bounds) {
+        g.setColor(getCellBackgroundColor(index));
+        g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+        if (heatLevels[index] > 0) {
+            g.setColor(HEAT_COLORS[heatLevels[index]]);
+            g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+        }
+
+        g.setColor(getCellBorderColor(index));
+        int borderWidth = getCellBorderWidth(index);
+        for (int i = 0; i < borderWidth; i++)
+            g.drawRect(bounds.x + i, bounds.y + i, bounds.width - 1 - 2 * i, bounds.height - 1 - 2 * i);
+
+        String text = getCellText(index);
+        g.setColor(getCellTextColor(index));
+        Shape clip = g.getClip();
+        g.clipRect(bounds.x, bounds.y, bounds.width, bounds.height);
+        g.drawString(text,
+                bounds.x + (bounds.width - metrics.stringWidth(text)) / 2,
+                bounds.y + (bounds.height - metrics.getHeight()) / 2 + metrics.getAscent());
+        g.setClip(clip);
+    }
+
+    private Color getCellBackgroundColor(int index) {
+        Settings settings = getSettings();
+        if (highlighted[index]) {
+            return settings.getHighlightColor();
+        } else if (selected[index]) {
+            return settings.getSelectColor();
+        } else if (null == table.getCompareTable()) {
+            return getBinColor(binValues[index]);
+        } else {
+            return getCompareColor(binValues[index] - compareToValues[index]);
+        }
+    }
+
+    private Color getBinColor(double binValue) {
+        if (table.getMaxAllowedBin() < binValue || table.getMinAllowedBin() > binValue) {
+            return getSettings().getWarningColor();
+        }
+        double colorScale;
+        if (table.getMaxBin() - table.getMinBin() == 0.0) {
+            // if all values are the same, color will be middle value
+            colorScale = .5;
+        } else {
+            colorScale = (binValue - table.getMinBin()) / (table.getMaxBin() - table.getMinBin());
+        }
+        return getScaledColor(colorScale);
+    }
+
+    private Color getCompareColor(double compareValue) {
+        if (0.0 == compareValue) {
+            return Settings.UNCHANGED_VALUE_COLOR;
+        } else if (table.getMinCompare() == table.getMaxCompare()) {
+            return getSettings().getMaxColor();
+        }
+        return getScaledColor((compareValue - table.getMinCompare()) / (table.getMaxCompare() - table.getMinCompare()));
+    }
+
+    private Color getCellTextColor(int index) {
+        if (traced[index]) {
+            return isNullOrEmpty(liveValues[index]) ? Settings.scaleTextColor : Settings.liveDataTraceTextColor;
+        } else if (highlighted[index]) {
+            return Settings.highlightTextColor;
+        } else if (selected[index]) {
+            return Settings.selectTextColor;
+        }
+        return Settings.scaleTextColor;
+    }
+
+    private double getCheckValue(int index) {
+        return null == table.getCompareTable() ? originalValues[index] : compareToValues[index];
+    }
+
+    private Color getCellBorderColor(int index) {
+        if (traced[index])
+            return getSettings().getliveValueColor();
+        double checkValue = getCheckValue(index);
+        if (checkValue < binValues[index]) {
+            return getSettings().getIncreaseBorder();
+        } else if (checkValue > binValues[index]) {
+            return getSettings().getDecreaseBorder();
+        }
+        return defaultBorderColor;
+    }
+
+    private int getCellBorderWidth(int index) {
+        return traced[index] || getCheckValue(index) != binValues[index] ? 2 : 1;
+    }
+
+    private String getCellText(int index) {
+        String text = texts[index];
+        if (text == null)
+            texts[index] = text = formatCell(index);
+        return text;
+    }
+
+    private String formatCell(int index) {
+        DecimalFormat formatter = new DecimalFormat(table.getCurrentScale().getFormat());
+        String displayString = "";
+
+        double binValue = binValues[index];
+        if (null == table.getCompareTable()) {
+            displayString = formatter.format(toReal(binValue));
+        } else if (table.getCompareDisplay() == Settings.COMPARE_DISPLAY_ABSOLUTE) {
+            displayString = formatter.format(toReal(binValue) - toReal(compareToValues[index]));
+        } else if (table.getCompareDisplay() == Settings.COMPARE_DISPLAY_PERCENT) {
+            if (binValue == compareToValues[index]) {
+                displayString = PERCENT_FORMAT.format(0.0);
+            } else {
+                displayString = PERCENT_FORMAT.format(getRealCompareChangeValue(index));
+            }
+        }
+
+        if (traced[index] && !isNullOrEmpty(liveValues[index])) {
+            displayString += ':' + liveValues[index];
+        }
+        return displayString;
+    }
+
+    private double getRealCompareChangeValue(int index) {
+        double realBinValue = toReal(binValues[index]);
+        double realCompareValue = toReal(compareToValues[index]);
+
+        if (realCompareValue != 0.0) {
+            // Compare change formula ((V2 - V1) / |V1|).
+            return ((realBinValue - realCompareValue) / Math.abs(realCompareValue));
+        } else {
+            // Use this to avoid divide by 0 or infinite increase.
+            return realBinValue - realCompareValue;
+        }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        int index = getCellIndex(e.getPoint());
+        return index == -1 ? null : Double.toString(toReal(binValues[index]));
+    }
+
+    @Override
+    public void mousePressed(MouseEvent e) {
+        int index = getCellIndex(e.getPoint());
+        if (index == -1)
+            return;
+        mouseIndex = index;
+        if (!e.isControlDown()) {
+            table.clearSelection();
+        }
+
+        if (e.isControlDown() && e.isAltDown()) {
+            clearCell(index);
+        } else {
+            table.startHighlight(index / sizeY, index % sizeY);
+        }
+        requestFocus();
+        ECUEditorManager.getECUEditor().getTableToolBar().updateTableToolBar(table);
+    }
+
+    @Override
+    public void mouseReleased(MouseEvent e) {
+        table.stopHighlight();
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        mouseMoved(e);
+    }
+
+    /**
+     * Same as {@link DataCell#mouseEntered} but only once the mouse gets into another cell
+     */
+    @Override
+    public void mouseMoved(MouseEvent e) {
+        int index = getCellIndex(e.getPoint());
+        if (index == mouseIndex)
+            return;
+        mouseIndex = index;
+        if (index == -1)
+            return;
+        if (unSelectMask1 == (e.getModifiersEx() & unSelectMask1)) {
+            clearCell(index);
+        } else if (unSelectMask2 == (e.getModifiersEx() & unSelectMask2)) {
+            clearCell(index);
+        } else {
+            table.highlight(index / sizeY, index % sizeY);
+        }
+    }
+
+    @Override
+    public void mouseEntered(MouseEvent e) {
+        mouseMoved(e);
+    }
+
+    @Override
+    public void mouseExited(MouseEvent e) {
+        mouseIndex = -1;
+    }
+
+    @Override
+    public void mouseClicked(MouseEvent e) {
+    }
+
+    private void clearCell(int index) {
+        if (highlighted[index]) {
+            highlighted[index] = false;
+            repaintCell(index);
+        }
+        if (selected[index]) {
+            selected[index] = false;
+            repaintCell(index);
+        }
+    }
+
+    private Settings getSettings() {
+        return SettingsManager.getSettings();
+    }
+}
@@ -22,10 +22,13 @@ package com.romraider.maps;
 import static com.romraider.util.ParamChecker.isNullOrEmpty;
 
 import java.awt.BorderLayout;
-import java.awt.Color;
+import java.awt.Component;
+import java.awt.Container;
 import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.GridLayout;
+import java.awt.Insets;
+import java.awt.LayoutManager;
 import java.awt.Toolkit;
 import java.awt.Window;
 import java.awt.datatransfer.DataFlavor;
@@ -58,8 +61,10 @@ public class Table3D extends Table {
     private JLabel xAxisLabel;
     private JLabel yAxisLabel;
 
-    @SuppressWarnings("hiding")
-    DataCell[][] data = new DataCell[1][1];
+    /**
+     * Data cells are painted by one component instead of one {@link DataCell} label per cell
+     */
+    private final DataGrid grid = new DataGrid(this);
     private boolean swapXY = false;
     private boolean flipX = false;
     private boolean flipY = false;
@@ -70,6 +75,7 @@ public class Table3D extends Table {
     public Table3D() {
         verticalOverhead += 39;
         horizontalOverhead += 10;
+        centerPanel.setLayout(new CenterLayout());
     }
 
     public Table1D getXAxis() {
@@ -115,32 +121,24 @@ public class Table3D extends Table {
     }
 
     public void setSizeX(int size) {
-        data = new DataCell[size][data[0].length];
-        centerLayout.setColumns(size + 1);
+        grid.setGridSize(size, grid.getSizeY());
     }
 
     public int getSizeX() {
-        return data.length;
+        return grid.getSizeX();
     }
 
     public void setSizeY(int size) {
-        data = new DataCell[data.length][size];
-        centerLayout.setRows(size + 1);
+        grid.setGridSize(grid.getSizeX(), size);
     }
 
     public int getSizeY() {
-        return data[0].length;
+        return grid.getSizeY();
     }
 
     @Override
     public void drawTable() {
-        for(DataCell[] column : data) {
-            for(DataCell cell : column) {
-                if(null != cell) {
-                    cell.drawCell();
-                }
-            }
-        }
+        grid.drawTable();
         xAxis.drawTable();
         yAxis.drawTable();
     }
@@ -204,22 +202,15 @@ public class Table3D extends Table {
                             signed);
                 }
 
-                // show locked cell
-                if (tempLock) {
-                    data[x][y].setForeground(Color.GRAY);
-                }
-
-                data[x][y] = new DataCell(this, cellBinValue, x, y);
+                grid.setValue(x, y, cellBinValue);
                 offset++;
             }
         }
 
         for (int y = 0; y < yAxis.getDataSize(); y++) {
             centerPanel.add(yAxis.getDataCell(y));
-            for (int x = 0; x < xAxis.getDataSize(); x++) {
-                centerPanel.add(data[x][y]);
-            }
         }
+        centerPanel.add(grid);
 
         // reset locked status
         locked = tempLock;
@@ -284,36 +275,10 @@ public class Table3D extends Table {
 
     @Override
     public void calcCellRanges() {
-        double binMax = data[0][0].getBinValue();
-        double binMin = data[0][0].getBinValue();
-
-        double compareMax = data[0][0].getCompareValue();
-        double compareMin = data[0][0].getCompareValue();
-
-        for(DataCell[] column : data) {
-            for(DataCell cell : column) {
-                // Calc bin
-                if(binMax < cell.getBinValue()) {
-                    binMax = cell.getBinValue();
-                }
-                if(binMin > cell.getBinValue()) {
-                    binMin = cell.getBinValue();
-                }
-
-                // Calc compare
-                double compareValue = cell.getCompareValue();
-                if(compareMax < compareValue) {
-                    compareMax = compareValue;
-                }
-                if(compareMin > compareValue) {
-                    compareMin = compareValue;
-                }
-            }
-        }
-        setMaxBin(binMax);
-        setMinBin(binMin);
-        setMaxCompare(compareMax);
-        setMinCompare(compareMin);
+        setMaxBin(grid.getMaxBin());
+        setMinBin(grid.getMinBin());
+        setMaxCompare(grid.getMaxCompare());
+        setMinCompare(grid.getMinCompare());
     }
 
     @Override
@@ -328,7 +293,7 @@ public class Table3D extends Table {
             output.append(Settings.TAB);
 
             for (int x = 0; x < getSizeX(); x++) {
-                output.append(data[x][y].getRealValue());
+                output.append(grid.getRealValue(x, y));
                 if (x < getSizeX() - 1) {
                     output.append(Settings.TAB);
                 }
@@ -349,8 +314,8 @@ public class Table3D extends Table {
         }
 
         Table3D compareTable3D = (Table3D) otherTable;
-        if(data.length != compareTable3D.data.length ||
-                data[0].length != compareTable3D.data[0].length ||
+        if(getSizeX() != compareTable3D.getSizeX() ||
+                getSizeY() != compareTable3D.getSizeY() ||
                 xAxis.getDataSize() != compareTable3D.xAxis.getDataSize() ||
                 yAxis.getDataSize() != compareTable3D.yAxis.getDataSize()) {
             return;
@@ -358,15 +323,7 @@ public class Table3D extends Table {
 
         clearLiveDataTrace();
 
-        int x=0;
-        for (DataCell[] column : data) {
-            int y = 0;
-            for(DataCell cell : column) {
-                cell.setCompareValue(compareTable3D.data[x][y]);
-                y++;
-            }
-            x++;
-        }
+        grid.setCompareValues(compareTable3D.grid);
 
         xAxis.populateCompareValues(compareTable3D.getXAxis());
         yAxis.populateCompareValues(compareTable3D.getYAxis());
@@ -383,8 +340,8 @@ public class Table3D extends Table {
     }
 
     public Dimension getFrameSize() {
-        int height = verticalOverhead + cellHeight * data[0].length;
-        int width = horizontalOverhead + data.length * cellWidth;
+        int height = verticalOverhead + cellHeight * getSizeY();
+        int width = horizontalOverhead + getSizeX() * cellWidth;
         if (height < minHeight) {
             height = minHeight;
         }
@@ -399,9 +356,9 @@ public class Table3D extends Table {
     public String toString() {
         return super.toString() + " (3D)";/* +
                 "\n   Flip X: " + flipX +
-                "\n   Size X: " + data.length +
+                "\n   Size X: " + getSizeX() +
                 "\n   Flip Y: " + flipY +
-                "\n   Size Y: " + data[0].length +
+                "\n   Size Y: " + getSizeY() +
                 "\n   Swap X/Y: " + swapXY +
                 xAxis +
                 yAxis;*/
@@ -412,8 +369,8 @@ public class Table3D extends Table {
         if (!locked) {
             for (int x = 0; x < this.getSizeX(); x++) {
                 for (int y = 0; y < this.getSizeY(); y++) {
-                    if (data[x][y].isSelected()) {
-                        data[x][y].increment(increment);
+                    if (grid.isSelected(x, y)) {
+                        grid.increment(x, y, increment);
                     }
                 }
             }
@@ -425,8 +382,8 @@ public class Table3D extends Table {
         if (!locked) {
             for (int x = 0; x < this.getSizeX(); x++) {
                 for (int y = 0; y < this.getSizeY(); y++) {
-                    if (data[x][y].isSelected()) {
-                        data[x][y].multiply(factor);
+                    if (grid.isSelected(x, y)) {
+                        grid.multiply(x, y, factor);
                     }
                 }
             }
@@ -444,7 +401,7 @@ public class Table3D extends Table {
     public void clearSelectedData() {
         for (int x = 0; x < this.getSizeX(); x++) {
             for (int y = 0; y < this.getSizeY(); y++) {
-                data[x][y].setSelected(false);
+                grid.setSelected(x, y, false);
             }
         }
     }
@@ -458,9 +415,9 @@ public class Table3D extends Table {
                             (y <= highlightY && y >= yCoord)) &&
                             ((x >= highlightX && x <= xCoord) ||
                                     (x <= highlightX && x >= xCoord))) {
-                        data[x][y].setHighlighted(true);
+                        grid.setHighlighted(x, y, true);
                     } else {
-                        data[x][y].setHighlighted(false);
+                        grid.setHighlighted(x, y, false);
                     }
                 }
             }
@@ -473,9 +430,9 @@ public class Table3D extends Table {
         // loop through, selected and un-highlight
         for (int x = 0; x < this.getSizeX(); x++) {
             for (int y = 0; y < this.getSizeY(); y++) {
-                if (data[x][y].isHighlighted()) {
-                    data[x][y].setSelected(true);
-                    data[x][y].setHighlighted(false);
+                if (grid.isHighlighted(x, y)) {
+                    grid.setSelected(x, y, true);
+                    grid.setHighlighted(x, y, false);
                 }
             }
         }
@@ -483,11 +440,7 @@ public class Table3D extends Table {
 
     @Override
     public void setRevertPoint() {
-        for (int x = 0; x < this.getSizeX(); x++) {
-            for (int y = 0; y < this.getSizeY(); y++) {
-                data[x][y].setRevertPoint();
-            }
-        }
+        grid.setRevertPoint();
         yAxis.setRevertPoint();
         xAxis.setRevertPoint();
     }
@@ -497,7 +450,7 @@ public class Table3D extends Table {
         clearLiveDataTrace();
         for (int x = 0; x < this.getSizeX(); x++) {
             for (int y = 0; y < this.getSizeY(); y++) {
-                data[x][y].undo();
+                grid.undo(x, y);
             }
         }
         yAxis.undoAll();
@@ -509,8 +462,8 @@ public class Table3D extends Table {
         clearLiveDataTrace();
         for (int x = 0; x < this.getSizeX(); x++) {
             for (int y = 0; y < this.getSizeY(); y++) {
-                if (data[x][y].isSelected()) {
-                    data[x][y].undo();
+                if (grid.isSelected(x, y)) {
+                    grid.undo(x, y);
                 }
             }
         }
@@ -540,12 +493,12 @@ public class Table3D extends Table {
                     // determine output byte values
                     byte[] output;
                     if (storageType != Settings.STORAGE_TYPE_FLOAT) {
-                        output = RomAttributeParser.parseIntegerValue((int) data[x][y].getBinValue(), endian, storageType);
+                        output = RomAttributeParser.parseIntegerValue((int) grid.getBinValue(x, y), endian, storageType);
                         for (int z = 0; z < storageType; z++) {
                             binData[offset * storageType + z + getStorageAddress() - ramOffset] = output[z];
                         }
                     } else { // float
-                        output = RomAttributeParser.floatToByte((float) data[x][y].getBinValue(), endian);
+                        output = RomAttributeParser.floatToByte((float) grid.getBinValue(x, y), endian);
                         for (int z = 0; z < 4; z++) {
                             binData[offset * 4 + z + getStorageAddress() - ramOffset] = output[z];
                         }
@@ -562,10 +515,10 @@ public class Table3D extends Table {
     @Override
     public void setRealValue(String realValue) {
         if (!locked && !(userLevel > getSettings().getUserLevel()) ) {
-            for(DataCell[] column : data) {
-                for(DataCell cell : column) {
-                    if(cell.isSelected()) {
-                        cell.setRealValue(realValue);
+            for (int x = 0; x < getSizeX(); x++) {
+                for (int y = 0; y < getSizeY(); y++) {
+                    if (grid.isSelected(x, y)) {
+                        grid.setRealValue(x, y, realValue);
                     }
                 }
             }
@@ -583,11 +536,7 @@ public class Table3D extends Table {
     public void addKeyListener(KeyListener listener) {
         xAxis.addKeyListener(listener);
         yAxis.addKeyListener(listener);
-        for (int x = 0; x < this.getSizeX(); x++) {
-            for (int y = 0; y < this.getSizeY(); y++) {
-                data[x][y].addKeyListener(listener);
-            }
-        }
+        grid.addKeyListener(listener);
     }
 
     public void selectCellAt(int y, Table1D axisType) {
@@ -601,29 +550,29 @@ public class Table3D extends Table {
 
     public void deSelectCellAt(int x, int y) {
         clearSelection();
-        data[x][y].setSelected(false);
+        grid.setSelected(x, y, false);
         highlightX = x;
         highlightY = y;
     }
 
     public void selectCellAt(int x, int y) {
         clearSelection();
-        data[x][y].setSelected(true);
+        grid.setSelected(x, y, true);
         highlightX = x;
         highlightY = y;
     }
 
     public void selectCellAtWithoutClear(int x, int y) {
-        data[x][y].setSelected(true);
+        grid.setSelected(x, y, true);
         highlightX = x;
         highlightY = y;
     }
 
     @Override
     public void cursorUp() {
-        if (highlightY > 0 && data[highlightX][highlightY].isSelected()) {
+        if (highlightY > 0 && grid.isSelected(highlightX, highlightY)) {
             selectCellAt(highlightX, highlightY - 1);
-        } else if (data[highlightX][highlightY].isSelected()) {
+        } else if (grid.isSelected(highlightX, highlightY)) {
             xAxis.selectCellAt(highlightX);
         } else {
             xAxis.cursorUp();
@@ -633,7 +582,7 @@ public class Table3D extends Table {
 
     @Override
     public void cursorDown() {
-        if (highlightY < getSizeY() - 1 && data[highlightX][highlightY].isSelected()) {
+        if (highlightY < getSizeY() - 1 && grid.isSelected(highlightX, highlightY)) {
             selectCellAt(highlightX, highlightY + 1);
         } else {
             xAxis.cursorDown();
@@ -643,9 +592,9 @@ public class Table3D extends Table {
 
     @Override
     public void cursorLeft() {
-        if (highlightX > 0 && data[highlightX][highlightY].isSelected()) {
+        if (highlightX > 0 && grid.isSelected(highlightX, highlightY)) {
             selectCellAt(highlightX - 1, highlightY);
-        } else if (data[highlightX][highlightY].isSelected()) {
+        } else if (grid.isSelected(highlightX, highlightY)) {
             yAxis.selectCellAt(highlightY);
         } else {
             xAxis.cursorLeft();
@@ -655,7 +604,7 @@ public class Table3D extends Table {
 
     @Override
     public void cursorRight() {
-        if (highlightX < getSizeX() - 1 && data[highlightX][highlightY].isSelected()) {
+        if (highlightX < getSizeX() - 1 && grid.isSelected(highlightX, highlightY)) {
             selectCellAt(highlightX + 1, highlightY);
         } else {
             xAxis.cursorRight();
@@ -769,8 +718,8 @@ public class Table3D extends Table {
                         String currentToken = currentLine.nextToken();
 
                         try {
-                            if (!data[x][y].getText().equalsIgnoreCase(currentToken)) {
-                                data[x][y].setRealValue(currentToken);
+                            if (!grid.getText(x, y).equalsIgnoreCase(currentToken)) {
+                                grid.setRealValue(x, y, currentToken);
                             }
                         } catch (ArrayIndexOutOfBoundsException ex) { /* copied table is larger than current table*/ }
                     }
@@ -782,12 +731,11 @@ public class Table3D extends Table {
     @Override
     public void verticalInterpolate() {
         int[] coords = { getSizeX(), getSizeY(), 0, 0};
-        DataCell[][] tableData = get3dData();
 
         int x, y;
         for (x = 0; x < getSizeX(); x++) {
             for (y = 0; y < getSizeY(); y++) {
-                if (tableData[x][y].isSelected()) {
+                if (grid.isSelected(x, y)) {
                     if (x < coords[0])
                         coords[0] = x;
                     if (x > coords[2])
@@ -802,10 +750,10 @@ public class Table3D extends Table {
         if (coords[3] - coords[1] > 1) {
             double diff;
             for (y = coords[0]; y <= coords[2]; y++) {
-                diff = (tableData[y][coords[1]].getRealValue() - tableData[y][coords[3]].getRealValue()) / (coords[3] - coords[1]);
+                diff = (grid.getRealValue(y, coords[1]) - grid.getRealValue(y, coords[3])) / (coords[3] - coords[1]);
                 if (Math.abs(diff) > 0) {
                     for (x = coords[1] + 1; x < coords[3]; x++)
-                        tableData[y][x].setRealValue(String.valueOf(tableData[y][x - 1].getRealValue() - diff));
+                        grid.setRealValue(y, x, String.valueOf(grid.getRealValue(y, x - 1) - diff));
                 }
             }
         }
@@ -816,12 +764,11 @@ public class Table3D extends Table {
     @Override
     public void horizontalInterpolate() {
         int[] coords = { getSizeX(), getSizeY(), 0, 0 };
-        DataCell[][] tableData = get3dData();
 
         int x, y;
         for (x = 0; x < getSizeX(); x++) {
             for (y = 0; y < getSizeY(); y++) {
-                if (tableData[x][y].isSelected()) {
+                if (grid.isSelected(x, y)) {
                     if (x < coords[0])
                         coords[0] = x;
                     if (x > coords[2])
@@ -836,10 +783,10 @@ public class Table3D extends Table {
         if (coords[2] - coords[0] > 1) {
             double diff;
             for (x = coords[1]; x <= coords[3]; x++) {
-                diff = (tableData[coords[0]][x].getRealValue() - tableData[coords[2]][x].getRealValue()) / (coords[2] - coords[0]);
+                diff = (grid.getRealValue(coords[0], x) - grid.getRealValue(coords[2], x)) / (coords[2] - coords[0]);
                 if (Math.abs(diff) > 0) {
                     for (y = coords[0] + 1; y < coords[2]; y++)
-                        tableData[y][x].setRealValue(String.valueOf(tableData[y - 1][x].getRealValue() - diff));
+                        grid.setRealValue(y, x, String.valueOf(grid.getRealValue(y - 1, x) - diff));
                 }
             }
         }
@@ -868,9 +815,8 @@ public class Table3D extends Table {
         if (getOverlayLog()) {
             int x = xAxis.getLiveDataIndex();
             int y = yAxis.getLiveDataIndex();
-            DataCell cell = data[x][y];
-            cell.setLiveDataTrace(true);
-            cell.setLiveDataTraceValue(liveValue);
+            grid.setLiveDataTrace(x, y, true);
+            grid.setLiveDataTraceValue(x, y, liveValue);
             getToolbar().setLiveDataValue(liveValue);
         }
     }
@@ -880,7 +826,7 @@ public class Table3D extends Table {
         if (getOverlayLog()) {
             int x = xAxis.getLiveDataIndex();
             int y = yAxis.getLiveDataIndex();
-            data[x][y].setLiveDataTrace(true);
+            grid.setLiveDataTrace(x, y, true);
         }
     }
 
@@ -890,13 +836,13 @@ public class Table3D extends Table {
         yAxis.clearLiveDataTrace();
         for (int x = 0; x < getSizeX(); x++) {
             for (int y = 0; y < getSizeY(); y++) {
-                data[x][y].setLiveDataTrace(false);
+                grid.setLiveDataTrace(x, y, false);
             }
         }
     }
 
-    public DataCell[][] get3dData() {
-        return data;
+    public DataGrid getGrid() {
+        return grid;
     }
 
     @Override
@@ -994,26 +940,8 @@ public class Table3D extends Table {
                 return false;
             }
 
-            if(this.data.length != otherTable.data.length || this.data[0].length != otherTable.data[0].length)
-            {
-                return false;
-            }
-
-            if(this.data.equals(otherTable.data))
-            {
-                return true;
-            }
-
             // Compare Bin Values
-            for(int i = 0 ; i < this.data.length ; i++) {
-                for(int j = 0; j < this.data[i].length ; j++) {
-                    if(! this.data[i][j].equals(otherTable.data[i][j]) ) {
-                        return false;
-                    }
-                }
-            }
-
-            return true;
+            return grid.valuesEqual(otherTable.grid);
         } catch(Exception ex) {
             // TODO: Log Exception.
             return false;
@@ -1032,6 +960,73 @@ public class Table3D extends Table {
             yAxis.repaint();
         }
     }
+
+    /**
+     * Same cell sizes as a grid layout with an x axis row on top and an y axis column on the left, with the
+     * {@link DataGrid} spanning all the data cells.
+     */
+    private class CenterLayout implements LayoutManager {
+        @Override
+        public void addLayoutComponent(String name, Component comp) {
+        }
+
+        @Override
+        public void removeLayoutComponent(Component comp) {
+        }
+
+        @Override
+        public Dimension preferredLayoutSize(Container parent) {
+            return layoutSize(parent, false);
+        }
+
+        @Override
+        public Dimension minimumLayoutSize(Container parent) {
+            return layoutSize(parent, true);
+        }
+
+        private Dimension layoutSize(Container parent, boolean minimum) {
+            int width = 0;
+            int height = 0;
+            for (Component component : parent.getComponents()) {
+                if (component == grid)
+                    continue;
+                Dimension size = minimum ? component.getMinimumSize() : component.getPreferredSize();
+                width = Math.max(width, size.width);
+                height = Math.max(height, size.height);
+            }
+            Insets insets = parent.getInsets();
+            return new Dimension(insets.left + insets.right + width * (xAxis.getDataSize() + 1),
+                    insets.top + insets.bottom + height * (yAxis.getDataSize() + 1));
+        }
+
+        /**
+         * Components are expected in {@link #populateTable} order: corner, x axis cells, y axis cells, grid
+         */
+        @Override
+        public void layoutContainer(Container parent) {
+            int columns = xAxis.getDataSize() + 1;
+            int rows = yAxis.getDataSize() + 1;
+            Insets insets = parent.getInsets();
+            int width = parent.getWidth() - insets.left - insets.right;
+            int height = parent.getHeight() - insets.top - insets.bottom;
+            int cellWidth = width / columns;
+            int cellHeight = height / rows;
+            int left = insets.left + (width - cellWidth * columns) / 2;
+            int top = insets.top + (height - cellHeight * rows) / 2;
+
+            Component[] components = parent.getComponents();
+            for (int i = 0; i < components.length; i++) {
+                Component component = components[i];
+                if (component == grid) {
+                    component.setBounds(left + cellWidth, top + cellHeight, cellWidth * (columns - 1), cellHeight * (rows - 1));
+                } else if (i < columns) {
+                    component.setBounds(left + cellWidth * i, top, cellWidth, cellHeight);
+                } else {
+                    component.setBounds(left, top + cellHeight * (i - columns + 1), cellWidth, cellHeight);
+                }
+            }
+        }
+    }
 }
 
 class CopySelection3DWorker extends SwingWorker<Void, Void> {
@@ -1053,7 +1048,7 @@ class CopySelection3DWorker extends SwingWorker<Void, Void> {
 
         for (int x = 0; x < table.getSizeX(); x++) {
             for (int y = 0; y < table.getSizeY(); y++) {
-                if (table.get3dData()[x][y].isSelected()) {
+                if (table.getGrid().isSelected(x, y)) {
                     if (x < coords[0]) {
                         coords[0] = x;
                         copy = true;
@@ -1079,8 +1074,8 @@ class CopySelection3DWorker extends SwingWorker<Void, Void> {
             StringBuffer output = new StringBuffer("[Selection3D]" + newline);
             for (int y = coords[1]; y <= coords[3]; y++) {
                 for (int x = coords[0]; x <= coords[2]; x++) {
-                    if (table.get3dData()[x][y].isSelected()) {
-                        output.append(table.get3dData()[x][y].getText());
+                    if (table.getGrid().isSelected(x, y)) {
+                        output.append(table.getGrid().getText(x, y));
                     } else {
                         output.append("x"); // x represents non-selected cell
                     }
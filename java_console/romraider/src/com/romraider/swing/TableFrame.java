@@ -34,15 +34,18 @@ import javax.swing.event.InternalFrameListener;
 import com.romraider.Settings;
 import com.romraider.editor.ecu.ECUEditor;
 import com.romraider.editor.ecu.ECUEditorManager;
+import com.romraider.logger.ecu.ui.handler.table.OperatingPointOverlay;
 import com.romraider.logger.ecu.ui.handler.table.TableUpdateHandler;
 import com.romraider.maps.Rom;
 import com.romraider.maps.Table;
+import com.romraider.maps.Table3D;
 
 public class TableFrame extends JInternalFrame implements InternalFrameListener, ActionListener {
 
     private static final long serialVersionUID = -2651279694660392351L;
     private final Table table;
     private TableMenuBar tableMenuBar = null;
+    private OperatingPointOverlay operatingPointOverlay;
 
     public TableFrame(String title, Table table) {
         super(title, true, true);
@@ -75,6 +78,10 @@ public class TableFrame extends JInternalFrame implements InternalFrameListener,
     @Override
     public void internalFrameClosing(InternalFrameEvent e) {
         TableUpdateHandler.getInstance().deregisterTable(this.getTable());
+        if (operatingPointOverlay != null) {
+            operatingPointOverlay.stop();
+            operatingPointOverlay = null;
+        }
     }
 
     @Override
@@ -99,6 +106,12 @@ public class TableFrame extends JInternalFrame implements InternalFrameListener,
 
     public void RegisterTable() {
         TableUpdateHandler.getInstance().registerTable(this.getTable());
+        if (table instanceof Table3D && operatingPointOverlay == null) {
+            operatingPointOverlay = OperatingPointOverlay.create((Table3D) table);
+            if (operatingPointOverlay != null) {
+                operatingPointOverlay.start();
+            }
+        }
     }
 
     public Table getTable() {
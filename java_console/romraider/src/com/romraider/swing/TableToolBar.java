@@ -66,6 +66,7 @@ import org.apache.log4j.Logger;
 import com.romraider.Settings;
 import com.romraider.editor.ecu.ECUEditorManager;
 import com.romraider.maps.DataCell;
+import com.romraider.maps.DataGrid;
 import com.romraider.maps.Scale;
 import com.romraider.maps.Table;
 import com.romraider.maps.Table1D;
@@ -591,16 +592,14 @@ public class TableToolBar extends JToolBar implements MouseListener, ItemListene
 
         if (currentTable.getType() == Settings.TABLE_3D) {
             Table3D table3d = (Table3D) currentTable;
-            DataCell[][] tableData = table3d.get3dData();
-            valueCount = tableData.length;
-            DataCell[] dataRow = tableData[0];
-            rowCount = dataRow.length;
+            DataGrid tableData = table3d.getGrid();
+            valueCount = tableData.getSizeX();
+            rowCount = tableData.getSizeY();
 
             for (int j = (rowCount - 1); j >= 0; j--) {
                 float[] rowValues = new float[valueCount];
                 for (int i = 0; i < valueCount; i++) {
-                    DataCell theCell = tableData[i][j];
-                    rowValues[i] = (float) theCell.getRealValue();
+                    rowValues[i] = (float) tableData.getRealValue(i, j);
                 }
                 graphValues.add(rowValues);
             }
@@ -3,8 +3,8 @@ package com.rusefi;
 import com.rusefi.binaryprotocol.BinaryProtocol;
 import com.rusefi.binaryprotocol.BinaryProtocolHolder;
 import com.rusefi.config.generated.Fields;
-import com.rusefi.tracing.Entry;
 import com.rusefi.tracing.JsonOutput;
+import com.rusefi.tracing.TraceBuffer;
 import com.rusefi.ui.MessagesView;
 import com.rusefi.ui.RpmModel;
 import com.rusefi.ui.util.UiUtils;
@@ -16,7 +16,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.List;
 
 import static com.rusefi.CommandControl.TEST;
 import static com.rusefi.binaryprotocol.BinaryProtocolCommands.RESPONSE_OK;
@@ -29,6 +28,7 @@ public class BenchTestPane {
         content.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
         content.add(grabPerformanceTrace());
+        content.add(createLivePerformanceTrace());
         content.add(createFanTest());
         content.add(createAcRelayTest());
         content.add(createFuelPumpTest());
@@ -67,13 +67,14 @@ public class BenchTestPane {
                     if (!checkResponseCode(packet, RESPONSE_OK) || ((packet.length - 1) % 8) != 0)
                         throw new IllegalStateException("Unexpected packet");
 
-                    List<Entry> data = Entry.parseBuffer(packet);
+                    TraceBuffer data = TraceBuffer.decode(packet);
 
                     int rpm = RpmModel.getInstance().getValue();
                     String fileName = FileLog.getDate() + "_rpm_" + rpm + "_rusEfi_trace" + ".json";
 
-
-                    JsonOutput.writeToStream(data, new FileOutputStream(fileName));
+                    try (JsonOutput output = new JsonOutput(new FileOutputStream(fileName))) {
+                        output.append(data, 0);
+                    }
                 } catch (IOException | InterruptedException e1) {
                     throw new IllegalStateException(e1);
                 }
@@ -82,6 +83,12 @@ public class BenchTestPane {
         return UiUtils.wrap(button);
     }
 
+    private Component createLivePerformanceTrace() {
+        JButton button = new JButton("Live PTrace");
+        button.addActionListener(e -> new PerfTraceCapture().show());
+        return UiUtils.wrap(button);
+    }
+
     private Component createMILTest() {
         CommandControl panel = new CommandControl("MIL", "check_engine.jpg", TEST) {
             @NotNull
@@ -1,46 +1,71 @@
 package com.rusefi;
 
 import com.fathzer.soft.javaluator.DoubleEvaluator;
+import com.rusefi.util.LazyFile;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
 
 /**
  * http://rusefi.com/wiki/index.php?title=Manual:Flexible_Logic
  * <p/>
+ * Any number of input/output file pairs could be given, all lines of all files are compiled in parallel and each
+ * distinct expression is compiled only once. Outputs are written via {@link LazyFile}.
+ * <p/>
  * Andrey Belomutskiy, (c) 2013-2020
  * 1/19/2017
  */
 public class CompileTool {
     private static String NEWLINE = "\n";
+    /**
+     * normalized infix expression to RPN, shared by all files since boards have many expressions in common
+     */
+    private static final Map<String, String> RPN_CACHE = new ConcurrentHashMap<>();
 
     public static int run(List<String> args) throws IOException {
         System.out.println("Params " + args);
 
-        if (args.size() != 2) {
-            System.out.println("Please specify input file and output file name");
+        if (args.isEmpty() || args.size() % 2 != 0) {
+            System.out.println("Please specify input file and output file name, optionally followed by more input/output pairs");
             return -1;
         }
 
-        String inputFileName = args.get(0);
-        System.out.println("Reading from " + inputFileName);
-        String outputFileName = args.get(1);
-        System.out.println("Writing to " + outputFileName);
-
-        BufferedReader br = new BufferedReader(new FileReader(inputFileName));
-
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(outputFileName))) {
-            bw.write("// this https://en.wikipedia.org/wiki/Reverse_Polish_notation is generated automatically" + NEWLINE);
-            bw.write("// from " + inputFileName + NEWLINE);
-            bw.write("// on " + FileLog.getDate() + NEWLINE + "//" + NEWLINE);
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-//            line = line.replaceAll("\\s+", " ");
-                bw.write(handleOneFsioLine(line));
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<List<Future<String>>> outputs = new ArrayList<>();
+            for (int i = 0; i < args.size(); i += 2) {
+                String inputFileName = args.get(i);
+                System.out.println("Reading from " + inputFileName);
+                List<Future<String>> lines = new ArrayList<>();
+                for (String line : Files.readAllLines(Paths.get(inputFileName)))
+                    lines.add(executor.submit(() -> handleOneFsioLine(line.trim())));
+                outputs.add(lines);
+            }
 
+            for (int i = 0; i < args.size(); i += 2) {
+                String inputFileName = args.get(i);
+                String outputFileName = args.get(i + 1);
+                System.out.println("Writing to " + outputFileName);
+                LazyFile output = new LazyFile(outputFileName);
+                output.write("// this https://en.wikipedia.org/wiki/Reverse_Polish_notation is generated automatically" + NEWLINE);
+                output.write("// from " + inputFileName + NEWLINE);
+                output.write("// " + LazyFile.LAZY_FILE_TAG + "CompileTool on " + FileLog.getDate() + NEWLINE + "//" + NEWLINE);
+                for (Future<String> line : outputs.get(i / 2))
+                    output.write(line.get());
+                output.close();
             }
+        } catch (ExecutionException e) {
+            System.out.println("Error: " + e.getCause());
+            return -1;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            executor.shutdownNow();
         }
         System.out.println("Done!");
         return 0;
@@ -59,10 +84,8 @@ public class CompileTool {
 
         int indexOfEquals = line.indexOf('=');
 
-        if (indexOfEquals == -1) {
-            System.err.println("Unexpected line: " + line);
-            System.exit(-1);
-        }
+        if (indexOfEquals == -1)
+            throw new IllegalArgumentException("Unexpected line: " + line);
 
         String name = line.substring(0, indexOfEquals).trim();
 
@@ -70,8 +93,7 @@ public class CompileTool {
 
         String rpn;
         try {
-            rpn = DoubleEvaluator.process(expression).getPosftfixExpression();
-
+            rpn = RPN_CACHE.computeIfAbsent(normalize(expression), DoubleEvaluator::toRpn);
         } catch (Throwable e) {
             throw new IllegalStateException("For " + expression, e);
         }
@@ -79,4 +101,8 @@ public class CompileTool {
         result.append("#define " + name + " \"" + rpn + "\"" + NEWLINE);
         return result.toString();
     }
+
+    private static String normalize(String expression) {
+        return expression.replaceAll("\\s+", " ").toLowerCase();
+    }
 }
@@ -94,6 +94,7 @@ public class ConsoleUI {
             if (tabbedPane.paneSettings.showEtbPane)
                 tabbedPane.addTab("ETB", new ETBPane().getContent());
             tabbedPane.addTab("Presets", new PresetsPane().getContent());
+            tabbedPane.addTab("Tune History", new TuneHistoryPane().getContent());
         }
 
         tabbedPaneAdd("Engine Sniffer", engineSnifferPanel.getPanel(), engineSnifferPanel.getTabSelectedListener());
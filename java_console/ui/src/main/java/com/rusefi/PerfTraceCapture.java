@@ -0,0 +1,107 @@
+package com.rusefi;
+
+import com.rusefi.binaryprotocol.BinaryProtocol;
+import com.rusefi.binaryprotocol.BinaryProtocolHolder;
+import com.rusefi.config.generated.Fields;
+import com.rusefi.io.LinkManager;
+import com.rusefi.tracing.TraceAggregator;
+import com.rusefi.tracing.TraceBuffer;
+import com.rusefi.ui.util.FrameHelper;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static com.rusefi.binaryprotocol.BinaryProtocolCommands.RESPONSE_OK;
+import static com.rusefi.binaryprotocol.IoHelper.checkResponseCode;
+
+/**
+ * Continuous perf trace capture: trace buffers are pulled one after another and only aggregated latency statistics
+ * are kept, nothing is written to disk.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ * @see TraceAggregator
+ * @see BenchTestPane
+ */
+public class PerfTraceCapture {
+    private static final int CAPTURE_MS = 500;
+    private static final int INTERVAL_MS = 60 * 1000;
+    /**
+     * one hour of one minute intervals
+     */
+    private static final int INTERVALS = 60;
+    private static final int REFRESH_MS = 1000;
+    /**
+     * pause after a failed exchange so that a broken connection does not turn into a busy loop
+     */
+    private static final int ERROR_BACKOFF_MS = 5000;
+
+    private final TraceAggregator aggregator = new TraceAggregator(INTERVALS);
+    private final JTextArea report = new JTextArea();
+    private final Timer refresh = new Timer(REFRESH_MS, e -> report.setText(String.join("\n", aggregator.getReport())));
+    private volatile boolean isRunning = true;
+
+    public void show() {
+        report.setEditable(false);
+        report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        FrameHelper frameHelper = new FrameHelper() {
+            @Override
+            protected void onWindowClosed() {
+                isRunning = false;
+                refresh.stop();
+            }
+        };
+        frameHelper.getFrame().setTitle("Live performance trace");
+        frameHelper.showFrame(new JScrollPane(report), false);
+        refresh.start();
+
+        Thread thread = new Thread(this::captureLoop, "PerfTraceCapture");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void captureLoop() {
+        long intervalStart = System.currentTimeMillis();
+        while (isRunning) {
+            // before anything which could skip the rest of the pass so that old data leaves the ring while offline
+            if (System.currentTimeMillis() - intervalStart > INTERVAL_MS) {
+                aggregator.nextInterval();
+                intervalStart = System.currentTimeMillis();
+            }
+            BinaryProtocol bp = BinaryProtocolHolder.INSTANCE.getCurrentStreamState();
+            try {
+                if (bp == null) {
+                    Thread.sleep(CAPTURE_MS);
+                    continue;
+                }
+                execute(bp, new byte[]{Fields.TS_PERF_TRACE_BEGIN}, "begin trace", false);
+                Thread.sleep(CAPTURE_MS);
+                byte[] packet = execute(bp, new byte[]{Fields.TS_PERF_TRACE_GET_BUFFER}, "get trace", true);
+                if (!checkResponseCode(packet, RESPONSE_OK) || ((packet.length - 1) % 8) != 0) {
+                    FileLog.MAIN.logLine("PerfTraceCapture: unexpected packet");
+                    continue;
+                }
+                aggregator.add(TraceBuffer.decodeAll(packet));
+            } catch (ExecutionException e) {
+                FileLog.MAIN.logLine("PerfTraceCapture: exchange failed, retrying in " + ERROR_BACKOFF_MS + "ms: " + e.getCause());
+                try {
+                    Thread.sleep(ERROR_BACKOFF_MS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Each exchange is queued on the communication thread so that it does not interleave with output channels polling
+     */
+    private static byte[] execute(BinaryProtocol bp, byte[] packet, String msg, boolean allowLongResponse) throws InterruptedException, ExecutionException {
+        Future<byte[]> response = LinkManager.COMMUNICATION_EXECUTOR.submit(
+                () -> bp.executeCommand(packet, msg, allowLongResponse));
+        return response.get();
+    }
+}
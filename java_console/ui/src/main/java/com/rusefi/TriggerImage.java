@@ -2,21 +2,23 @@ package com.rusefi;
 
 import com.rusefi.trigger.WaveState;
 import com.rusefi.ui.engine.UpDownImage;
-import com.rusefi.ui.util.FrameHelper;
-import com.rusefi.ui.util.UiUtils;
+import com.rusefi.util.PngBatchWriter;
 import com.rusefi.waves.EngineReport;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.*;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 /**
  * This utility produces images of trigger signals supported by rusEfi
+ * <p>
+ * Images are rendered headless on a pool of workers, each worker paints into its own offscreen image. An image is
+ * only rendered again if its trigger shape in the input file has changed, see {@link PngBatchWriter}.
  *
  * 06/23/15
  * Andrey Belomutskiy, (c) 2013-2020
@@ -27,44 +29,38 @@ public class TriggerImage {
     private static final String INPUT_FILE_NAME = "triggers.txt";
     private static final String TOP_MESSAGE = StartupFrame.LINK_TEXT;
     private static final String DEFAULT_WORK_FOLDER = ".." + File.separator + "unit_tests";
+    private static final int IMAGE_WIDTH = 1600;
+    private static final int IMAGE_HEIGHT = 800;
+    /**
+     * one offscreen image per worker, it is written before the next trigger is painted
+     */
+    private static final ThreadLocal<BufferedImage> IMAGE =
+            ThreadLocal.withInitial(() -> new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB));
     /**
      * number of extra frames
      */
     public static int EXTRA_COUNT = 1;
+    /**
+     * part of the image cache key, increment on any change to how triggers are painted so that
+     * previously generated images are not reused
+     */
+    private static final int RENDERER_VERSION = 1;
 
-    public static void main(String[] args) throws IOException, InvocationTargetException, InterruptedException {
+    public static void main(String[] args) throws IOException {
         final String workingFolder;
         if (args.length != 1) {
             workingFolder = DEFAULT_WORK_FOLDER;
         } else {
             workingFolder = args[0];
         }
+        System.setProperty("java.awt.headless", "true");
 
-        FrameHelper f = new FrameHelper();
-
-        final TriggerPanel triggerPanel = new TriggerPanel() {
-            @Override
-            public Dimension getPreferredSize() {
-                return new Dimension((1 + EXTRA_COUNT) * WIDTH, 480);
-            }
-        };
-
-        f.showFrame(triggerPanel);
-
-        SwingUtilities.invokeAndWait(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    generateImages(workingFolder, triggerPanel);
-                } catch (IOException e) {
-                    throw new IllegalStateException(e);
-                }
-            }
-        });
-        System.exit(-1);
+        try (PngBatchWriter writer = new PngBatchWriter(OUTPUT_FOLDER)) {
+            generateImages(workingFolder, writer);
+        }
     }
 
-    private static void generateImages(String workingFolder, TriggerPanel trigger) throws IOException {
+    private static void generateImages(String workingFolder, PngBatchWriter writer) throws IOException {
         String fileName = workingFolder + File.separator + INPUT_FILE_NAME;
         BufferedReader br = new BufferedReader(new FileReader(fileName));
 
@@ -77,27 +73,39 @@ public class TriggerImage {
             }
 
             if (line.startsWith(TRIGGERTYPE)) {
-                readTrigger(br, line, trigger);
+                submitTrigger(br, line, writer);
             }
         }
     }
 
-    private static void readTrigger(BufferedReader reader, String line, TriggerPanel triggerPanel) throws IOException {
+    /**
+     * Trigger lines are read here, image is rendered on a worker
+     */
+    private static void submitTrigger(BufferedReader reader, String line, PngBatchWriter writer) throws IOException {
+        String[] tokens = line.split(" ");
+        int id = Integer.parseInt(tokens[1]);
+        int eventCount = Integer.parseInt(tokens[2]);
+        List<String> eventLines = readEventLines(reader, eventCount);
+
+        String key = PngBatchWriter.hash(line + "\n" + String.join("\n", eventLines)
+                + "\n" + RENDERER_VERSION + " " + EXTRA_COUNT + " " + IMAGE_WIDTH + "x" + IMAGE_HEIGHT);
+        writer.submit("trigger_" + id + ".png", key, () -> renderTrigger(line, eventLines));
+    }
+
+    private static BufferedImage renderTrigger(String line, List<String> eventLines) {
         String[] tokens = line.split(" ");
         String idStr = tokens[1];
         String eventCountStr = tokens[2];
         String triggerName = tokens[3];
         System.out.println("Processing " + line + " " + idStr);
+        TriggerPanel triggerPanel = new TriggerPanel();
         triggerPanel.tdcPosition = Double.parseDouble(tokens[4]);
         int eventCount = Integer.parseInt(eventCountStr);
         int id = Integer.parseInt(idStr);
 
-//        if (id != 20)
-//            return;
-
         System.out.println("id=" + id + ", count=" + eventCount + ", name=" + triggerName);
 
-        List<WaveState> waves = readTrigger(reader, eventCount);
+        List<WaveState> waves = parseTrigger(eventLines);
 
         EngineReport re0 = new EngineReport(waves.get(0).list, 720, 720 * (1 + EXTRA_COUNT));
         System.out.println(re0);
@@ -137,23 +145,46 @@ public class TriggerImage {
         triggerPanel.name = triggerName;
         triggerPanel.id = id;
 
-        UiUtils.trueLayout(triggerPanel);
-        UiUtils.trueRepaint(triggerPanel);
-        new File(OUTPUT_FOLDER).mkdir();
-        UiUtils.saveImage(OUTPUT_FOLDER + File.separator + "trigger_" + id + ".png", triggerPanel);
+        triggerPanel.setSize(IMAGE_WIDTH, IMAGE_HEIGHT);
+        layout(triggerPanel);
+        BufferedImage image = IMAGE.get();
+        Graphics2D g = image.createGraphics();
+        try {
+            triggerPanel.paint(g);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static void layout(Container container) {
+        container.doLayout();
+        for (Component component : container.getComponents()) {
+            if (component instanceof Container)
+                layout((Container) component);
+        }
     }
 
     @NotNull
-    private static List<WaveState> readTrigger(BufferedReader reader, int count) throws IOException {
-        String line;
+    private static List<String> readEventLines(BufferedReader reader, int count) throws IOException {
+        List<String> result = new ArrayList<>();
+        while (result.size() < count) {
+            String line = reader.readLine();
+            if (line == null)
+                throw new IllegalStateException("Unexpected end of file, " + count + " events expected");
+            if (line.trim().startsWith("#"))
+                continue;
+            result.add(line);
+        }
+        return result;
+    }
+
+    @NotNull
+    private static List<WaveState> parseTrigger(List<String> eventLines) {
         String[] tokens;
         List<Signal> signals = new ArrayList<>();
 
-        int index = 0;
-        while (index < count) {
-            line = reader.readLine();
-            if (line.trim().startsWith("#"))
-                continue;
+        for (String line : eventLines) {
             tokens = line.split(" ");
             if (tokens.length < 4)
                 throw new IllegalStateException("Unexpected [" + line + "]");
@@ -165,7 +196,6 @@ public class TriggerImage {
             Signal s = new Signal(signal, angle);
 //            System.out.println(s);
             signals.add(s);
-            index++;
         }
 
         List<Signal> toShow = new ArrayList<>(signals);
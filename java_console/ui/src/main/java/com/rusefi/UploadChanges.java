@@ -104,6 +104,30 @@ public class UploadChanges {
         });
     }
 
+    /**
+     * Uploads given version of the tune journal, which is recorded as a new version
+     */
+    public static void scheduleRollback(int version) {
+        JFrame frame = wnd.getFrame();
+        frame.setVisible(true);
+        LinkManager.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BinaryProtocolHolder.getInstance().getCurrentStreamState().rollback(version, logger);
+                } catch (InterruptedException | EOFException e) {
+                    logger.error("Error: " + e);
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "Runnable for rollback to " + version;
+            }
+        });
+    }
+
     private static Logger createUiLogger() {
         return new Logger() {
             @Override
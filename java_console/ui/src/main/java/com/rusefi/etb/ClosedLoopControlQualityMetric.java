@@ -1,8 +1,8 @@
 package com.rusefi.etb;
 
 import com.rusefi.CyclicBuffer;
-import com.rusefi.DataBuffer;
 import com.rusefi.NamedThreadFactory;
+import com.rusefi.WindowedStatistics;
 import com.rusefi.core.Sensor;
 import com.rusefi.core.SensorCentral;
 import com.rusefi.core.SensorStats;
@@ -33,10 +33,10 @@ public class ClosedLoopControlQualityMetric {
     private boolean isStarted;
 
     /**
-     * Buffer of recent error measurements
+     * Buffer of recent error measurements, standard deviation is maintained incrementally
      * GuardedBy(this)
      */
-    private DataBuffer errorsBuffer;
+    private WindowedStatistics errorsBuffer;
     private CyclicBuffer targetBuffer;
 
     /**
@@ -77,7 +77,7 @@ public class ClosedLoopControlQualityMetric {
     }
 
     public void create(int bufferSize) {
-        errorsBuffer = new CyclicBuffer(bufferSize);
+        errorsBuffer = new WindowedStatistics(bufferSize);
         targetBuffer = new CyclicBuffer(delayDepth);
     }
 
@@ -86,7 +86,9 @@ public class ClosedLoopControlQualityMetric {
     }
 
     public synchronized double getStandardDeviation() {
-        return DataBuffer.getStandardDeviation(errorsBuffer.getValues());
+        if (errorsBuffer.getSize() == 0)
+            return 0;
+        return errorsBuffer.getStandardDeviation();
     }
 
     private synchronized void rememberCurrentError(double error, double targetValue) {
@@ -0,0 +1,154 @@
+package com.rusefi.sensor_logs;
+
+import com.rusefi.config.generated.Fields;
+import com.rusefi.core.Sensor;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads MLV .mlg binary log into one column of values per field, see mlq_file_format.txt
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ * @see BinarySensorLog
+ */
+public class BinarySensorLogReader {
+    private static final int NAME_LENGTH = 34;
+    private static final int UNITS_LENGTH = 11;
+    /**
+     * block type, counter and timestamp
+     */
+    private static final int RECORD_HEADER_SIZE = 4;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<double[]> columns = new ArrayList<>();
+    private int rows;
+
+    private BinarySensorLogReader() {
+    }
+
+    public static BinarySensorLogReader read(String fileName) throws IOException {
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            BinarySensorLogReader reader = new BinarySensorLogReader();
+            reader.read(stream);
+            return reader;
+        }
+    }
+
+    private void read(DataInputStream stream) throws IOException {
+        byte[] magic = new byte[6];
+        stream.readFully(magic);
+        if (!new String(magic).equals("MLVLG\0"))
+            throw new IOException("Not a MLG file");
+        // format version, timestamp
+        stream.readShort();
+        stream.readInt();
+        // offset to text, reserved
+        stream.readShort();
+        stream.readShort();
+        int offsetToData = stream.readUnsignedShort();
+        int recordSize = stream.readUnsignedShort();
+        int fieldCount = stream.readUnsignedShort();
+
+        int[] types = new int[fieldCount];
+        float[] scales = new float[fieldCount];
+        float[] shifts = new float[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            types[i] = stream.readUnsignedByte();
+            names.add(readString(stream, NAME_LENGTH));
+            readString(stream, UNITS_LENGTH);
+            scales[i] = stream.readFloat();
+            shifts[i] = stream.readFloat();
+            // precision
+            stream.readUnsignedByte();
+            columns.add(new double[1024]);
+        }
+        // header text is not needed
+        stream.skipBytes(offsetToData - Fields.MLQ_HEADER_SIZE - Fields.MLQ_FIELD_HEADER_SIZE * fieldCount);
+
+        byte[] record = new byte[RECORD_HEADER_SIZE + recordSize + 1];
+        while (readRecord(stream, record)) {
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(record, RECORD_HEADER_SIZE, recordSize));
+            if (rows == columns.get(0).length) {
+                for (int i = 0; i < fieldCount; i++)
+                    columns.set(i, Arrays.copyOf(columns.get(i), rows * 2));
+            }
+            for (int i = 0; i < fieldCount; i++)
+                columns.get(i)[rows] = readValue(data, types[i]) * scales[i] + shifts[i];
+            rows++;
+        }
+    }
+
+    /**
+     * @return false on end of file or truncated last record
+     */
+    private static boolean readRecord(DataInputStream stream, byte[] record) throws IOException {
+        int total = 0;
+        while (total < record.length) {
+            int count = stream.read(record, total, record.length - total);
+            if (count == -1)
+                return false;
+            total += count;
+        }
+        return true;
+    }
+
+    private static double readValue(DataInputStream data, int type) throws IOException {
+        switch (type) {
+            case 0:
+                return data.readUnsignedByte();
+            case 1:
+                return data.readByte();
+            case 2:
+                return data.readUnsignedShort();
+            case 3:
+                return data.readShort();
+            case 4:
+                return data.readInt() & 0xFFFFFFFFL;
+            case 5:
+                return data.readInt();
+            case 7:
+                return data.readFloat();
+            default:
+                throw new IOException("Unsupported field type " + type);
+        }
+    }
+
+    private static String readString(DataInputStream stream, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        stream.readFully(bytes);
+        int end = 0;
+        while (end < length && bytes[end] != 0)
+            end++;
+        return new String(bytes, 0, end);
+    }
+
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return values of the field with given name, array could be longer than {@link #getRows()}
+     */
+    public double[] getColumn(String name) {
+        int index = names.indexOf(name);
+        return index == -1 ? null : columns.get(index);
+    }
+
+    /**
+     * @return columns of all fields which match a {@link Sensor} by the name {@link BinarySensorLog} gives it
+     */
+    public Map<Sensor, double[]> getSensorColumns() {
+        Map<Sensor, double[]> result = new EnumMap<>(Sensor.class);
+        for (Sensor sensor : Sensor.values()) {
+            double[] column = getColumn(SensorLogger.getSensorName(sensor, 0));
+            if (column != null)
+                result.put(sensor, column);
+        }
+        return result;
+    }
+}
@@ -13,14 +13,18 @@ import com.rusefi.binaryprotocol.IncomingDataBuffer;
 import com.rusefi.config.generated.Fields;
 import com.rusefi.core.EngineState;
 import com.rusefi.core.ResponseBuffer;
+import com.rusefi.fsio.FsioProgram;
+import com.rusefi.fsio.FsioVariables;
 import com.rusefi.io.ConnectionStateListener;
 import com.rusefi.io.ConnectionStatusLogic;
 import com.rusefi.io.IoStream;
 import com.rusefi.io.LinkManager;
 import com.rusefi.io.serial.SerialIoStreamJSerialComm;
 import com.rusefi.maintenance.ExecHelper;
+import com.rusefi.sensor_logs.BinarySensorLogReader;
 import com.rusefi.tools.online.Online;
 import com.rusefi.tune.xml.Msq;
+import com.rusefi.tune.xml.MsqStream;
 import com.rusefi.ui.AuthTokenPanel;
 import com.rusefi.ui.light.LightweightGUI;
 import org.jetbrains.annotations.Nullable;
@@ -31,6 +35,7 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -56,7 +61,8 @@ public class ConsoleTools {
         registerTool("get_xml_tune_crc", ConsoleTools::calcXmlImageTuneCrc, "Calculate tune CRC for given XML tune");
 
         registerTool("compile_fsio_line", ConsoleTools::invokeCompileExpressionTool, "Convert a line to RPN form.");
-        registerTool("compile_fsio_file", ConsoleTools::runCompileTool, "Convert all lines from a file to RPN form.");
+        registerTool("compile_fsio_file", ConsoleTools::runCompileTool, "Convert all lines from a file to RPN form, more input/output file pairs could follow.");
+        registerTool("fsio_check", ConsoleTools::runFsioCheck, "Evaluate FSIO expression against each line of .mlg log, for instance fsio_check log.mlg \"rpm > 3000\" [variable=value...]");
 
         registerTool("print_auth_token", args -> printAuthToken(), "Print current rusEFI Online authentication token.");
         registerTool(SET_AUTH_TOKEN, ConsoleTools::setAuthToken, "Set rusEFI authentication token.");
@@ -81,8 +87,7 @@ public class ConsoleTools {
 
     private static void calcXmlImageTuneCrc(String... args) throws Exception {
         String fileName = args[1];
-        Msq msq = Msq.readTune(fileName);
-        ConfigurationImage image = msq.asImage(IniFileModel.getInstance());
+        ConfigurationImage image = MsqStream.read(IniFileModel.getInstance(), fileName);
         printCrc(image);
     }
 
@@ -226,7 +231,34 @@ public class ConsoleTools {
             System.exit(-1);
         }
         String expression = args[1];
-        System.out.println(DoubleEvaluator.process(expression).getPosftfixExpression());
+        System.out.println(DoubleEvaluator.toRpn(expression));
+    }
+
+    private static void runFsioCheck(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("log file name and expression parameters expected");
+            System.exit(-1);
+        }
+        FsioProgram program = FsioProgram.compile(DoubleEvaluator.toRpn(args[2]));
+        Map<String, Double> overrides = new HashMap<>();
+        for (int i = 3; i < args.length; i++) {
+            String[] pair = args[i].split("=");
+            overrides.put(pair[0].toLowerCase(), Double.parseDouble(pair[1]));
+        }
+        BinarySensorLogReader log = BinarySensorLogReader.read(args[1]);
+        double[] result = FsioVariables.evaluate(program, log.getSensorColumns(), log.getRows(), overrides);
+        int trueCount = 0;
+        // ECU-only method or a variable missing from the log
+        int unknownCount = 0;
+        for (int i = 0; i < log.getRows(); i++) {
+            if (Double.isNaN(result[i])) {
+                unknownCount++;
+            } else if (result[i] != 0) {
+                trueCount++;
+            }
+        }
+        System.out.println(program + ": true in " + trueCount + " of " + log.getRows() + " line(s)"
+                + (unknownCount == 0 ? "" : ", unknown (NaN) in " + unknownCount + " line(s)"));
     }
 
     public static boolean runTool(String[] args) throws Exception {
@@ -8,8 +8,10 @@ import com.romraider.xml.RomAttributeParser;
 import com.rusefi.BinarySearch;
 import com.opensr5.ConfigurationImage;
 import com.rusefi.FileLog;
+import com.rusefi.NamedThreadFactory;
 import com.rusefi.UploadChanges;
 import com.rusefi.autotune.FuelAutoTune;
+import com.rusefi.autotune.FuelAutoTuneEngine;
 import com.rusefi.autotune.Result;
 import com.rusefi.autotune.AfrDataPoint;
 import com.rusefi.binaryprotocol.BinaryProtocol;
@@ -25,14 +27,19 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.*;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Andrey Belomutskiy, (c) 2013-2020
  * 1/9/2016
+ * <p>
+ * Steady state data points are binned into {@link FuelAutoTuneEngine} as they arrive, the solver runs on a background
+ * thread at most once per {@link #SOLVER_PERIOD_MS} so memory usage and UI load do not depend on session length.
  *
  * @see FuelAutoTune
  */
@@ -43,7 +50,32 @@ public class FuelTunePane {
     private final static int veRpmOffset = Fields.VETABLE.getOffset() + Fields.FUEL_RPM_COUNT * Fields.FUEL_LOAD_COUNT * 4 + Fields.FUEL_LOAD_COUNT * 4;
 
 
-    private final List<FuelDataPoint> incomingDataPoints = new ArrayList<>();
+    /**
+     * 1000 points per cell is plenty for the solver and keeps memory bounded to about 2MB
+     */
+    private static final int MAX_POINTS_PER_CELL = 1000;
+    private static final int MIN_NEW_POINTS = 50;
+    private static final int SOLVER_PERIOD_MS = 1000;
+    /**
+     * only warm engine data points are considered
+     */
+    private static final double MIN_CLT = 80;
+    /**
+     * RPM change between two consecutive frames, larger change means engine is not at steady state
+     */
+    private static final double MAX_RPM_CHANGE = 100;
+    /**
+     * absolute TPS rate of change, larger value means engine is not at steady state
+     */
+    private static final double MAX_DELTA_TPS = 5;
+
+    private final FuelAutoTuneEngine engine = new FuelAutoTuneEngine(MAX_POINTS_PER_CELL);
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(FuelTunePane.class.getSimpleName()));
+    /**
+     * number of data points since last solver invocation
+     */
+    private final AtomicInteger newPoints = new AtomicInteger();
+    private double previousRpm;
     private final double veLoadBins[] = new double[Fields.FUEL_LOAD_COUNT];
     private final double veRpmBins[] = new double[Fields.FUEL_RPM_COUNT];
     private final Table3D veTable = new Table3D();
@@ -51,7 +83,7 @@ public class FuelTunePane {
     private final JButton upload = new JButton("Upload");
     private final JCheckBox collect = new JCheckBox("enable");
     private final JButton clean = new JButton("clear");
-    private byte[] newVeMap;
+    private volatile byte[] newVeMap;
     private DataOutputStream dos;
 
     public FuelTunePane(Node config) {
@@ -61,7 +93,7 @@ public class FuelTunePane {
         runLogic.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                doJob();
+                executor.execute(() -> doJob());
             }
         });
         upload.addActionListener(new ActionListener() {
@@ -85,31 +117,17 @@ public class FuelTunePane {
         topPanel.add(runLogic);
         topPanel.add(upload);
 
-        Timer runTime = new Timer(1000, new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                boolean runJob;
-                synchronized (incomingDataPoints) {
-                    runJob = incomingDataPoints.size() > 50;
-                }
-                if (runJob) {
-                    doJob();
-                    uploadCurrentResult();
-                }
-            }
-        });
-        runTime.start();
+        executor.scheduleAtFixedRate(() -> {
+            if (newPoints.get() > MIN_NEW_POINTS && doJob())
+                SwingUtilities.invokeLater(this::uploadCurrentResult);
+        }, SOLVER_PERIOD_MS, SOLVER_PERIOD_MS, TimeUnit.MILLISECONDS);
 
 
         // todo: records based on change, not based on timer
         Timer timer = new Timer(300, new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                int size;
-                synchronized (incomingDataPoints) {
-                    size = incomingDataPoints.size();
-                }
-                incomingBufferSize.setText(size + " records in buffer");
+                incomingBufferSize.setText(engine.getTotalSeen() + " records, " + engine.getTotalCount() + " in buffer");
             }
         });
         timer.start();
@@ -141,6 +159,11 @@ public class FuelTunePane {
             return;
         ConfigurationImage ci = bp.getControllerConfiguration().clone();
         System.arraycopy(newVeMap, 0, ci.getContent(), Fields.VETABLE.getOffset(), newVeMap.length);
+        // collected points were measured with the VE map we are about to replace, solver should not apply them
+        // again while upload is pending
+        this.newVeMap = null;
+        upload.setEnabled(false);
+        doClean();
         Runnable afterBurn = new Runnable() {
             @Override
             public void run() {
@@ -158,9 +181,8 @@ public class FuelTunePane {
     }
 
     private void doClean() {
-        synchronized (incomingDataPoints) {
-            incomingDataPoints.clear();
-        }
+        engine.clear();
+        newPoints.set(0);
     }
 
     private static void loadData(Table table, byte[] content, int offset) {
@@ -187,40 +209,41 @@ public class FuelTunePane {
         table.getYAxis().addScale(new Scale());
     }
 
-    private void doJob() {
+    /**
+     * Invoked on {@link #executor} thread only
+     *
+     * @return true if new VE map was calculated
+     */
+    private boolean doJob() {
+        BinaryProtocol bp = BinaryProtocolHolder.getInstance().getCurrentStreamState();
+        if (bp == null)
+            return false;
+        newPoints.set(0);
         double veTable[][] = new double[Fields.FUEL_LOAD_COUNT][Fields.FUEL_RPM_COUNT];
         loadMap(veTable, Fields.VETABLE.getOffset());
         logMap("source", veTable);
+        writeStatus();
 
-        List<AfrDataPoint> data = new ArrayList<>();
-        synchronized (incomingDataPoints) {
-            for (FuelDataPoint point : incomingDataPoints)
-                data.add(point.asDataOnline());
-            incomingDataPoints.clear();
-        }
-        writeDataPoints(data);
-
-        // todo: move this away from AWT thread
-        Result a = FuelAutoTune.INSTANCE.process(false, data, 0.1, 14.7, veTable);
+        Result a = engine.process(false, 0.1, 14.7, veTable);
 
         double[][] result = a.getKgbcRES();
         logMap("result", result);
-        newVeMap = toByteArray(result);
+        byte[] newVeMap = toByteArray(result);
+        this.newVeMap = newVeMap;
 
-        loadData(changeMap, newVeMap, 0);
-        upload.setEnabled(true);
+        SwingUtilities.invokeLater(() -> {
+            loadData(changeMap, newVeMap, 0);
+            upload.setEnabled(true);
+        });
+        return true;
     }
 
-    private void writeDataPoints(List<AfrDataPoint> data) {
+    private void writeStatus() {
         DataOutputStream dos = getTuneLogStream();
         if (dos == null)
             return;
         try {
-            dos.writeBytes("Running with " + data.size() + " points\r\n");
-            dos.writeBytes("afr\tRPM\tload\r\n");
-            for (AfrDataPoint point : data)
-                dos.writeBytes(point.getAfr() +"\t" + point.getRpm() + "\t" + point.getEngineLoad() + "\r\n");
-
+            dos.writeBytes("Running with " + engine.getTotalCount() + " points out of " + engine.getTotalSeen() + "\r\n");
         } catch (IOException e) {
             FileLog.MAIN.logLine("Error writing auto-tune log");
         }
@@ -258,7 +281,7 @@ public class FuelTunePane {
         if (dos == null) {
             String fileName = FileLog.DIR + "tune_" + FileLog.getDate() + ".txt";
             try {
-                dos = new DataOutputStream(new FileOutputStream(fileName));
+                dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
             } catch (FileNotFoundException e) {
                 FileLog.MAIN.logLine("Error creating " + fileName + ":" + e);
             }
@@ -282,10 +305,15 @@ public class FuelTunePane {
     }
 
     public void showContent() {
+        loadArray(veLoadBins, veLoadOffset);
+        loadArray(veRpmBins, veRpmOffset);
+
         final ISensorCentral sc = SensorCentral.getInstance();
         sc.addListener(Sensor.RPM, new SensorCentral.SensorListener() {
             @Override
             public void onSensorUpdate(double value) {
+                double rpmChange = Math.abs(value - previousRpm);
+                previousRpm = value;
                 if (!collect.isSelected())
                     return;
                 int rpm = (int) value;
@@ -294,18 +322,15 @@ public class FuelTunePane {
                 // todo: add UI for pre-conditions
                 double deltaTps = sc.getValue(Sensor.deltaTps);
                 double clt = sc.getValue(Sensor.CLT);
-//                if (clt < 80)
-//                    return;
-                FuelDataPoint newPoint = new FuelDataPoint(rpm, engineLoad, afr);
-                synchronized (incomingDataPoints) {
-                    incomingDataPoints.add(newPoint);
-                }
+                if (clt < MIN_CLT || rpmChange > MAX_RPM_CHANGE || Math.abs(deltaTps) > MAX_DELTA_TPS)
+                    return;
+                if (Double.isNaN(engineLoad) || Double.isNaN(afr))
+                    return;
+                engine.addPoint(toDataPoint(rpm, engineLoad, afr));
+                newPoints.incrementAndGet();
             }
         });
 
-        loadArray(veLoadBins, veLoadOffset);
-        loadArray(veRpmBins, veRpmOffset);
-
         byte[] content = reloadVeTable();
 
         loadData(changeMap.getXAxis(), content, veRpmOffset);
@@ -343,24 +368,10 @@ public class FuelTunePane {
         return content;
     }
 
-    private class FuelDataPoint {
-        private final int rpm;
-        private final double engineLoad;
-        private final double afr;
-        private final int rpmIndex;
-        private final int engineLoadIndex;
-
-        public FuelDataPoint(int rpm, double engineLoad, double afr) {
-            this.rpm = rpm;
-            this.engineLoad = engineLoad;
-            this.afr = afr;
-            // too low values are returning '-1' indeces
-            rpmIndex = Math.max(0, BinarySearch.binarySearch(rpm, veRpmBins));
-            engineLoadIndex = Math.max(0, BinarySearch.binarySearch(engineLoad, veLoadBins));
-        }
-
-        public AfrDataPoint asDataOnline() {
-            return new AfrDataPoint(afr, rpmIndex, engineLoadIndex, rpm, engineLoad);
-        }
+    private AfrDataPoint toDataPoint(int rpm, double engineLoad, double afr) {
+        // too low values are returning '-1' indeces
+        int rpmIndex = Math.max(0, BinarySearch.binarySearch(rpm, veRpmBins));
+        int engineLoadIndex = Math.max(0, BinarySearch.binarySearch(engineLoad, veLoadBins));
+        return new AfrDataPoint(afr, rpmIndex, engineLoadIndex, rpm, engineLoad);
     }
 }
@@ -16,7 +16,12 @@ import java.awt.*;
  */
 public class Live3DReport {
     public static final Range KEY_RANGE = new Range(1.5f, 4.0f);
-    private final XYData primary = new XYData();
+    /**
+     * live values are snapped to this resolution so that the grid does not grow with each new rpm value
+     */
+    private static final double RPM_STEP = 50;
+    private static final double KEY_STEP = 0.05;
+    private final XYData primary = new XYData(RPM_STEP, KEY_STEP);
     private final XYData secondary = null;//new XYData();
     private final JPanel control;
 
@@ -0,0 +1,90 @@
+package com.rusefi.ui;
+
+import com.rusefi.TuneJournal;
+import com.rusefi.UploadChanges;
+import com.rusefi.binaryprotocol.BinaryProtocol;
+import com.rusefi.binaryprotocol.BinaryProtocolHolder;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Lists versions of the local tune journal and uploads the selected one back to the controller
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ *
+ * @see TuneJournal
+ */
+public class TuneHistoryPane {
+    private final JPanel content = new JPanel(new BorderLayout());
+    private final DefaultListModel<Version> versions = new DefaultListModel<>();
+    private final JList<Version> list = new JList<>(versions);
+
+    public TuneHistoryPane() {
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        JButton refresh = new JButton("Refresh");
+        refresh.addActionListener(e -> refresh());
+
+        JButton rollback = new JButton("Roll back");
+        rollback.addActionListener(e -> rollback());
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttons.add(refresh);
+        buttons.add(rollback);
+
+        content.add(buttons, BorderLayout.NORTH);
+        content.add(new JScrollPane(list), BorderLayout.CENTER);
+    }
+
+    private void refresh() {
+        versions.clear();
+        BinaryProtocol bp = BinaryProtocolHolder.INSTANCE.getCurrentStreamState();
+        if (bp == null)
+            return;
+        TuneJournal journal;
+        try {
+            journal = bp.getJournal();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(content, "Unable to open tune journal: " + e);
+            return;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        // most recent on top
+        for (int version = journal.getLastVersion(); version > 0; version--)
+            versions.addElement(new Version(version, format.format(new Date(journal.getTime(version)))));
+    }
+
+    private void rollback() {
+        Version selected = list.getSelectedValue();
+        if (selected == null)
+            return;
+        int dialogResult = JOptionPane.showConfirmDialog(content, "Do you really want to upload tune " + selected,
+                "Warning", JOptionPane.YES_NO_OPTION);
+        if (dialogResult != JOptionPane.YES_OPTION)
+            return;
+        UploadChanges.scheduleRollback(selected.version);
+    }
+
+    public JPanel getContent() {
+        return content;
+    }
+
+    private static class Version {
+        private final int version;
+        private final String time;
+
+        Version(int version, String time) {
+            this.version = version;
+            this.time = time;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + version + " " + time;
+        }
+    }
+}
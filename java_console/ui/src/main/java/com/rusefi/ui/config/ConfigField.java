@@ -58,7 +58,7 @@ public class ConfigField extends BaseConfigField {
     }
 
     public static double getFloatValue(ConfigurationImage ci, Field field) {
-        float value = field.getValue(ci).floatValue();
+        float value = (float) field.getDoubleValue(ci, 1);
         // this hack is trying to restore lost precision. It's a lame hack
         String str = df.format(value);
         try {
@@ -69,6 +69,6 @@ public class ConfigField extends BaseConfigField {
     }
 
     public static int getIntValue(ConfigurationImage ci, Field field) {
-        return field.getValue(ci).intValue();
+        return (int) field.getDoubleValue(ci, 1);
     }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.rusefi.ui;
+
+import com.opensr5.ConfigurationImage;
+import com.opensr5.ini.IniFileModel;
+import com.opensr5.io.ConfigurationImageFile;
+import com.rusefi.tune.xml.MsqStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * from IDEA this unit test needs to be executed with "empty" working directory
+ */
+public class MsqStreamTest {
+    private static final String PATH = "ui/src/test/resources/frankenso/";
+    private static final String TEST_INI = PATH + "mainController.ini";
+    private static final String TEST_BINARY_FILE = PATH + "current_configuration.rusefi_binary";
+
+    @Before
+    public void before() {
+        IniFileModel.getInstance().readIniFile(TEST_INI);
+    }
+
+    @Test
+    public void testReadTSTune() throws Exception {
+        ConfigurationImage tsBinaryData = MsqStream.read(IniFileModel.getInstance(), PATH + "CurrentTune.msq");
+        ConfigurationImage fileBinaryData = ConfigurationImageFile.readFromFile(TEST_BINARY_FILE);
+        assertArrayEquals(fileBinaryData.getContent(), tsBinaryData.getContent());
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        ConfigurationImage fileBinaryData = ConfigurationImageFile.readFromFile(TEST_BINARY_FILE);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        MsqStream.write(IniFileModel.getInstance(), fileBinaryData, baos);
+        String xml = new String(baos.toByteArray(), "UTF-8");
+        assertTrue(xml.contains("<msq xmlns=\"http://www.msefi.com/:msq\">"));
+
+        ConfigurationImage binaryDataFromXml = MsqStream.read(IniFileModel.getInstance(), new ByteArrayInputStream(baos.toByteArray()));
+        assertArrayEquals(fileBinaryData.getContent(), binaryDataFromXml.getContent());
+    }
+
+    @Test
+    public void testReplaceFile() throws Exception {
+        ConfigurationImage fileBinaryData = ConfigurationImageFile.readFromFile(TEST_BINARY_FILE);
+        File file = File.createTempFile("tune", ".msq");
+        file.deleteOnExit();
+
+        // existing file is replaced
+        MsqStream.write(IniFileModel.getInstance(), fileBinaryData, file.getPath());
+        MsqStream.write(IniFileModel.getInstance(), fileBinaryData, file.getPath());
+        assertFalse(new File(file.getAbsolutePath() + ".tmp").exists());
+
+        ConfigurationImage binaryDataFromXml = MsqStream.read(IniFileModel.getInstance(), file.getPath());
+        assertArrayEquals(fileBinaryData.getContent(), binaryDataFromXml.getContent());
+    }
+}
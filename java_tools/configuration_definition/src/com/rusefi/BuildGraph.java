@@ -0,0 +1,191 @@
+package com.rusefi;
+
+import com.rusefi.util.IoUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+import static com.rusefi.ConfigDefinition.EOL;
+
+/**
+ * State of incremental generation: hash of each input node and the list of nodes each output was generated from.
+ * <p>
+ * Nodes are finer than input files: each structure is hashed separately for its layout, its comments and its TS
+ * info, each define is hashed separately. An output is regenerated only if one of its own nodes has changed, so
+ * for instance editing units of one field regenerates the .ini but not C headers and java Fields.
+ * <p>
+ * File format is one line per entry, tab-separated
+ * <pre>
+ * node    layout:pid_s    5d41402abc4b2a76b9719d911017c592
+ * output  java    args    layout:pid_s    define:CLT_CURVE_SIZE ...
+ * </pre>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class BuildGraph {
+    public static final String LAYOUT = "layout:";
+    public static final String COMMENT = "comment:";
+    public static final String TS_INFO = "ts:";
+    public static final String CUSTOM = "custom:";
+    public static final String DEFINE = "define:";
+    public static final String FILE = "file:";
+    private static final String NODE = "node";
+    private static final String OUTPUT = "output";
+    private static final String SEPARATOR = "\t";
+
+    private final TreeMap<String, String> nodes = new TreeMap<>();
+    private final Map<String, List<String>> outputs = new TreeMap<>();
+    /**
+     * output name to files it is written to, only used to detect deleted outputs
+     */
+    private final Map<String, List<String>> outputFiles = new HashMap<>();
+
+    public void putNode(String name, String hash) {
+        nodes.put(name, hash);
+    }
+
+    public String getNode(String name) {
+        return nodes.get(name);
+    }
+
+    public void putFile(String fileName) throws IOException {
+        putNode(FILE + fileName, hash(Files.readAllBytes(new File(fileName).toPath())));
+    }
+
+    /**
+     * @param dependencies names of nodes, prefixes like {@link #LAYOUT} select all nodes of that kind
+     * @param files        files which the output is written to, null are ignored
+     */
+    public void putOutput(String output, List<String> dependencies, String... files) {
+        Set<String> result = new TreeSet<>();
+        for (String dependency : dependencies) {
+            if (dependency.endsWith(":")) {
+                result.addAll(nodes.subMap(dependency, dependency + Character.MAX_VALUE).keySet());
+            } else {
+                if (!nodes.containsKey(dependency))
+                    throw new IllegalArgumentException("Unknown node " + dependency);
+                result.add(dependency);
+            }
+        }
+        outputs.put(output, new ArrayList<>(result));
+        List<String> existing = new ArrayList<>();
+        for (String file : files) {
+            if (file != null)
+                existing.add(file);
+        }
+        outputFiles.put(output, existing);
+    }
+
+    public List<String> getDependencies(String output) {
+        return outputs.get(output);
+    }
+
+    /**
+     * @return outputs which have to be regenerated since the previous build
+     */
+    public Set<String> getStaleOutputs(BuildGraph previous) {
+        Set<String> result = new TreeSet<>();
+        for (Map.Entry<String, List<String>> e : outputs.entrySet()) {
+            if (isStale(e.getKey(), e.getValue(), previous))
+                result.add(e.getKey());
+        }
+        return result;
+    }
+
+    private boolean isStale(String output, List<String> dependencies, BuildGraph previous) {
+        for (String file : outputFiles.get(output)) {
+            if (!new File(file).exists())
+                return true;
+        }
+        if (!dependencies.equals(previous.outputs.get(output)))
+            return true;
+        for (String dependency : dependencies) {
+            if (!nodes.get(dependency).equals(previous.nodes.get(dependency)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Every define as a separate node, should be invoked once all definitions were read
+     */
+    public void addDefines(VariableRegistry registry) {
+        for (Map.Entry<String, String> e : registry.getValues().entrySet())
+            putNode(DEFINE + e.getKey(), hash(e.getValue()));
+    }
+
+    /**
+     * Three nodes per structure: what C and java code see, comments (C documentation and TS tooltips) and TS-only
+     * details like units and scale
+     */
+    public void addStructures(ReaderState state) {
+        for (ConfigStructure structure : state.structures.values()) {
+            StringBuilder layout = new StringBuilder();
+            StringBuilder comment = new StringBuilder();
+            StringBuilder tsInfo = new StringBuilder();
+            layout.append(structure.withPrefix).append(' ').append(structure.isWithConstructor()).append(' ').append(structure.totalSize);
+            comment.append(structure.comment);
+            for (List<ConfigField> fields : Arrays.asList(structure.cFields, structure.tsFields)) {
+                layout.append(EOL);
+                for (ConfigField field : fields) {
+                    layout.append(field.getName()).append(' ')
+                            .append(field.getType()).append(' ')
+                            .append(field.arraySizeVariableName).append(' ')
+                            .append(field.getArraySize()).append(' ')
+                            .append(field.isBit() ? "bit" : field.getElementSize()).append(' ')
+                            .append(field.isIterate()).append(' ')
+                            .append(field.isFsioVisible()).append(';');
+                    comment.append(field.getComment()).append(EOL);
+                    tsInfo.append(field.getTsInfo()).append(' ')
+                            .append(field.getTrueName()).append(' ')
+                            .append(field.getFalseName()).append(EOL);
+                }
+            }
+            putNode(LAYOUT + structure.name, hash(layout.toString()));
+            putNode(COMMENT + structure.name, hash(comment.toString()));
+            putNode(TS_INFO + structure.name, hash(tsInfo.toString()));
+        }
+        for (Map.Entry<String, String> e : state.tsCustomLine.entrySet())
+            putNode(CUSTOM + e.getKey(), hash(e.getValue()));
+    }
+
+    public static BuildGraph read(String fileName) throws IOException {
+        BuildGraph graph = new BuildGraph();
+        File file = new File(fileName);
+        if (!file.exists())
+            return graph;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split(SEPARATOR);
+                if (tokens[0].equals(NODE) && tokens.length == 3) {
+                    graph.nodes.put(tokens[1], tokens[2]);
+                } else if (tokens[0].equals(OUTPUT) && tokens.length >= 2) {
+                    graph.outputs.put(tokens[1], new ArrayList<>(Arrays.asList(tokens).subList(2, tokens.length)));
+                }
+            }
+        }
+        return graph;
+    }
+
+    public void write(String fileName) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(fileName))) {
+            for (Map.Entry<String, String> e : nodes.entrySet())
+                writer.print(NODE + SEPARATOR + e.getKey() + SEPARATOR + e.getValue() + EOL);
+            for (Map.Entry<String, List<String>> e : outputs.entrySet()) {
+                writer.print(OUTPUT + SEPARATOR + e.getKey());
+                for (String dependency : e.getValue())
+                    writer.print(SEPARATOR + dependency);
+                writer.print(EOL);
+            }
+        }
+    }
+
+    public static String hash(String value) {
+        return hash(String.valueOf(value).getBytes(IoUtils.CHARSET));
+    }
+
+    public static String hash(byte[] content) {
+        return ConfigDefinition.getMd5(content);
+    }
+}
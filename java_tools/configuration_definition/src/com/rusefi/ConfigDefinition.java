@@ -10,10 +10,8 @@ import java.lang.reflect.Array;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.function.BiFunction;
 
 /**
  * Andrey Belomutskiy, (c) 2013-2020
@@ -41,6 +39,15 @@ public class ConfigDefinition {
     private static final String KEY_FIRING = "-firing_order";
     public static final String KEY_PREPEND = "-prepend";
     private static final String KEY_SKIP = "-skip";
+    private static final String KEY_INCREMENTAL = "-incremental";
+    private static final String OUTPUT_C_HEADER = "c_header";
+    private static final String OUTPUT_TS = "ts";
+    private static final String OUTPUT_JAVA = "java";
+    private static final String OUTPUT_FSIO = "fsio";
+    private static final String OUTPUT_C_DEFINES = "c_defines";
+    private static final String OUTPUT_ROMRAIDER = "romraider";
+    private static final String NODE_ARGS = "args";
+    private static final String NODE_GENERATOR = "generator";
     private static final String KEY_ZERO_INIT = "-initialize_to_zero";
     public static boolean needZeroInit = true;
     public static String definitionInputFile = null;
@@ -51,7 +58,7 @@ public class ConfigDefinition {
 
     public static void main(String[] args) throws IOException {
         try {
-            doJob(args);
+            run(args);
         } catch (Throwable e) {
             SystemOut.println(e);
             e.printStackTrace();
@@ -61,7 +68,18 @@ public class ConfigDefinition {
         SystemOut.close();
     }
 
-    private static void doJob(String[] args) throws IOException {
+    /**
+     * Same as {@link #main} minus the JVM exit code: any problem is thrown to the caller so that
+     * {@link ConfigDefinitionBatch} could report it without terminating the other steps of the batch
+     */
+    public static void run(String[] args) throws IOException {
+        run(args, ConfigDefinition::readDefines);
+    }
+
+    /**
+     * @param definesReader {@link #readDefines} or a cache of its results shared by all steps of a batch
+     */
+    public static void run(String[] args, BiFunction<String, String, Map<String, String>> definesReader) throws IOException {
         if (args.length < 2) {
             SystemOut.println("Please specify\r\n"
                     + KEY_DEFINITION + " x\r\n"
@@ -85,6 +103,7 @@ public class ConfigDefinition {
         String romRaiderDestination = null;
         List<String> prependFiles = new ArrayList<>();
         String skipRebuildFile = null;
+        String incrementalFile = null;
         String romRaiderInputFile = null;
         CHeaderConsumer.withC_Defines = true;
 
@@ -117,7 +136,7 @@ public class ConfigDefinition {
             } else if (key.equals(KEY_FIRING)) {
                 String firingEnumFileName = args[i + 1];
                 SystemOut.println("Reading firing from " + firingEnumFileName);
-                VariableRegistry.INSTANCE.register("FIRINGORDER", FiringOrderTSLogic.invoke(firingEnumFileName));
+                registerDefines(definesReader.apply(KEY_FIRING, firingEnumFileName));
             } else if (key.equals(KEY_ROMRAIDER_DESTINATION)) {
                 romRaiderDestination = args[i + 1];
             } else if (key.equals(KEY_PREPEND)) {
@@ -125,6 +144,8 @@ public class ConfigDefinition {
             } else if (key.equals(KEY_SKIP)) {
                 // is this now not needed in light if LazyFile surving the same goal of not changing output unless needed?
                 skipRebuildFile = args[i + 1];
+            } else if (key.equals(KEY_INCREMENTAL)) {
+                incrementalFile = args[i + 1];
             } else if (key.equals("-ts_output_name")) {
                 TSProjectConsumer.TS_FILE_OUTPUT_NAME = args[i + 1];
             } else if (key.equals(KEY_ROM_INPUT)) {
@@ -147,24 +168,81 @@ public class ConfigDefinition {
         }
 
         for (String prependFile : prependFiles)
-            readPrependValues(prependFile);
+            registerDefines(definesReader.apply(KEY_PREPEND, prependFile));
 
         BufferedReader definitionReader = new BufferedReader(new InputStreamReader(new FileInputStream(definitionInputFile), IoUtils.CHARSET.name()));
         ReaderState state = new ReaderState();
 
+        String romRaiderTemplate = romRaiderInputFile == null ? null : romRaiderInputFile + File.separator + ROM_RAIDER_XML_TEMPLATE;
+        String tsOutputFileName = tsPath == null ? null : new File(tsPath).getPath() + File.separator + TSProjectConsumer.TS_FILE_OUTPUT_NAME;
+
+        BuildGraph graph = null;
+        /**
+         * null if we have to generate everything
+         */
+        Set<String> stale = null;
+        if (incrementalFile != null) {
+            state.readBufferedReader(definitionReader, Collections.emptyList());
+
+            graph = new BuildGraph();
+            graph.putNode(NODE_ARGS, BuildGraph.hash(Arrays.toString(args)));
+            graph.putNode(NODE_GENERATOR, getGeneratorHash());
+            graph.addDefines(VariableRegistry.INSTANCE);
+            graph.addStructures(state);
+            // TS field offsets are used by defines and java constants so everything depends on layout
+            List<String> common = Arrays.asList(NODE_ARGS, NODE_GENERATOR, BuildGraph.LAYOUT);
+            if (destCHeaderFileName != null) {
+                List<String> dependencies = new ArrayList<>(common);
+                dependencies.add(BuildGraph.COMMENT);
+                if (CHeaderConsumer.withC_Defines)
+                    dependencies.add(BuildGraph.DEFINE);
+                graph.putOutput(OUTPUT_C_HEADER, dependencies, destCHeaderFileName);
+            }
+            if (tsPath != null) {
+                String tsInput = tsPath + File.separator + TSProjectConsumer.TS_FILE_INPUT_NAME;
+                graph.putFile(tsInput);
+                graph.putOutput(OUTPUT_TS, concat(common, BuildGraph.COMMENT, BuildGraph.TS_INFO, BuildGraph.CUSTOM,
+                        BuildGraph.DEFINE, BuildGraph.FILE + tsInput), tsOutputFileName);
+            }
+            if (javaDestinationFileName != null)
+                graph.putOutput(OUTPUT_JAVA, concat(common, BuildGraph.DEFINE), javaDestinationFileName);
+            if (destCFsioConstantsFileName != null || destCFsioGettersFileName != null) {
+                graph.putOutput(OUTPUT_FSIO, common, destCFsioConstantsFileName, destCFsioGettersFileName,
+                        namesCFileName, stringsCFileName);
+            }
+            if (destCDefinesFileName != null)
+                graph.putOutput(OUTPUT_C_DEFINES, concat(common, BuildGraph.DEFINE), destCDefinesFileName);
+            if (romRaiderDestination != null && romRaiderTemplate != null) {
+                graph.putFile(romRaiderTemplate);
+                graph.putOutput(OUTPUT_ROMRAIDER, concat(common, BuildGraph.DEFINE, BuildGraph.FILE + romRaiderTemplate),
+                        romRaiderDestination);
+            }
+
+            stale = graph.getStaleOutputs(BuildGraph.read(incrementalFile));
+            SystemOut.println("Outputs to regenerate according to " + incrementalFile + ": " + stale);
+            if (stale.isEmpty())
+                return;
+        }
+
         List<ConfigurationConsumer> destinations = new ArrayList<>();
-        if (destCHeaderFileName != null) {
+        if (destCHeaderFileName != null && isStale(stale, OUTPUT_C_HEADER)) {
             destinations.add(new CHeaderConsumer(destCHeaderFileName));
         }
         if (tsPath != null) {
             CharArrayWriter tsWriter = new CharArrayWriter();
-            destinations.add(new TSProjectConsumer(tsWriter, tsPath, state));
+            TSProjectConsumer tsProjectConsumer = new TSProjectConsumer(tsWriter, tsPath, state);
+            if (isStale(stale, OUTPUT_TS)) {
+                destinations.add(tsProjectConsumer);
+            } else if (isStale(stale, OUTPUT_JAVA) || isStale(stale, OUTPUT_C_DEFINES) || isStale(stale, OUTPUT_ROMRAIDER)) {
+                // not writing .ini but we still need offsets which TS consumer registers
+                destinations.add(withoutOutput(tsProjectConsumer));
+            }
         }
-        if (javaDestinationFileName != null) {
+        if (javaDestinationFileName != null && isStale(stale, OUTPUT_JAVA)) {
             destinations.add(new FileJavaFieldsConsumer(state, javaDestinationFileName));
         }
 
-        if (destCFsioConstantsFileName != null || destCFsioGettersFileName != null) {
+        if ((destCFsioConstantsFileName != null || destCFsioGettersFileName != null) && isStale(stale, OUTPUT_FSIO)) {
             destinations.add(new FileFsioSettingsConsumer(state,
                     destCFsioConstantsFileName,
                     destCFsioGettersFileName,
@@ -172,18 +250,23 @@ public class ConfigDefinition {
                     stringsCFileName));
         }
 
-        if (destinations.isEmpty())
-            throw new IllegalArgumentException("No destinations specified");
-        state.readBufferedReader(definitionReader, destinations);
-
-
+        if (incrementalFile != null) {
+            state.replay(destinations);
+        } else {
+            if (destinations.isEmpty())
+                throw new IllegalArgumentException("No destinations specified");
+            state.readBufferedReader(definitionReader, destinations);
+        }
 
-        if (destCDefinesFileName != null)
+        if (destCDefinesFileName != null && isStale(stale, OUTPUT_C_DEFINES))
             VariableRegistry.INSTANCE.writeDefinesToFile(destCDefinesFileName);
 
-        if (romRaiderDestination != null && romRaiderInputFile != null) {
-            String inputFileName = romRaiderInputFile + File.separator + ROM_RAIDER_XML_TEMPLATE;
-            processTextTemplate(inputFileName, romRaiderDestination);
+        if (romRaiderDestination != null && romRaiderTemplate != null && isStale(stale, OUTPUT_ROMRAIDER)) {
+            processTextTemplate(romRaiderTemplate, romRaiderDestination);
+        }
+        if (graph != null) {
+            SystemOut.println("Writing build graph to " + incrementalFile);
+            graph.write(incrementalFile);
         }
         if (skipRebuildFile != null) {
             SystemOut.println("Writing " + currentMD5 + " to " + skipRebuildFile);
@@ -193,6 +276,46 @@ public class ConfigDefinition {
         }
     }
 
+    private static boolean isStale(Set<String> stale, String output) {
+        return stale == null || stale.contains(output);
+    }
+
+    private static List<String> concat(List<String> list, String... more) {
+        List<String> result = new ArrayList<>(list);
+        result.addAll(Arrays.asList(more));
+        return result;
+    }
+
+    private static ConfigurationConsumer withoutOutput(ConfigurationConsumer consumer) {
+        return new ConfigurationConsumer() {
+            @Override
+            public void startFile() throws IOException {
+                consumer.startFile();
+            }
+
+            @Override
+            public void endFile() {
+            }
+
+            @Override
+            public void handleEndStruct(ConfigStructure structure) throws IOException {
+                consumer.handleEndStruct(structure);
+            }
+        };
+    }
+
+    /**
+     * New version of the generator itself should regenerate everything
+     */
+    private static String getGeneratorHash() {
+        try {
+            File location = new File(ConfigDefinition.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return BuildGraph.hash(location.getPath() + " " + location.length() + " " + location.lastModified());
+        } catch (Exception e) {
+            return BuildGraph.hash(String.valueOf(System.currentTimeMillis()));
+        }
+    }
+
     private static boolean needToSkipRebuild(String skipRebuildFile, String currentMD5) throws IOException {
         if (currentMD5 == null || !(new File(skipRebuildFile).exists()))
             return false;
@@ -209,7 +332,29 @@ public class ConfigDefinition {
         return getMd5(content);
     }
 
-    private static void readPrependValues(String prependFile) throws IOException {
+    /**
+     * Reads defines of a {@link #KEY_PREPEND} file or of the {@link #KEY_FIRING} header without registering them,
+     * so that the same result could be registered by many steps of {@link ConfigDefinitionBatch}
+     *
+     * @return define name to not yet resolved value, in file order
+     */
+    public static Map<String, String> readDefines(String key, String fileName) {
+        Map<String, String> defines = new LinkedHashMap<>();
+        try {
+            if (key.equals(KEY_FIRING)) {
+                defines.put("FIRINGORDER", FiringOrderTSLogic.invoke(fileName));
+            } else if (key.equals(KEY_PREPEND)) {
+                readPrependValues(fileName, defines);
+            } else {
+                throw new IllegalArgumentException("Unexpected " + key);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("While reading " + fileName, e);
+        }
+        return Collections.unmodifiableMap(defines);
+    }
+
+    private static void readPrependValues(String prependFile, Map<String, String> defines) throws IOException {
         BufferedReader definitionReader = new BufferedReader(new FileReader(prependFile));
         String line;
         while ((line = definitionReader.readLine()) != null) {
@@ -220,12 +365,22 @@ public class ConfigDefinition {
             if (ReaderState.isEmptyDefinitionLine(line))
                 continue;
             if (startsWithToken(line, ReaderState.DEFINE)) {
-                processDefine(line.substring(ReaderState.DEFINE.length()).trim());
+                String define = line.substring(ReaderState.DEFINE.length()).trim();
+                int index = define.indexOf(' ');
+                String name = index == -1 ? define : define.substring(0, index);
+                String value = index == -1 ? "" : define.substring(index).trim();
+                // registry ignores redefinition so first value wins
+                defines.putIfAbsent(name, value);
             }
 
         }
     }
 
+    private static void registerDefines(Map<String, String> defines) {
+        for (Map.Entry<String, String> define : defines.entrySet())
+            registerDefine(define.getKey(), define.getValue());
+    }
+
     private static void processTextTemplate(String inputFileName, String outputFileName) throws IOException {
         SystemOut.println("Reading from " + inputFileName);
         SystemOut.println("Writing to " + outputFileName);
@@ -289,15 +444,19 @@ public class ConfigDefinition {
             name = line.substring(0, index);
             line = line.substring(index).trim();
         }
-        if (VariableRegistry.isNumeric(line)) {
-            Integer v = Integer.valueOf(line);
+        registerDefine(name, line);
+    }
+
+    private static void registerDefine(String name, String value) {
+        if (VariableRegistry.isNumeric(value)) {
+            Integer v = Integer.valueOf(value);
             VariableRegistry.INSTANCE.register(name, v);
         } else {
-            VariableRegistry.INSTANCE.register(name, line);
+            VariableRegistry.INSTANCE.register(name, value);
         }
     }
 
-    private static String getMd5(byte[] content) {
+    static String getMd5(byte[] content) {
         try {
             // Static getInstance method is called with hashing MD5
             MessageDigest md = MessageDigest.getInstance("MD5");
@@ -0,0 +1,266 @@
+package com.rusefi;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+/**
+ * Runs many generator invocations in one JVM instead of a 'java -jar' per definition file and per board.
+ * <p>
+ * Manifest is a text file: each paragraph is a job, each line of a paragraph is a step which is optional '-Dkey=value'
+ * system properties of the step, a main class and its arguments. Steps of a job are executed in order, different
+ * jobs are executed in parallel. A failed step does not stop other jobs, all failures are reported once the batch is
+ * done. Same as in a shell script a line which ends with a backslash is continued on the next line.
+ * <pre>
+ * # board prefix has to be generated before board ini
+ * -DSystemOut.name=gen_config_frankenso com.rusefi.board_generator.BoardReader -board frankenso ...
+ * -DSystemOut.name=gen_config_frankenso com.rusefi.ConfigDefinition -ts_output_name rusefi_frankenso.ini ...
+ *
+ * com.rusefi.ConfigDefinition -definition integration/pid_state.txt -java_destination ...
+ * </pre>
+ * Generators keep their state in static fields ({@link VariableRegistry#INSTANCE} and friends), so each step is
+ * loaded by its own class loader: steps are as isolated as separate processes would be, minus JVM start-up.
+ * <p>
+ * Prepend files and the firing order header are shared by the main and all board steps. Those are parsed once per
+ * batch by {@link ConfigDefinition#readDefines} on first use and the parsed defines are handed to the registry of
+ * each step. Inputs are expected not to change while the batch is running, a file generated by an earlier step of a
+ * job is fine as long as no other job reads it before that.
+ * <p>
+ * Andrey Belomutskiy, (c) 2013-2020
+ */
+public class ConfigDefinitionBatch {
+    private static final String COMMENT = "#";
+    private static final String CONTINUATION = "\\";
+    private static final String STDIN = "-";
+    private static final String RUN = "run";
+    private static final String PROPERTY_PREFIX = "-D";
+    private static final String SYSTEM_OUT = "com.rusefi.util.SystemOut";
+    /**
+     * one class from each class path entry the generators need
+     */
+    private static final String[] CLASS_PATH_CLASSES = {
+            ConfigDefinitionBatch.class.getName(),
+            "org.yaml.snakeyaml.Yaml",
+    };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Please specify manifest file name or '" + STDIN + "' and optionally number of threads");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Reader manifest = args[0].equals(STDIN) ? new InputStreamReader(System.in) : new FileReader(args[0]);
+        List<List<String[]>> jobs = readManifest(manifest);
+        List<String> failures = run(jobs, threads);
+        if (!failures.isEmpty()) {
+            System.out.println("Failed: " + failures);
+            System.exit(-1);
+        }
+    }
+
+    public static List<List<String[]>> readManifest(Reader reader) throws IOException {
+        List<List<String[]>> jobs = new ArrayList<>();
+        List<String[]> job = new ArrayList<>();
+        BufferedReader br = new BufferedReader(reader);
+        String line;
+        while ((line = br.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith(COMMENT))
+                continue;
+            while (line.endsWith(CONTINUATION)) {
+                String next = br.readLine();
+                line = line.substring(0, line.length() - CONTINUATION.length()) + " " + (next == null ? "" : next.trim());
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                if (!job.isEmpty())
+                    jobs.add(job);
+                job = new ArrayList<>();
+                continue;
+            }
+            job.add(line.split("\\s+"));
+        }
+        if (!job.isEmpty())
+            jobs.add(job);
+        return jobs;
+    }
+
+    /**
+     * @return descriptions of failed steps, empty if all good
+     */
+    public static List<String> run(List<List<String[]>> jobs, int threads) throws InterruptedException {
+        URL[] classPath = getClassPath();
+        Map<String, Map<String, String>> defines = new ConcurrentHashMap<>();
+        BiFunction<String, String, Map<String, String>> definesReader = (key, fileName) ->
+                defines.computeIfAbsent(key + " " + new File(fileName).getAbsolutePath(),
+                        k -> ConfigDefinition.readDefines(key, fileName));
+        Properties systemProperties = System.getProperties();
+        StepProperties properties = new StepProperties(systemProperties);
+        System.setProperties(properties);
+        try {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<String>> results = new ArrayList<>();
+            for (List<String[]> job : jobs)
+                results.add(executor.submit(() -> runJob(classPath, properties, definesReader, job)));
+            executor.shutdown();
+
+            List<String> failures = new ArrayList<>();
+            for (Future<String> result : results) {
+                try {
+                    String failure = result.get();
+                    if (failure != null)
+                        failures.add(failure);
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause().toString());
+                }
+            }
+            return failures;
+        } finally {
+            // keep whatever was set while we were running, minus per-step values
+            systemProperties.putAll(properties);
+            System.setProperties(systemProperties);
+        }
+    }
+
+    /**
+     * @return null if all steps were successful, description of the failed step otherwise
+     */
+    private static String runJob(URL[] classPath, StepProperties properties,
+                                 BiFunction<String, String, Map<String, String>> definesReader, List<String[]> job) {
+        for (String[] step : job) {
+            long start = System.currentTimeMillis();
+            String description = Arrays.toString(step);
+            Thread thread = Thread.currentThread();
+            ClassLoader previous = thread.getContextClassLoader();
+            int classIndex = 0;
+            // parent is the bootstrap/platform loader so that all our classes and their static state are loaded anew
+            try (URLClassLoader loader = new URLClassLoader(classPath, ClassLoader.getSystemClassLoader().getParent())) {
+                for (; classIndex < step.length && step[classIndex].startsWith(PROPERTY_PREFIX); classIndex++)
+                    properties.setStepProperty(step[classIndex].substring(PROPERTY_PREFIX.length()));
+                if (classIndex == step.length)
+                    throw new IllegalArgumentException("Class name expected");
+                thread.setContextClassLoader(loader);
+                try {
+                    invoke(loader.loadClass(step[classIndex]), Arrays.copyOfRange(step, classIndex + 1, step.length),
+                            definesReader);
+                } finally {
+                    closeLog(loader);
+                }
+            } catch (InvocationTargetException e) {
+                e.getCause().printStackTrace();
+                return description + ": " + e.getCause();
+            } catch (Throwable e) {
+                e.printStackTrace();
+                return description + ": " + e;
+            } finally {
+                thread.setContextClassLoader(previous);
+                properties.clearStepProperties();
+            }
+            System.out.println("Done " + step[classIndex] + " in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        return null;
+    }
+
+    /**
+     * Each step has its own copy of {@link com.rusefi.util.SystemOut}: the log file is closed once the step is done
+     * and the shutdown hook is removed so that it does not hold the class loader of the step until JVM exit.
+     */
+    private static void closeLog(ClassLoader loader) throws ReflectiveOperationException {
+        loader.loadClass(SYSTEM_OUT).getMethod("close").invoke(null);
+    }
+
+    /**
+     * 'main' of a generator could call {@link System#exit} which would terminate all jobs of the batch, generators
+     * which do that offer a 'run' method which throws instead. Generators which read shared defines take the shared
+     * reader as the second parameter of 'run'.
+     */
+    private static void invoke(Class<?> clazz, String[] args,
+                               BiFunction<String, String, Map<String, String>> definesReader)
+            throws ReflectiveOperationException {
+        Method withDefines;
+        try {
+            withDefines = clazz.getMethod(RUN, String[].class, BiFunction.class);
+        } catch (NoSuchMethodException e) {
+            withDefines = null;
+        }
+        if (withDefines != null) {
+            withDefines.invoke(null, args, definesReader);
+            return;
+        }
+        Method entryPoint;
+        try {
+            entryPoint = clazz.getMethod(RUN, String[].class);
+        } catch (NoSuchMethodException e) {
+            entryPoint = clazz.getMethod("main", String[].class);
+        }
+        entryPoint.invoke(null, (Object) args);
+    }
+
+    /**
+     * Locations our generator classes and their libraries were loaded from. 'java.class.path' is not good enough:
+     * under ant's in-process junit it is ant's own class path.
+     */
+    private static URL[] getClassPath() {
+        Set<URL> urls = new LinkedHashSet<>();
+        for (String className : CLASS_PATH_CLASSES) {
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(className, false, ConfigDefinitionBatch.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                // optional library
+                continue;
+            }
+            CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+            if (codeSource == null)
+                throw new IllegalStateException("Unknown location of " + className);
+            urls.add(codeSource.getLocation());
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    /**
+     * System properties with per-thread overrides: steps of parallel jobs could have different values of same
+     * property, for instance 'SystemOut.name'
+     */
+    private static class StepProperties extends Properties {
+        private final ThreadLocal<Map<String, String>> stepProperties = ThreadLocal.withInitial(HashMap::new);
+
+        StepProperties(Properties systemProperties) {
+            putAll(systemProperties);
+        }
+
+        /**
+         * @param definition 'key=value' or just 'key' for an empty value, same as 'java -D'
+         */
+        void setStepProperty(String definition) {
+            int index = definition.indexOf('=');
+            if (index == -1) {
+                stepProperties.get().put(definition, "");
+            } else {
+                stepProperties.get().put(definition.substring(0, index), definition.substring(index + 1));
+            }
+        }
+
+        void clearStepProperties() {
+            stepProperties.get().clear();
+        }
+
+        @Override
+        public String getProperty(String key) {
+            String value = stepProperties.get().get(key);
+            return value != null ? value : super.getProperty(key);
+        }
+
+        @Override
+        public String getProperty(String key, String defaultValue) {
+            String value = getProperty(key);
+            return value != null ? value : defaultValue;
+        }
+    }
+}
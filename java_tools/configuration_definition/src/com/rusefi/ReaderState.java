@@ -30,6 +30,10 @@ public class ReaderState {
     public Map<String, Integer> tsCustomSize = new HashMap<>();
     public Map<String, String> tsCustomLine = new HashMap<>();
     public Map<String, ConfigStructure> structures = new HashMap<>();
+    /**
+     * structures in the order they were completed with their enclosing structure, see {@link #replay}
+     */
+    private final List<ConfigStructure[]> completed = new ArrayList<>();
 
     private static void handleBitLine(ReaderState state, String line) {
         line = line.substring(BIT.length() + 1).trim();
@@ -129,6 +133,7 @@ public class ReaderState {
         structure.addAlignmentFill(this);
 
         structures.put(structure.getName(), structure);
+        completed.add(new ConfigStructure[]{structure, stack.isEmpty() ? null : stack.peek()});
 
         for (ConfigurationConsumer consumer : consumers)
             consumer.handleEndStruct(structure);
@@ -180,6 +185,28 @@ public class ReaderState {
         ensureEmptyAfterProcessing();
     }
 
+    /**
+     * Feeds structures which were already read to consumers, same as if these consumers were passed to
+     * {@link #readBufferedReader} in the first place. This way we can look at the whole definition before deciding
+     * which consumers we need.
+     */
+    public void replay(List<ConfigurationConsumer> consumers) throws IOException {
+        for (ConfigurationConsumer consumer : consumers)
+            consumer.startFile();
+        for (ConfigStructure[] pair : completed) {
+            ConfigStructure parent = pair[1];
+            // consumers look at the stack to tell top level structure from nested ones
+            if (parent != null)
+                stack.push(parent);
+            for (ConfigurationConsumer consumer : consumers)
+                consumer.handleEndStruct(pair[0]);
+            if (parent != null)
+                stack.pop();
+        }
+        for (ConfigurationConsumer consumer : consumers)
+            consumer.endFile();
+    }
+
     private void addBitPadding() {
         ConfigStructure structure = stack.peek();
         structure.addBitPadding(this);
@@ -6,7 +6,6 @@ import com.rusefi.util.SystemOut;
 import java.io.IOException;
 import java.util.*;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static com.rusefi.ConfigDefinition.EOL;
 import static com.rusefi.ReaderState.MULT_TOKEN;
@@ -20,7 +19,16 @@ public class VariableRegistry  {
     private TreeMap<String, String> data = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     public static final VariableRegistry INSTANCE = new VariableRegistry();
 
-    private final Pattern VAR = Pattern.compile("(@@(.*?)@@)");
+    /**
+     * fully resolved values by {@link #canonical} name
+     */
+    private final Map<String, String> expanded = new HashMap<>();
+    /**
+     * canonical name to canonical names of variables which reference it
+     */
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+    private final Set<String> resolving = new HashSet<>();
+    private final StringBuilder builder = new StringBuilder();
 
     public Map<String, Integer> intValues = new HashMap<>();
 
@@ -38,15 +46,85 @@ public class VariableRegistry  {
     public String applyVariables(String line) {
         if (line == null)
             return null;
-        Matcher m;
-        while ((m = VAR.matcher(line)).find()) {
-            String key = m.group(2);
-            if (!data.containsKey(key))
-                throw new IllegalStateException("No such variable: " + key);
-            String s = data.get(key);
-            line = m.replaceFirst(s);
+        VariableTemplate template = VariableTemplate.compile(line);
+        if (!template.hasVariables())
+            return line;
+        builder.setLength(0);
+        template.render(builder, this::resolve);
+        return builder.toString();
+    }
+
+    /**
+     * @return value of the variable with all nested references resolved, cached until the variable or anything it
+     * references is changed
+     */
+    private String resolve(String key) {
+        String canonical = canonical(key);
+        String result = expanded.get(canonical);
+        if (result != null)
+            return result;
+        if (!data.containsKey(key))
+            throw new IllegalStateException("No such variable: " + key);
+        if (!resolving.add(canonical))
+            throw new IllegalStateException("Cyclic variable: " + key);
+        try {
+            String value = unescape(data.get(key), key);
+            VariableTemplate template = VariableTemplate.compile(value);
+            if (template.hasVariables()) {
+                for (String reference : template.getKeys())
+                    dependents.computeIfAbsent(canonical(reference), k -> new HashSet<>()).add(canonical);
+                StringBuilder sb = new StringBuilder();
+                template.render(sb, this::resolve);
+                result = sb.toString();
+            } else {
+                result = value;
+            }
+        } finally {
+            resolving.remove(canonical);
+        }
+        expanded.put(canonical, result);
+        return result;
+    }
+
+    private void invalidate(String key) {
+        String canonical = canonical(key);
+        expanded.remove(canonical);
+        Set<String> affected = dependents.remove(canonical);
+        if (affected != null) {
+            for (String dependent : affected)
+                invalidate(dependent);
         }
-        return line;
+    }
+
+    private static String canonical(String key) {
+        return key.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Values used to be inserted with {@link Matcher#replaceFirst} so we keep its replacement syntax:
+     * backslash escapes next character, $n is a reference to n-th group of "(@@(.*?)@@)"
+     */
+    private static String unescape(String value, String key) {
+        if (value.indexOf('\\') == -1 && value.indexOf('$') == -1)
+            return value;
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                i++;
+                if (i == value.length())
+                    throw new IllegalArgumentException("character to be escaped is missing");
+                sb.append(value.charAt(i));
+            } else if (c == '$') {
+                i++;
+                if (i == value.length() || value.charAt(i) < '0' || value.charAt(i) > '2')
+                    throw new IllegalArgumentException("Illegal group reference in " + value);
+                sb.append(value.charAt(i) == '2' ? key : "@@" + key + "@@");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
     }
 
     public void register(String var, String value) {
@@ -64,6 +142,7 @@ public class VariableRegistry  {
 
         SystemOut.println("Registering " + var + " as " + value);
         data.put(var, value);
+        invalidate(var);
 
         if (!value.contains("\n")) {
             // multi-lines are not supported in C headers
@@ -156,15 +235,25 @@ public class VariableRegistry  {
 
     public void clear() {
         data.clear();
+        expanded.clear();
+        dependents.clear();
         cAllDefinitions.clear();
         javaDefinitions.clear();
     }
 
     public void put(String key, String value) {
         data.put(key, value);
+        invalidate(key);
     }
 
     public String get(Object key) {
         return data.get(key);
     }
+
+    /**
+     * @return read-only view of all variables
+     */
+    public Map<String, String> getValues() {
+        return Collections.unmodifiableMap(data);
+    }
 }
@@ -0,0 +1,77 @@
+package com.rusefi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Line with @@var@@ references split once into literal and variable segments, so that rendering is a single pass
+ * into a {@link StringBuilder}
+ *
+ * @see VariableRegistry#applyVariables
+ */
+public final class VariableTemplate {
+    private static final String MARKER = "@@";
+    private static final String[] NO_KEYS = new String[0];
+
+    /**
+     * literals.length == keys.length + 1, literals[i] goes before keys[i]
+     */
+    private final String[] literals;
+    private final String[] keys;
+
+    private VariableTemplate(String[] literals, String[] keys) {
+        this.literals = literals;
+        this.keys = keys;
+    }
+
+    /**
+     * Same tokens as "@@(.*?)@@" regular expression: shortest name between two markers, names cannot span lines
+     */
+    public static VariableTemplate compile(String line) {
+        List<String> literals = null;
+        List<String> keys = null;
+        int literalStart = 0;
+        int from = 0;
+        while (true) {
+            int start = line.indexOf(MARKER, from);
+            if (start == -1)
+                break;
+            int end = line.indexOf(MARKER, start + MARKER.length());
+            if (end == -1)
+                break;
+            String key = line.substring(start + MARKER.length(), end);
+            if (key.indexOf('\n') != -1 || key.indexOf('\r') != -1) {
+                from = start + 1;
+                continue;
+            }
+            if (keys == null) {
+                literals = new ArrayList<>();
+                keys = new ArrayList<>();
+            }
+            literals.add(line.substring(literalStart, start));
+            keys.add(key);
+            literalStart = from = end + MARKER.length();
+        }
+        if (keys == null)
+            return new VariableTemplate(new String[]{line}, NO_KEYS);
+        literals.add(line.substring(literalStart));
+        return new VariableTemplate(literals.toArray(new String[0]), keys.toArray(new String[0]));
+    }
+
+    public boolean hasVariables() {
+        return keys.length > 0;
+    }
+
+    public String[] getKeys() {
+        return keys.clone();
+    }
+
+    public void render(StringBuilder sb, Function<String, String> resolver) {
+        for (int i = 0; i < keys.length; i++) {
+            sb.append(literals[i]);
+            sb.append(resolver.apply(keys[i]));
+        }
+        sb.append(literals[keys.length]);
+    }
+}
@@ -14,6 +14,15 @@ public class UsagesReader {
             System.err.println("One parameter expected: name of live data yaml input file");
             System.exit(-1);
         }
+        run(args);
+    }
+
+    /**
+     * Same as {@link #main} but problems are thrown to the caller, see {@link com.rusefi.ConfigDefinitionBatch}
+     */
+    public static void run(String[] args) throws IOException {
+        if (args.length != 1)
+            throw new IllegalArgumentException("One parameter expected: name of live data yaml input file");
         String yamlFileName = args[0];
         Yaml yaml = new Yaml();
         Map<String, Object> data = yaml.load(new FileReader(yamlFileName));
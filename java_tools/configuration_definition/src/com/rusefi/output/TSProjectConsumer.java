@@ -11,7 +11,7 @@ import static com.rusefi.util.IoUtils.CHARSET;
 import static com.rusefi.ConfigDefinition.EOL;
 
 public class TSProjectConsumer implements ConfigurationConsumer {
-    private static final String TS_FILE_INPUT_NAME = "rusefi.input";
+    public static final String TS_FILE_INPUT_NAME = "rusefi.input";
     private static final int LENGTH = 24;
     private static final String CONFIG_DEFINITION_START = "CONFIG_DEFINITION_START";
     private static final String CONFIG_DEFINITION_END = "CONFIG_DEFINITION_END";
@@ -0,0 +1,104 @@
+package com.rusefi.test;
+
+import com.rusefi.BuildGraph;
+import com.rusefi.ReaderState;
+import com.rusefi.VariableRegistry;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class BuildGraphTest {
+    private static final String DEFINITION = "struct pid_s\n" +
+            "\tfloat pFactor;PID Kp;\"\", 1, 0, -10000, 10000, 5\n" +
+            "\tint16_t periodMs;PID dTime;\"ms\", 1, 0, 0, 3000, 0\n" +
+            "end_struct\n" +
+            "struct_no_prefix engine_s\n" +
+            "\tpid_s pid\n" +
+            "\tbit isOn\n" +
+            "end_struct\n";
+
+    @Test
+    public void testStructureNodes() throws IOException {
+        BuildGraph original = readGraph(DEFINITION);
+
+        BuildGraph units = readGraph(DEFINITION.replace("\"ms\"", "\"sec\""));
+        assertEquals(original.getNode(BuildGraph.LAYOUT + "pid_s"), units.getNode(BuildGraph.LAYOUT + "pid_s"));
+        assertEquals(original.getNode(BuildGraph.COMMENT + "pid_s"), units.getNode(BuildGraph.COMMENT + "pid_s"));
+        assertChanged(original.getNode(BuildGraph.TS_INFO + "pid_s"), units.getNode(BuildGraph.TS_INFO + "pid_s"));
+
+        BuildGraph comment = readGraph(DEFINITION.replace("PID Kp", "PID proportional gain"));
+        assertEquals(original.getNode(BuildGraph.LAYOUT + "pid_s"), comment.getNode(BuildGraph.LAYOUT + "pid_s"));
+        assertChanged(original.getNode(BuildGraph.COMMENT + "pid_s"), comment.getNode(BuildGraph.COMMENT + "pid_s"));
+        assertEquals(original.getNode(BuildGraph.TS_INFO + "pid_s"), comment.getNode(BuildGraph.TS_INFO + "pid_s"));
+
+        BuildGraph type = readGraph(DEFINITION.replace("int16_t", "int16_t[4]"));
+        assertChanged(original.getNode(BuildGraph.LAYOUT + "pid_s"), type.getNode(BuildGraph.LAYOUT + "pid_s"));
+        // size of nested structure has changed
+        assertChanged(original.getNode(BuildGraph.LAYOUT + "engine_s"), type.getNode(BuildGraph.LAYOUT + "engine_s"));
+    }
+
+    @Test
+    public void testStaleOutputs() throws IOException {
+        File file = File.createTempFile("build_graph", ".txt");
+        file.deleteOnExit();
+
+        BuildGraph first = readGraph(DEFINITION);
+        first.putOutput("ts", Arrays.asList(BuildGraph.LAYOUT, BuildGraph.COMMENT, BuildGraph.TS_INFO));
+        first.putOutput("java", Collections.singletonList(BuildGraph.LAYOUT));
+        assertEquals(2, first.getStaleOutputs(BuildGraph.read(file.getPath() + ".missing")).size());
+        first.write(file.getPath());
+
+        BuildGraph same = readGraph(DEFINITION);
+        same.putOutput("ts", Arrays.asList(BuildGraph.LAYOUT, BuildGraph.COMMENT, BuildGraph.TS_INFO));
+        same.putOutput("java", Collections.singletonList(BuildGraph.LAYOUT));
+        assertTrue(same.getStaleOutputs(BuildGraph.read(file.getPath())).isEmpty());
+
+        BuildGraph units = readGraph(DEFINITION.replace("\"ms\"", "\"sec\""));
+        units.putOutput("ts", Arrays.asList(BuildGraph.LAYOUT, BuildGraph.COMMENT, BuildGraph.TS_INFO));
+        units.putOutput("java", Collections.singletonList(BuildGraph.LAYOUT));
+        assertEquals(Collections.singleton("ts"), units.getStaleOutputs(BuildGraph.read(file.getPath())));
+
+        BuildGraph deleted = readGraph(DEFINITION);
+        deleted.putOutput("ts", Arrays.asList(BuildGraph.LAYOUT, BuildGraph.COMMENT, BuildGraph.TS_INFO));
+        deleted.putOutput("java", Collections.singletonList(BuildGraph.LAYOUT), file.getPath() + ".missing");
+        assertEquals(Collections.singleton("java"), deleted.getStaleOutputs(BuildGraph.read(file.getPath())));
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        VariableRegistry.INSTANCE.clear();
+        ReaderState direct = new ReaderState();
+        TestJavaFieldsConsumer directConsumer = new TestJavaFieldsConsumer(direct);
+        direct.readBufferedReader(new BufferedReader(new StringReader(DEFINITION)), Collections.singletonList(directConsumer));
+
+        VariableRegistry.INSTANCE.clear();
+        ReaderState replayed = new ReaderState();
+        replayed.readBufferedReader(new BufferedReader(new StringReader(DEFINITION)), Collections.emptyList());
+        TestJavaFieldsConsumer replayedConsumer = new TestJavaFieldsConsumer(replayed);
+        replayed.replay(Collections.singletonList(replayedConsumer));
+
+        assertEquals(directConsumer.getJavaFieldsWriter(), replayedConsumer.getJavaFieldsWriter());
+        assertTrue(replayedConsumer.getJavaFieldsWriter().contains("PID_PFACTOR"));
+    }
+
+    private static void assertChanged(String expected, String actual) {
+        assertFalse(expected.equals(actual));
+    }
+
+    private static BuildGraph readGraph(String definition) throws IOException {
+        VariableRegistry.INSTANCE.clear();
+        ReaderState state = new ReaderState();
+        state.readBufferedReader(new BufferedReader(new StringReader(definition)), Collections.emptyList());
+        BuildGraph graph = new BuildGraph();
+        graph.addDefines(VariableRegistry.INSTANCE);
+        graph.addStructures(state);
+        return graph;
+    }
+}
@@ -0,0 +1,149 @@
+package com.rusefi.test;
+
+import com.rusefi.ConfigDefinition;
+import com.rusefi.ConfigDefinitionBatch;
+import com.rusefi.VariableRegistry;
+import com.rusefi.util.SystemOut;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigDefinitionBatchTest {
+    @Test
+    public void testManifest() throws IOException {
+        List<List<String[]>> jobs = ConfigDefinitionBatch.readManifest(new StringReader(
+                "# comment\n" +
+                        "com.rusefi.board_generator.BoardReader -board a\n" +
+                        "com.rusefi.ConfigDefinition  -definition x.txt\n" +
+                        "\n" +
+                        "\n" +
+                        "com.rusefi.ConfigDefinition -definition y.txt \\\n" +
+                        "  -prepend z.txt\n"));
+        assertEquals(2, jobs.size());
+        assertEquals(2, jobs.get(0).size());
+        assertEquals("-definition", jobs.get(0).get(1)[1]);
+        assertEquals("y.txt", jobs.get(1).get(0)[2]);
+        assertEquals("z.txt", jobs.get(1).get(0)[4]);
+    }
+
+    @Test
+    public void testStepsAreIsolated() throws InterruptedException {
+        String step = RegistryProbe.class.getName();
+        List<List<String[]>> jobs = Arrays.asList(
+                Arrays.asList(new String[]{step, "probe_a"}, new String[]{step, "probe_b"}),
+                Collections.singletonList(new String[]{step, "probe_c"}));
+        List<String> failures = ConfigDefinitionBatch.run(jobs, 2);
+        assertTrue(failures.toString(), failures.isEmpty());
+        // each step has seen an empty registry
+        assertEquals("fresh", System.getProperty("probe_a"));
+        assertEquals("fresh", System.getProperty("probe_b"));
+        assertEquals("fresh", System.getProperty("probe_c"));
+
+        List<String> broken = ConfigDefinitionBatch.run(Collections.singletonList(
+                Collections.singletonList(new String[]{"no.such.Class"})), 1);
+        assertEquals(1, broken.size());
+    }
+
+    @Test
+    public void testFailedStepDoesNotStopBatch() throws InterruptedException {
+        List<List<String[]>> jobs = Arrays.asList(
+                Collections.singletonList(new String[]{FailingStep.class.getName()}),
+                Collections.singletonList(new String[]{RegistryProbe.class.getName(), "probe_after_failure"}));
+        List<String> failures = ConfigDefinitionBatch.run(jobs, 1);
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0), failures.get(0).contains("broken step"));
+        assertEquals("fresh", System.getProperty("probe_after_failure"));
+    }
+
+    @Test
+    public void testStepProperties() throws InterruptedException, IOException {
+        File log = File.createTempFile("batch_step", ".log");
+        String logName = log.getPath().substring(0, log.getPath().length() - ".log".length());
+        try {
+            String step = PropertyProbe.class.getName();
+            List<List<String[]>> jobs = Arrays.asList(
+                    Collections.singletonList(new String[]{"-Dprobe.value=a", "-DSystemOut.name=" + logName, step, "probe_property_a"}),
+                    Collections.singletonList(new String[]{"-Dprobe.value=b", step, "probe_property_b"}));
+            List<String> failures = ConfigDefinitionBatch.run(jobs, 2);
+            assertTrue(failures.toString(), failures.isEmpty());
+            assertEquals("a", System.getProperty("probe_property_a"));
+            assertEquals("b", System.getProperty("probe_property_b"));
+            assertNull(System.getProperty("probe.value"));
+            assertTrue(new String(Files.readAllBytes(log.toPath())).contains("probe a"));
+        } finally {
+            log.delete();
+        }
+    }
+
+    @Test
+    public void testSharedDefinesAreReadOnce() throws InterruptedException, IOException {
+        File prepend = File.createTempFile("batch_prepend", ".txt");
+        try {
+            Files.write(prepend.toPath(), ("! comment\n" +
+                    "#define probe_count 42\n" +
+                    "#define probe_name \"x y\"\n" +
+                    "#define probe_count 43\n").getBytes());
+            Map<String, String> defines = ConfigDefinition.readDefines(ConfigDefinition.KEY_PREPEND, prepend.getPath());
+            assertEquals("{probe_count=42, probe_name=\"x y\"}", defines.toString());
+
+            String step = DefinesProbe.class.getName();
+            List<List<String[]>> jobs = Arrays.asList(
+                    Collections.singletonList(new String[]{step, prepend.getPath(), "probe_defines_a"}),
+                    Collections.singletonList(new String[]{step, prepend.getPath(), "probe_defines_b"}));
+            List<String> failures = ConfigDefinitionBatch.run(jobs, 2);
+            assertTrue(failures.toString(), failures.isEmpty());
+            // both steps have registered the same parsed instance
+            assertEquals(System.getProperty("probe_defines_a"), System.getProperty("probe_defines_b"));
+            assertTrue(System.getProperty("probe_defines_a").startsWith("42 "));
+        } finally {
+            prepend.delete();
+        }
+    }
+
+    public static class DefinesProbe {
+        public static void run(String[] args, BiFunction<String, String, Map<String, String>> definesReader) {
+            Map<String, String> defines = definesReader.apply(ConfigDefinition.KEY_PREPEND, args[0]);
+            VariableRegistry.INSTANCE.register("probe_count", defines.get("probe_count"));
+            System.setProperty(args[1], VariableRegistry.INSTANCE.get("probe_count") + " " + System.identityHashCode(defines));
+        }
+    }
+
+    public static class PropertyProbe {
+        public static void main(String[] args) {
+            String value = System.getProperty("probe.value");
+            if (value.equals("a"))
+                SystemOut.println("probe " + value);
+            System.setProperty(args[0], value);
+        }
+    }
+
+    public static class FailingStep {
+        public static void main(String[] args) {
+            System.exit(-1);
+        }
+
+        public static void run(String[] args) {
+            throw new IllegalStateException("broken step");
+        }
+    }
+
+    public static class RegistryProbe {
+        public static void main(String[] args) {
+            boolean isFresh = VariableRegistry.INSTANCE.get("probe") == null;
+            VariableRegistry.INSTANCE.register("probe", "x");
+            System.setProperty(args[0], isFresh ? "fresh" : "shared");
+        }
+    }
+}
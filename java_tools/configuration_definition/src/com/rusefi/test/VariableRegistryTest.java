@@ -1,9 +1,10 @@
 package com.rusefi.test;
 
 import com.rusefi.VariableRegistry;
+import com.rusefi.VariableTemplate;
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 /**
  * 3/30/2015
@@ -24,4 +25,48 @@ public class VariableRegistryTest {
 
         assertEquals("\\x01\\x00", VariableRegistry.INSTANCE.applyVariables("@@var_16_hex@@"));
     }
+
+    @Test
+    public void testNestedValueIsRefreshedOnPut() {
+        VariableRegistry.INSTANCE.clear();
+
+        VariableRegistry.INSTANCE.put("inner", "1");
+        VariableRegistry.INSTANCE.put("outer", "[@@inner@@]");
+        assertEquals("x[1]x", VariableRegistry.INSTANCE.applyVariables("x@@OUTER@@x"));
+
+        VariableRegistry.INSTANCE.put("inner", "2");
+        assertEquals("x[2]x", VariableRegistry.INSTANCE.applyVariables("x@@outer@@x"));
+    }
+
+    @Test
+    public void testErrors() {
+        VariableRegistry.INSTANCE.clear();
+        VariableRegistry.INSTANCE.put("a", "@@b@@");
+        VariableRegistry.INSTANCE.put("b", "@@a@@");
+
+        try {
+            VariableRegistry.INSTANCE.applyVariables("@@missing@@");
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("No such variable: missing", e.getMessage());
+        }
+        try {
+            VariableRegistry.INSTANCE.applyVariables("@@a@@");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTemplate() {
+        assertFalse(VariableTemplate.compile("no @@ variables").hasVariables());
+        // same as "@@(.*?)@@": names do not span lines
+        assertArrayEquals(new String[]{"b", "c"}, VariableTemplate.compile("@@a\n@@b@@ @@c@@@@").getKeys());
+        assertArrayEquals(new String[]{"x"}, VariableTemplate.compile("@@\n@@x@@").getKeys());
+
+        StringBuilder sb = new StringBuilder();
+        VariableTemplate.compile("1@@a@@2@@b@@3").render(sb, String::toUpperCase);
+        assertEquals("1A2B3", sb.toString());
+    }
 }
@@ -3,11 +3,79 @@ package com.rusefi.util.test;
 import com.rusefi.util.LazyFile;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class LazyFileTest {
     @Test
     public void testUnifySpaces() {
         assertEquals("abc", LazyFile.unifySpaces("a\r\n\r\nb\n\n\nc"));
     }
+
+    @Test
+    public void testOverwriteOnlyIfChanged() throws IOException {
+        File dir = Files.createTempDirectory("lazy_file").toFile();
+        String fileName = new File(dir, "test.h").getPath();
+
+        write(fileName, "// " + LazyFile.LAZY_FILE_TAG + "first\n", "#define A 1\n");
+        assertEquals("// " + LazyFile.LAZY_FILE_TAG + "first\n#define A 1\n", read(fileName));
+
+        // only tag line and line breaks are different
+        write(fileName, "// " + LazyFile.LAZY_FILE_TAG + "second\r\n", "#define A", " 1\r\n\r\n");
+        assertEquals("// " + LazyFile.LAZY_FILE_TAG + "first\n#define A 1\n", read(fileName));
+
+        write(fileName, "// " + LazyFile.LAZY_FILE_TAG + "third\n", "#define A 2\n");
+        assertEquals("// " + LazyFile.LAZY_FILE_TAG + "third\n#define A 2\n", read(fileName));
+
+        // no temporary files left behind
+        assertEquals(1, dir.list().length);
+        assertTrue(new File(fileName).delete());
+        assertTrue(dir.delete());
+    }
+
+    @Test
+    public void testPermissions() throws IOException {
+        File dir = Files.createTempDirectory("lazy_file").toFile();
+        Path path = new File(dir, "test.h").toPath();
+        Path plain = new File(dir, "plain").toPath();
+        try {
+            if (Files.getFileAttributeView(dir.toPath(), PosixFileAttributeView.class) == null)
+                return;
+
+            write(path.toString(), "#define A 1\n");
+            // same permissions as any other new file, not owner-only
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+            assertEquals(Files.getPosixFilePermissions(Files.createFile(plain)), permissions);
+
+            Set<PosixFilePermission> custom = PosixFilePermissions.fromString("rw-rw-r--");
+            Files.setPosixFilePermissions(path, custom);
+            write(path.toString(), "#define A 2\n");
+            assertEquals(custom, Files.getPosixFilePermissions(path));
+            assertEquals(2, dir.list().length);
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(plain);
+            dir.delete();
+        }
+    }
+
+    private static void write(String fileName, String... lines) throws IOException {
+        LazyFile file = new LazyFile(fileName);
+        for (String line : lines)
+            file.write(line);
+        file.close();
+    }
+
+    private static String read(String fileName) throws IOException {
+        return new String(Files.readAllBytes(new File(fileName).toPath()));
+    }
 }
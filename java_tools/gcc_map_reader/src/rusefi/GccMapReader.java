@@ -3,11 +3,7 @@ package rusefi;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.*;
 
 /**
  * This is an utility to print the information from GCC linked .map file
@@ -16,132 +12,241 @@ import java.util.regex.Pattern;
  * 10/16/13
  */
 public class GccMapReader {
-    private static final Pattern MULTI_LINE_PATTERN = Pattern.compile(".*0x(\\S*)(.*)");
     private static final String[] REGIONS = {"bss", "text", "data", "rodata"};
-    private static final Pattern SINGLE_LINE_PATTERN = Pattern.compile(".*\\.(bss|text|data|rodata)\\.(\\S*).*0x.*0x(\\S*)(.*)");
+    private static final String HEX_PREFIX = "0x";
     static final String START_OF_DATA_TAG = "Linker script and memory map";
+    private static final String DIFF = "-diff";
 
     public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals(DIFF)) {
+            printDiff(read(args[1]), read(args[2]));
+            return;
+        }
         if (args.length != 1) {
             System.err.println("file name parameter expected");
+            System.err.println("or " + DIFF + " OLD_MAP_FILE NEW_MAP_FILE");
             System.exit(-1);
         }
-        String fileName = args[0];
-        BufferedReader fr = new BufferedReader(new FileReader(fileName));
-
-        String line;
-        List<String> lines = new ArrayList<>();
-
-        while ((line = fr.readLine()) != null)
-            lines.add(line);
-
-        debug("Got " + lines.size() + " lines");
+        Map<String, List<Record>> regions = read(args[0]);
 
         for (String region : REGIONS)
-            processAndPrint(lines, region);
+            print(regions.get(region), region);
     }
 
-    private static void processAndPrint(List<String> lines, String region) {
-        List<Record> records = process(lines, region);
+    private static Map<String, List<Record>> read(String fileName) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            return process(reader);
+        }
+    }
 
+    private static void print(List<Record> records, String region) {
         records.sort(Comparator.reverseOrder());
 
+        StringBuilder sb = new StringBuilder();
         int totalSize = 0;
         for (Record record : records) {
-            System.out.println(record);
+            sb.append(record).append(System.lineSeparator());
             totalSize += record.size;
         }
 
+        System.out.print(sb);
         System.out.println(region + " Total size: " + totalSize);
     }
 
-    static List<Record> process(List<String> lines, String region) {
+    /**
+     * Tab-separated "region name old_size new_size delta" for every symbol which has changed, biggest change first,
+     * then one "region TOTAL old_size new_size delta" line per region
+     */
+    static void printDiff(Map<String, List<Record>> before, Map<String, List<Record>> after) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : diff(before, after))
+            sb.append(line).append(System.lineSeparator());
+        System.out.print(sb);
+    }
 
-        List<Record> result = new ArrayList<>();
-        boolean isUsefulData = false;
-        for (int i = 0; i < lines.size(); i++) {
-            String line = lines.get(i);
-            if (line.contains(START_OF_DATA_TAG)) {
-                isUsefulData = true;
-            }
-            if (!isUsefulData)
-                continue;
-            if (!line.contains("." + region + "."))
-                continue;
-            debug("Got: " + line);
-
-            Matcher m1 = SINGLE_LINE_PATTERN.matcher(line);
-
-            if (m1.matches()) {
-                parseSingleLine(result, line, m1, i);
-            } else {
-                i = parseMultiLine(lines, result, i, line, region);
+    static List<String> diff(Map<String, List<Record>> before, Map<String, List<Record>> after) {
+        List<String> changes = new ArrayList<>();
+        List<String> totals = new ArrayList<>();
+        List<long[]> deltas = new ArrayList<>();
+        for (String region : REGIONS) {
+            Map<String, Integer> oldSizes = sizeByName(before.get(region));
+            Map<String, Integer> newSizes = sizeByName(after.get(region));
+            Set<String> names = new TreeSet<>(oldSizes.keySet());
+            names.addAll(newSizes.keySet());
+            long oldTotal = 0;
+            long newTotal = 0;
+            for (String name : names) {
+                int oldSize = oldSizes.getOrDefault(name, 0);
+                int newSize = newSizes.getOrDefault(name, 0);
+                oldTotal += oldSize;
+                newTotal += newSize;
+                if (oldSize != newSize) {
+                    deltas.add(new long[]{Math.abs(newSize - oldSize), changes.size()});
+                    changes.add(region + "\t" + name + "\t" + oldSize + "\t" + newSize + "\t" + (newSize - oldSize));
+                }
             }
+            totals.add(region + "\tTOTAL\t" + oldTotal + "\t" + newTotal + "\t" + (newTotal - oldTotal));
         }
+        // stable: same change keeps file order
+        deltas.sort((o1, o2) -> Long.compare(o2[0], o1[0]));
+        List<String> result = new ArrayList<>();
+        for (long[] delta : deltas)
+            result.add(changes.get((int) delta[1]));
+        result.addAll(totals);
         return result;
     }
 
-    private static int parseMultiLine(List<String> lines, List<Record> result, int lineIndex, String line, String region) {
-        debug("Multi-line " + line);
-        String suffix = line;
-        line = lines.get(++lineIndex);
-
-        Matcher m2 = MULTI_LINE_PATTERN.matcher(line);
-
-        if (!m2.matches()) {
-            debug("Returning into consideration: " + line);
-            return lineIndex - 1;
-        }
-
-        String sizeString = m2.group(1);
-        String prefix = m2.group(2);
+    private static Map<String, Integer> sizeByName(List<Record> records) {
+        Map<String, Integer> result = new HashMap<>();
+        for (Record record : records)
+            result.merge(record.name, record.size, Integer::sum);
+        return result;
+    }
 
-        debug("Next line " + line);
+    static List<Record> process(List<String> lines, String region) {
+        Scanner scanner = new Scanner();
+        for (String line : lines)
+            scanner.accept(line);
+        return scanner.regions.get(region);
+    }
 
-        String name = prefix + "@" + suffix;
+    /**
+     * Reads the map file once collecting records of all {@link #REGIONS}
+     *
+     * @return region name to records in file order
+     */
+    static Map<String, List<Record>> process(BufferedReader reader) throws IOException {
+        Scanner scanner = new Scanner();
+        String line;
+        while ((line = reader.readLine()) != null)
+            scanner.accept(line);
+        debug("Got " + scanner.lineIndex + " lines");
+        return scanner.regions;
+    }
 
-        if (line.contains("ALIGN")) {
-            System.out.println("TODO: better handle " + line);
-            return lineIndex;
+    /**
+     * Line by line state machine. A record is either one line
+     * <pre>
+     *  .bss.PWMD1     0x1fff9a0c       0x18 build_kinetis/obj/hal_pwm_lld.o
+     * </pre>
+     * or a line with the section name and a following line with address and size. Pending section name is kept per
+     * region since a line only belongs to regions whose ".region." tag it contains.
+     */
+    private static class Scanner {
+        private final Map<String, List<Record>> regions = new LinkedHashMap<>();
+        private final String[] tags = new String[REGIONS.length];
+        private final String[] pending = new String[REGIONS.length];
+        private boolean isUsefulData;
+        private int lineIndex;
+
+        Scanner() {
+            for (int r = 0; r < REGIONS.length; r++) {
+                regions.put(REGIONS[r], new ArrayList<>());
+                tags[r] = "." + REGIONS[r] + ".";
+            }
         }
 
-        int size;
-        try {
-            size = Integer.parseInt(sizeString, 16);
-        } catch (NumberFormatException e) {
-            throw new IllegalStateException("While parsing @ " + lineIndex);
+        void accept(String line) {
+            if (!isUsefulData && line.contains(START_OF_DATA_TAG))
+                isUsefulData = true;
+            if (!isUsefulData) {
+                lineIndex++;
+                return;
+            }
+            Record single = null;
+            boolean singleParsed = false;
+            for (int r = 0; r < REGIONS.length; r++) {
+                if (pending[r] != null) {
+                    String suffix = pending[r];
+                    pending[r] = null;
+                    if (completeMultiLine(suffix, line, REGIONS[r]))
+                        continue;
+                }
+                if (!line.contains(tags[r]))
+                    continue;
+                if (!singleParsed) {
+                    single = parseSingleLine(line);
+                    singleParsed = true;
+                }
+                if (single != null) {
+                    regions.get(REGIONS[r]).add(single);
+                } else {
+                    pending[r] = line;
+                }
+            }
+            lineIndex++;
         }
 
-        debug("Name " + name);
-        debug("size " + size);
-
-        result.add(new Record(size, name, region));
-        return lineIndex;
-    }
-
-    private static void parseSingleLine(List<Record> result, String line, Matcher m1, int lineIndex) {
-        debug("Single-line " + line);
-
-        int i = 1;
-        String region = m1.group(i++);
-        String suffix = m1.group(i++);
-        String sizeString = m1.group(i++);
-        //noinspection UnusedAssignment
-        String prefix = m1.group(i++);
+        /**
+         * @return true if the line was consumed as the second line of a record
+         */
+        private boolean completeMultiLine(String suffix, String line, String region) {
+            int sizeIndex = line.lastIndexOf(HEX_PREFIX);
+            if (sizeIndex == -1)
+                return false;
+            if (line.contains("ALIGN")) {
+                System.out.println("TODO: better handle " + line);
+                return true;
+            }
+            sizeIndex += HEX_PREFIX.length();
+            int sizeEnd = endOfToken(line, sizeIndex);
+            String name = line.substring(sizeEnd) + "@" + suffix;
+            regions.get(region).add(new Record(parseSize(line, sizeIndex, sizeEnd), name, region));
+            return true;
+        }
 
-        String name = prefix + "@" + suffix;
+        /**
+         * Section tag, a name and two hex numbers with the last one being the size: the latest tag which still has
+         * two hex numbers after it wins
+         *
+         * @return null if the line is not a complete record
+         */
+        private Record parseSingleLine(String line) {
+            int sizeIndex = line.lastIndexOf(HEX_PREFIX);
+            if (sizeIndex < HEX_PREFIX.length())
+                return null;
+            int addressIndex = line.lastIndexOf(HEX_PREFIX, sizeIndex - HEX_PREFIX.length());
+            if (addressIndex == -1)
+                return null;
+            int tagIndex = -1;
+            String region = null;
+            for (String candidate : REGIONS) {
+                int index = line.lastIndexOf("." + candidate + ".", addressIndex - candidate.length() - 2);
+                if (index > tagIndex) {
+                    tagIndex = index;
+                    region = candidate;
+                }
+            }
+            if (region == null)
+                return null;
+            int nameIndex = tagIndex + region.length() + 2;
+            int nameEnd = Math.min(endOfToken(line, nameIndex), addressIndex);
+            sizeIndex += HEX_PREFIX.length();
+            int sizeEnd = endOfToken(line, sizeIndex);
+            String name = line.substring(sizeEnd) + "@" + line.substring(nameIndex, nameEnd);
+            return new Record(parseSize(line, sizeIndex, sizeEnd), name, region);
+        }
 
-        int size;
-        try {
-            size = Integer.parseInt(sizeString, 16);
-        } catch (NumberFormatException e) {
-            throw new IllegalStateException("While parsing @ " + lineIndex);
+        private int parseSize(String line, int from, int to) {
+            try {
+                return Integer.parseInt(line.substring(from, to), 16);
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("While parsing @ " + lineIndex + ": " + line);
+            }
         }
 
-        debug("Name " + name);
-        debug("size " + size);
+        private static int endOfToken(String line, int index) {
+            while (index < line.length() && !isWhitespace(line.charAt(index)))
+                index++;
+            return index;
+        }
 
-        result.add(new Record(size, name, region));
+        /**
+         * same as regex \s
+         */
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+        }
     }
 
     @SuppressWarnings("unused")
@@ -152,7 +257,7 @@ public class GccMapReader {
     static class Record implements Comparable<Record> {
         private final int size;
         private final String name;
-        private String region;
+        private final String region;
 
         Record(int size, String name, String region) {
             this.size = size;
@@ -180,5 +285,13 @@ public class GccMapReader {
         int getSize() {
             return size;
         }
+
+        String getName() {
+            return name;
+        }
+
+        String getRegion() {
+            return region;
+        }
     }
 }
@@ -2,11 +2,16 @@ package rusefi;
 
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class GccMapReaderTest {
     private static final String BSS = "bss";
@@ -91,4 +96,36 @@ public class GccMapReaderTest {
         assertEquals(1, bss.size());
 
     }
+
+    @Test
+    public void testAllRegionsInOnePass() throws IOException {
+        Map<String, List<GccMapReader.Record>> regions = GccMapReader.process(new BufferedReader(new StringReader(
+                GccMapReader.START_OF_DATA_TAG + "\n" +
+                        " .bss.ch_idle_thread_wa\n" +
+                        "                0x1fff8d10      0x610 build_kinetis/obj/chsys.o\n" +
+                        " .text.main     0x00000100       0x40 build_kinetis/obj/main.o\n" +
+                        " .rodata.table  0x00000200       0x10 build_kinetis/obj/main.o\n")));
+        assertEquals(1, regions.get(BSS).size());
+        assertEquals(0x610, regions.get(BSS).get(0).getSize());
+        assertEquals("text", regions.get("text").get(0).getRegion());
+        assertEquals(" build_kinetis/obj/main.o@table", regions.get("rodata").get(0).getName());
+        assertTrue(regions.get("data").isEmpty());
+    }
+
+    @Test
+    public void testDiff() throws IOException {
+        Map<String, List<GccMapReader.Record>> before = GccMapReader.process(new BufferedReader(new StringReader(
+                GccMapReader.START_OF_DATA_TAG + "\n" +
+                        " .bss.a         0x1fff9a0c       0x18 a.o\n" +
+                        " .bss.b         0x1fff9a0c       0x20 b.o\n")));
+        Map<String, List<GccMapReader.Record>> after = GccMapReader.process(new BufferedReader(new StringReader(
+                GccMapReader.START_OF_DATA_TAG + "\n" +
+                        " .bss.a         0x1fff9a0c       0x10 a.o\n" +
+                        " .bss.b         0x1fff9a0c      0x120 b.o\n")));
+        List<String> diff = GccMapReader.diff(before, after);
+        assertEquals("bss\t b.o@b\t32\t288\t256", diff.get(0));
+        assertEquals("bss\t a.o@a\t24\t16\t-8", diff.get(1));
+        assertEquals("bss\tTOTAL\t56\t304\t248", diff.get(2));
+        assertEquals(6, diff.size());
+    }
 }
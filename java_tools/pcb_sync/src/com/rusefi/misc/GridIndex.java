@@ -0,0 +1,60 @@
+package com.rusefi.misc;
+
+import java.util.*;
+
+/**
+ * Uniform grid of square cells: each rectangle is registered in every cell it overlaps, point query only looks at
+ * one cell. Query result is a superset of rectangles containing the point, exact check is up to the caller.
+ *
+ * @author Andrey Belomutskiy
+ */
+public class GridIndex<T> {
+    private final double cellSize;
+    private final Map<Long, List<T>> cells = new HashMap<Long, List<T>>();
+
+    public GridIndex(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * @param x      center of the rectangle
+     * @param y      center of the rectangle
+     * @param width  full width of the rectangle
+     * @param height full height of the rectangle
+     */
+    public void add(T item, double x, double y, double width, double height) {
+        int minX = cell(x - width / 2);
+        int maxX = cell(x + width / 2);
+        int minY = cell(y - height / 2);
+        int maxY = cell(y + height / 2);
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                Long key = key(cx, cy);
+                List<T> list = cells.get(key);
+                if (list == null) {
+                    list = new ArrayList<T>();
+                    cells.put(key, list);
+                }
+                list.add(item);
+            }
+        }
+    }
+
+    /**
+     * @return items which might contain given point, each item at most once
+     */
+    public Set<T> query(double x, double y) {
+        List<T> list = cells.get(key(cell(x), cell(y)));
+        if (list == null)
+            return Collections.emptySet();
+        return new LinkedHashSet<T>(list);
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -3,17 +3,21 @@ package com.rusefi.misc;
 import com.rusefi.pcb.*;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 /**
  * @author Andrey Belomutskiy
  *         1/21/14
  */
 public class RemoveUnneededTraces {
-    private final static Set<String> alreadyRemoved = new HashSet<String>();
+    /**
+     * 0.1 inch
+     */
+    private static final double CELL_SIZE = 2.54;
+    /**
+     * module pads are checked after rotation, do not let rounding put a pad edge outside of the indexed area
+     */
+    private static final double MARGIN = 0.001;
 
     public static void main(String[] args) throws IOException {
         if (args.length != 2) {
@@ -29,84 +33,116 @@ public class RemoveUnneededTraces {
     public static void optimize(String input, String output) throws IOException {
         PcbNode destNode = PcbNode.readFromFile(input);
 
-
-        while (removeUnusedSegments(destNode) || removeUnusedVias(destNode)) {
-            System.out.println("Still removing...");
-        }
+        removeUnused(destNode);
 
         destNode.write(output);
     }
 
-    private static boolean removeUnusedVias(PcbNode destNode) {
-        List<ViaNode> unused = findUnusedVias(destNode);
-        for (ViaNode via : unused) {
-            System.out.println("Removing via: " + via);
-            boolean removed = destNode.removeChild(via);
-            if (!removed)
-                throw new IllegalStateException("not removed: " + removed);
-
+    /**
+     * Removes segments with a dangling end and vias without enough segments, including whatever becomes unused
+     * because of these removals.
+     * <p>
+     * Each segment end and each via is an {@link Anchor} with a count of live elements it is connected to, found
+     * once using {@link GridIndex}. Removing an element decrements the counts of anchors it was supporting, so the
+     * whole cascade is one pass over a worklist instead of repeated all-against-all scans. Result is the same since
+     * removal never makes another element used again.
+     *
+     * @return number of removed elements
+     */
+    public static int removeUnused(PcbNode destNode) {
+        List<PcbNode> modules = destNode.iterate("module");
+        List<PcbNode> segments = destNode.iterate("segment");
+        List<PcbNode> vias = destNode.iterate("via");
+        System.out.println(segments.size() + " segment(s), " + vias.size() + " via(s)");
+
+        GridIndex<PcbNode> index = new GridIndex<PcbNode>(CELL_SIZE);
+        for (PcbNode n : modules) {
+            ModuleNode module = (ModuleNode) n;
+            double size = 2 * module.getRadius() + MARGIN;
+            index.add(module, module.at.x, module.at.y, size, size);
         }
-        return !unused.isEmpty();
-    }
-
-    private static List<ViaNode> findUnusedVias(PcbNode destNode) {
-        List<ViaNode> result = new ArrayList<ViaNode>();
-
-        List<PcbNode> stuff = destNode.iterate("segment");
-//        stuff.addAll(destNode.iterate("segment"));
-
-        for (PcbNode n : destNode.iterate("via")) {
+        for (PcbNode n : segments) {
+            SegmentNode segment = (SegmentNode) n;
+            SizeNode size = segment.getSize();
+            index.add(segment, segment.start.x, segment.start.y, size.w, size.h);
+            index.add(segment, segment.end.x, segment.end.y, size.w, size.h);
+        }
+        for (PcbNode n : vias) {
             ViaNode via = (ViaNode) n;
+            SizeNode size = via.getSize();
+            index.add(via, via.location.x, via.location.y, size.w, size.h);
+        }
 
-            int count = 0;
-
-            for (PcbNode segment : stuff)
-                if (segment.isConnected(via.location))
-                    count++;
-
-            if (via.netId == NetNode.GND_NET_ID) {
-                if (count == 0)
-                    result.add(via);
-            } else {
-                if (count < 2)
-                    result.add(via);
+        Map<PcbNode, Element> elements = new HashMap<PcbNode, Element>();
+        for (PcbNode segment : segments)
+            elements.put(segment, new Element(segment));
+        for (PcbNode via : vias)
+            elements.put(via, new Element(via));
+
+        Deque<Element> unused = new ArrayDeque<Element>();
+        for (PcbNode n : segments) {
+            SegmentNode segment = (SegmentNode) n;
+            Element element = elements.get(segment);
+            for (PointNode point : Arrays.asList(segment.start, segment.end)) {
+                Anchor anchor = new Anchor(element, 1);
+                for (PcbNode candidate : index.query(point.x, point.y)) {
+                    if (candidate == segment || !candidate.isConnected(point))
+                        continue;
+                    if (candidate instanceof ModuleNode) {
+                        anchor.permanent = true;
+                    } else {
+                        anchor.supporters++;
+                        elements.get(candidate).dependents.add(anchor);
+                    }
+                }
+                element.anchors.add(anchor);
             }
         }
-        return result;
-    }
-
-    private static boolean removeUnusedSegments(PcbNode destNode) {
-        List<PcbNode> stuff = new ArrayList<PcbNode>(destNode.iterate("module"));
-        stuff.addAll(destNode.iterate("via"));
-
-
-        Object o = destNode.iterate("segment");
-        List<SegmentNode> segments = (List<SegmentNode>) o;
-        System.out.println(segments.size() + " segment(s)");
+        for (PcbNode n : vias) {
+            ViaNode via = (ViaNode) n;
+            Element element = elements.get(via);
+            // GND via is fine with one segment since it connects to the ground plane
+            Anchor anchor = new Anchor(element, via.netId == NetNode.GND_NET_ID ? 1 : 2);
+            for (PcbNode candidate : index.query(via.location.x, via.location.y)) {
+                if (candidate instanceof SegmentNode && candidate.isConnected(via.location)) {
+                    anchor.supporters++;
+                    elements.get(candidate).dependents.add(anchor);
+                }
+            }
+            element.anchors.add(anchor);
+        }
 
-        List<SegmentNode> unused = findUnusedSegments(segments, stuff);
-        for (SegmentNode segment : unused) {
-            boolean removed = destNode.removeChild(segment);
-            if (!removed)
-                throw new IllegalStateException();
-            String netName = segment.net.id;
-            if (!alreadyRemoved.contains(netName)) {
-                alreadyRemoved.add(netName);
-                System.out.println("Unused segment in network " + netName + ": " + segment);
+        for (Element element : elements.values()) {
+            for (Anchor anchor : element.anchors) {
+                if (!anchor.isSatisfied()) {
+                    unused.add(element.markUnused());
+                    break;
+                }
             }
         }
-        return !unused.isEmpty();
-    }
 
-    private static List<SegmentNode> findUnusedSegments(List<SegmentNode> segments, List<PcbNode> modules) {
-        List<SegmentNode> unused = new ArrayList<SegmentNode>();
-        for (SegmentNode segment : segments) {
-            if (isUnused(segments, segment, modules)) {
-//                System.out.println("Unused on " + segment.net.id + ": " + segment);
-                unused.add(segment);
+        Set<PcbNode> removed = new HashSet<PcbNode>();
+        Set<String> reportedNets = new HashSet<String>();
+        while (!unused.isEmpty()) {
+            Element element = unused.poll();
+            removed.add(element.node);
+            if (element.node instanceof SegmentNode) {
+                String netName = ((SegmentNode) element.node).net.id;
+                if (reportedNets.add(netName))
+                    System.out.println("Unused segment in network " + netName + ": " + element.node);
+            } else {
+                System.out.println("Removing via: " + element.node);
+            }
+            for (Anchor anchor : element.dependents) {
+                anchor.supporters--;
+                if (anchor.owner.used && !anchor.isSatisfied())
+                    unused.add(anchor.owner.markUnused());
             }
         }
-        return unused;
+
+        destNode.removeChildren(removed);
+        System.out.println("Removed " + removed.size() + " element(s)");
+        return removed.size();
     }
 
     public static boolean isUnused(List<SegmentNode> segments, SegmentNode segment, List<PcbNode> modules) {
@@ -135,4 +171,45 @@ public class RemoveUnneededTraces {
         }
         return null;
     }
+
+    private static class Element {
+        private final PcbNode node;
+        private final List<Anchor> anchors = new ArrayList<Anchor>();
+        /**
+         * anchors of other elements which this element is connected to
+         */
+        private final List<Anchor> dependents = new ArrayList<Anchor>();
+        private boolean used = true;
+
+        Element(PcbNode node) {
+            this.node = node;
+        }
+
+        Element markUnused() {
+            used = false;
+            return this;
+        }
+    }
+
+    /**
+     * Point of an element which has to be connected to at least {@link #required} other live elements
+     */
+    private static class Anchor {
+        private final Element owner;
+        private final int required;
+        private int supporters;
+        /**
+         * connected to a module pad, modules are never removed
+         */
+        private boolean permanent;
+
+        Anchor(Element owner, int required) {
+            this.owner = owner;
+            this.required = required;
+        }
+
+        boolean isSatisfied() {
+            return permanent || supporters >= required;
+        }
+    }
 }
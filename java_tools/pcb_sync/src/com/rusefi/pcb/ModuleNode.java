@@ -24,6 +24,16 @@ public class ModuleNode extends PcbNode {
         return reference;
     }
 
+    /**
+     * @return distance from {@link #at} which covers all pads whatever the rotation of the module
+     */
+    public double getRadius() {
+        double result = 0;
+        for (PadNode pad : pads)
+            result = Math.max(result, Math.hypot(pad.at.x, pad.at.y) + Math.hypot(pad.size.w, pad.size.h) / 2);
+        return result;
+    }
+
     @Override
     public String toString() {
         return "ModuleNode{" +
@@ -2,21 +2,19 @@ package com.rusefi.pcb;
 
 import com.rusefi.util.FileUtils;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.*;
+import java.util.*;
 
 /**
  * (c) Andrey Belomutskiy
  * 12/8/13
  */
 public class PcbNode {
+    private static final int FLUSH_SIZE = 64 * 1024;
     public final String nodeName;
     public final int closingIndex;
     public final List<Object> children;
+    private Map<String, List<PcbNode>> index;
 
     public PcbNode(String nodeName, int closingIndex, List<Object> children) {
         this.nodeName = nodeName;
@@ -28,8 +26,12 @@ public class PcbNode {
      * @see #write
      */
     public static PcbNode readFromFile(String fileName) throws IOException {
-        String content = FileUtils.readFile(fileName);
-        PcbNode node = parse(content);
+        FileUtils.checkExistence(fileName);
+        System.out.println("Reading " + fileName);
+        PcbNode node;
+        try (Reader reader = new BufferedReader(new FileReader(fileName))) {
+            node = SExpressionReader.read(reader);
+        }
         System.out.println("GND network: " + NetNode.GND_NET_ID);
         return node;
     }
@@ -42,110 +44,62 @@ public class PcbNode {
                 '}';
     }
 
-    private static PcbNode parse(String s, int index, int depth) {
-        log("Reading node from " + index, depth);
-        if (s.charAt(index) != '(')
-            throw new IllegalStateException("opening bracket expected");
-        index++;
-        String nodeName = readToken(s, index, depth);
-        index += nodeName.length();
-
-        List<Object> children = new ArrayList<Object>();
-        while (true) {
-            while (isWhitespace(s.charAt(index)))
-                index++;
-
-            char c = s.charAt(index);
-            if (c == ')')
-                break;
-
-            if (s.charAt(index) == '(') {
-                PcbNode child = parse(s, index, depth + 1);
-                children.add(child);
-                index = child.closingIndex;
-                continue;
-            }
-
-            String child = readToken(s, index, depth);
-            children.add(child);
-            index += child.length();
-        }
+    /**
+     * @return node of the specific subclass for known node names
+     */
+    static PcbNode create(String nodeName, int closingIndex, List<Object> children) {
         if ("segment".equals(nodeName)) {
-            return new SegmentNode(nodeName, index + 1, children);
+            return new SegmentNode(nodeName, closingIndex, children);
         } else if ("pad".equals(nodeName)) {
-            return PadNode.parse(nodeName, index + 1, children);
+            return PadNode.parse(nodeName, closingIndex, children);
         } else if ("net".equals(nodeName)) {
-            return new NetNode(nodeName, index + 1, children);
+            return new NetNode(nodeName, closingIndex, children);
         } else if ("add_net".equals(nodeName)) {
-            return new AddNetNode(nodeName, index + 1, children);
+            return new AddNetNode(nodeName, closingIndex, children);
         } else if ("gr_line".equals(nodeName)) {
-            return new GrLineNode(nodeName, index + 1, children);
+            return new GrLineNode(nodeName, closingIndex, children);
         } else if ("layer".equals(nodeName)) {
-            return new LayerNode(nodeName, index + 1, children);
+            return new LayerNode(nodeName, closingIndex, children);
         } else if ("module".equals(nodeName)) {
-            return new ModuleNode(nodeName, index + 1, children);
+            return new ModuleNode(nodeName, closingIndex, children);
         } else if ("size".equals(nodeName) || "width".equals(nodeName)) {
-            return new SizeNode(nodeName, index + 1, children);
+            return new SizeNode(nodeName, closingIndex, children);
         } else if ("zone".equals(nodeName)) {
-            return new ZoneNode(nodeName, index + 1, children);
+            return new ZoneNode(nodeName, closingIndex, children);
         } else if ("via".equals(nodeName)) {
-            return new ViaNode(nodeName, index + 1, children);
+            return new ViaNode(nodeName, closingIndex, children);
         } else if ("start".equals(nodeName) || "end".equals(nodeName) || "at".equals(nodeName)) {
-            return new PointNode(nodeName, index + 1, children);
+            return new PointNode(nodeName, closingIndex, children);
         }
 
-        return new PcbNode(nodeName, index + 1, children);
-    }
-
-    private static String readToken(String s, int index, int depth) {
-        log("Reading token from " + index, depth);
-        if (s.charAt(index) == '"') {
-            String result = s.substring(index, s.indexOf('"', index + 1) + 1);
-            log("Got quoted token: " + result, depth);
-            return result;
-        }
-
-        String result = "";
-        while (index < s.length()) {
-            char c = s.charAt(index);
-            if (c == ')' || isWhitespace(c))
-                break;
-            result += c;
-            index++;
-        }
-        if (result.length() == 0)
-            throw new IllegalStateException("Empty token");
-        log("Got token: " + result, depth);
-        return result;
-    }
-
-    private static void log(String s, int depth) {
-//        for (int i = 0; i < depth; i++)
-//            System.out.print(' ');
-//        System.out.println(s);
-    }
-
-    private static void log(String s) {
-        log(s, 0);
-    }
-
-    private static boolean isWhitespace(char c) {
-        return c == ' ' || c == '\r' || c == '\n';
+        return new PcbNode(nodeName, closingIndex, children);
     }
 
     public static PcbNode parse(String content) {
-        return parse(content, 0, 0);
+        try {
+            return SExpressionReader.read(new StringReader(content));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     public String pack() {
         StringBuilder sb = new StringBuilder();
-        pack(sb, "");
+        try {
+            pack(sb, "", null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
         return sb.toString();
     }
 
-    private void pack(StringBuilder sb, String prefix) {
+    /**
+     * @param out if not null, content of the buffer is flushed there every {@link #FLUSH_SIZE} characters
+     */
+    private void pack(StringBuilder sb, String prefix, Writer out) throws IOException {
         sb.append(prefix).append("(").append(nodeName);
 
+        String childPrefix = prefix + " ";
         for (Object child : children) {
             if (child instanceof String) {
                 sb.append(" ").append(child);
@@ -155,19 +109,27 @@ public class PcbNode {
             if (p == null)
                 throw new NullPointerException("Null child node");
             sb.append("\r\n");
-            p.pack(sb, prefix + " ");
+            p.pack(sb, childPrefix, out);
+            if (out != null && sb.length() > FLUSH_SIZE) {
+                out.append(sb);
+                sb.setLength(0);
+            }
         }
 
 
         sb.append(")\r\n");
     }
 
+    /**
+     * Content is streamed into the file, only a {@link #FLUSH_SIZE} chunk of it is kept in memory
+     */
     public void write(String fileName) throws IOException {
         System.out.println("Writing to " + fileName);
-        String content = pack();
-        BufferedWriter bw = new BufferedWriter(new FileWriter(fileName));
-        bw.write(content);
-        bw.close();
+        try (Writer writer = new FileWriter(fileName)) {
+            StringBuilder sb = new StringBuilder();
+            pack(sb, "", writer);
+            writer.append(sb);
+        }
     }
 
     public void setDouble(int i, double value) {
@@ -179,21 +141,20 @@ public class PcbNode {
     }
 
     public boolean hasChild(String key) {
-        return !iterate(key).isEmpty();
+        return getIndex().containsKey(key);
     }
 
     //    @Nullable
     public PcbNode findIfExists(String key) {
-        List<PcbNode> r = iterate(key);
-        if (r.isEmpty())
+        if (!hasChild(key))
             return null;
         return find(key);
     }
 
     //    @NotNull
     public PcbNode find(String key) {
-        List<PcbNode> r = iterate(key);
-        if (r.size() != 1)
+        List<PcbNode> r = getIndex().get(key);
+        if (r == null || r.size() != 1)
             throw new IllegalStateException("More that one " + key + " in " + nodeName);
         return r.get(0);
     }
@@ -208,17 +169,40 @@ public class PcbNode {
         return result;
     }
 
+    /**
+     * @return copy of the list of child nodes with given name so that caller is free to add or remove children
+     */
     public List<PcbNode> iterate(String key) {
-        List<PcbNode> result = new ArrayList<PcbNode>();
-        for (PcbNode p : nodes()) {
-            if (p.nodeName.equals(key))
-                result.add(p);
+        List<PcbNode> r = getIndex().get(key);
+        return r == null ? new ArrayList<PcbNode>() : new ArrayList<PcbNode>(r);
+    }
+
+    /**
+     * Child nodes by name, built on first lookup and then maintained by {@link #addChild} and {@link #removeChild}
+     */
+    private Map<String, List<PcbNode>> getIndex() {
+        if (index == null) {
+            Map<String, List<PcbNode>> result = new HashMap<String, List<PcbNode>>();
+            for (PcbNode node : nodes())
+                addToIndex(result, node);
+            index = result;
         }
-        return result;
+        return index;
+    }
+
+    private static void addToIndex(Map<String, List<PcbNode>> index, PcbNode node) {
+        List<PcbNode> list = index.get(node.nodeName);
+        if (list == null) {
+            list = new ArrayList<PcbNode>();
+            index.put(node.nodeName, list);
+        }
+        list.add(node);
     }
 
     public void addChild(PcbNode node) {
         children.add(node);
+        if (index != null)
+            addToIndex(index, node);
     }
 
     public List<Object> getChildren() {
@@ -238,7 +222,23 @@ public class PcbNode {
     }
 
     public boolean removeChild(Object child) {
-        return children.remove(child);
+        boolean removed = children.remove(child);
+        if (removed && index != null && child instanceof PcbNode) {
+            PcbNode node = (PcbNode) child;
+            List<PcbNode> list = index.get(node.nodeName);
+            list.remove(node);
+            if (list.isEmpty())
+                index.remove(node.nodeName);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all given children in one pass over {@link #children}
+     */
+    public void removeChildren(Collection<? extends PcbNode> nodes) {
+        children.removeAll(nodes instanceof Set ? nodes : new HashSet<PcbNode>(nodes));
+        index = null;
     }
 
     public boolean isConnected(PointNode point) {
@@ -0,0 +1,139 @@
+package com.rusefi.pcb;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Streaming reader of KiCad S-expressions into {@link PcbNode} tree.
+ * <p>
+ * Iterative: open nodes are kept on an explicit stack so nesting depth is not limited by thread stack size. Input
+ * is consumed through a char buffer, tokens are collected in one reused {@link StringBuilder}.
+ * <p>
+ * (c) Andrey Belomutskiy
+ */
+public class SExpressionReader {
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private final char[] buffer = new char[64 * 1024];
+    private final StringBuilder token = new StringBuilder();
+    private int length;
+    private int position;
+    /**
+     * number of characters consumed before current buffer content
+     */
+    private int consumed;
+
+    private SExpressionReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads first node of the input, anything after it is ignored
+     */
+    public static PcbNode read(Reader reader) throws IOException {
+        return new SExpressionReader(reader).readNode();
+    }
+
+    private PcbNode readNode() throws IOException {
+        skipWhitespace();
+        if (next() != '(')
+            throw new IllegalStateException("opening bracket expected");
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(readToken()));
+        while (true) {
+            skipWhitespace();
+            int c = peek();
+            if (c == EOF)
+                throw new IllegalStateException("Unexpected end of input, " + stack.size() + " node(s) not closed");
+            if (c == ')') {
+                next();
+                Frame frame = stack.pop();
+                PcbNode node = PcbNode.create(frame.nodeName, getPosition(), frame.children);
+                if (stack.isEmpty())
+                    return node;
+                stack.peek().children.add(node);
+            } else if (c == '(') {
+                next();
+                stack.push(new Frame(readToken()));
+            } else {
+                stack.peek().children.add(readToken());
+            }
+        }
+    }
+
+    /**
+     * @return quoted token including quotes or a sequence of characters up to whitespace or closing bracket
+     */
+    private String readToken() throws IOException {
+        token.setLength(0);
+        if (peek() == '"') {
+            token.append((char) next());
+            while (true) {
+                int c = next();
+                if (c == EOF)
+                    throw new IllegalStateException("Unexpected end of input in quoted token");
+                token.append((char) c);
+                if (c == '"')
+                    break;
+            }
+            return token.toString();
+        }
+
+        while (true) {
+            int c = peek();
+            if (c == EOF || c == ')' || isWhitespace(c))
+                break;
+            token.append((char) next());
+        }
+        if (token.length() == 0)
+            throw new IllegalStateException("Empty token at " + getPosition());
+        return token.toString();
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (isWhitespace(peek()))
+            position++;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\r' || c == '\n';
+    }
+
+    private int peek() throws IOException {
+        if (position == length && !fill())
+            return EOF;
+        return buffer[position];
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        if (c != EOF)
+            position++;
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        consumed += length;
+        position = 0;
+        length = Math.max(0, reader.read(buffer));
+        return length > 0;
+    }
+
+    private int getPosition() {
+        return consumed + position;
+    }
+
+    private static class Frame {
+        private final String nodeName;
+        private final List<Object> children = new ArrayList<>();
+
+        Frame(String nodeName) {
+            this.nodeName = nodeName;
+        }
+    }
+}
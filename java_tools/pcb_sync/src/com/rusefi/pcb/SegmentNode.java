@@ -24,6 +24,10 @@ public class SegmentNode extends PcbNode {
         return point.isConnected(start, size) || point.isConnected(end, size);
     }
 
+    public SizeNode getSize() {
+        return size;
+    }
+
     @Override
     public String toString() {
         return "SegmentNode{" +
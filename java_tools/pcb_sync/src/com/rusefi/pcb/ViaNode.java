@@ -18,6 +18,10 @@ public class ViaNode extends PcbNode {
         netId = Integer.parseInt(find("net").getChild(0));
     }
 
+    public SizeNode getSize() {
+        return size;
+    }
+
     @Override
     public String toString() {
         return "ViaNode{" +
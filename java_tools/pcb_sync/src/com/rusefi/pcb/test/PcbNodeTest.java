@@ -268,4 +268,21 @@ public class PcbNodeTest {
 
         assertTrue(mn.isConnected(s.start));
     }
+
+    @Test
+    public void testRemoveUnusedCascade() {
+        PcbNode board = PcbNode.parse("(kicad_pcb\n" +
+                "  (segment (start 10 10) (end 12 10) (width 0.254) (layer F.Cu) (net 7))\n" +
+                "  (segment (start 12 10) (end 14 10) (width 0.254) (layer F.Cu) (net 7))\n" +
+                "  (via (at 14 10) (size 0.889) (layers F.Cu B.Cu) (net 7))\n" +
+                "  (segment (start 20 20) (end 22 20) (width 0.254) (layer F.Cu) (net 8))\n" +
+                "  (segment (start 22 20) (end 20 20) (width 0.254) (layer F.Cu) (net 8))\n" +
+                ")");
+
+        // dangling first segment takes down the second one and then the via
+        assertEquals(3, RemoveUnneededTraces.removeUnused(board));
+        assertFalse(board.hasChild("via"));
+        // two segments on top of each other keep each other
+        assertEquals(2, board.iterate("segment").size());
+    }
 }
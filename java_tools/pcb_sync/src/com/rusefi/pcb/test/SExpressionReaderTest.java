@@ -0,0 +1,63 @@
+package com.rusefi.pcb.test;
+
+import com.rusefi.pcb.PcbNode;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * (c) Andrey Belomutskiy
+ */
+public class SExpressionReaderTest {
+    @Test
+    public void testDeepNesting() {
+        int depth = 100000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++)
+            sb.append("(n ");
+        sb.append("leaf");
+        for (int i = 0; i < depth; i++)
+            sb.append(')');
+
+        PcbNode node = PcbNode.parse(sb.toString());
+        int levels = 1;
+        while (node.hasChild("n")) {
+            node = node.find("n");
+            levels++;
+        }
+        assertEquals(depth, levels);
+        assertEquals("leaf", node.getChild(0));
+    }
+
+    @Test
+    public void testClosingIndex() {
+        PcbNode n = PcbNode.parse("(a (b 1) \"x y\")  (ignored)");
+        assertEquals(15, n.closingIndex);
+        assertEquals(8, n.find("b").closingIndex);
+        assertEquals("\"x y\"", n.getChild(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnclosed() {
+        PcbNode.parse("(a (b 1)");
+    }
+
+    @Test
+    public void testIndex() {
+        PcbNode n = PcbNode.parse("(kicad_pcb (net_class 1) (general 2) (net_class 3))");
+        assertEquals(2, n.iterate("net_class").size());
+        assertNull(n.findIfExists("setup"));
+
+        PcbNode first = n.iterate("net_class").get(0);
+        assertTrue(n.removeChild(first));
+        assertEquals("3", n.find("net_class").getChild(0));
+
+        n.addChild(PcbNode.parse("(setup 4)"));
+        assertEquals("4", n.find("setup").getChild(0));
+        assertEquals("(kicad_pcb\r\n (general 2)\r\n\r\n (net_class 3)\r\n\r\n (setup 4)\r\n)\r\n", n.pack());
+
+        // iterate returns a copy
+        n.iterate("net_class").clear();
+        assertTrue(n.hasChild("net_class"));
+    }
+}
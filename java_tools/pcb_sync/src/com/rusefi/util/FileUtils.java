@@ -36,7 +36,7 @@ public class FileUtils {
         return sb.toString();
     }
 
-    private static void checkExistence(String fileName) {
+    public static void checkExistence(String fileName) {
         if (!new File(fileName).isFile()) {
             System.err.println("File not found: " + fileName);
             System.exit(-1);
@@ -1,9 +1,9 @@
 package com.rusefi;
 
 import com.opensr5.ini.IniFileModel;
+import com.rusefi.util.PngBatchWriter;
 import com.rusefi.xml.*;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -25,6 +25,11 @@ public class ScreenGenerator {
 
 
     private static final String DESTINATION = "images" + File.separator;
+    /**
+     * TunerStudio dialogs have to be captured one by one on the UI thread, only encoding happens on workers. Unchanged
+     * images are not written again.
+     */
+    private static PngBatchWriter writer;
 
     static ContentModel contentModel = new ContentModel();
     static IniFileModel iniFileModel = new IniFileModel();
@@ -49,18 +54,21 @@ public class ScreenGenerator {
 
 
         System.out.println("mkdirs " + DESTINATION);
-        new File(DESTINATION).mkdirs();
+        // closed even if a capture fails: pool threads would keep JVM running and hashes would not be recorded
+        try (PngBatchWriter writer = new PngBatchWriter(DESTINATION)) {
+            ScreenGenerator.writer = writer;
 
-        System.out.println("Launching TunerStudioIntegration");
-        Frame mainFrame = TunerStudioIntegration.findMainFrame();
+            System.out.println("Launching TunerStudioIntegration");
+            Frame mainFrame = TunerStudioIntegration.findMainFrame();
 
-        waitForMainFrame(mainFrame);
+            waitForMainFrame(mainFrame);
 
-        System.out.println("Done discovering buttons, " + topLevelButtons.size());
+            System.out.println("Done discovering buttons, " + topLevelButtons.size());
 
-        Thread.sleep(2 * WAITING_FOR_FRAME_PERIOD); // we have this sleep to avoid an artifact on first screenshot
+            Thread.sleep(2 * WAITING_FOR_FRAME_PERIOD); // we have this sleep to avoid an artifact on first screenshot
 
-        handleTopLevelButtons(mainFrame, topLevelButtons);
+            handleTopLevelButtons(mainFrame, topLevelButtons);
+        }
 
         XmlUtil.writeXml(contentModel, ContentModel.class, FILE_NAME);
     }
@@ -97,10 +105,7 @@ public class ScreenGenerator {
         TopLevelMenuModel topLevelMenuModel = new TopLevelMenuModel(topLevel.getText(), imageName);
         ScreenGenerator.contentModel.getTopLevelMenus().add(topLevelMenuModel);
 
-        ImageIO.write(
-                UiUtils.getScreenShot(frame),
-                PNG,
-                new File(DESTINATION +  imageName));
+        writer.submit(imageName, UiUtils.getScreenShot(frame));
 
         List<JMenuItem> menuItems = TunerStudioIntegration.findMenuItems(frame);
 
@@ -145,10 +150,7 @@ public class ScreenGenerator {
 //                            ImageIO.write(screenFullImage, PNG, new File(DESTINATION + "full_" + d.getTitle() + ".png"));
 
                 BufferedImage dialogScreenShot = UiUtils.getScreenShot(dialog);
-                ImageIO.write(
-                        dialogScreenShot,
-                        PNG,
-                        new File(DESTINATION + imageName));
+                writer.submit(imageName, dialogScreenShot);
                 dialog.setVisible(false);
                 dialog.dispose();
             } catch (Exception e) {
@@ -194,17 +196,7 @@ public class ScreenGenerator {
 
             dialogModel.fields.add(new FieldModel(sectionNameWithSpecialCharacters, fieldName, fileName, tooltip));
 
-            File output = new File(DESTINATION + fileName);
-            if (output == null) {
-                System.out.println(sectionName + " in " + fileName + " was not a success");
-                continue;
-            }
-            try {
-                ImageIO.write(slice, PNG, output);
-            } catch (Exception e) {
-                System.out.println(sectionName + " in " + fileName + " was not a success?");
-                continue;
-            }
+            writer.submit(fileName, slice);
         }
     }
 